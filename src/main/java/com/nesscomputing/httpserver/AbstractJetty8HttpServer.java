@@ -22,10 +22,14 @@ import static com.nesscomputing.httpserver.HttpServerHandlerBinder.SECURITY_NAME
 
 import java.io.File;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.DispatcherType;
 import javax.servlet.Servlet;
 
@@ -43,13 +47,40 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.skife.config.TimeSpan;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.google.inject.servlet.GuiceFilter;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.httpserver.jetty.AdaptiveLimitConfig;
+import com.nesscomputing.httpserver.jetty.AdaptiveLimitHandler;
+import com.nesscomputing.httpserver.jetty.AdaptiveLimiter;
+import com.nesscomputing.httpserver.jetty.FairQueueConfig;
+import com.nesscomputing.httpserver.jetty.FairQueueHandler;
+import com.nesscomputing.httpserver.jetty.FairScheduler;
+import com.nesscomputing.httpserver.jetty.LoadSheddingHandler;
+import com.nesscomputing.httpserver.jetty.PriorityClassifier;
+import com.nesscomputing.httpserver.jetty.PriorityConfig;
+import com.nesscomputing.httpserver.jetty.PriorityHandler;
+import com.nesscomputing.httpserver.jetty.PriorityScheduler;
+import com.nesscomputing.httpserver.jetty.RequestQueue;
+import com.nesscomputing.httpserver.jetty.RequestTimingHandler;
+import com.nesscomputing.httpserver.jetty.RouteNormalizingHandler;
+import com.nesscomputing.httpserver.jetty.ServletContextTimingHandler;
+import com.nesscomputing.httpserver.jetty.TimedQueuedThreadPool;
+import com.nesscomputing.httpserver.jetty.VirtualThreadPool;
+import com.nesscomputing.httpserver.jmx.MBeanExporter;
+import com.nesscomputing.httpserver.log.RouteNormalizer;
+import com.nesscomputing.httpserver.stats.StripedStatisticsHandler;
 import com.nesscomputing.lifecycle.LifecycleStage;
 import com.nesscomputing.lifecycle.guice.OnStage;
 import com.nesscomputing.logging.Log;
@@ -67,9 +98,16 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
     private Set<Handler> handlers = null;
     private Set<Handler> loggingHandlers = null;
     private HandlerWrapper securityHandler = null;
+    private RouteNormalizer routeNormalizer = null;
+    private AdaptiveLimitConfig adaptiveLimitConfig = null;
+    private PriorityConfig priorityConfig = null;
+    private FairQueueConfig fairQueueConfig = null;
+    private Config config = null;
     private GuiceFilter guiceFilter = null;
 
     private Server server = null;
+    private StatisticsHandler statisticsHandler = null;
+    private final List<ObjectName> mbeanNames = Lists.newArrayList();
 
     @Inject
     protected AbstractJetty8HttpServer(final HttpServerConfig httpServerConfig, @Named(CATCHALL_NAME) final Servlet catchallServlet)
@@ -108,6 +146,36 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
         this.securityHandler = securityHandler;
     }
 
+    @Inject(optional=true)
+    void setRouteNormalizer(final RouteNormalizer routeNormalizer)
+    {
+        this.routeNormalizer = routeNormalizer;
+    }
+
+    @Inject(optional=true)
+    void setConfig(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Inject(optional=true)
+    void setAdaptiveLimitConfig(final AdaptiveLimitConfig adaptiveLimitConfig)
+    {
+        this.adaptiveLimitConfig = adaptiveLimitConfig;
+    }
+
+    @Inject(optional=true)
+    void setPriorityConfig(final PriorityConfig priorityConfig)
+    {
+        this.priorityConfig = priorityConfig;
+    }
+
+    @Inject(optional=true)
+    void setFairQueueConfig(final FairQueueConfig fairQueueConfig)
+    {
+        this.fairQueueConfig = fairQueueConfig;
+    }
+
     @OnStage(LifecycleStage.START)
     @Override
     public void start()
@@ -122,7 +190,8 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
             server.setGracefulShutdown(Ints.saturatedCast(httpServerConfig.getShutdownTimeout().getMillis()));
         }
 
-        buildConnectors(server);
+        final Set<String> dedicatedConnectors = Sets.newHashSet();
+        final Map<String, RequestQueue> connectorQueues = buildConnectors(server, dedicatedConnectors);
 
         final HandlerCollection handlerCollection = new HandlerCollection();
 
@@ -132,7 +201,14 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
             }
         }
 
-        handlerCollection.addHandler(createGuiceContext());
+        if (httpServerConfig.isRequestTimingEnabled()) {
+            final ServletContextTimingHandler contextTimingHandler = new ServletContextTimingHandler();
+            contextTimingHandler.setHandler(createGuiceContext());
+            handlerCollection.addHandler(contextTimingHandler);
+        }
+        else {
+            handlerCollection.addHandler(createGuiceContext());
+        }
 
         if (loggingHandlers != null) {
             for (Handler loggingHandler : loggingHandlers) {
@@ -140,23 +216,95 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
             }
         }
 
-        final StatisticsHandler statsHandler = new StatisticsHandler();
+        final StatisticsHandler statsHandler = httpServerConfig.isStripedStatisticsEnabled() ? new StripedStatisticsHandler() : new StatisticsHandler();
+        this.statisticsHandler = statsHandler;
+
+        Handler innerHandler = handlerCollection;
 
-        if (securityHandler == null) {
-            statsHandler.setHandler(handlerCollection);
+        final AdaptiveLimiter limiter = createAdaptiveLimiter();
+        if (limiter != null) {
+            final AdaptiveLimitHandler limitHandler = new AdaptiveLimitHandler(limiter, adaptiveLimitConfig.getBypass(), getRetryAfterSeconds());
+            limitHandler.setHandler(innerHandler);
+            innerHandler = limitHandler;
         }
-        else {
+
+        final PriorityScheduler scheduler = createPriorityScheduler();
+        if (scheduler != null) {
+            // Inside of the security handler, so that rejected requests never wait for their turn.
+            final PriorityClassifier classifier = new PriorityClassifier(priorityConfig.getHighRoutes(),
+                                                                         priorityConfig.getLowRoutes(),
+                                                                         priorityConfig.getHighConnectors(),
+                                                                         priorityConfig.getLowConnectors(),
+                                                                         priorityConfig.getHeaderConnectors());
+            final PriorityHandler priorityHandler = new PriorityHandler(scheduler,
+                                                                        classifier,
+                                                                        dedicatedConnectors,
+                                                                        priorityConfig.getQueueTimeout().getMillis(),
+                                                                        getRetryAfterSeconds());
+            priorityHandler.setHandler(innerHandler);
+            innerHandler = priorityHandler;
+        }
+
+        final FairScheduler fairScheduler = createFairScheduler();
+        if (fairScheduler != null) {
+            // Inside of the security handler as well, the principal may identify the client.
+            final FairQueueHandler fairQueueHandler = new FairQueueHandler(fairScheduler,
+                                                                           fairQueueConfig.getIdentity(),
+                                                                           fairQueueConfig.getHeader(),
+                                                                           dedicatedConnectors,
+                                                                           fairQueueConfig.getQueueTimeout().getMillis(),
+                                                                           getRetryAfterSeconds());
+            fairQueueHandler.setHandler(innerHandler);
+            innerHandler = fairQueueHandler;
+        }
+
+        if (securityHandler != null) {
             LOG.info("Enabling security handler (%s)", securityHandler.getClass().getName());
-            securityHandler.setHandler(handlerCollection);
-            statsHandler.setHandler(securityHandler);
+            securityHandler.setHandler(innerHandler);
+            innerHandler = securityHandler;
+        }
+
+        if (routeNormalizer != null) {
+            // Outside of the security handler, so it can use the route as well.
+            final RouteNormalizingHandler routeHandler = new RouteNormalizingHandler(routeNormalizer);
+            routeHandler.setHandler(innerHandler);
+            innerHandler = routeHandler;
+        }
+
+        final boolean virtualThreads = isVirtualThreadsEnabled();
+        final RequestQueue requestQueue = virtualThreads ? null : createRequestQueue(httpServerConfig.getMaxQueued(), httpServerConfig.getQueueTarget());
+        if (requestQueue != null || !connectorQueues.isEmpty() || (virtualThreads && httpServerConfig.getMaxQueued() > 0)) {
+            final LoadSheddingHandler sheddingHandler = new LoadSheddingHandler(getRetryAfterSeconds());
+            sheddingHandler.setHandler(innerHandler);
+            innerHandler = sheddingHandler;
         }
 
+        statsHandler.setHandler(innerHandler);
+
         // add handlers to Jetty
-        server.setHandler(statsHandler);
+        if (httpServerConfig.isRequestTimingEnabled()) {
+            // Timing must be the outermost handler to see all of the request.
+            final RequestTimingHandler timingHandler = new RequestTimingHandler();
+            timingHandler.setHandler(statsHandler);
+            server.setHandler(timingHandler);
+        }
+        else {
+            server.setHandler(statsHandler);
+        }
 
-        final QueuedThreadPool threadPool = new QueuedThreadPool(httpServerConfig.getMaxThreads());
-        threadPool.setMinThreads(httpServerConfig.getMinThreads());
-        threadPool.setMaxIdleTimeMs(Ints.saturatedCast(httpServerConfig.getThreadMaxIdletime().getMillis()));
+        final ThreadPool threadPool;
+        if (virtualThreads) {
+            final int platformThreads = httpServerConfig.getVirtualThreadsPlatformThreads();
+            final QueuedThreadPool platformPool = createThreadPool(platformThreads, Math.min(httpServerConfig.getMinThreads(), platformThreads), null);
+            final VirtualThreadPool virtualPool = new VirtualThreadPool(platformPool, httpServerConfig.getVirtualThreadsMaxConcurrency(), httpServerConfig.getMaxQueued());
+            if (httpServerConfig.getShutdownTimeout() != null) {
+                virtualPool.setMaxStopTimeMs(Ints.saturatedCast(httpServerConfig.getShutdownTimeout().getMillis()));
+            }
+            threadPool = virtualPool;
+        }
+        else {
+            threadPool = createThreadPool(httpServerConfig.getMaxThreads(), httpServerConfig.getMinThreads(), requestQueue);
+        }
         server.setThreadPool(threadPool);
 
         if (mbeanServer != null && httpServerConfig.isJmxEnabled()) {
@@ -167,6 +315,26 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
                 }
             };
             server.getContainer().addEventListener(mbeanContainer);
+
+            if (requestQueue != null) {
+                export("RequestQueue", null, requestQueue);
+            }
+            else if (threadPool instanceof VirtualThreadPool) {
+                export("VirtualThreadPool", null, threadPool);
+            }
+            for (Map.Entry<String, RequestQueue> entry : connectorQueues.entrySet()) {
+                export("RequestQueue", entry.getKey(), entry.getValue());
+            }
+
+            if (limiter != null) {
+                export("AdaptiveLimiter", null, limiter);
+            }
+            if (scheduler != null) {
+                export("PriorityScheduler", null, scheduler);
+            }
+            if (fairScheduler != null) {
+                export("FairScheduler", null, fairScheduler);
+            }
         }
 
         this.server = server;
@@ -180,8 +348,126 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
         Preconditions.checkState(server.isRunning(), "Server did not start");
     }
 
-    private void buildConnectors(final Server server)
+    @Nullable
+    private AdaptiveLimiter createAdaptiveLimiter()
     {
+        if (adaptiveLimitConfig == null || !adaptiveLimitConfig.isEnabled()) {
+            return null;
+        }
+
+        LOG.info("Limiting requests in flight adaptively, starting at %s", adaptiveLimitConfig.getInitialLimit());
+        return new AdaptiveLimiter(adaptiveLimitConfig.getInitialLimit(),
+                                   adaptiveLimitConfig.getMinLimit(),
+                                   adaptiveLimitConfig.getMaxLimit(),
+                                   adaptiveLimitConfig.getTolerance(),
+                                   adaptiveLimitConfig.getSmoothing(),
+                                   TimeUnit.MILLISECONDS.toNanos(adaptiveLimitConfig.getWindow().getMillis()));
+    }
+
+    @Nullable
+    private PriorityScheduler createPriorityScheduler()
+    {
+        if (priorityConfig == null || priorityConfig.getMaxActive() <= 0) {
+            return null;
+        }
+
+        LOG.info("Running at most %s requests at a time, further requests wait by priority", priorityConfig.getMaxActive());
+        return new PriorityScheduler(priorityConfig.getMaxActive(), TimeUnit.MILLISECONDS.toNanos(priorityConfig.getMaxWait().getMillis()));
+    }
+
+    @Nullable
+    private FairScheduler createFairScheduler()
+    {
+        if (fairQueueConfig == null || fairQueueConfig.getMaxActive() <= 0) {
+            return null;
+        }
+
+        LOG.info("Running at most %s requests at a time, further requests are queued per %s", fairQueueConfig.getMaxActive(), fairQueueConfig.getIdentity());
+        return new FairScheduler(fairQueueConfig.getMaxActive(),
+                                 fairQueueConfig.getMaxQueuedPerClient(),
+                                 fairQueueConfig.getMaxClients(),
+                                 TimeUnit.MILLISECONDS.toNanos(fairQueueConfig.getQuantum().getMillis()));
+    }
+
+    private long getRetryAfterSeconds()
+    {
+        return Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(httpServerConfig.getShedRetryAfter().getMillis()));
+    }
+
+    private boolean isVirtualThreadsEnabled()
+    {
+        if (httpServerConfig.getExecutionMode() != ExecutionMode.VIRTUAL) {
+            return false;
+        }
+        if (!VirtualThreadPool.isSupported()) {
+            LOG.warn("Virtual threads need Java 24 or later, running requests on platform threads");
+            return false;
+        }
+        if (httpServerConfig.getQueueTarget() != null) {
+            LOG.warn("Requests run on virtual threads, ignoring the request queue target");
+        }
+        LOG.info("Running requests on virtual threads, at most %s at a time", httpServerConfig.getVirtualThreadsMaxConcurrency());
+        return true;
+    }
+
+    @VisibleForTesting
+    StatisticsHandler getStatisticsHandler()
+    {
+        return statisticsHandler;
+    }
+
+    private void export(final String type, @Nullable final String name, final Object bean)
+    {
+        final ObjectName mbeanName = MBeanExporter.export(mbeanServer, type, name, bean);
+        if (mbeanName != null) {
+            mbeanNames.add(mbeanName);
+        }
+    }
+
+    private QueuedThreadPool createThreadPool(final int maxThreads, final int minThreads, @Nullable final RequestQueue requestQueue)
+    {
+        final QueuedThreadPool threadPool;
+        if (requestQueue != null) {
+            threadPool = new TimedQueuedThreadPool(maxThreads, requestQueue);
+        }
+        else if (httpServerConfig.isRequestTimingEnabled()) {
+            threadPool = new TimedQueuedThreadPool(maxThreads);
+        }
+        else {
+            threadPool = new QueuedThreadPool(maxThreads);
+        }
+
+        threadPool.setMinThreads(minThreads);
+        threadPool.setMaxIdleTimeMs(Ints.saturatedCast(httpServerConfig.getThreadMaxIdletime().getMillis()));
+        return threadPool;
+    }
+
+    /**
+     * Returns the queue for requests waiting for a thread, or null if the queue is neither limited nor sheds
+     * requests that waited too long.
+     */
+    @Nullable
+    private RequestQueue createRequestQueue(final int maxQueued, @Nullable final TimeSpan queueTarget)
+    {
+        if (maxQueued <= 0 && queueTarget == null) {
+            return null;
+        }
+
+        LOG.info("Limiting request queue to %s requests, target wait %s", maxQueued, queueTarget);
+        return new RequestQueue(maxQueued,
+                                queueTarget == null ? 0L : TimeUnit.MILLISECONDS.toNanos(queueTarget.getMillis()),
+                                TimeUnit.MILLISECONDS.toNanos(httpServerConfig.getQueueInterval().getMillis()));
+    }
+
+    /**
+     * Adds the connectors to the server.
+     *
+     * @param dedicatedConnectors Receives the names of the connectors that have their own thread pool.
+     * @return The request queues of the connectors that have their own thread pool, by connector name.
+     */
+    private Map<String, RequestQueue> buildConnectors(final Server server, final Set<String> dedicatedConnectors)
+    {
+        final Map<String, RequestQueue> connectorQueues = Maps.newHashMap();
         final Set<HttpConnector> connectors = Sets.newHashSet();
 
         for (Map.Entry<String, HttpConnector> entry : getConnectors().entrySet()) {
@@ -212,6 +498,7 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
                 jettyConnector = new SelectChannelConnector();
             }
 
+            jettyConnector.setName(connectorName);
             jettyConnector.setPort(connector.getPort());
             jettyConnector.setHost(connector.getAddress());
 
@@ -225,9 +512,33 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
             jettyConnector.setMaxIdleTime(Ints.saturatedCast(httpServerConfig.getMaxIdletime().getMillis()));
             jettyConnector.setResponseHeaderSize(httpServerConfig.getResponseHeaderSize());
 
+            final HttpConnectorConfig connectorConfig = getConnectorConfig(connectorName);
+            if (connectorConfig != null && connectorConfig.getMaxThreads() > 0) {
+                final RequestQueue connectorQueue = createRequestQueue(connectorConfig.getMaxQueued(), connectorConfig.getQueueTarget());
+                if (connectorQueue != null) {
+                    connectorQueues.put(connectorName, connectorQueue);
+                }
+
+                LOG.info("Connector [%s] runs on its own pool of %s threads", connectorName, connectorConfig.getMaxThreads());
+                final QueuedThreadPool connectorPool = createThreadPool(connectorConfig.getMaxThreads(),
+                                                                        Math.min(connectorConfig.getMinThreads(), connectorConfig.getMaxThreads()),
+                                                                        connectorQueue);
+                connectorPool.setName(connectorName);
+                jettyConnector.setThreadPool(connectorPool);
+                dedicatedConnectors.add(connectorName);
+            }
+
             LOG.debug("Adding connector [%s] as %s", connectorName, connector);
             server.addConnector(jettyConnector);
         }
+
+        return connectorQueues;
+    }
+
+    @Nullable
+    private HttpConnectorConfig getConnectorConfig(final String connectorName)
+    {
+        return config == null ? null : config.getBean(HttpConnectorConfig.class, ImmutableMap.of("connector", connectorName));
     }
 
     @Override
@@ -235,6 +546,12 @@ public abstract class AbstractJetty8HttpServer implements HttpServer
     public void stop()
     {
         Preconditions.checkNotNull(server, "Server was never started!");
+
+        for (ObjectName mbeanName : mbeanNames) {
+            MBeanExporter.unexport(mbeanServer, mbeanName);
+        }
+        mbeanNames.clear();
+
         try {
             server.stop();
         }
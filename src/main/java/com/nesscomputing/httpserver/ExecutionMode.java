@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver;
+
+/**
+ * What kind of threads run the requests of the server.
+ */
+public enum ExecutionMode
+{
+    /** A pool of platform threads, sized by <tt>ness.httpserver.max-threads</tt>. */
+    PLATFORM,
+
+    /**
+     * A virtual thread per request, on Java 24 or later (otherwise same as {@link #PLATFORM}). Earlier JVMs
+     * pin the carrier thread while Jetty blocks on a slow client.
+     * A small pool of platform threads still runs the acceptors and selectors.
+     */
+    VIRTUAL;
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.DefaultNull;
+import org.skife.config.TimeSpan;
+
+/**
+ * Settings of a single connector, e.g. <tt>ness.httpserver.connector.internal-http.max-threads</tt>.
+ */
+public abstract class HttpConnectorConfig
+{
+    /**
+     * Size of a thread pool that only runs the requests of this connector, so that traffic on other connectors
+     * can not starve it. 0 shares the server thread pool.
+     */
+    @Config("ness.httpserver.connector.${connector}.max-threads")
+    @Default("0")
+    public int getMaxThreads()
+    {
+        return 0;
+    }
+
+    @Config("ness.httpserver.connector.${connector}.min-threads")
+    @Default("2")
+    public int getMinThreads()
+    {
+        return 2;
+    }
+
+    /**
+     * Number of connections that may wait for a thread of the connector pool, see
+     * {@link HttpServerConfig#getMaxQueued()}. 0 does not limit the queue.
+     */
+    @Config("ness.httpserver.connector.${connector}.max-queued")
+    @Default("0")
+    public int getMaxQueued()
+    {
+        return 0;
+    }
+
+    /**
+     * Target wait for a thread of the connector pool, see {@link HttpServerConfig#getQueueTarget()}.
+     */
+    @Config("ness.httpserver.connector.${connector}.queue-target")
+    @DefaultNull
+    public TimeSpan getQueueTarget()
+    {
+        return null;
+    }
+}
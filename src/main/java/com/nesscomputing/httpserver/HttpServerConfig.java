@@ -128,4 +128,104 @@ public abstract class HttpServerConfig
     {
         return false;
     }
+
+    /**
+     * Capture nanosecond phase timings (thread pool wait, servlet context, first byte, total)
+     * for every request. These are available to the request logs as the queueTime, handleTime,
+     * ttfb and totalNanos fields. This wraps every job of the thread pool and the response of
+     * every servlet request, so it is off unless these fields are logged.
+     */
+    @Config("ness.httpserver.request-timing")
+    @Default("false")
+    public boolean isRequestTimingEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Gather the server statistics with {@link com.nesscomputing.httpserver.stats.StripedStatisticsHandler} instead of
+     * the Jetty statistics handler. It reports the same statistics plus percentiles, and scales better with many
+     * concurrent requests.
+     */
+    @Config("ness.httpserver.striped-statistics")
+    @Default("false")
+    public boolean isStripedStatisticsEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Number of connections that may wait for a thread. Requests beyond that are answered with a 503 right
+     * away. 0 does not limit the queue.
+     */
+    @Config("ness.httpserver.max-queued")
+    @Default("0")
+    public int getMaxQueued()
+    {
+        return 0;
+    }
+
+    /**
+     * Longest time a request should wait for a thread while the server is overloaded. Requests that waited
+     * longer are answered with a 503, and the newest requests are served first. Unset, requests are never
+     * rejected for how long they waited.
+     */
+    @Config("ness.httpserver.queue-target")
+    @DefaultNull
+    public TimeSpan getQueueTarget()
+    {
+        return null;
+    }
+
+    /**
+     * The server is overloaded when the queue of requests waiting for a thread has not been empty for this long.
+     */
+    @Config("ness.httpserver.queue-interval")
+    @Default("100ms")
+    public TimeSpan getQueueInterval()
+    {
+        return new TimeSpan(100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sent as the Retry-After header of requests that were rejected because the server was overloaded.
+     */
+    @Config("ness.httpserver.shed-retry-after")
+    @Default("1s")
+    public TimeSpan getShedRetryAfter()
+    {
+        return new TimeSpan(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Whether requests run on a pool of platform threads or each on its own virtual thread.
+     */
+    @Config("ness.httpserver.execution-mode")
+    @Default("PLATFORM")
+    public ExecutionMode getExecutionMode()
+    {
+        return ExecutionMode.PLATFORM;
+    }
+
+    /**
+     * Number of requests that run at the same time on virtual threads. Further requests wait, or are answered
+     * with a 503 once ness.httpserver.max-queued requests are waiting. Virtual threads need Java 24 or later,
+     * before that a request blocked on a slow client pins its carrier thread.
+     */
+    @Config("ness.httpserver.virtual-threads.max-concurrency")
+    @Default("10000")
+    public int getVirtualThreadsMaxConcurrency()
+    {
+        return 10000;
+    }
+
+    /**
+     * Size of the platform thread pool that runs the acceptors and selectors when requests run on virtual threads.
+     */
+    @Config("ness.httpserver.virtual-threads.platform-threads")
+    @Default("16")
+    public int getVirtualThreadsPlatformThreads()
+    {
+        return 16;
+    }
 }
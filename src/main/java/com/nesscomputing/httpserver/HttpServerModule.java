@@ -22,8 +22,13 @@ import com.google.inject.servlet.ServletModule;
 
 import com.nesscomputing.config.Config;
 import com.nesscomputing.config.ConfigProvider;
+import com.nesscomputing.httpserver.jetty.AdaptiveLimitConfig;
+import com.nesscomputing.httpserver.jetty.FairQueueConfig;
+import com.nesscomputing.httpserver.jetty.PriorityConfig;
 import com.nesscomputing.httpserver.jetty.TransparentCompressionFilter;
 import com.nesscomputing.httpserver.log.LogFieldsModule;
+import com.nesscomputing.httpserver.log.RouteNormalizer;
+import com.nesscomputing.httpserver.log.RouteNormalizerConfig;
 import com.nesscomputing.httpserver.log.file.FileRequestLogModule;
 import com.nesscomputing.httpserver.log.log4j.Log4jRequestLogModule;
 import com.nesscomputing.httpserver.log.syslog.SyslogRequestLogModule;
@@ -47,6 +52,11 @@ public class HttpServerModule extends ServletModule
         bind(HttpServerConfig.class).toInstance(httpServerConfig);
         bind(GalaxyHttpServerConfig.class).toProvider(ConfigProvider.of(GalaxyHttpServerConfig.class)).in(Scopes.SINGLETON);
         bind(SoloHttpServerConfig.class).toProvider(ConfigProvider.of(SoloHttpServerConfig.class)).in(Scopes.SINGLETON);
+        bind(RouteNormalizerConfig.class).toProvider(ConfigProvider.of(RouteNormalizerConfig.class)).in(Scopes.SINGLETON);
+        bind(RouteNormalizer.class).in(Scopes.SINGLETON);
+        bind(AdaptiveLimitConfig.class).toProvider(ConfigProvider.of(AdaptiveLimitConfig.class)).in(Scopes.SINGLETON);
+        bind(PriorityConfig.class).toProvider(ConfigProvider.of(PriorityConfig.class)).in(Scopes.SINGLETON);
+        bind(FairQueueConfig.class).toProvider(ConfigProvider.of(FairQueueConfig.class)).in(Scopes.SINGLETON);
 
         // Bind the legacy CONTEXT_PATH_NAME constants to the first path in the service. Do we actually still need that?
         bindConstant().annotatedWith(Names.named(CONTEXT_PATH_NAME)).to("");
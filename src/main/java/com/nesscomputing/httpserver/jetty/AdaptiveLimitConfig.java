@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.TimeSpan;
+
+import com.google.common.collect.ImmutableSet;
+
+public abstract class AdaptiveLimitConfig
+{
+    /**
+     * Limit the number of requests in flight to what the service can handle without its latency going up,
+     * see {@link AdaptiveLimiter}. Requests beyond the limit are answered with a 503.
+     */
+    @Config("ness.httpserver.adaptive-limit.enabled")
+    @Default("false")
+    public boolean isEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Requests to paths starting with any of these prefixes are never limited.
+     */
+    @Config("ness.httpserver.adaptive-limit.bypass")
+    @Default("/selftest")
+    public Set<String> getBypass()
+    {
+        return ImmutableSet.of("/selftest");
+    }
+
+    @Config("ness.httpserver.adaptive-limit.initial-limit")
+    @Default("20")
+    public int getInitialLimit()
+    {
+        return 20;
+    }
+
+    @Config("ness.httpserver.adaptive-limit.min-limit")
+    @Default("4")
+    public int getMinLimit()
+    {
+        return 4;
+    }
+
+    @Config("ness.httpserver.adaptive-limit.max-limit")
+    @Default("1000")
+    public int getMaxLimit()
+    {
+        return 1000;
+    }
+
+    /**
+     * How much the latency may grow over the no-load latency before the limit goes down, e.g. 1.5 for 50%.
+     */
+    @Config("ness.httpserver.adaptive-limit.tolerance")
+    @Default("1.5")
+    public double getTolerance()
+    {
+        return 1.5;
+    }
+
+    /**
+     * How far the limit moves towards the newly computed one, between 0 (not at all) and 1 (all the way).
+     */
+    @Config("ness.httpserver.adaptive-limit.smoothing")
+    @Default("0.2")
+    public double getSmoothing()
+    {
+        return 0.2;
+    }
+
+    /**
+     * The limit is recomputed after every window in which enough requests completed.
+     */
+    @Config("ness.httpserver.adaptive-limit.window")
+    @Default("1s")
+    public TimeSpan getWindow()
+    {
+        return new TimeSpan(1, TimeUnit.SECONDS);
+    }
+}
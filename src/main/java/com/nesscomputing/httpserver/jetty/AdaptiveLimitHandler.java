@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.server.AsyncContinuation;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Admits requests through an {@link AdaptiveLimiter}. Requests beyond the limit are answered with a 503 and a
+ * <tt>Retry-After</tt> header right away. Requests to the bypass paths (e.g. <tt>/selftest</tt>) are always
+ * admitted and do not count against the limit.
+ */
+public class AdaptiveLimitHandler extends HandlerWrapper
+{
+    private static final String ADMITTED_ATTRIBUTE = AdaptiveLimitHandler.class.getName() + ".admitted";
+
+    private final AdaptiveLimiter limiter;
+    private final Set<String> bypass;
+    private final String retryAfterSeconds;
+
+    private final ContinuationListener onCompletion = new ContinuationListener() {
+        @Override
+        public void onComplete(final Continuation continuation)
+        {
+            release(((AsyncContinuation) continuation).getBaseRequest());
+        }
+
+        @Override
+        public void onTimeout(final Continuation continuation)
+        {
+        }
+    };
+
+    public AdaptiveLimitHandler(final AdaptiveLimiter limiter, final Set<String> bypass, final long retryAfterSeconds)
+    {
+        this.limiter = limiter;
+        this.bypass = ImmutableSet.copyOf(bypass);
+        this.retryAfterSeconds = Long.toString(retryAfterSeconds);
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        // Admission is tracked on the request, not by the continuation: a request resumed by a handler further
+        // out, e.g. one that queues requests, is not initial but was never admitted here.
+        if (baseRequest.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            // Resumed by the application, it was admitted already.
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        if (isBypassed(baseRequest.getRequestURI())) {
+            // Never counted against the limit.
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        if (!limiter.tryAcquire()) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", retryAfterSeconds);
+            response.setContentLength(0);
+            baseRequest.setHandled(true);
+            return;
+        }
+
+        final AsyncContinuation continuation = baseRequest.getAsyncContinuation();
+        baseRequest.setAttribute(ADMITTED_ATTRIBUTE, System.nanoTime());
+        try {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally {
+            if (continuation.isSuspended()) {
+                continuation.addContinuationListener(onCompletion);
+            }
+            else {
+                release(baseRequest);
+            }
+        }
+    }
+
+    private void release(final Request baseRequest)
+    {
+        final Object admitted = baseRequest.getAttribute(ADMITTED_ATTRIBUTE);
+        if (admitted instanceof Long) {
+            baseRequest.removeAttribute(ADMITTED_ATTRIBUTE);
+            limiter.release(System.nanoTime() - (Long) admitted);
+        }
+    }
+
+    private boolean isBypassed(final String path)
+    {
+        if (path != null) {
+            for (String prefix : bypass) {
+                if (path.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
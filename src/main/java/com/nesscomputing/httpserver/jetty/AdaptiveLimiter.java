@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Limits the number of requests in flight with a gradient algorithm (see the Gradient2 limit of Netflix'
+ * concurrency-limits library).
+ *
+ * Completed requests are collected into windows. At the end of each window, the average latency of the window
+ * is compared with the no-load latency, an exponential average over many windows that only drifts down quickly.
+ * The new limit is the current limit times the gradient <tt>tolerance * noLoad / latency</tt> (capped to
+ * [0.5, 1]) plus some head room (the square root of the limit), smoothed. So the limit grows while the latency
+ * stays close to the no-load latency and shrinks as soon as requests start to queue up somewhere downstream.
+ */
+public class AdaptiveLimiter implements AdaptiveLimiterMXBean
+{
+    /** Windows with fewer requests do not tell enough about the latency. */
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    /** Number of windows the no-load latency is averaged over. */
+    private static final int NO_LOAD_WINDOWS = 60;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong windowLatencySum = new AtomicLong();
+    private final AtomicInteger windowSamples = new AtomicInteger();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private volatile double noLoadLatencyNanos = 0.0;
+    private volatile double latencyNanos = 0.0;
+
+    public AdaptiveLimiter(final int initialLimit, final int minLimit, final int maxLimit,
+                           final double tolerance, final double smoothing, final long windowNanos)
+    {
+        Preconditions.checkArgument(minLimit > 0 && minLimit <= maxLimit, "limits must be positive and min <= max, were %s/%s", minLimit, maxLimit);
+        Preconditions.checkArgument(tolerance >= 1.0, "tolerance must be at least 1, was %s", tolerance);
+        Preconditions.checkArgument(smoothing > 0.0 && smoothing <= 1.0, "smoothing must be in (0, 1], was %s", smoothing);
+        Preconditions.checkArgument(windowNanos > 0L, "window must be positive, was %s", windowNanos);
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = windowNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Admits a request if fewer than the limit are in flight. Every admitted request must be {@link #release(long)}d.
+     */
+    public boolean tryAcquire()
+    {
+        final int currentLimit = getLimit();
+        for (int current = inFlight.get(); current < currentLimit; current = inFlight.get()) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                updateMaxInFlight(current + 1);
+                return true;
+            }
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Marks an admitted request as completed.
+     *
+     * @param latencyNanos How long the request took.
+     */
+    public void release(final long latencyNanos)
+    {
+        inFlight.decrementAndGet();
+
+        windowLatencySum.addAndGet(latencyNanos);
+        windowSamples.incrementAndGet();
+
+        final long now = System.nanoTime();
+        final long start = windowStart.get();
+        if (now - start >= windowNanos && windowSamples.get() >= MIN_WINDOW_SAMPLES && windowStart.compareAndSet(start, now)) {
+            // Only the thread that closed the window gets here.
+            final int samples = windowSamples.getAndSet(0);
+            final long sum = windowLatencySum.getAndSet(0L);
+            final int maxInFlight = windowMaxInFlight.getAndSet(0);
+            update(samples == 0 ? 0.0 : (double) sum / samples, maxInFlight);
+        }
+    }
+
+    void update(final double windowLatencyNanos, final int maxInFlight)
+    {
+        if (windowLatencyNanos <= 0.0) {
+            return;
+        }
+        latencyNanos = windowLatencyNanos;
+
+        double noLoad = noLoadLatencyNanos;
+        if (noLoad == 0.0) {
+            noLoad = windowLatencyNanos;
+        }
+        else {
+            noLoad += (windowLatencyNanos - noLoad) / NO_LOAD_WINDOWS;
+            if (noLoad / windowLatencyNanos > 2.0) {
+                // Latency went down a lot (e.g. after a deployment downstream), do not wait for the average.
+                noLoad = windowLatencyNanos;
+            }
+        }
+        noLoadLatencyNanos = noLoad;
+
+        final double currentLimit = limit;
+        if (maxInFlight < currentLimit / 2) {
+            // The limit was not what held back the requests, so the latency says nothing about it.
+            return;
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1.0, tolerance * noLoad / windowLatencyNanos));
+        final double newLimit = currentLimit * gradient + Math.sqrt(currentLimit);
+        final double smoothed = currentLimit * (1.0 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, smoothed));
+    }
+
+    private void updateMaxInFlight(final int value)
+    {
+        for (int currentMax = windowMaxInFlight.get(); value > currentMax; currentMax = windowMaxInFlight.get()) {
+            if (windowMaxInFlight.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public int getLimit()
+    {
+        return (int) limit;
+    }
+
+    @Override
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public long getNoLoadLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMicros((long) noLoadLatencyNanos);
+    }
+
+    @Override
+    public long getLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMicros((long) latencyNanos);
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+/**
+ * What the {@link FairScheduler} considers to be a client.
+ */
+public enum ClientIdentity
+{
+    /** The remote address of the request, the forwarded one if the server trusts forwarding headers. */
+    REMOTE_ADDRESS,
+
+    /** The value of a request header, e.g. <tt>X-Ness-Server-Type</tt>. */
+    HEADER,
+
+    /** The name of the authenticated principal. */
+    PRINCIPAL;
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.TimeSpan;
+
+public abstract class FairQueueConfig
+{
+    /**
+     * Number of requests that may run at the same time before further requests wait in per-client queues,
+     * see {@link FairScheduler}. Should be somewhat lower than the number of worker threads. 0 runs requests
+     * in arrival order.
+     */
+    @Config("ness.httpserver.fair-queue.max-active")
+    @Default("0")
+    public int getMaxActive()
+    {
+        return 0;
+    }
+
+    @Config("ness.httpserver.fair-queue.identity")
+    @Default("REMOTE_ADDRESS")
+    public ClientIdentity getIdentity()
+    {
+        return ClientIdentity.REMOTE_ADDRESS;
+    }
+
+    /**
+     * Header that identifies the client if the identity is {@link ClientIdentity#HEADER}.
+     */
+    @Config("ness.httpserver.fair-queue.header")
+    @Default("X-Ness-Server-Type")
+    public String getHeader()
+    {
+        return "X-Ness-Server-Type";
+    }
+
+    /**
+     * Number of requests a single client may have waiting. Requests beyond that are answered with a 503.
+     */
+    @Config("ness.httpserver.fair-queue.max-queued-per-client")
+    @Default("50")
+    public int getMaxQueuedPerClient()
+    {
+        return 50;
+    }
+
+    /**
+     * Number of clients that are told apart. Idle clients are forgotten to make room for new ones, if all of
+     * them are busy, new clients share a single queue.
+     */
+    @Config("ness.httpserver.fair-queue.max-clients")
+    @Default("1000")
+    public int getMaxClients()
+    {
+        return 1000;
+    }
+
+    /**
+     * Server time a waiting client is granted per round.
+     */
+    @Config("ness.httpserver.fair-queue.quantum")
+    @Default("10ms")
+    public TimeSpan getQuantum()
+    {
+        return new TimeSpan(10, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Requests that did not get their turn in this time are answered with a 503.
+     */
+    @Config("ness.httpserver.fair-queue.queue-timeout")
+    @Default("30s")
+    public TimeSpan getQueueTimeout()
+    {
+        return new TimeSpan(30, TimeUnit.SECONDS);
+    }
+}
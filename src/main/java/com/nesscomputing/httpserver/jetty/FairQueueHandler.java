@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.server.AsyncContinuation;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Runs requests through a {@link FairScheduler}, keyed by the configured {@link ClientIdentity}. Requests without
+ * the header or principal are keyed by their remote address. Waiting requests are suspended and redispatched
+ * once it is their turn, requests of clients with a full queue and requests that waited for longer than the queue
+ * timeout are answered with a 503 and a <tt>Retry-After</tt> header.
+ */
+public class FairQueueHandler extends HandlerWrapper
+{
+    private static final String TICKET_ATTRIBUTE = FairQueueHandler.class.getName() + ".ticket";
+    private static final String ADMITTED_ATTRIBUTE = FairQueueHandler.class.getName() + ".admitted";
+
+    private final FairScheduler scheduler;
+    private final ClientIdentity identity;
+    private final String header;
+    private final Set<String> bypassConnectors;
+    private final long queueTimeoutMillis;
+    private final String retryAfterSeconds;
+
+    private final ContinuationListener onCompletion = new ContinuationListener() {
+        @Override
+        public void onComplete(final Continuation continuation)
+        {
+            release(((AsyncContinuation) continuation).getBaseRequest());
+        }
+
+        @Override
+        public void onTimeout(final Continuation continuation)
+        {
+        }
+    };
+
+    /**
+     * @param bypassConnectors Requests on these connectors, e.g. the ones with their own thread pool, are not scheduled.
+     */
+    public FairQueueHandler(final FairScheduler scheduler,
+                            final ClientIdentity identity,
+                            final String header,
+                            final Set<String> bypassConnectors,
+                            final long queueTimeoutMillis,
+                            final long retryAfterSeconds)
+    {
+        this.scheduler = scheduler;
+        this.identity = identity;
+        this.header = header;
+        this.bypassConnectors = ImmutableSet.copyOf(bypassConnectors);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.retryAfterSeconds = Long.toString(retryAfterSeconds);
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        if (baseRequest.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            // Resumed by the application, it still holds its place.
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        final Object queued = baseRequest.getAttribute(TICKET_ATTRIBUTE);
+        if (queued instanceof FairScheduler.Ticket) {
+            // Redispatched because it was our turn or because the wait timed out.
+            baseRequest.removeAttribute(TICKET_ATTRIBUTE);
+            if (scheduler.cancel((FairScheduler.Ticket) queued)) {
+                reject(baseRequest, response);
+            }
+            else {
+                handleAdmitted((FairScheduler.Ticket) queued, target, baseRequest, request, response);
+            }
+            return;
+        }
+
+        // New to this handler, which is not necessarily the initial dispatch of the request.
+        if (bypassConnectors.contains(PriorityClassifier.getConnectorName(baseRequest))) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        final FairScheduler.Ticket ticket = new FairScheduler.Ticket(getClientName(baseRequest), baseRequest.getAsyncContinuation(), queueTimeoutMillis);
+        baseRequest.setAttribute(TICKET_ATTRIBUTE, ticket);
+
+        switch (scheduler.offer(ticket)) {
+            case ADMITTED:
+                baseRequest.removeAttribute(TICKET_ATTRIBUTE);
+                handleAdmitted(ticket, target, baseRequest, request, response);
+                break;
+            case REJECTED:
+                baseRequest.removeAttribute(TICKET_ATTRIBUTE);
+                reject(baseRequest, response);
+                break;
+            default:
+                // Suspended, redispatched on its turn.
+                break;
+        }
+    }
+
+    private String getClientName(final Request baseRequest)
+    {
+        String clientName = null;
+        if (identity == ClientIdentity.HEADER) {
+            clientName = baseRequest.getHeader(header);
+        }
+        else if (identity == ClientIdentity.PRINCIPAL) {
+            final Principal principal = baseRequest.getUserPrincipal();
+            clientName = principal == null ? null : principal.getName();
+        }
+        return StringUtils.isBlank(clientName) ? StringUtils.defaultString(baseRequest.getRemoteAddr()) : clientName;
+    }
+
+    private void handleAdmitted(final FairScheduler.Ticket ticket, final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        final AsyncContinuation continuation = baseRequest.getAsyncContinuation();
+        baseRequest.setAttribute(ADMITTED_ATTRIBUTE, ticket);
+        try {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally {
+            if (continuation.isSuspended()) {
+                continuation.addContinuationListener(onCompletion);
+            }
+            else {
+                release(baseRequest);
+            }
+        }
+    }
+
+    private void release(final Request baseRequest)
+    {
+        final Object ticket = baseRequest.getAttribute(ADMITTED_ATTRIBUTE);
+        if (ticket instanceof FairScheduler.Ticket) {
+            baseRequest.removeAttribute(ADMITTED_ATTRIBUTE);
+            scheduler.release((FairScheduler.Ticket) ticket);
+        }
+    }
+
+    private void reject(final Request baseRequest, final HttpServletResponse response)
+    {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", retryAfterSeconds);
+        response.setContentLength(0);
+        baseRequest.setHandled(true);
+    }
+}
@@ -0,0 +1,375 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.continuation.Continuation;
+
+import com.google.common.base.Preconditions;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Lets a fixed number of requests run at the same time and shares the places fairly between clients. Further
+ * requests wait in a bounded queue per client, the queues are served by deficit round robin: on its turn, a
+ * waiting client is granted a quantum of server time and runs requests until it used that up. Every request is
+ * charged the client's average service time when it is let in, and the difference to the time it actually took
+ * is settled when it is done. A client with slow requests gets fewer of them run than a client with fast ones.
+ *
+ * At most a fixed number of clients is tracked. Idle clients are forgotten in least recently used order, if all
+ * of them are busy, new clients share a single queue.
+ */
+public class FairScheduler implements FairSchedulerMXBean
+{
+    private static final Log LOG = Log.findLog();
+
+    public static final String OTHER_CLIENT = "(other)";
+
+    private final int maxActive;
+    private final int maxQueuedPerClient;
+    private final int maxClients;
+    private final long quantumNanos;
+
+    private final Map<String, Client> clients = new LinkedHashMap<String, Client>(16, 0.75f, true);
+    private final Client otherClient;
+    private final ArrayDeque<Client> backlog = new ArrayDeque<Client>();
+    private int active = 0;
+    private int queued = 0;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public FairScheduler(final int maxActive, final int maxQueuedPerClient, final int maxClients, final long quantumNanos)
+    {
+        Preconditions.checkArgument(maxActive > 0, "maxActive must be positive");
+        Preconditions.checkArgument(maxQueuedPerClient > 0, "maxQueuedPerClient must be positive");
+        Preconditions.checkArgument(quantumNanos > 0, "quantum must be positive");
+        this.maxActive = maxActive;
+        this.maxQueuedPerClient = maxQueuedPerClient;
+        this.maxClients = maxClients;
+        this.quantumNanos = quantumNanos;
+        this.otherClient = new Client(OTHER_CLIENT, quantumNanos);
+    }
+
+    public enum Admission
+    {
+        /** The request may run now. */
+        ADMITTED,
+
+        /** The continuation was suspended, it is resumed once the request may run. */
+        QUEUED,
+
+        /** The client has too many requests waiting already. */
+        REJECTED;
+    }
+
+    /**
+     * Lets a request run right away if there is room and nobody is waiting, otherwise suspends its
+     * continuation and queues it.
+     */
+    public synchronized Admission offer(final Ticket ticket)
+    {
+        final Client client = getClient(ticket.clientName);
+        ticket.client = client;
+
+        if (active < maxActive && queued == 0) {
+            active++;
+            grant(ticket, System.nanoTime());
+            return Admission.ADMITTED;
+        }
+
+        if (client.tickets.size() >= maxQueuedPerClient) {
+            rejectedCount.incrementAndGet();
+            return Admission.REJECTED;
+        }
+
+        // Suspended while holding the lock, so that the ticket can not be resumed before.
+        ticket.suspend();
+
+        if (client.tickets.isEmpty()) {
+            if (client.running == 0) {
+                // Back after a quiet period, any debt was paid by waiting.
+                client.deficit = 0L;
+            }
+            backlog.addLast(client);
+        }
+        client.tickets.addLast(ticket);
+        queued++;
+        return Admission.QUEUED;
+    }
+
+    /**
+     * Gives up a running request's place, to the next waiting request if there is one. The client of the
+     * request is charged for the time it took.
+     */
+    public void release(final Ticket ticket)
+    {
+        final Ticket next;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final Client client = ticket.client;
+            final long serviceNanos = now - ticket.grantedNanos;
+            client.running--;
+            client.deficit += ticket.chargedNanos - serviceNanos;
+            client.serviceNanos += (serviceNanos - client.serviceNanos) / 8;
+            if (client.tickets.isEmpty()) {
+                // Unused credit is not carried over, debt is.
+                client.deficit = Math.min(client.deficit, 0L);
+            }
+
+            next = poll();
+            if (next == null) {
+                active--;
+                return;
+            }
+            grant(next, now);
+        }
+        next.resume();
+    }
+
+    /**
+     * Removes a request that gave up waiting.
+     *
+     * @return False if the request was let in meanwhile and holds a place now.
+     */
+    public synchronized boolean cancel(final Ticket ticket)
+    {
+        if (ticket.granted) {
+            return false;
+        }
+
+        final Client client = ticket.client;
+        if (client != null && client.tickets.remove(ticket)) {
+            queued--;
+            expiredCount.incrementAndGet();
+            if (client.tickets.isEmpty()) {
+                backlog.remove(client);
+                client.inTurn = false;
+            }
+        }
+        return true;
+    }
+
+    private void grant(final Ticket ticket, final long now)
+    {
+        final Client client = ticket.client;
+        ticket.granted = true;
+        ticket.grantedNanos = now;
+        ticket.chargedNanos = client.serviceNanos;
+        client.deficit -= ticket.chargedNanos;
+        client.running++;
+    }
+
+    private Ticket poll()
+    {
+        if (backlog.isEmpty()) {
+            return null;
+        }
+
+        // Skip the rounds in which every waiting client would only pay off its debt.
+        long maxDeficit = Long.MIN_VALUE;
+        for (Client client : backlog) {
+            maxDeficit = Math.max(maxDeficit, client.deficit);
+        }
+        if (maxDeficit <= 0L) {
+            final long credit = (-maxDeficit / quantumNanos) * quantumNanos;
+            for (Client client : backlog) {
+                client.deficit += credit;
+            }
+        }
+
+        while (true) {
+            final Client client = backlog.peekFirst();
+            if (!client.inTurn) {
+                client.inTurn = true;
+                client.deficit += quantumNanos;
+            }
+
+            if (client.deficit > 0L) {
+                final Ticket ticket = client.tickets.pollFirst();
+                queued--;
+                if (client.tickets.isEmpty()) {
+                    backlog.pollFirst();
+                    client.inTurn = false;
+                }
+                else if (client.deficit <= client.serviceNanos) {
+                    // This request uses up the turn, the next one goes to the next client.
+                    backlog.addLast(backlog.pollFirst());
+                    client.inTurn = false;
+                }
+                return ticket;
+            }
+
+            backlog.addLast(backlog.pollFirst());
+            client.inTurn = false;
+        }
+    }
+
+    private Client getClient(final String clientName)
+    {
+        Client client = clients.get(clientName);
+        if (client != null) {
+            return client;
+        }
+
+        if (clients.size() >= maxClients && !evictIdleClient()) {
+            return otherClient;
+        }
+
+        // Until the first request is done, every request is assumed to take a quantum.
+        client = new Client(clientName, quantumNanos);
+        clients.put(clientName, client);
+        return client;
+    }
+
+    private boolean evictIdleClient()
+    {
+        for (final Iterator<Client> it = clients.values().iterator(); it.hasNext(); ) {
+            final Client client = it.next();
+            if (client.running == 0 && client.tickets.isEmpty()) {
+                it.remove();
+                evictedCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getMaxActive()
+    {
+        return maxActive;
+    }
+
+    @Override
+    public synchronized int getActive()
+    {
+        return active;
+    }
+
+    @Override
+    public synchronized int getQueued()
+    {
+        return queued;
+    }
+
+    @Override
+    public synchronized int getClientCount()
+    {
+        return clients.size();
+    }
+
+    @Override
+    public synchronized int getBackloggedClientCount()
+    {
+        return backlog.size();
+    }
+
+    @Override
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public long getExpiredCount()
+    {
+        return expiredCount.get();
+    }
+
+    @Override
+    public long getEvictedCount()
+    {
+        return evictedCount.get();
+    }
+
+    private static class Client
+    {
+        private final String name;
+        private final ArrayDeque<Ticket> tickets = new ArrayDeque<Ticket>();
+        private int running = 0;
+        private long deficit = 0L;
+        private boolean inTurn = false;
+
+        /** Moving average of the time the requests of the client take. */
+        private long serviceNanos;
+
+        Client(final String name, final long serviceNanos)
+        {
+            this.name = name;
+            this.serviceNanos = serviceNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * A request of a client, from the time it asks to run until it is done.
+     */
+    public static class Ticket
+    {
+        private final String clientName;
+        private final Continuation continuation;
+        private final long timeoutMillis;
+
+        // Guarded by the scheduler.
+        private Client client = null;
+        private boolean granted = false;
+        private long grantedNanos = 0L;
+        private long chargedNanos = 0L;
+
+        /**
+         * @param timeoutMillis How long the request may wait for its turn.
+         */
+        public Ticket(final String clientName, final Continuation continuation, final long timeoutMillis)
+        {
+            this.clientName = clientName;
+            this.continuation = continuation;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public String getClientName()
+        {
+            return clientName;
+        }
+
+        private void suspend()
+        {
+            continuation.setTimeout(timeoutMillis);
+            continuation.suspend();
+        }
+
+        private void resume()
+        {
+            try {
+                continuation.resume();
+            }
+            catch (IllegalStateException ise) {
+                // Expired at the same time, the request finds out that it was let in when it is redispatched.
+                LOG.trace("Could not resume %s: %s", continuation, ise.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.AbstractHttpConnection;
+import org.eclipse.jetty.server.Request;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Assigns requests to a {@link RequestPriority}. A trusted priority header wins over the path, the path wins
+ * over the connector. Everything else is {@link RequestPriority#NORMAL}.
+ */
+public class PriorityClassifier
+{
+    public static final String PRIORITY_HEADER = "X-Ness-Priority";
+
+    private final Set<String> highRoutes;
+    private final Set<String> lowRoutes;
+    private final Set<String> highConnectors;
+    private final Set<String> lowConnectors;
+    private final Set<String> headerConnectors;
+
+    public PriorityClassifier(final Set<String> highRoutes,
+                              final Set<String> lowRoutes,
+                              final Set<String> highConnectors,
+                              final Set<String> lowConnectors,
+                              final Set<String> headerConnectors)
+    {
+        this.highRoutes = clean(highRoutes);
+        this.lowRoutes = clean(lowRoutes);
+        this.highConnectors = clean(highConnectors);
+        this.lowConnectors = clean(lowConnectors);
+        this.headerConnectors = clean(headerConnectors);
+    }
+
+    /**
+     * Drops blank entries, an empty prefix would match every path.
+     */
+    private static Set<String> clean(final Set<String> values)
+    {
+        final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        for (String value : values) {
+            if (!StringUtils.isBlank(value)) {
+                builder.add(value.trim());
+            }
+        }
+        return builder.build();
+    }
+
+    public RequestPriority classify(final Request request)
+    {
+        return classify(getConnectorName(request), request.getRequestURI(), request.getHeader(PRIORITY_HEADER));
+    }
+
+    RequestPriority classify(@Nullable final String connectorName, @Nullable final String path, @Nullable final String header)
+    {
+        if (header != null && connectorName != null && headerConnectors.contains(connectorName)) {
+            for (RequestPriority priority : RequestPriority.values()) {
+                if (priority.name().equalsIgnoreCase(header.trim())) {
+                    return priority;
+                }
+            }
+        }
+
+        if (startsWithAny(path, highRoutes)) {
+            return RequestPriority.HIGH;
+        }
+        if (startsWithAny(path, lowRoutes)) {
+            return RequestPriority.LOW;
+        }
+
+        if (connectorName != null) {
+            if (highConnectors.contains(connectorName)) {
+                return RequestPriority.HIGH;
+            }
+            if (lowConnectors.contains(connectorName)) {
+                return RequestPriority.LOW;
+            }
+        }
+        return RequestPriority.NORMAL;
+    }
+
+    @Nullable
+    static String getConnectorName(final Request request)
+    {
+        final AbstractHttpConnection connection = request.getConnection();
+        return (connection == null || connection.getConnector() == null) ? null : connection.getConnector().getName();
+    }
+
+    private static boolean startsWithAny(@Nullable final String path, final Set<String> prefixes)
+    {
+        if (path != null) {
+            for (String prefix : prefixes) {
+                if (path.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
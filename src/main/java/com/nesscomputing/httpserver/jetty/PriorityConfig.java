@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.TimeSpan;
+
+public abstract class PriorityConfig
+{
+    /**
+     * Number of requests that may run at the same time before further requests wait for their turn by
+     * priority, see {@link PriorityScheduler}. Should be somewhat lower than the number of worker threads,
+     * which also run the acceptors and selectors. 0 runs requests in arrival order.
+     */
+    @Config("ness.httpserver.priority.max-active")
+    @Default("0")
+    public int getMaxActive()
+    {
+        return 0;
+    }
+
+    /**
+     * Requests to paths starting with any of these prefixes are high priority.
+     */
+    @Config("ness.httpserver.priority.high-routes")
+    @Default("")
+    public Set<String> getHighRoutes()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Requests to paths starting with any of these prefixes (e.g. batch and backfill endpoints) are low priority.
+     */
+    @Config("ness.httpserver.priority.low-routes")
+    @Default("")
+    public Set<String> getLowRoutes()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Requests on these connectors (e.g. internal-http) are high priority unless their path says otherwise.
+     */
+    @Config("ness.httpserver.priority.high-connectors")
+    @Default("")
+    public Set<String> getHighConnectors()
+    {
+        return Collections.emptySet();
+    }
+
+    @Config("ness.httpserver.priority.low-connectors")
+    @Default("")
+    public Set<String> getLowConnectors()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Requests on these connectors may choose their priority with the {@link PriorityClassifier#PRIORITY_HEADER}
+     * header. Only list connectors that untrusted clients can not reach.
+     */
+    @Config("ness.httpserver.priority.header-connectors")
+    @Default("")
+    public Set<String> getHeaderConnectors()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Once a request waited this long, it goes ahead of younger requests with a higher priority.
+     */
+    @Config("ness.httpserver.priority.max-wait")
+    @Default("1s")
+    public TimeSpan getMaxWait()
+    {
+        return new TimeSpan(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Requests that did not get their turn in this time are answered with a 503.
+     */
+    @Config("ness.httpserver.priority.queue-timeout")
+    @Default("30s")
+    public TimeSpan getQueueTimeout()
+    {
+        return new TimeSpan(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.server.AsyncContinuation;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Runs requests through a {@link PriorityScheduler}. Requests that have to wait are suspended, so they do not
+ * hold on to a worker thread, and are redispatched once it is their turn. Requests that waited for longer than
+ * the queue timeout are answered with a 503 and a <tt>Retry-After</tt> header.
+ *
+ * Jetty hands connections to the worker pool before their request is parsed, so requests are classified here,
+ * right after parsing, instead of in the pool queue.
+ */
+public class PriorityHandler extends HandlerWrapper
+{
+    private static final String WAITER_ATTRIBUTE = PriorityHandler.class.getName() + ".waiter";
+    private static final String ADMITTED_ATTRIBUTE = PriorityHandler.class.getName() + ".admitted";
+
+    private final PriorityScheduler scheduler;
+    private final PriorityClassifier classifier;
+    private final Set<String> bypassConnectors;
+    private final long queueTimeoutMillis;
+    private final String retryAfterSeconds;
+
+    private final ContinuationListener onCompletion = new ContinuationListener() {
+        @Override
+        public void onComplete(final Continuation continuation)
+        {
+            release(((AsyncContinuation) continuation).getBaseRequest());
+        }
+
+        @Override
+        public void onTimeout(final Continuation continuation)
+        {
+        }
+    };
+
+    /**
+     * @param bypassConnectors Requests on these connectors, e.g. the ones with their own thread pool, are not scheduled.
+     */
+    public PriorityHandler(final PriorityScheduler scheduler,
+                           final PriorityClassifier classifier,
+                           final Set<String> bypassConnectors,
+                           final long queueTimeoutMillis,
+                           final long retryAfterSeconds)
+    {
+        this.scheduler = scheduler;
+        this.classifier = classifier;
+        this.bypassConnectors = ImmutableSet.copyOf(bypassConnectors);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.retryAfterSeconds = Long.toString(retryAfterSeconds);
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        if (baseRequest.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            // Resumed by the application, it still holds its place.
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        final Object queued = baseRequest.getAttribute(WAITER_ATTRIBUTE);
+        if (queued instanceof PriorityScheduler.Waiter) {
+            // Redispatched because it was our turn or because the wait timed out.
+            baseRequest.removeAttribute(WAITER_ATTRIBUTE);
+            if (scheduler.cancel((PriorityScheduler.Waiter) queued)) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.setHeader("Retry-After", retryAfterSeconds);
+                response.setContentLength(0);
+                baseRequest.setHandled(true);
+            }
+            else {
+                handleAdmitted(target, baseRequest, request, response);
+            }
+            return;
+        }
+
+        // New to this handler. That is not the same as an initial dispatch, a handler further out may have
+        // suspended and resumed the request before.
+        final AsyncContinuation continuation = baseRequest.getAsyncContinuation();
+        if (bypassConnectors.contains(PriorityClassifier.getConnectorName(baseRequest))) {
+            super.handle(target, baseRequest, request, response);
+        }
+        else if (scheduler.tryAcquire()) {
+            handleAdmitted(target, baseRequest, request, response);
+        }
+        else {
+            final PriorityScheduler.Waiter waiter = new PriorityScheduler.Waiter(classifier.classify(baseRequest), continuation);
+            baseRequest.setAttribute(WAITER_ATTRIBUTE, waiter);
+            continuation.setTimeout(queueTimeoutMillis);
+            continuation.suspend();
+            scheduler.enqueue(waiter);
+        }
+    }
+
+    private void handleAdmitted(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        final AsyncContinuation continuation = baseRequest.getAsyncContinuation();
+        baseRequest.setAttribute(ADMITTED_ATTRIBUTE, Boolean.TRUE);
+        try {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally {
+            if (continuation.isSuspended()) {
+                continuation.addContinuationListener(onCompletion);
+            }
+            else {
+                release(baseRequest);
+            }
+        }
+    }
+
+    private void release(final Request baseRequest)
+    {
+        if (baseRequest.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            baseRequest.removeAttribute(ADMITTED_ATTRIBUTE);
+            scheduler.release();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.continuation.Continuation;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Lets a fixed number of requests run at the same time. Further requests wait in one queue per
+ * {@link RequestPriority} and are let in by priority, in arrival order within a priority. A request that waited
+ * longer than the maximum wait goes ahead of younger requests with a higher priority, so that low priority work
+ * still makes progress while the server is saturated.
+ */
+public class PriorityScheduler implements PrioritySchedulerMXBean
+{
+    private static final Log LOG = Log.findLog();
+
+    private final int maxActive;
+    private final long maxWaitNanos;
+
+    private final List<ArrayDeque<Waiter>> queues;
+    private int active = 0;
+    private int queued = 0;
+
+    private final AtomicLong promotedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    public PriorityScheduler(final int maxActive, final long maxWaitNanos)
+    {
+        Preconditions.checkArgument(maxActive > 0, "maxActive must be positive");
+        this.maxActive = maxActive;
+        this.maxWaitNanos = maxWaitNanos;
+
+        final ImmutableList.Builder<ArrayDeque<Waiter>> builder = ImmutableList.builder();
+        for (int i = 0; i < RequestPriority.values().length; i++) {
+            builder.add(new ArrayDeque<Waiter>());
+        }
+        this.queues = builder.build();
+    }
+
+    /**
+     * Lets a request run right away if there is room and nobody is waiting.
+     */
+    public synchronized boolean tryAcquire()
+    {
+        if (active < maxActive && queued == 0) {
+            active++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Queues a request whose continuation was suspended. It is resumed once it may run.
+     */
+    public void enqueue(final Waiter waiter)
+    {
+        synchronized (this) {
+            if (!tryAcquire()) {
+                queues.get(waiter.priority.ordinal()).addLast(waiter);
+                queued++;
+                return;
+            }
+            // Room opened up since the request was turned away.
+            waiter.granted = true;
+        }
+        waiter.resume();
+    }
+
+    /**
+     * Gives up a running request's place, to the next waiting request if there is one.
+     */
+    public void release()
+    {
+        final Waiter next;
+        synchronized (this) {
+            next = poll(System.nanoTime());
+            if (next == null) {
+                active--;
+                return;
+            }
+            next.granted = true;
+        }
+        next.resume();
+    }
+
+    /**
+     * Removes a request that gave up waiting.
+     *
+     * @return False if the request was let in meanwhile and holds a place now.
+     */
+    public synchronized boolean cancel(final Waiter waiter)
+    {
+        if (waiter.granted) {
+            return false;
+        }
+        if (queues.get(waiter.priority.ordinal()).remove(waiter)) {
+            queued--;
+            expiredCount.incrementAndGet();
+        }
+        return true;
+    }
+
+    private Waiter poll(final long now)
+    {
+        ArrayDeque<Waiter> first = null;
+        ArrayDeque<Waiter> next = null;
+        for (ArrayDeque<Waiter> queue : queues) {
+            final Waiter head = queue.peekFirst();
+            if (head == null) {
+                continue;
+            }
+            if (first == null) {
+                first = queue;
+                next = queue;
+            }
+            else if (now - head.queuedNanos >= maxWaitNanos && head.queuedNanos < next.peekFirst().queuedNanos) {
+                // Waited too long behind higher priority requests.
+                next = queue;
+            }
+        }
+
+        if (next == null) {
+            return null;
+        }
+        if (next != first) {
+            promotedCount.incrementAndGet();
+        }
+        queued--;
+        return next.pollFirst();
+    }
+
+    @Override
+    public int getMaxActive()
+    {
+        return maxActive;
+    }
+
+    @Override
+    public synchronized int getActive()
+    {
+        return active;
+    }
+
+    @Override
+    public synchronized int getQueued()
+    {
+        return queued;
+    }
+
+    @Override
+    public long getPromotedCount()
+    {
+        return promotedCount.get();
+    }
+
+    @Override
+    public long getExpiredCount()
+    {
+        return expiredCount.get();
+    }
+
+    /**
+     * A suspended request waiting for its turn.
+     */
+    public static class Waiter
+    {
+        private final RequestPriority priority;
+        private final Continuation continuation;
+        private final long queuedNanos = System.nanoTime();
+
+        // Guarded by the scheduler.
+        private boolean granted = false;
+
+        public Waiter(final RequestPriority priority, final Continuation continuation)
+        {
+            this.priority = priority;
+            this.continuation = continuation;
+        }
+
+        public RequestPriority getPriority()
+        {
+            return priority;
+        }
+
+        private void resume()
+        {
+            try {
+                continuation.resume();
+            }
+            catch (IllegalStateException ise) {
+                // Expired at the same time, the request finds out that it was let in when it is redispatched.
+                LOG.trace("Could not resume %s: %s", continuation, ise.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.nesscomputing.httpserver.stats.LatencyHistogram;
+
+/**
+ * Job queue for the {@link TimedQueuedThreadPool} that sheds load instead of letting the wait for a thread
+ * grow without bounds. Shed jobs still run, but the {@link LoadSheddingHandler} answers their request with a
+ * 503 without calling the application.
+ *
+ * <ul>
+ * <li>When <tt>maxQueued</tt> jobs are waiting, any further job is shed. It is put where the threads take their
+ * next job from, so the client gets its answer right away.</li>
+ * <li>The queue is overloaded when it has not been empty for an <tt>interval</tt>. A job that waited longer than
+ * the interval, or longer than <tt>target</tt> while the queue is overloaded, is shed when it is taken
+ * (this is the CoDel variant described in "Fail at Scale", ACM Queue 13/8).</li>
+ * <li>While the queue is overloaded, threads take the newest job first, so that the jobs that are still likely
+ * to be useful are served before the ones whose clients may have given up already.</li>
+ * </ul>
+ */
+public class RequestQueue extends LinkedBlockingDeque<Runnable> implements RequestQueueMXBean
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int maxQueued;
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    private final transient LatencyHistogram queueWait = new LatencyHistogram();
+    private final AtomicLong shedCount = new AtomicLong();
+
+    private volatile long lastEmptyNanos = System.nanoTime();
+
+    /**
+     * @param maxQueued Number of jobs that may wait for a thread, 0 for no limit.
+     * @param targetNanos Longest time a job should wait while the queue is overloaded, 0 to never shed on wait time.
+     * @param intervalNanos Time after which a queue that has not been empty is overloaded.
+     */
+    public RequestQueue(final int maxQueued, final long targetNanos, final long intervalNanos)
+    {
+        Preconditions.checkArgument(maxQueued >= 0, "max queued must not be negative, was %s", maxQueued);
+        Preconditions.checkArgument(targetNanos >= 0, "target must not be negative, was %s", targetNanos);
+        Preconditions.checkArgument(intervalNanos > 0, "interval must be positive, was %s", intervalNanos);
+
+        this.maxQueued = maxQueued;
+        this.targetNanos = targetNanos;
+        this.intervalNanos = intervalNanos;
+    }
+
+    @Override
+    public boolean offer(final Runnable job)
+    {
+        if (isEmpty()) {
+            lastEmptyNanos = System.nanoTime();
+        }
+
+        if (maxQueued > 0 && size() >= maxQueued && job instanceof TimedQueuedThreadPool.TimedJob) {
+            ((TimedQueuedThreadPool.TimedJob) job).shed();
+            shedCount.incrementAndGet();
+            return isLifo() ? offerLast(job) : offerFirst(job);
+        }
+        return offerLast(job);
+    }
+
+    @Override
+    public Runnable poll()
+    {
+        return taken(isLifo() ? pollLast() : pollFirst());
+    }
+
+    @Override
+    public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException
+    {
+        return taken(isLifo() ? pollLast(timeout, unit) : pollFirst(timeout, unit));
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException
+    {
+        return taken(isLifo() ? takeLast() : takeFirst());
+    }
+
+    private Runnable taken(final Runnable job)
+    {
+        final long now = System.nanoTime();
+        if (job == null || isEmpty()) {
+            lastEmptyNanos = now;
+        }
+
+        if (job instanceof TimedQueuedThreadPool.TimedJob) {
+            final TimedQueuedThreadPool.TimedJob timedJob = (TimedQueuedThreadPool.TimedJob) job;
+            final long waitNanos = now - timedJob.getDispatchNanos();
+            queueWait.record(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+
+            if (targetNanos > 0L && !timedJob.isShed() && waitNanos > (isOverloaded(now) ? targetNanos : intervalNanos)) {
+                timedJob.shed();
+                shedCount.incrementAndGet();
+            }
+        }
+        return job;
+    }
+
+    private boolean isLifo()
+    {
+        return targetNanos > 0L && isOverloaded(System.nanoTime());
+    }
+
+    private boolean isOverloaded(final long now)
+    {
+        return now - lastEmptyNanos > intervalNanos;
+    }
+
+    @Override
+    public int getQueued()
+    {
+        return size();
+    }
+
+    @Override
+    public int getMaxQueued()
+    {
+        return maxQueued;
+    }
+
+    @Override
+    public boolean isOverloaded()
+    {
+        return !isEmpty() && isOverloaded(System.nanoTime());
+    }
+
+    @Override
+    public long getShedCount()
+    {
+        return shedCount.get();
+    }
+
+    @Override
+    public long getQueueWaitCount()
+    {
+        return queueWait.getCount();
+    }
+
+    @Override
+    public double getQueueWaitMean()
+    {
+        return queueWait.getMean();
+    }
+
+    @Override
+    public long getQueueWaitMax()
+    {
+        return queueWait.getMax();
+    }
+
+    @Override
+    public long getQueueWaitPercentile50()
+    {
+        return queueWait.getPercentile(50.0);
+    }
+
+    @Override
+    public long getQueueWaitPercentile90()
+    {
+        return queueWait.getPercentile(90.0);
+    }
+
+    @Override
+    public long getQueueWaitPercentile99()
+    {
+        return queueWait.getPercentile(99.0);
+    }
+}
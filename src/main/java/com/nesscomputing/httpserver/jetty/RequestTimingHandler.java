@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import com.nesscomputing.httpserver.log.RequestTiming;
+
+/**
+ * Outermost handler of the server. Attaches a {@link RequestTiming} to each request and marks when the request
+ * started and completed. The servlet context is wrapped with a {@link ServletContextTimingHandler}, which adds the
+ * context and first byte marks.
+ */
+public class RequestTimingHandler extends HandlerWrapper
+{
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        RequestTiming timing = RequestTiming.get(baseRequest);
+        if (timing == null) {
+            // First dispatch of this request, resumed async requests keep their timing.
+            timing = new RequestTiming(TimedQueuedThreadPool.takeDispatchNanos(), System.nanoTime());
+            baseRequest.setAttribute(RequestTiming.ATTRIBUTE, timing);
+        }
+
+        try {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally {
+            timing.markComplete();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import com.nesscomputing.httpserver.log.RouteNormalizer;
+
+/**
+ * Attaches the route of each request as the {@link RouteNormalizer#ATTRIBUTE} attribute before handing it on.
+ */
+public class RouteNormalizingHandler extends HandlerWrapper
+{
+    private final RouteNormalizer routeNormalizer;
+
+    public RouteNormalizingHandler(final RouteNormalizer routeNormalizer)
+    {
+        this.routeNormalizer = routeNormalizer;
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        // Resumed async requests keep their route.
+        if (RouteNormalizer.get(baseRequest) == null) {
+            routeNormalizer.apply(baseRequest);
+        }
+        super.handle(target, baseRequest, request, response);
+    }
+}
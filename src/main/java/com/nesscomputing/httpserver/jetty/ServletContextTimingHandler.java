@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import com.nesscomputing.httpserver.log.RequestTiming;
+
+/**
+ * Wraps the servlet context to mark when a request enters and leaves it and when the application first writes
+ * to the response. Only the servlet context sees the wrapped response, the request logs get the original one.
+ */
+public class ServletContextTimingHandler extends HandlerWrapper
+{
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        final RequestTiming timing = RequestTiming.get(baseRequest);
+        if (timing == null) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        timing.markContextEnter();
+        try {
+            super.handle(target, baseRequest, request, new TimingResponse(response, timing));
+        }
+        finally {
+            timing.markContextExit();
+        }
+    }
+
+    private static class TimingResponse extends HttpServletResponseWrapper
+    {
+        private final RequestTiming timing;
+
+        private ServletOutputStream outputStream = null;
+        private PrintWriter writer = null;
+
+        TimingResponse(final HttpServletResponse response, final RequestTiming timing)
+        {
+            super(response);
+            this.timing = timing;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException
+        {
+            if (outputStream == null) {
+                outputStream = new TimingOutputStream(super.getOutputStream(), timing);
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException
+        {
+            if (writer == null) {
+                writer = new TimingWriter(super.getWriter(), timing);
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException
+        {
+            timing.markFirstByte();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg) throws IOException
+        {
+            timing.markFirstByte();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(final int sc) throws IOException
+        {
+            timing.markFirstByte();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(final String location) throws IOException
+        {
+            timing.markFirstByte();
+            super.sendRedirect(location);
+        }
+    }
+
+    /**
+     * Passes every write and print on to the wrapped stream, so that the container's own implementations (e.g. its
+     * character encoding in print) stay in effect.
+     */
+    private static class TimingOutputStream extends ServletOutputStream
+    {
+        private final ServletOutputStream delegate;
+        private final RequestTiming timing;
+
+        TimingOutputStream(final ServletOutputStream delegate, final RequestTiming timing)
+        {
+            this.delegate = delegate;
+            this.timing = timing;
+        }
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(final byte [] b, final int off, final int len) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void write(final byte [] b) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.write(b);
+        }
+
+        @Override
+        public void print(final String s) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.print(s);
+        }
+
+        @Override
+        public void print(final boolean b) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.print(b);
+        }
+
+        @Override
+        public void print(final char c) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.print(c);
+        }
+
+        @Override
+        public void print(final int i) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.print(i);
+        }
+
+        @Override
+        public void print(final long l) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.print(l);
+        }
+
+        @Override
+        public void print(final float f) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.print(f);
+        }
+
+        @Override
+        public void print(final double d) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.print(d);
+        }
+
+        @Override
+        public void println() throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println();
+        }
+
+        @Override
+        public void println(final String s) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println(s);
+        }
+
+        @Override
+        public void println(final boolean b) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println(b);
+        }
+
+        @Override
+        public void println(final char c) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println(c);
+        }
+
+        @Override
+        public void println(final int i) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println(i);
+        }
+
+        @Override
+        public void println(final long l) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println(l);
+        }
+
+        @Override
+        public void println(final float f) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println(f);
+        }
+
+        @Override
+        public void println(final double d) throws IOException
+        {
+            timing.markFirstByte();
+            delegate.println(d);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            delegate.close();
+        }
+    }
+
+    private static class TimingWriter extends PrintWriter
+    {
+        private final RequestTiming timing;
+
+        TimingWriter(final PrintWriter delegate, final RequestTiming timing)
+        {
+            super(delegate);
+            this.timing = timing;
+        }
+
+        @Override
+        public void write(final int c)
+        {
+            timing.markFirstByte();
+            super.write(c);
+        }
+
+        @Override
+        public void write(final char [] buf, final int off, final int len)
+        {
+            timing.markFirstByte();
+            super.write(buf, off, len);
+        }
+
+        @Override
+        public void write(final String s, final int off, final int len)
+        {
+            timing.markFirstByte();
+            super.write(s, off, len);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Thread pool that remembers when each job was dispatched, so that the request timing handler can tell how long
+ * a request waited for a thread. Jobs that a {@link RequestQueue} decided to shed are marked for the
+ * {@link LoadSheddingHandler}.
+ */
+public class TimedQueuedThreadPool extends QueuedThreadPool
+{
+    private static final ThreadLocal<JobState> JOB_STATE = new ThreadLocal<JobState>() {
+        @Override
+        protected JobState initialValue()
+        {
+            return new JobState();
+        }
+    };
+
+    public TimedQueuedThreadPool(final int maxThreads)
+    {
+        super(maxThreads);
+    }
+
+    /**
+     * @param jobQueue Queue for the jobs waiting for a thread, usually a {@link RequestQueue}.
+     */
+    public TimedQueuedThreadPool(final int maxThreads, final BlockingQueue<Runnable> jobQueue)
+    {
+        super(jobQueue);
+        setMaxThreads(maxThreads);
+    }
+
+    @Override
+    public boolean dispatch(final Runnable job)
+    {
+        return super.dispatch(new TimedJob(job, System.nanoTime()));
+    }
+
+    /**
+     * Returns when the job running on the current thread was dispatched and clears the value, so that further
+     * requests handled by the same job (e.g. on a keep-alive connection) do not report the same wait again.
+     *
+     * @return The dispatch time in {@link System#nanoTime()} units or 0 if unknown.
+     */
+    public static long takeDispatchNanos()
+    {
+        final JobState jobState = JOB_STATE.get();
+        final long result = jobState.dispatchNanos;
+        jobState.dispatchNanos = 0L;
+        return result;
+    }
+
+    /**
+     * Returns whether the job running on the current thread was shed and clears the mark, so that only the
+     * first request handled by the job is rejected.
+     */
+    public static boolean takeShed()
+    {
+        final JobState jobState = JOB_STATE.get();
+        final boolean result = jobState.shed;
+        jobState.shed = false;
+        return result;
+    }
+
+    private static class JobState
+    {
+        private long dispatchNanos = 0L;
+        private boolean shed = false;
+    }
+
+    static class TimedJob implements Runnable
+    {
+        private final Runnable job;
+        private final long dispatchNanos;
+
+        private volatile boolean shed = false;
+
+        TimedJob(final Runnable job, final long dispatchNanos)
+        {
+            this.job = job;
+            this.dispatchNanos = dispatchNanos;
+        }
+
+        long getDispatchNanos()
+        {
+            return dispatchNanos;
+        }
+
+        void shed()
+        {
+            shed = true;
+        }
+
+        boolean isShed()
+        {
+            return shed;
+        }
+
+        @Override
+        public void run()
+        {
+            final JobState jobState = JOB_STATE.get();
+            jobState.dispatchNanos = dispatchNanos;
+            jobState.shed = shed;
+            try {
+                job.run();
+            }
+            finally {
+                jobState.dispatchNanos = 0L;
+                jobState.shed = false;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return job.toString();
+        }
+    }
+}
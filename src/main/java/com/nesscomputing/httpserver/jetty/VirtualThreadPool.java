@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.io.nio.SelectChannelEndPoint;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import com.google.common.base.Preconditions;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Thread pool that runs every request on a new virtual thread. The JVM support is looked up at runtime, see
+ * {@link #isSupported()}. This needs Java 24 or later: Jetty's blocking end point I/O waits inside
+ * <tt>synchronized</tt>, which pins the carrier thread on earlier JVMs, so a few slow clients could
+ * block every carrier and stall the server.
+ *
+ * Only the jobs of connection end points (which read and handle requests) run on virtual threads. Everything
+ * else, most importantly the long running acceptor and selector jobs, runs on a small pool of platform threads.
+ *
+ * At most <tt>maxConcurrency</tt> requests run at the same time, further requests wait for one of them to
+ * finish. When <tt>maxQueued</tt> requests are waiting, further requests are shed (see {@link LoadSheddingHandler})
+ * and run right away.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, Executor, VirtualThreadPoolMXBean
+{
+    private static final Log LOG = Log.findLog();
+
+    /** First JVM on which a virtual thread that blocks in <tt>synchronized</tt> releases its carrier. */
+    private static final int MIN_JAVA_VERSION = 24;
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+    private final QueuedThreadPool platformPool;
+    private final int maxConcurrency;
+    private final int maxQueued;
+
+    private final Semaphore permits;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong shedCount = new AtomicLong();
+
+    private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    private final Set<Class<?>> platformJobClasses = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+    private volatile int maxStopTimeMs = 100;
+
+    /**
+     * @param platformPool Runs all jobs that are not requests.
+     * @param maxConcurrency Number of requests that may run at the same time.
+     * @param maxQueued Number of requests that may wait for others to finish, 0 for no limit.
+     */
+    public VirtualThreadPool(final QueuedThreadPool platformPool, final int maxConcurrency, final int maxQueued)
+    {
+        Preconditions.checkState(isSupported(), "Virtual threads are not supported by this JVM");
+        Preconditions.checkArgument(maxConcurrency > 0, "max concurrency must be positive, was %s", maxConcurrency);
+        Preconditions.checkArgument(maxQueued >= 0, "max queued must not be negative, was %s", maxQueued);
+
+        this.platformPool = platformPool;
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueued = maxQueued;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Returns true if the JVM can create virtual threads that do not pin their carrier while Jetty blocks
+     * (Java 24 or later).
+     */
+    public static boolean isSupported()
+    {
+        return VIRTUAL_THREAD_FACTORY != null && getJavaVersion() >= MIN_JAVA_VERSION;
+    }
+
+    /**
+     * Time to wait for running requests when the pool is stopped, see {@link QueuedThreadPool#setMaxStopTimeMs(int)}.
+     */
+    public void setMaxStopTimeMs(final int maxStopTimeMs)
+    {
+        this.maxStopTimeMs = maxStopTimeMs;
+    }
+
+    public int getMaxStopTimeMs()
+    {
+        return maxStopTimeMs;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        platformPool.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+
+        final int dropped = pendingCount.getAndSet(0);
+        pending.clear();
+        if (dropped > 0) {
+            LOG.warn("Dropped %d requests that waited to run", dropped);
+        }
+
+        // Like the queued thread pool, give the requests half of the time to finish, then interrupt them.
+        final long start = System.currentTimeMillis();
+        while (activeCount.get() > 0 && System.currentTimeMillis() - start < maxStopTimeMs / 2) {
+            Thread.sleep(1L);
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        while (activeCount.get() > 0 && System.currentTimeMillis() - start < maxStopTimeMs) {
+            Thread.sleep(1L);
+        }
+        if (activeCount.get() > 0) {
+            LOG.warn("%d requests did not finish within %d ms", activeCount.get(), maxStopTimeMs);
+        }
+
+        platformPool.stop();
+    }
+
+    @Override
+    public void execute(final Runnable job)
+    {
+        if (!dispatch(job)) {
+            throw new IllegalStateException("Could not dispatch " + job);
+        }
+    }
+
+    @Override
+    public boolean dispatch(final Runnable job)
+    {
+        if (!isRunning()) {
+            return false;
+        }
+        if (!isRequestJob(job)) {
+            if (platformJobClasses.add(job.getClass())) {
+                LOG.info("Running %s jobs on platform threads", job.getClass().getName());
+            }
+            return platformPool.dispatch(job);
+        }
+
+        final TimedQueuedThreadPool.TimedJob timedJob = new TimedQueuedThreadPool.TimedJob(job, System.nanoTime());
+        if (permits.tryAcquire()) {
+            return start(timedJob, true);
+        }
+
+        if (maxQueued > 0 && pendingCount.get() >= maxQueued) {
+            // Shed requests are cheap to answer, so they do not need to wait for a permit.
+            timedJob.shed();
+            shedCount.incrementAndGet();
+            return start(timedJob, false);
+        }
+
+        pending.offer(timedJob);
+        pendingCount.incrementAndGet();
+
+        // All running requests may have finished between trying to get a permit and queueing the job.
+        startPending();
+        return true;
+    }
+
+    /**
+     * Returns true for the jobs that read and handle requests. These are declared by the select channel end point,
+     * which plain and SSL connections share.
+     */
+    protected boolean isRequestJob(final Runnable job)
+    {
+        final Class<?> declaringClass = job.getClass().getEnclosingClass();
+        return declaringClass != null && SelectChannelEndPoint.class.isAssignableFrom(declaringClass);
+    }
+
+    private boolean start(final Runnable job, final boolean hasPermit)
+    {
+        final Thread thread = VIRTUAL_THREAD_FACTORY.newThread(new Runnable() {
+            @Override
+            public void run()
+            {
+                threads.add(Thread.currentThread());
+                try {
+                    job.run();
+                }
+                finally {
+                    threads.remove(Thread.currentThread());
+                    activeCount.decrementAndGet();
+                    if (hasPermit) {
+                        permits.release();
+                        startPending();
+                    }
+                }
+            }
+        });
+
+        // Counted before the thread runs, so that stopping the pool waits for it.
+        activeCount.incrementAndGet();
+        try {
+            thread.start();
+            return true;
+        }
+        catch (OutOfMemoryError e) {
+            activeCount.decrementAndGet();
+            LOG.error(e, "Could not start virtual thread for %s", job);
+            if (hasPermit) {
+                permits.release();
+            }
+            return false;
+        }
+    }
+
+    private void startPending()
+    {
+        while (pendingCount.get() > 0 && permits.tryAcquire()) {
+            final Runnable job = pending.poll();
+            if (job == null) {
+                permits.release();
+                return;
+            }
+            pendingCount.decrementAndGet();
+            if (!start(job, true)) {
+                LOG.warn("Dropped %s", job);
+            }
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException
+    {
+        platformPool.join();
+    }
+
+    @Override
+    public int getThreads()
+    {
+        return platformPool.getThreads() + activeCount.get();
+    }
+
+    @Override
+    public int getIdleThreads()
+    {
+        return platformPool.getIdleThreads();
+    }
+
+    @Override
+    public boolean isLowOnThreads()
+    {
+        return pendingCount.get() > 0;
+    }
+
+    @Override
+    public int getActive()
+    {
+        return activeCount.get();
+    }
+
+    @Override
+    public int getPending()
+    {
+        return pendingCount.get();
+    }
+
+    @Override
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    @Override
+    public long getShedCount()
+    {
+        return shedCount.get();
+    }
+
+    /**
+     * Returns the feature version of the running JVM, e.g. 21. Java 8 and earlier report 1.
+     */
+    private static int getJavaVersion()
+    {
+        final String version = System.getProperty("java.specification.version", "");
+        final int dot = version.indexOf('.');
+        try {
+            return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Creates a factory for virtual threads through <tt>Thread.ofVirtual()</tt>, which the code can not refer to
+     * directly as long as it is compiled for older JVMs.
+     */
+    private static ThreadFactory createVirtualThreadFactory()
+    {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "http-virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        }
+        catch (Exception e) {
+            // Not available or only as a preview feature.
+            LOG.debug(e, "Virtual threads are not available");
+            return null;
+        }
+    }
+}
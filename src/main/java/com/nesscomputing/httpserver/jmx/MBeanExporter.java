@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jmx;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.nesscomputing.logging.Log;
+
+/**
+ * Registers the statistics beans of the http server components with an (optional) MBean server. Failing
+ * to export a bean is never fatal, it is logged and the component keeps working without JMX.
+ */
+public final class MBeanExporter
+{
+    private static final Log LOG = Log.findLog();
+
+    public static final String DOMAIN = "com.nesscomputing.httpserver";
+
+    private MBeanExporter()
+    {
+    }
+
+    /**
+     * Exports a bean as <tt>com.nesscomputing.httpserver:type=&lt;type&gt;[,name=&lt;name&gt;]</tt>.
+     *
+     * @return The name the bean was registered with or null if the bean could not be registered.
+     */
+    @Nullable
+    public static ObjectName export(@Nullable final MBeanServer mbeanServer, final String type, @Nullable final String name, final Object bean)
+    {
+        if (mbeanServer == null) {
+            return null;
+        }
+
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + (name == null ? "" : ",name=" + name));
+            mbeanServer.registerMBean(bean, objectName);
+            return objectName;
+        }
+        catch (JMException e) {
+            LOG.warn(e, "Could not export %s (%s) to JMX", type, name);
+            return null;
+        }
+    }
+
+    /**
+     * Removes a bean that was exported using {@link MBeanExporter#export(MBeanServer, String, String, Object)}.
+     */
+    public static void unexport(@Nullable final MBeanServer mbeanServer, @Nullable final ObjectName objectName)
+    {
+        if (mbeanServer == null || objectName == null) {
+            return;
+        }
+
+        try {
+            mbeanServer.unregisterMBean(objectName);
+        }
+        catch (JMException e) {
+            LOG.warn(e, "Could not remove %s from JMX", objectName);
+        }
+    }
+}
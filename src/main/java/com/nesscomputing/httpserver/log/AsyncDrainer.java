@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Moves elements from any number of producers to a single consumer thread. Producers put elements into a
+ * bounded {@link RingBuffer}, the consumer thread takes them off in batches of at most a given size and hands
+ * every batch to a {@link BatchHandler}. The consumer parks while the ring is empty and producers only wake it
+ * up when it is parked.
+ */
+public final class AsyncDrainer<T>
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long SHUTDOWN_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Called on the consumer thread with every batch taken off the ring. The list is reused for the next batch.
+     */
+    public interface BatchHandler<T>
+    {
+        void handle(List<T> batch);
+    }
+
+    private final RingBuffer<T> ring;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final BatchHandler<T> handler;
+    private final Thread consumerThread;
+
+    private final AtomicBoolean consumerParked = new AtomicBoolean(false);
+    private volatile boolean running = true;
+
+    // Only updated by the consumer thread.
+    private volatile long drainedElements = 0L;
+    private volatile long batches = 0L;
+    private volatile long maxBatchSize = 0L;
+
+    public AsyncDrainer(final int queueSize,
+                        final int batchSize,
+                        final OverflowPolicy overflowPolicy,
+                        final BatchHandler<T> handler,
+                        final String threadName)
+    {
+        Preconditions.checkArgument(batchSize > 0, "batch size must be at least 1");
+        Preconditions.checkNotNull(overflowPolicy, "overflow policy can not be null");
+        Preconditions.checkNotNull(handler, "handler can not be null");
+
+        this.ring = new RingBuffer<T>(queueSize);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.handler = handler;
+
+        this.consumerThread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                drainLoop();
+            }
+        }, threadName);
+        this.consumerThread.setDaemon(true);
+    }
+
+    public void start()
+    {
+        consumerThread.start();
+    }
+
+    /**
+     * Queues an element for the consumer thread. Returns false if the element was not queued, because the drainer
+     * was closed or because the ring is full and the overflow policy is {@link OverflowPolicy#DROP}.
+     */
+    public boolean offer(final T element)
+    {
+        if (!running) {
+            return false;
+        }
+
+        while (!ring.offer(element)) {
+            if (overflowPolicy == OverflowPolicy.DROP || !running) {
+                return false;
+            }
+            wake();
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        wake();
+        return true;
+    }
+
+    /**
+     * Wakes up the consumer thread if it is parked.
+     */
+    public void wake()
+    {
+        if (consumerParked.get() && consumerParked.compareAndSet(true, false)) {
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    /**
+     * Stops accepting elements and waits for the consumer thread to drain the ring. Returns false if the ring
+     * could not be drained in time.
+     */
+    public boolean close()
+    {
+        running = false;
+        LockSupport.unpark(consumerThread);
+        try {
+            consumerThread.join(SHUTDOWN_WAIT_MILLIS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (consumerThread.isAlive()) {
+            LOG.warn("%s did not finish within %d ms, %d elements may be lost!", consumerThread.getName(), SHUTDOWN_WAIT_MILLIS, ring.size());
+            return false;
+        }
+        return true;
+    }
+
+    private void drainLoop()
+    {
+        final List<T> batch = Lists.newArrayListWithCapacity(Math.min(batchSize, 1024));
+
+        while (running || !ring.isEmpty()) {
+            T element;
+            while (batch.size() < batchSize && (element = ring.poll()) != null) {
+                batch.add(element);
+            }
+
+            final int size = batch.size();
+            if (size > 0) {
+                try {
+                    handler.handle(batch);
+                }
+                catch (RuntimeException e) {
+                    LOG.warn(e, "Could not handle a batch of %d elements", size);
+                }
+                batch.clear();
+
+                drainedElements += size;
+                batches++;
+                if (size > maxBatchSize) {
+                    maxBatchSize = size;
+                }
+            }
+            else {
+                consumerParked.set(true);
+                if (running && ring.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                consumerParked.set(false);
+            }
+        }
+    }
+
+    public int getQueueDepth()
+    {
+        return ring.size();
+    }
+
+    public int getQueueCapacity()
+    {
+        return ring.capacity();
+    }
+
+    /**
+     * Returns the number of elements handed to the batch handler, whether it handled them successfully or not.
+     */
+    public long getDrainedElements()
+    {
+        return drainedElements;
+    }
+
+    public long getBatches()
+    {
+        return batches;
+    }
+
+    public long getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.Cookie;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+
+import com.nesscomputing.httpserver.log.LogFields.AppendingLogField;
+import com.nesscomputing.httpserver.log.LogFields.ConstantLogField;
+import com.nesscomputing.httpserver.log.LogFields.CookieField;
+import com.nesscomputing.httpserver.log.LogFields.IntLogField;
+import com.nesscomputing.httpserver.log.LogFields.LogField;
+import com.nesscomputing.httpserver.log.LogFields.LongLogField;
+
+/**
+ * A list of field specifiers (e.g. <tt>requestHeader:Authorization</tt>), compiled once into
+ * pre-resolved fields. Rendering a request through a plan neither parses the specifiers nor
+ * looks up the fields again.
+ */
+public final class LogFieldPlan
+{
+    private enum Kind
+    {
+        GENERIC, CONSTANT, COOKIE, INT, LONG, APPENDING;
+    }
+
+    private final Entry [] entries;
+    private final boolean hasCookieFields;
+
+    private LogFieldPlan(final Entry [] entries)
+    {
+        this.entries = entries;
+
+        boolean hasCookieFields = false;
+        for (Entry entry : entries) {
+            hasCookieFields |= entry.kind == Kind.COOKIE;
+        }
+        this.hasCookieFields = hasCookieFields;
+    }
+
+    /**
+     * Validates and compiles a list of field specifiers against the known fields.
+     *
+     * @throws IllegalArgumentException if a specifier is malformed or references an unknown field.
+     */
+    public static LogFieldPlan compile(final Map<String, LogField> knownFields, final List<String> fieldSpecifiers)
+    {
+        LogFields.validateLogFields(knownFields, fieldSpecifiers);
+
+        final Entry [] entries = new Entry[fieldSpecifiers.size()];
+        int i = 0;
+        for (String fieldSpecifier : fieldSpecifiers) {
+            final String [] chunks = StringUtils.split(fieldSpecifier, ":");
+            entries[i++] = new Entry(knownFields.get(chunks[0]), chunks.length == 2 ? chunks[1] : null);
+        }
+        return new LogFieldPlan(entries);
+    }
+
+    public int size()
+    {
+        return entries.length;
+    }
+
+    /**
+     * Returns true if the field at the given index renders as an integer number whenever it has a value.
+     */
+    public boolean isNumeric(final int index)
+    {
+        final LogField field = entries[index].field;
+        return field instanceof IntLogField || field instanceof LongLogField;
+    }
+
+    /**
+     * Evaluates all fields of the plan for a request into a record, in plan order.
+     *
+     * @param scratch Buffer for the values, its contents are replaced.
+     */
+    public RequestRecord record(final Request request, final Response response, final StringBuilder scratch)
+    {
+        // Only ask the request for its cookies once, no matter how many cookie fields are configured.
+        final Cookie [] cookies = hasCookieFields ? request.getCookies() : null;
+
+        scratch.setLength(0);
+        final int [] offsets = new int[entries.length * 2];
+        for (int i = 0; i < entries.length; i++) {
+            final int start = scratch.length();
+            if (appendEntry(entries[i], request, response, cookies, scratch)) {
+                offsets[i * 2] = start;
+                offsets[i * 2 + 1] = scratch.length();
+            }
+            else {
+                scratch.setLength(start);
+                offsets[i * 2] = -1;
+            }
+        }
+
+        final char [] chars = new char[scratch.length()];
+        scratch.getChars(0, chars.length, chars, 0);
+        return new RequestRecord(chars, offsets);
+    }
+
+    private static boolean appendEntry(final Entry entry, final Request request, final Response response, final Cookie [] cookies, final StringBuilder sb)
+    {
+        switch (entry.kind) {
+            case INT:
+                sb.append(((IntLogField) entry.field).logInt(request, response, entry.argument));
+                return true;
+            case LONG:
+                sb.append(((LongLogField) entry.field).logLong(request, response, entry.argument));
+                return true;
+            case APPENDING:
+                return ((AppendingLogField) entry.field).append(request, response, entry.argument, sb);
+            case COOKIE:
+                return appendValue(sb, CookieField.findCookie(cookies, entry.argument));
+            case CONSTANT:
+                return appendValue(sb, entry.getConstantValue(request, response));
+            default:
+                return appendValue(sb, entry.field.log(request, response, entry.argument));
+        }
+    }
+
+    private static boolean appendValue(final StringBuilder sb, final Object value)
+    {
+        if (value instanceof CharSequence) {
+            sb.append((CharSequence) value);
+        }
+        else if (value != null) {
+            sb.append(value);
+        }
+        return value != null;
+    }
+
+    private static final class Entry
+    {
+        private final LogField field;
+        private final String argument;
+        private final Kind kind;
+
+        private volatile Object constantValue = null;
+
+        Entry(final LogField field, final String argument)
+        {
+            this.field = field;
+            this.argument = argument;
+            this.kind = kindOf(field);
+        }
+
+        private Object getConstantValue(final Request request, final Response response)
+        {
+            Object value = constantValue;
+            if (value == null) {
+                // Not cached until a value shows up, the server info may not have been populated yet.
+                value = field.log(request, response, argument);
+                constantValue = value;
+            }
+            return value;
+        }
+
+        private static Kind kindOf(final LogField field)
+        {
+            if (field instanceof ConstantLogField) {
+                return Kind.CONSTANT;
+            }
+
+            // Only the built-in cookie field is known to be side effect free; a cookie field bound
+            // under the same name through the LogFieldBinder goes through its own methods.
+            if (field.getClass() == CookieField.class) {
+                return Kind.COOKIE;
+            }
+            else if (field instanceof AppendingLogField) {
+                // Before the numeric kinds, numeric fields without a value for some requests append.
+                return Kind.APPENDING;
+            }
+            else if (field instanceof IntLogField) {
+                return Kind.INT;
+            }
+            else if (field instanceof LongLogField) {
+                return Kind.LONG;
+            }
+            return Kind.GENERIC;
+        }
+    }
+}
@@ -25,8 +25,10 @@ import org.apache.log4j.MDC;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
-import org.joda.time.Duration;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 
 import com.nesscomputing.serverinfo.ServerInfo;
 
@@ -59,6 +61,76 @@ public final class LogFields
         String getShortName();
     }
 
+    /**
+     * A field that appends its value straight into the line of a request log instead of returning
+     * an object that the log has to convert. Request logs prefer this over {@link IntLogField} and
+     * {@link LongLogField}, so a numeric field that has no value for some requests implements both.
+     */
+    public interface AppendingLogField extends LogField
+    {
+        /**
+         * Appends the value of the field for a request.
+         *
+         * @return false if the field has no value, nothing was appended in that case.
+         */
+        boolean append(Request request, Response response, String argument, StringBuilder sb);
+    }
+
+    /**
+     * A field whose value is always an int. Request logs call {@link IntLogField#logInt(Request, Response, String)}
+     * to avoid boxing the value.
+     */
+    public interface IntLogField extends LogField
+    {
+        int logInt(Request request, Response response, String argument);
+    }
+
+    /**
+     * A field whose value is a long. Request logs call {@link LongLogField#logLong(Request, Response, String)}
+     * to avoid boxing the value.
+     */
+    public interface LongLogField extends LogField
+    {
+        long logLong(Request request, Response response, String argument);
+    }
+
+    /**
+     * Appends the value of any field to a buffer, using the most specific interface the field implements.
+     *
+     * @return false if the field has no value, nothing was appended in that case.
+     */
+    public static boolean append(final LogField field, final Request request, final Response response, final String argument, final StringBuilder sb)
+    {
+        if (field instanceof AppendingLogField) {
+            return ((AppendingLogField) field).append(request, response, argument, sb);
+        }
+        else if (field instanceof IntLogField) {
+            sb.append(((IntLogField) field).logInt(request, response, argument));
+            return true;
+        }
+        else if (field instanceof LongLogField) {
+            sb.append(((LongLogField) field).logLong(request, response, argument));
+            return true;
+        }
+
+        final Object value = field.log(request, response, argument);
+        if (value instanceof CharSequence) {
+            sb.append((CharSequence) value);
+        }
+        else if (value != null) {
+            sb.append(value);
+        }
+        return value != null;
+    }
+
+    /**
+     * Marker for fields whose value does not depend on the request. Request logs may evaluate
+     * such a field once and reuse the value for every request.
+     */
+    public interface ConstantLogField extends LogField
+    {
+    }
+
     public static class RemoteAddrField implements LogField
     {
         RemoteAddrField()
@@ -97,7 +169,7 @@ public final class LogFields
         }
     }
 
-    public static class RequestUriField implements LogField
+    public static class RequestUriField implements AppendingLogField
     {
         RequestUriField()
         {
@@ -109,6 +181,13 @@ public final class LogFields
             return request.getRequestURL();
         }
 
+        @Override
+        public boolean append(Request request, Response response, String dummy, StringBuilder sb)
+        {
+            sb.append(request.getRequestURL());
+            return true;
+        }
+
         @Override
         public String getShortName()
         {
@@ -116,7 +195,29 @@ public final class LogFields
         }
     }
 
-    public static class ResponseCodeField implements LogField
+    /**
+     * The route template of the request, e.g. <tt>/users/{id}</tt>, see {@link RouteNormalizer}.
+     */
+    public static class RouteField implements LogField
+    {
+        RouteField()
+        {
+        }
+
+        @Override
+        public Object log(Request request, Response response, String dummy)
+        {
+            return RouteNormalizer.getRoute(request);
+        }
+
+        @Override
+        public String getShortName()
+        {
+            return "ro";
+        }
+    }
+
+    public static class ResponseCodeField implements IntLogField
     {
         ResponseCodeField()
         {
@@ -124,6 +225,12 @@ public final class LogFields
 
         @Override
         public Object log(Request request, Response response, String dummy)
+        {
+            return logInt(request, response, dummy);
+        }
+
+        @Override
+        public int logInt(Request request, Response response, String dummy)
         {
             return response.getStatus();
         }
@@ -135,7 +242,7 @@ public final class LogFields
         }
     }
 
-    public static class ElapsedTimeField implements LogField
+    public static class ElapsedTimeField implements LongLogField
     {
         ElapsedTimeField()
         {
@@ -144,9 +251,13 @@ public final class LogFields
         @Override
         public Object log(Request request, Response response, String dummy)
         {
-            final DateTime start = new DateTime(request.getTimeStamp(), DateTimeZone.UTC);
-            final DateTime end = new DateTime(DateTimeZone.UTC);
-            return new Duration(start, end).getMillis();
+            return logLong(request, response, dummy);
+        }
+
+        @Override
+        public long logLong(Request request, Response response, String dummy)
+        {
+            return DateTimeUtils.currentTimeMillis() - request.getTimeStamp();
         }
 
         @Override
@@ -156,6 +267,107 @@ public final class LogFields
         }
     }
 
+    /**
+     * A request phase timing in nanoseconds, see {@link RequestTiming}. Empty unless request timing is enabled.
+     */
+    public static class TimingField implements LongLogField, AppendingLogField
+    {
+        public enum Phase
+        {
+            /** Time the request waited for a thread from the pool. */
+            QUEUE("qt") {
+                @Override
+                long getNanos(final RequestTiming timing)
+                {
+                    return timing.getQueueNanos();
+                }
+            },
+
+            /** Time the request spent in the servlet context. */
+            HANDLE("ht") {
+                @Override
+                long getNanos(final RequestTiming timing)
+                {
+                    return timing.getHandleNanos();
+                }
+            },
+
+            /** Time until the application first wrote to the response. */
+            FIRST_BYTE("fb") {
+                @Override
+                long getNanos(final RequestTiming timing)
+                {
+                    return timing.getTimeToFirstByteNanos();
+                }
+            },
+
+            /** Total request time. */
+            TOTAL("tt") {
+                @Override
+                long getNanos(final RequestTiming timing)
+                {
+                    return timing.getTotalNanos();
+                }
+            };
+
+            private final String shortName;
+
+            Phase(final String shortName)
+            {
+                this.shortName = shortName;
+            }
+
+            abstract long getNanos(RequestTiming timing);
+        }
+
+        private final Phase phase;
+
+        public TimingField(final Phase phase)
+        {
+            this.phase = phase;
+        }
+
+        @Override
+        public Object log(Request request, Response response, String dummy)
+        {
+            final long nanos = getNanos(request);
+            return nanos < 0 ? null : nanos;
+        }
+
+        /**
+         * Returns -1 for requests without the timing, request logs use {@link #append(Request, Response, String, StringBuilder)}
+         * to leave the field empty instead.
+         */
+        @Override
+        public long logLong(Request request, Response response, String dummy)
+        {
+            return getNanos(request);
+        }
+
+        @Override
+        public boolean append(Request request, Response response, String dummy, StringBuilder sb)
+        {
+            final long nanos = getNanos(request);
+            if (nanos < 0) {
+                return false;
+            }
+            sb.append(nanos);
+            return true;
+        }
+
+        private long getNanos(final Request request)
+        {
+            final RequestTiming timing = RequestTiming.get(request);
+            return timing == null ? -1L : phase.getNanos(timing);
+        }
+
+        @Override
+        public String getShortName()
+        {
+            return phase.shortName;
+        }
+    }
+
     public static class QueryStringField implements LogField
     {
         QueryStringField()
@@ -184,7 +396,14 @@ public final class LogFields
         @Override
         public Object log(Request request, Response response, String cookieName)
         {
-            final Cookie[] cookies = request.getCookies();
+            return findCookie(request.getCookies(), cookieName);
+        }
+
+        /**
+         * Returns the value of the named cookie from an already parsed set of cookies.
+         */
+        public static String findCookie(final Cookie[] cookies, final String cookieName)
+        {
             if (StringUtils.trimToNull(cookieName) !=  null && cookies != null) {
                 for (Cookie cookie : cookies) {
                     if (cookieName.equalsIgnoreCase(cookie.getName())) {
@@ -202,7 +421,7 @@ public final class LogFields
         }
     }
 
-    public static class RequestContentLengthField implements LogField
+    public static class RequestContentLengthField implements IntLogField
     {
         RequestContentLengthField()
         {
@@ -210,6 +429,12 @@ public final class LogFields
 
         @Override
         public Object log(Request request, Response response, String dummy)
+        {
+            return logInt(request, response, dummy);
+        }
+
+        @Override
+        public int logInt(Request request, Response response, String dummy)
         {
             return request.getContentLength();
         }
@@ -221,7 +446,7 @@ public final class LogFields
         }
     }
 
-    public static class ResponseContentLengthField implements LogField
+    public static class ResponseContentLengthField implements LongLogField
     {
         ResponseContentLengthField()
         {
@@ -229,6 +454,12 @@ public final class LogFields
 
         @Override
         public Object log(Request request, Response response, String dummy)
+        {
+            return logLong(request, response, dummy);
+        }
+
+        @Override
+        public long logLong(Request request, Response response, String dummy)
         {
             return response.getContentCount();
         }
@@ -341,7 +572,7 @@ public final class LogFields
         }
     }
 
-    public static class RequestDateHeaderField implements LogField
+    public static class RequestDateHeaderField implements AppendingLogField
     {
         RequestDateHeaderField()
         {
@@ -357,6 +588,17 @@ public final class LogFields
             return null;
         }
 
+        @Override
+        public boolean append(Request request, Response response, String dummy, StringBuilder sb)
+        {
+            final long dateValue = request.getDateHeader("Date");
+            if (dateValue > 0) {
+                sb.append(dateValue);
+                return true;
+            }
+            return false;
+        }
+
         @Override
         public String getShortName()
         {
@@ -383,7 +625,7 @@ public final class LogFields
         }
     }
 
-    public static class ServerInfoBinaryField implements LogField
+    public static class ServerInfoBinaryField implements ConstantLogField
     {
         ServerInfoBinaryField()
         {
@@ -403,7 +645,7 @@ public final class LogFields
         }
     }
 
-    public static class ServerInfoVersionField implements LogField
+    public static class ServerInfoVersionField implements ConstantLogField
     {
         ServerInfoVersionField()
         {
@@ -423,7 +665,7 @@ public final class LogFields
         }
     }
 
-    public static class ServerInfoModeField implements LogField
+    public static class ServerInfoModeField implements ConstantLogField
     {
         ServerInfoModeField()
         {
@@ -443,7 +685,7 @@ public final class LogFields
         }
     }
 
-    public static class ServerInfoTypeField implements LogField
+    public static class ServerInfoTypeField implements ConstantLogField
     {
         ServerInfoTypeField()
         {
@@ -463,7 +705,7 @@ public final class LogFields
         }
     }
 
-    public static class ServerInfoTokenField implements LogField
+    public static class ServerInfoTokenField implements ConstantLogField
     {
         ServerInfoTokenField()
         {
@@ -483,8 +725,16 @@ public final class LogFields
         }
     }
 
-    public static class TimestampField implements LogField
+    /**
+     * Renders the request time as an ISO timestamp in UTC. Requests arrive in order, so the date and time
+     * up to the second are formatted once and reused for every request in the same second.
+     */
+    public static class TimestampField implements AppendingLogField
     {
+        private static final DateTimeFormatter SECOND_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss").withZoneUTC();
+
+        private volatile FormattedSecond lastSecond = new FormattedSecond(Long.MIN_VALUE, null);
+
         TimestampField()
         {
         }
@@ -495,11 +745,48 @@ public final class LogFields
             return new DateTime(request.getTimeStamp(), DateTimeZone.UTC);
         }
 
+        @Override
+        public boolean append(Request request, Response response, String dummy, StringBuilder sb)
+        {
+            final long timestamp = request.getTimeStamp();
+            if (timestamp < 0) {
+                sb.append(log(request, response, dummy));
+                return true;
+            }
+
+            final long second = timestamp / 1000L;
+            FormattedSecond formattedSecond = lastSecond;
+            if (formattedSecond.second != second) {
+                formattedSecond = new FormattedSecond(second, SECOND_FORMAT.print(second * 1000L));
+                lastSecond = formattedSecond;
+            }
+
+            final int millis = (int) (timestamp - second * 1000L);
+            sb.append(formattedSecond.text).append('.');
+            if (millis < 100) {
+                sb.append(millis < 10 ? "00" : "0");
+            }
+            sb.append(millis).append('Z');
+            return true;
+        }
+
         @Override
         public String getShortName()
         {
             return "ts";
         }
+
+        private static final class FormattedSecond
+        {
+            private final long second;
+            private final String text;
+
+            FormattedSecond(final long second, final String text)
+            {
+                this.second = second;
+                this.text = text;
+            }
+        }
     }
 
     public static class MDCField implements LogField
@@ -35,12 +35,14 @@ import com.nesscomputing.httpserver.log.LogFields.ResponseCodeField;
 import com.nesscomputing.httpserver.log.LogFields.ResponseContentLengthField;
 import com.nesscomputing.httpserver.log.LogFields.ResponseContentTypeField;
 import com.nesscomputing.httpserver.log.LogFields.ResponseHeaderField;
+import com.nesscomputing.httpserver.log.LogFields.RouteField;
 import com.nesscomputing.httpserver.log.LogFields.ServerInfoBinaryField;
 import com.nesscomputing.httpserver.log.LogFields.ServerInfoModeField;
 import com.nesscomputing.httpserver.log.LogFields.ServerInfoTokenField;
 import com.nesscomputing.httpserver.log.LogFields.ServerInfoTypeField;
 import com.nesscomputing.httpserver.log.LogFields.ServerInfoVersionField;
 import com.nesscomputing.httpserver.log.LogFields.ThreadNameField;
+import com.nesscomputing.httpserver.log.LogFields.TimingField;
 import com.nesscomputing.httpserver.log.LogFields.TimestampField;
 
 public class LogFieldsModule extends AbstractModule
@@ -58,6 +60,7 @@ public class LogFieldsModule extends AbstractModule
         LogFieldBinder.bindField(binder(), "responseContentType").to(ResponseContentTypeField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "method").to(MethodField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "requestUri").to(RequestUriField.class).in(Scopes.SINGLETON);
+        LogFieldBinder.bindField(binder(), "route").to(RouteField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "cookie").to(CookieField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "query").to(QueryStringField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "remoteAddr").to(RemoteAddrField.class).in(Scopes.SINGLETON);
@@ -65,6 +68,10 @@ public class LogFieldsModule extends AbstractModule
         LogFieldBinder.bindField(binder(), "responseCode").to(ResponseCodeField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "threadName").to(ThreadNameField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "elapsedTime").to(ElapsedTimeField.class).in(Scopes.SINGLETON);
+        LogFieldBinder.bindField(binder(), "queueTime").toInstance(new TimingField(TimingField.Phase.QUEUE));
+        LogFieldBinder.bindField(binder(), "handleTime").toInstance(new TimingField(TimingField.Phase.HANDLE));
+        LogFieldBinder.bindField(binder(), "ttfb").toInstance(new TimingField(TimingField.Phase.FIRST_BYTE));
+        LogFieldBinder.bindField(binder(), "totalNanos").toInstance(new TimingField(TimingField.Phase.TOTAL));
         LogFieldBinder.bindField(binder(), "mdcField").to(MDCField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "serverInfoBinary").to(ServerInfoBinaryField.class).in(Scopes.SINGLETON);
         LogFieldBinder.bindField(binder(), "serverInfoVersion").to(ServerInfoVersionField.class).in(Scopes.SINGLETON);
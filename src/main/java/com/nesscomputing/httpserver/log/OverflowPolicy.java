@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+/**
+ * What an asynchronous request log does with a record when its queue is full.
+ */
+public enum OverflowPolicy
+{
+    /** Discard the record and count it as dropped. The request thread never waits. */
+    DROP,
+
+    /** Wait on the request thread until the queue has room again. No record is lost. */
+    BLOCK;
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+
+/**
+ * A request log that renders the shared {@link RequestRecord} instead of evaluating its own fields. Logs bound
+ * through {@link RequestRecordModule#bindRequestLog(com.google.inject.Binder)} are all driven by a single
+ * {@link SharedRequestLog}.
+ */
+public interface RecordingRequestLog extends RequestLog
+{
+    /**
+     * Returns the index of the filter this log registered with the {@link RequestRecorder}.
+     */
+    int getFilterIndex();
+
+    /**
+     * Logs a request that passed the filter of this log.
+     */
+    void log(RequestRecord record, Request request, Response response);
+}
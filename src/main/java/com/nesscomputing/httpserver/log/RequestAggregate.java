@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The requests of one route, method and status within one aggregation interval. Latencies are in microseconds.
+ */
+public final class RequestAggregate
+{
+    /** Names of the values of {@link RequestAggregate#toRecord()}, in column order. */
+    public static final List<String> FIELD_NAMES = ImmutableList.of("interval", "route", "method", "status", "count", "bytesIn", "bytesOut", "p50", "p90", "p99", "max");
+
+    /** Index of the first numeric column, all columns from here on are numbers. */
+    private static final int FIRST_NUMERIC_COLUMN = 3;
+
+    private final long intervalStart;
+    private final String route;
+    private final String method;
+    private final int status;
+    private final long count;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long max;
+
+    RequestAggregate(final long intervalStart, final String route, @CheckForNull final String method, final int status,
+                     final long count, final long bytesIn, final long bytesOut,
+                     final long p50, final long p90, final long p99, final long max)
+    {
+        this.intervalStart = intervalStart;
+        this.route = route;
+        this.method = method;
+        this.status = status;
+        this.count = count;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public static boolean isNumeric(final int column)
+    {
+        return column >= FIRST_NUMERIC_COLUMN;
+    }
+
+    public long getIntervalStart()
+    {
+        return intervalStart;
+    }
+
+    public String getRoute()
+    {
+        return route;
+    }
+
+    @CheckForNull
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getBytesIn()
+    {
+        return bytesIn;
+    }
+
+    public long getBytesOut()
+    {
+        return bytesOut;
+    }
+
+    public long getP50()
+    {
+        return p50;
+    }
+
+    public long getP90()
+    {
+        return p90;
+    }
+
+    public long getP99()
+    {
+        return p99;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Returns the aggregate as a record with the columns of {@link RequestAggregate#FIELD_NAMES}, so it can
+     * be written by anything that writes request records.
+     */
+    public RequestRecord toRecord()
+    {
+        final StringBuilder sb = new StringBuilder(128);
+        final int [] offsets = new int[FIELD_NAMES.size() * 2];
+        for (int column = 0; column < FIELD_NAMES.size(); column++) {
+            final int start = sb.length();
+            if (appendValue(column, sb)) {
+                offsets[column * 2] = start;
+                offsets[column * 2 + 1] = sb.length();
+            }
+            else {
+                offsets[column * 2] = -1;
+            }
+        }
+
+        final char [] chars = new char[sb.length()];
+        sb.getChars(0, chars.length, chars, 0);
+        return new RequestRecord(chars, offsets);
+    }
+
+    private boolean appendValue(final int column, final StringBuilder sb)
+    {
+        switch (column) {
+            case 0:
+                sb.append(new DateTime(intervalStart, DateTimeZone.UTC));
+                return true;
+            case 1:
+                sb.append(route);
+                return true;
+            case 2:
+                if (method == null) {
+                    return false;
+                }
+                sb.append(method);
+                return true;
+            case 3:
+                sb.append(status);
+                return true;
+            case 4:
+                sb.append(count);
+                return true;
+            case 5:
+                sb.append(bytesIn);
+                return true;
+            case 6:
+                sb.append(bytesOut);
+                return true;
+            case 7:
+                sb.append(p50);
+                return true;
+            case 8:
+                sb.append(p90);
+                return true;
+            case 9:
+                sb.append(p99);
+                return true;
+            default:
+                sb.append(max);
+                return true;
+        }
+    }
+
+    /**
+     * Formats the aggregate as <tt>name=value</tt> pairs, separated by blanks.
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder(160);
+        for (int column = 0; column < FIELD_NAMES.size(); column++) {
+            if (column > 0) {
+                sb.append(' ');
+            }
+            sb.append(FIELD_NAMES.get(column)).append('=');
+            appendValue(column, sb);
+        }
+        return sb.toString();
+    }
+}
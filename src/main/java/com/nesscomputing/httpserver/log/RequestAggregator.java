@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.joda.time.DateTimeUtils;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nesscomputing.httpserver.stats.LatencyHistogram;
+import com.nesscomputing.httpserver.stats.RequestMetrics;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Aggregates requests by route, method and status into fixed intervals (aligned to the epoch, e.g. full minutes).
+ * Once an interval is over, its aggregates are handed to a listener in one batch, so a request log writes a few
+ * lines per interval instead of one line per request.
+ */
+public class RequestAggregator
+{
+    private static final Log LOG = Log.findLog();
+
+    /** Requests that read the clock just before the end of an interval get this long to finish recording. */
+    private static final long GRACE_MILLIS = 500L;
+
+    private static final Comparator<RequestAggregate> AGGREGATE_ORDER = new Comparator<RequestAggregate>() {
+        @Override
+        public int compare(final RequestAggregate a, final RequestAggregate b)
+        {
+            if (a.getIntervalStart() != b.getIntervalStart()) {
+                return a.getIntervalStart() < b.getIntervalStart() ? -1 : 1;
+            }
+            final int routeOrder = a.getRoute().compareTo(b.getRoute());
+            if (routeOrder != 0) {
+                return routeOrder;
+            }
+            final int methodOrder = StringUtils.defaultString(a.getMethod()).compareTo(StringUtils.defaultString(b.getMethod()));
+            if (methodOrder != 0) {
+                return methodOrder;
+            }
+            return a.getStatus() - b.getStatus();
+        }
+    };
+
+    /**
+     * Receives the aggregates of every interval that is over.
+     */
+    public interface Listener
+    {
+        void aggregated(List<RequestAggregate> aggregates);
+    }
+
+    private final long intervalMillis;
+    private final ConcurrentMap<Key, Bucket> buckets = new ConcurrentHashMap<Key, Bucket>();
+
+    private ScheduledExecutorService executor = null;
+    private Listener listener = null;
+
+    /**
+     * @param intervalMillis Length of the aggregation interval.
+     */
+    public RequestAggregator(final long intervalMillis)
+    {
+        Preconditions.checkArgument(intervalMillis > 0, "interval must be positive, was %s", intervalMillis);
+
+        this.intervalMillis = intervalMillis;
+    }
+
+    public long getIntervalMillis()
+    {
+        return intervalMillis;
+    }
+
+    /**
+     * Adds a finished request to the aggregate of the current interval.
+     */
+    public void record(final Request request, final Response response)
+    {
+        final long now = DateTimeUtils.currentTimeMillis();
+        record(now,
+               RouteNormalizer.getRoute(request),
+               request.getMethod(),
+               response.getStatus(),
+               Math.max(0, request.getContentLength()),
+               response.getContentCount(),
+               RequestTiming.getElapsedMicros(request, now));
+    }
+
+    void record(final long timestamp, final String route, final String method, final int status,
+                final long bytesIn, final long bytesOut, final long latencyMicros)
+    {
+        // The client chooses the method, every unknown one would get its own bucket.
+        final String bucketMethod = method == null ? null : RequestMetrics.normalizeMethod(method);
+        final Key key = new Key(timestamp - timestamp % intervalMillis, route, bucketMethod, status);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            final Bucket newBucket = new Bucket();
+            bucket = buckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        bucket.bytesIn.addAndGet(bytesIn);
+        bucket.bytesOut.addAndGet(bytesOut);
+        bucket.latencies.record(latencyMicros);
+    }
+
+    /**
+     * Removes and returns the aggregates of all intervals that ended at or before the given time, ordered by
+     * interval, route, method and status.
+     */
+    public List<RequestAggregate> drain(final long now)
+    {
+        final List<RequestAggregate> aggregates = new ArrayList<RequestAggregate>();
+        for (Iterator<Map.Entry<Key, Bucket>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<Key, Bucket> entry = it.next();
+            final Key key = entry.getKey();
+            if (key.intervalStart + intervalMillis <= now) {
+                it.remove();
+                final Bucket bucket = entry.getValue();
+                final LatencyHistogram latencies = bucket.latencies;
+                aggregates.add(new RequestAggregate(key.intervalStart, key.route, key.method, key.status,
+                                                    latencies.getCount(), bucket.bytesIn.get(), bucket.bytesOut.get(),
+                                                    latencies.getPercentile(50.0), latencies.getPercentile(90.0),
+                                                    latencies.getPercentile(99.0), latencies.getMax()));
+            }
+        }
+        Collections.sort(aggregates, AGGREGATE_ORDER);
+        return aggregates;
+    }
+
+    /**
+     * Starts handing the aggregates of every finished interval to the listener.
+     */
+    public synchronized void start(final Listener listener, final String threadName)
+    {
+        Preconditions.checkState(executor == null, "aggregator was already started");
+
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build());
+
+        final long now = DateTimeUtils.currentTimeMillis();
+        final long initialDelay = intervalMillis - now % intervalMillis + GRACE_MILLIS;
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run()
+            {
+                emit(drain(DateTimeUtils.currentTimeMillis() - GRACE_MILLIS));
+            }
+        }, initialDelay, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the schedule and hands everything aggregated so far, including the current interval, to the listener.
+     */
+    public synchronized void stop()
+    {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+
+        emit(drain(Long.MAX_VALUE));
+        listener = null;
+    }
+
+    private void emit(final List<RequestAggregate> aggregates)
+    {
+        final Listener currentListener;
+        synchronized (this) {
+            currentListener = listener;
+        }
+
+        if (currentListener != null && !aggregates.isEmpty()) {
+            try {
+                currentListener.aggregated(aggregates);
+            }
+            catch (RuntimeException e) {
+                // Keep the schedule going, the next interval may well succeed.
+                LOG.warn(e, "Could not write %d request aggregates", aggregates.size());
+            }
+        }
+    }
+
+    private static final class Key
+    {
+        private final long intervalStart;
+        private final String route;
+        private final String method;
+        private final int status;
+
+        Key(final long intervalStart, final String route, final String method, final int status)
+        {
+            this.intervalStart = intervalStart;
+            this.route = route;
+            this.method = method;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(final Object other)
+        {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) other;
+            return intervalStart == that.intervalStart && status == that.status
+                && route.equals(that.route) && Objects.equal(method, that.method);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(intervalStart, route, method, status);
+        }
+    }
+
+    private static final class Bucket
+    {
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+    }
+}
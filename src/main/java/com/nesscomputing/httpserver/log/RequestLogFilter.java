@@ -0,0 +1,488 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.joda.time.DateTimeUtils;
+
+/**
+ * Decides whether a request log writes a line for a request. A request is logged if its URI does not
+ * start with any of the blacklisted prefixes and it matches the filter expression, if there is one.
+ *
+ * The expression is compiled once. It combines conditions with <tt>||</tt>, <tt>&amp;&amp;</tt>, <tt>!</tt>
+ * and parentheses:
+ * <ul>
+ * <li><tt>status</tt> compares the response code, e.g. <tt>status &gt;= 500</tt>.</li>
+ * <li><tt>elapsed</tt> compares the request time, in ms unless given in s, e.g. <tt>elapsed &gt; 250ms</tt>.</li>
+ * <li><tt>method</tt> compares the request method, e.g. <tt>method == "POST"</tt>.</li>
+ * <li><tt>path("/prefix")</tt> matches request URIs starting with the prefix.</li>
+ * <li><tt>sample(1%)</tt> matches the given share of requests. The decision is made on the request id
+ * (the X-Trumpet-Track header), so all logs make the same decision for a request.</li>
+ * <li><tt>true</tt> and <tt>false</tt>.</li>
+ * </ul>
+ * Per route sample rates combine the two, e.g. <tt>status &gt;= 500 || path("/api") &amp;&amp; sample(10%) || sample(1%)</tt>.
+ */
+public final class RequestLogFilter
+{
+    public static final String REQUEST_ID_HEADER = "X-Trumpet-Track";
+
+    private final String [] blackList;
+    private final Condition condition;
+
+    private RequestLogFilter(final String [] blackList, @Nullable final Condition condition)
+    {
+        this.blackList = blackList;
+        this.condition = condition;
+    }
+
+    /**
+     * Compiles a filter.
+     *
+     * @param blackList URI prefixes that are never logged.
+     * @param expression The filter expression, null or blank to log every request that is not blacklisted.
+     * @throws IllegalArgumentException if the expression can not be parsed.
+     */
+    public static RequestLogFilter compile(final Collection<String> blackList, @Nullable final String expression)
+    {
+        final Condition condition = StringUtils.isBlank(expression) ? null : new Parser(expression).parse();
+        return new RequestLogFilter(blackList.toArray(new String[blackList.size()]), condition);
+    }
+
+    public boolean accept(final Request request, final Response response)
+    {
+        final String requestUri = request.getRequestURI();
+        for (int i = 0; i < blackList.length; i++) {
+            if (StringUtils.startsWith(requestUri, blackList[i])) {
+                return false;
+            }
+        }
+        return condition == null || condition.matches(request, response);
+    }
+
+    private interface Condition
+    {
+        boolean matches(Request request, Response response);
+    }
+
+    private enum Operator
+    {
+        EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        private Operator(final String symbol)
+        {
+            this.symbol = symbol;
+        }
+
+        boolean compare(final long left, final long right)
+        {
+            switch (this) {
+                case EQ: return left == right;
+                case NE: return left != right;
+                case LT: return left < right;
+                case LE: return left <= right;
+                case GT: return left > right;
+                default: return left >= right;
+            }
+        }
+    }
+
+    private static final class Constant implements Condition
+    {
+        private final boolean value;
+
+        Constant(final boolean value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return value;
+        }
+    }
+
+    private static final class Or implements Condition
+    {
+        private final Condition left;
+        private final Condition right;
+
+        Or(final Condition left, final Condition right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return left.matches(request, response) || right.matches(request, response);
+        }
+    }
+
+    private static final class And implements Condition
+    {
+        private final Condition left;
+        private final Condition right;
+
+        And(final Condition left, final Condition right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return left.matches(request, response) && right.matches(request, response);
+        }
+    }
+
+    private static final class Not implements Condition
+    {
+        private final Condition condition;
+
+        Not(final Condition condition)
+        {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return !condition.matches(request, response);
+        }
+    }
+
+    private static final class StatusCondition implements Condition
+    {
+        private final Operator operator;
+        private final long value;
+
+        StatusCondition(final Operator operator, final long value)
+        {
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return operator.compare(response.getStatus(), value);
+        }
+    }
+
+    private static final class ElapsedCondition implements Condition
+    {
+        private final Operator operator;
+        private final long millis;
+
+        ElapsedCondition(final Operator operator, final long millis)
+        {
+            this.operator = operator;
+            this.millis = millis;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return operator.compare(DateTimeUtils.currentTimeMillis() - request.getTimeStamp(), millis);
+        }
+    }
+
+    private static final class MethodCondition implements Condition
+    {
+        private final boolean equal;
+        private final String method;
+
+        MethodCondition(final boolean equal, final String method)
+        {
+            this.equal = equal;
+            this.method = method;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return method.equalsIgnoreCase(request.getMethod()) == equal;
+        }
+    }
+
+    private static final class PathCondition implements Condition
+    {
+        private final String prefix;
+
+        PathCondition(final String prefix)
+        {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            return StringUtils.startsWith(request.getRequestURI(), prefix);
+        }
+    }
+
+    private static final class SampleCondition implements Condition
+    {
+        private static final int PARTS = 1000000;
+
+        private final int threshold;
+
+        SampleCondition(final double percent)
+        {
+            this.threshold = (int) Math.round(percent * (PARTS / 100));
+        }
+
+        @Override
+        public boolean matches(final Request request, final Response response)
+        {
+            String requestId = response.getHeader(REQUEST_ID_HEADER);
+            if (requestId == null) {
+                requestId = request.getHeader(REQUEST_ID_HEADER);
+            }
+
+            final int hash;
+            if (requestId != null) {
+                // Spread the bits of the string hash, request ids that only differ at the end are common.
+                int h = requestId.hashCode();
+                h ^= h >>> 16;
+                h *= 0x85ebca6b;
+                h ^= h >>> 13;
+                h *= 0xc2b2ae35;
+                h ^= h >>> 16;
+                hash = h;
+            }
+            else {
+                // No id to hash, a random pick per thread does not contend with the other request threads.
+                hash = ThreadLocalRandom.current().nextInt();
+            }
+            return (hash & Integer.MAX_VALUE) % PARTS < threshold;
+        }
+    }
+
+    /**
+     * Recursive descent parser for filter expressions.
+     */
+    private static final class Parser
+    {
+        private final String expression;
+        private int position = 0;
+
+        Parser(final String expression)
+        {
+            this.expression = expression;
+        }
+
+        Condition parse()
+        {
+            final Condition condition = parseOr();
+            skipWhitespace();
+            if (position < expression.length()) {
+                throw error("unexpected input");
+            }
+            return condition;
+        }
+
+        private Condition parseOr()
+        {
+            Condition condition = parseAnd();
+            while (consume("||")) {
+                condition = new Or(condition, parseAnd());
+            }
+            return condition;
+        }
+
+        private Condition parseAnd()
+        {
+            Condition condition = parseNot();
+            while (consume("&&")) {
+                condition = new And(condition, parseNot());
+            }
+            return condition;
+        }
+
+        private Condition parseNot()
+        {
+            skipWhitespace();
+            if (!lookingAt("!=") && consume("!")) {
+                return new Not(parseNot());
+            }
+            return parsePrimary();
+        }
+
+        private Condition parsePrimary()
+        {
+            if (consume("(")) {
+                final Condition condition = parseOr();
+                expect(")");
+                return condition;
+            }
+
+            final String identifier = parseIdentifier();
+            if ("true".equals(identifier) || "false".equals(identifier)) {
+                return new Constant(Boolean.parseBoolean(identifier));
+            }
+            else if ("status".equals(identifier)) {
+                return new StatusCondition(parseOperator(), parseNumber(false));
+            }
+            else if ("elapsed".equals(identifier)) {
+                return new ElapsedCondition(parseOperator(), parseNumber(true));
+            }
+            else if ("method".equals(identifier)) {
+                final Operator operator = parseOperator();
+                if (operator != Operator.EQ && operator != Operator.NE) {
+                    throw error("method can only be compared with == or !=");
+                }
+                return new MethodCondition(operator == Operator.EQ, parseString());
+            }
+            else if ("path".equals(identifier)) {
+                expect("(");
+                final String prefix = parseString();
+                expect(")");
+                return new PathCondition(prefix);
+            }
+            else if ("sample".equals(identifier)) {
+                expect("(");
+                final double percent = parseDecimal();
+                expect("%");
+                expect(")");
+                if (percent < 0.0 || percent > 100.0) {
+                    throw error("sample rate must be between 0% and 100%");
+                }
+                return new SampleCondition(percent);
+            }
+            throw error("unknown condition '" + identifier + "'");
+        }
+
+        private Operator parseOperator()
+        {
+            skipWhitespace();
+            // Two character operators first, so that "<=" is not taken for "<".
+            for (Operator operator : new Operator [] { Operator.EQ, Operator.NE, Operator.LE, Operator.GE, Operator.LT, Operator.GT }) {
+                if (consume(operator.symbol)) {
+                    return operator;
+                }
+            }
+            throw error("expected a comparison operator");
+        }
+
+        private long parseNumber(final boolean duration)
+        {
+            final double value = parseDecimal();
+            if (duration) {
+                if (consume("ms")) {
+                    return Math.round(value);
+                }
+                else if (consume("s")) {
+                    return Math.round(value * 1000.0);
+                }
+            }
+            return Math.round(value);
+        }
+
+        private double parseDecimal()
+        {
+            skipWhitespace();
+            final int start = position;
+            while (position < expression.length() && (Character.isDigit(expression.charAt(position)) || expression.charAt(position) == '.')) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a number");
+            }
+            try {
+                return Double.parseDouble(expression.substring(start, position));
+            }
+            catch (NumberFormatException e) {
+                throw error("bad number");
+            }
+        }
+
+        private String parseString()
+        {
+            skipWhitespace();
+            if (position >= expression.length() || expression.charAt(position) != '"') {
+                throw error("expected a quoted string");
+            }
+            final int end = expression.indexOf('"', position + 1);
+            if (end < 0) {
+                throw error("unterminated string");
+            }
+            final String value = expression.substring(position + 1, end);
+            position = end + 1;
+            return value;
+        }
+
+        private String parseIdentifier()
+        {
+            skipWhitespace();
+            final int start = position;
+            while (position < expression.length() && Character.isLetter(expression.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a condition");
+            }
+            return expression.substring(start, position).toLowerCase(Locale.ENGLISH);
+        }
+
+        private void expect(final String token)
+        {
+            if (!consume(token)) {
+                throw error("expected '" + token + "'");
+            }
+        }
+
+        private boolean consume(final String token)
+        {
+            skipWhitespace();
+            if (lookingAt(token)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean lookingAt(final String token)
+        {
+            return expression.startsWith(token, position);
+        }
+
+        private void skipWhitespace()
+        {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(final String message)
+        {
+            return new IllegalArgumentException(String.format("Invalid log filter \"%s\": %s at position %d", expression, message, position));
+        }
+    }
+}
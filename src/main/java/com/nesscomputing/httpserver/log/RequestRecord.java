@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * The values of all request log fields for a single request, evaluated once and shared by all
+ * request logs. The values are stored back to back in a single character array, so rendering a
+ * value into a log line does not create any objects.
+ */
+public final class RequestRecord
+{
+    private final char [] chars;
+
+    /** Start and end offset of every value. A start offset of -1 marks a field without a value. */
+    private final int [] offsets;
+
+    RequestRecord(final char [] chars, final int [] offsets)
+    {
+        this.chars = chars;
+        this.offsets = offsets;
+    }
+
+    public int size()
+    {
+        return offsets.length / 2;
+    }
+
+    public boolean isNull(final int column)
+    {
+        return offsets[column * 2] < 0;
+    }
+
+    /**
+     * Returns the value of a column as a string, null if the field had no value.
+     */
+    @CheckForNull
+    public String get(final int column)
+    {
+        final int start = offsets[column * 2];
+        return start < 0 ? null : new String(chars, start, offsets[column * 2 + 1] - start);
+    }
+
+    /**
+     * Returns the length of the value of a column, 0 if the field had no value.
+     */
+    public int length(final int column)
+    {
+        final int start = offsets[column * 2];
+        return start < 0 ? 0 : offsets[column * 2 + 1] - start;
+    }
+
+    /**
+     * Returns a single character of the value of a column.
+     */
+    public char charAt(final int column, final int index)
+    {
+        return chars[offsets[column * 2] + index];
+    }
+
+    /**
+     * Appends the value of a column to the buffer. A field without a value appends nothing.
+     */
+    public void appendTo(final int column, final StringBuilder sb)
+    {
+        final int start = offsets[column * 2];
+        if (start >= 0) {
+            sb.append(chars, start, offsets[column * 2 + 1] - start);
+        }
+    }
+}
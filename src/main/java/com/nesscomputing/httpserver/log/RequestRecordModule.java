@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import org.eclipse.jetty.server.handler.RequestLogHandler;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Binder;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
+import com.google.inject.binder.LinkedBindingBuilder;
+import com.google.inject.multibindings.Multibinder;
+import com.nesscomputing.httpserver.HttpServerHandlerBinder;
+
+/**
+ * Installs the single request log handler that drives all {@link RecordingRequestLog}s. Every request log module
+ * installs this module; Guice only installs it once.
+ */
+public class RequestRecordModule extends AbstractModule
+{
+    @Override
+    public void configure()
+    {
+        bind(RequestRecorder.class).in(Scopes.SINGLETON);
+        bind(SharedRequestLog.class).in(Scopes.SINGLETON);
+        Multibinder.newSetBinder(binder(), RecordingRequestLog.class);
+        HttpServerHandlerBinder.bindLoggingHandler(binder()).toProvider(HandlerProvider.class);
+    }
+
+    /**
+     * Binds a request log that gets its values from the shared request record.
+     */
+    public static LinkedBindingBuilder<RecordingRequestLog> bindRequestLog(final Binder binder)
+    {
+        binder.install(new RequestRecordModule());
+        return Multibinder.newSetBinder(binder, RecordingRequestLog.class).addBinding();
+    }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+        return other != null && other.getClass() == RequestRecordModule.class;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return RequestRecordModule.class.hashCode();
+    }
+
+    public static class HandlerProvider implements Provider<RequestLogHandler>
+    {
+        private final SharedRequestLog sharedRequestLog;
+
+        @Inject
+        public HandlerProvider(final SharedRequestLog sharedRequestLog)
+        {
+            this.sharedRequestLog = sharedRequestLog;
+        }
+
+        @Override
+        public RequestLogHandler get()
+        {
+            final RequestLogHandler handler = new RequestLogHandler();
+            handler.setRequestLog(sharedRequestLog);
+            return handler;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.nesscomputing.httpserver.log.LogFields.LogField;
+
+/**
+ * Evaluates the fields of all request logs in a single pass. Every request log registers its fields and its filter
+ * when it is created; the recorder evaluates the union of all registered fields into one {@link RequestRecord} per
+ * request, and every distinct filter once per request. Logs then only render their columns of the record.
+ */
+@Singleton
+public class RequestRecorder
+{
+    private static final int MAX_RETAINED_SCRATCH_LENGTH = 8192;
+
+    private static final ThreadLocal<StringBuilder> SCRATCH = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder(512);
+        }
+    };
+
+    private final Map<String, LogField> knownFields;
+
+    private final List<String> fieldSpecifiers = Lists.newArrayList();
+    private final Map<String, Integer> columns = Maps.newHashMap();
+    private final Map<List<Object>, Integer> filterIndices = Maps.newHashMap();
+
+    private volatile LogFieldPlan plan;
+    private volatile RequestLogFilter [] filters = new RequestLogFilter[0];
+
+    @Inject
+    public RequestRecorder(final Map<String, LogField> knownFields)
+    {
+        this.knownFields = knownFields;
+        this.plan = LogFieldPlan.compile(knownFields, ImmutableList.<String>of());
+    }
+
+    public boolean hasField(final String fieldName)
+    {
+        return knownFields.containsKey(fieldName);
+    }
+
+    /**
+     * Adds field specifiers (e.g. <tt>requestHeader:Authorization</tt>) to the record.
+     *
+     * @return The record column of each specifier. A specifier that was already added by another log shares its column.
+     * @throws IllegalArgumentException if a specifier is malformed or references an unknown field.
+     */
+    public synchronized int [] addFields(final List<String> newSpecifiers)
+    {
+        LogFields.validateLogFields(knownFields, newSpecifiers);
+
+        final int [] result = new int[newSpecifiers.size()];
+        boolean changed = false;
+        for (int i = 0; i < result.length; i++) {
+            final String specifier = newSpecifiers.get(i);
+            Integer column = columns.get(specifier);
+            if (column == null) {
+                column = fieldSpecifiers.size();
+                fieldSpecifiers.add(specifier);
+                columns.put(specifier, column);
+                changed = true;
+            }
+            result[i] = column;
+        }
+
+        if (changed) {
+            plan = LogFieldPlan.compile(knownFields, ImmutableList.copyOf(fieldSpecifiers));
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the values of a column are always integer numbers.
+     */
+    public boolean isNumeric(final int column)
+    {
+        return plan.isNumeric(column);
+    }
+
+    /**
+     * Adds a request filter, see {@link RequestLogFilter#compile(Collection, String)}.
+     *
+     * @return The index of the filter. Logs with the same blacklist and expression share a filter.
+     * @throws IllegalArgumentException if the expression can not be parsed.
+     */
+    public synchronized int addFilter(final Collection<String> blackList, @Nullable final String expression)
+    {
+        final List<Object> key = Arrays.<Object>asList(ImmutableSortedSet.copyOf(blackList), StringUtils.trimToEmpty(expression));
+        Integer index = filterIndices.get(key);
+        if (index == null) {
+            final RequestLogFilter filter = RequestLogFilter.compile(blackList, expression);
+            final RequestLogFilter [] newFilters = Arrays.copyOf(filters, filters.length + 1);
+            index = filters.length;
+            newFilters[index] = filter;
+            filters = newFilters;
+            filterIndices.put(key, index);
+        }
+        return index;
+    }
+
+    public int getFilterCount()
+    {
+        return filters.length;
+    }
+
+    public boolean accept(final int filterIndex, final Request request, final Response response)
+    {
+        return filters[filterIndex].accept(request, response);
+    }
+
+    /**
+     * Evaluates all registered fields for a request.
+     */
+    public RequestRecord evaluate(final Request request, final Response response)
+    {
+        StringBuilder scratch = SCRATCH.get();
+        if (scratch.capacity() > MAX_RETAINED_SCRATCH_LENGTH) {
+            scratch = new StringBuilder(512);
+            SCRATCH.set(scratch);
+        }
+        return plan.record(request, response, scratch);
+    }
+}
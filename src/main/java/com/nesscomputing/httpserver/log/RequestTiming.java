@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.ServletRequest;
+
+import org.eclipse.jetty.server.Request;
+
+/**
+ * Phase timings of a single request, captured with {@link System#nanoTime()}. The http server attaches an instance
+ * to every request as the {@link RequestTiming#ATTRIBUTE} attribute when request timing is enabled.
+ *
+ * <ul>
+ * <li>queue time: the time the connection waited in the thread pool before a thread picked it up.</li>
+ * <li>handle time: the time spent in the servlet (Guice) context.</li>
+ * <li>time to first byte: the time from dispatch until the application first wrote to the response.</li>
+ * <li>total time: the time from dispatch until the request completed.</li>
+ * </ul>
+ *
+ * All marks are written by the request thread, a value of 0 means that the mark was not (yet) reached.
+ */
+public final class RequestTiming
+{
+    public static final String ATTRIBUTE = RequestTiming.class.getName();
+
+    private final long dispatchNanos;
+    private final long startNanos;
+
+    private long contextEnterNanos = 0L;
+    private long contextExitNanos = 0L;
+    private long firstByteNanos = 0L;
+    private long completeNanos = 0L;
+
+    /**
+     * @param dispatchNanos When the thread pool accepted the job that runs the request, 0 if unknown.
+     * @param startNanos When the server started handling the request.
+     */
+    public RequestTiming(final long dispatchNanos, final long startNanos)
+    {
+        this.dispatchNanos = dispatchNanos;
+        this.startNanos = startNanos;
+    }
+
+    @CheckForNull
+    public static RequestTiming get(final ServletRequest request)
+    {
+        final Object timing = request.getAttribute(ATTRIBUTE);
+        return (timing instanceof RequestTiming) ? (RequestTiming) timing : null;
+    }
+
+    /**
+     * Returns how long a finished request took in micros: its total time if the request was timed, otherwise the
+     * time from the request timestamp to <tt>nowMillis</tt>.
+     */
+    public static long getElapsedMicros(final Request request, final long nowMillis)
+    {
+        final RequestTiming timing = get(request);
+        return timing != null
+            ? TimeUnit.NANOSECONDS.toMicros(timing.getTotalNanos())
+            : TimeUnit.MILLISECONDS.toMicros(nowMillis - request.getTimeStamp());
+    }
+
+    public void markContextEnter()
+    {
+        if (contextEnterNanos == 0L) {
+            contextEnterNanos = System.nanoTime();
+        }
+    }
+
+    public void markContextExit()
+    {
+        contextExitNanos = System.nanoTime();
+    }
+
+    public void markFirstByte()
+    {
+        if (firstByteNanos == 0L) {
+            firstByteNanos = System.nanoTime();
+        }
+    }
+
+    public void markComplete()
+    {
+        completeNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the time the request waited for a thread, or -1 if the thread pool did not record it.
+     */
+    public long getQueueNanos()
+    {
+        return dispatchNanos == 0L ? -1L : startNanos - dispatchNanos;
+    }
+
+    /**
+     * Returns the time spent in the servlet context, or -1 if the request never got there.
+     */
+    public long getHandleNanos()
+    {
+        if (contextEnterNanos == 0L) {
+            return -1L;
+        }
+        return (contextExitNanos == 0L ? System.nanoTime() : contextExitNanos) - contextEnterNanos;
+    }
+
+    /**
+     * Returns the time until the application first wrote to the response. A response that was never written to
+     * is sent when the servlet context is done with the request, so that is used instead. Returns -1 if
+     * neither has happened yet.
+     */
+    public long getTimeToFirstByteNanos()
+    {
+        final long firstByte = (firstByteNanos != 0L) ? firstByteNanos : contextExitNanos;
+        return firstByte == 0L ? -1L : firstByte - getOriginNanos();
+    }
+
+    /**
+     * Returns the total request time. Request logs run before the request is complete, so for them this is
+     * the time up to now.
+     */
+    public long getTotalNanos()
+    {
+        return (completeNanos == 0L ? System.nanoTime() : completeNanos) - getOriginNanos();
+    }
+
+    private long getOriginNanos()
+    {
+        return dispatchNanos == 0L ? startNanos : dispatchNanos;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded, lock-free queue backed by a ring of slots. Every slot carries a sequence number which tells
+ * producers and consumers whether it is free or filled, so neither side ever takes a lock. Offering to a full
+ * ring fails immediately instead of blocking.
+ */
+public final class RingBuffer<T>
+{
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a new ring. The capacity is rounded up to the next power of two.
+     */
+    public RingBuffer(final int capacity)
+    {
+        Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30), "capacity must be between 1 and 2^30, was %s", capacity);
+
+        this.capacity = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<T>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element to the ring. Returns false if the ring is full.
+     */
+    public boolean offer(final T value)
+    {
+        Preconditions.checkNotNull(value, "value can not be null");
+
+        for (;;) {
+            final long position = tail.get();
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, value);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            }
+            else if (difference < 0) {
+                return false;
+            }
+            // Otherwise another producer claimed the slot first, try again.
+        }
+    }
+
+    /**
+     * Removes and returns the oldest element of the ring, or null if the ring is empty.
+     */
+    public T poll()
+    {
+        for (;;) {
+            final long position = head.get();
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final T value = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.lazySet(index, position + capacity);
+                    return value;
+                }
+            }
+            else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements in the ring. This is a snapshot and may be stale by the time it is returned.
+     */
+    public int size()
+    {
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0L, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    public int capacity()
+    {
+        return capacity;
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Request;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Maps request paths to a small, bounded set of route templates (e.g. <tt>/users/{id}/items</tt>) which can be used
+ * as keys for statistics.
+ *
+ * <ul>
+ * <li>Paths are first matched against the configured patterns, which are compiled into a trie of path segments.
+ * Literal segments take precedence over <tt>{name}</tt> segments, which take precedence over a trailing <tt>*</tt>.</li>
+ * <li>Any other path is turned into a route by replacing numeric segments with <tt>{id}</tt>, UUIDs with
+ * <tt>{uuid}</tt> and long hex strings or tokens with <tt>{hash}</tt>.</li>
+ * <li>Only a limited number of routes are derived that way, paths that would add a route beyond the limit are
+ * mapped to <tt>(other)</tt>.</li>
+ * </ul>
+ *
+ * When bound, the server attaches the route to every request as the {@link RouteNormalizer#ATTRIBUTE} attribute.
+ */
+@Singleton
+public class RouteNormalizer
+{
+    public static final String ATTRIBUTE = RouteNormalizer.class.getName();
+
+    public static final String OTHER_ROUTE = "(other)";
+
+    private static final int DEFAULT_MAX_ROUTES = 1000;
+
+    /** Used for requests that were not routed by the server, e.g. because no normalizer is bound. */
+    private static final RouteNormalizer DEFAULT = new RouteNormalizer(Collections.<String>emptyList(), DEFAULT_MAX_ROUTES, 0);
+
+    private final Node root = new Node();
+    private final int maxRoutes;
+    private final int maxDepth;
+
+    private final ConcurrentMap<String, String> routes = new ConcurrentHashMap<String, String>();
+    private final AtomicInteger routeCount = new AtomicInteger();
+
+    @Inject
+    public RouteNormalizer(final RouteNormalizerConfig config)
+    {
+        this(config.getPatterns(), config.getMaxRoutes(), config.getMaxDepth());
+    }
+
+    public RouteNormalizer(final List<String> patterns, final int maxRoutes, final int maxDepth)
+    {
+        Preconditions.checkArgument(maxRoutes > 0, "max routes must be positive, was %s", maxRoutes);
+        Preconditions.checkArgument(maxDepth >= 0, "max depth must not be negative, was %s", maxDepth);
+
+        this.maxRoutes = maxRoutes;
+        this.maxDepth = maxDepth;
+
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                if (!StringUtils.isBlank(pattern)) {
+                    addPattern(pattern.trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the route of a request. Uses the route attached by the server if there is one, otherwise derives
+     * the route from the request path and attaches it.
+     */
+    public static String getRoute(final Request request)
+    {
+        final Object route = request.getAttribute(ATTRIBUTE);
+        if (route instanceof String) {
+            return (String) route;
+        }
+        return DEFAULT.apply(request);
+    }
+
+    /**
+     * Returns the route attached to a request, or null if it has none.
+     */
+    public static String get(final ServletRequest request)
+    {
+        final Object route = request.getAttribute(ATTRIBUTE);
+        return (route instanceof String) ? (String) route : null;
+    }
+
+    /**
+     * Normalizes the path of a request and attaches the route to it.
+     */
+    public String apply(final Request request)
+    {
+        final String route = normalize(request.getRequestURI());
+        request.setAttribute(ATTRIBUTE, route);
+        return route;
+    }
+
+    /**
+     * Returns the route of a path.
+     */
+    public String normalize(final String path)
+    {
+        final String [] segments = splitPath(path);
+
+        final String template = match(root, segments, 0);
+        if (template != null) {
+            return template;
+        }
+
+        return limit(collapse(segments));
+    }
+
+    /**
+     * Returns the number of routes derived from paths that matched no pattern.
+     */
+    public int getRouteCount()
+    {
+        return routes.size();
+    }
+
+    private void addPattern(final String pattern)
+    {
+        final String [] segments = splitPath(pattern);
+        final String template = join(segments, segments.length);
+
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            final String segment = segments[i];
+            if ("*".equals(segment)) {
+                Preconditions.checkArgument(i == segments.length - 1, "'*' must be the last segment of route pattern '%s'", pattern);
+                node.wildcardTemplate = template;
+                return;
+            }
+            else if (segment.startsWith("{") && segment.endsWith("}")) {
+                if (node.parameter == null) {
+                    node.parameter = new Node();
+                }
+                node = node.parameter;
+            }
+            else {
+                Node child = node.literals.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.literals.put(segment, child);
+                }
+                node = child;
+            }
+        }
+        node.template = template;
+    }
+
+    private static String match(final Node node, final String [] segments, final int index)
+    {
+        if (index == segments.length) {
+            return node.template;
+        }
+
+        final Node literal = node.literals.get(segments[index]);
+        if (literal != null) {
+            final String template = match(literal, segments, index + 1);
+            if (template != null) {
+                return template;
+            }
+        }
+
+        if (node.parameter != null) {
+            final String template = match(node.parameter, segments, index + 1);
+            if (template != null) {
+                return template;
+            }
+        }
+
+        return node.wildcardTemplate;
+    }
+
+    private String collapse(final String [] segments)
+    {
+        final int depth = maxDepth > 0 ? Math.min(maxDepth, segments.length) : segments.length;
+        for (int i = 0; i < depth; i++) {
+            segments[i] = collapseSegment(segments[i]);
+        }
+        return join(segments, depth);
+    }
+
+    private String limit(final String route)
+    {
+        final String knownRoute = routes.get(route);
+        if (knownRoute != null) {
+            return knownRoute;
+        }
+
+        if (routeCount.get() >= maxRoutes) {
+            return OTHER_ROUTE;
+        }
+        if (routeCount.incrementAndGet() > maxRoutes) {
+            // Lost the race for the last slot.
+            routeCount.decrementAndGet();
+            return OTHER_ROUTE;
+        }
+
+        final String previous = routes.putIfAbsent(route, route);
+        if (previous != null) {
+            routeCount.decrementAndGet();
+            return previous;
+        }
+        return route;
+    }
+
+    static String collapseSegment(final String segment)
+    {
+        if (isNumeric(segment)) {
+            return "{id}";
+        }
+        else if (isUuid(segment)) {
+            return "{uuid}";
+        }
+        else if (isHash(segment)) {
+            return "{hash}";
+        }
+        return segment;
+    }
+
+    private static boolean isNumeric(final String segment)
+    {
+        for (int i = 0; i < segment.length(); i++) {
+            final char c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return !segment.isEmpty();
+    }
+
+    private static boolean isUuid(final String segment)
+    {
+        if (segment.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            final char c = segment.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            }
+            else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hex strings of at least 16 characters, or tokens of at least 20 letters, digits, '-' and '_' that contain a digit.
+     */
+    private static boolean isHash(final String segment)
+    {
+        if (segment.length() < 16) {
+            return false;
+        }
+
+        boolean hex = true;
+        boolean token = true;
+        boolean digit = false;
+        for (int i = 0; i < segment.length() && (hex || token); i++) {
+            final char c = segment.charAt(i);
+            final boolean isDigit = c >= '0' && c <= '9';
+            digit |= isDigit;
+            hex &= Character.digit(c, 16) >= 0;
+            token &= isDigit || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-' || c == '_';
+        }
+        return hex || (token && digit && segment.length() >= 20);
+    }
+
+    /**
+     * Splits a path into its segments, ignoring empty segments and path parameters (e.g. <tt>;jsessionid=...</tt>).
+     */
+    private static String [] splitPath(final String path)
+    {
+        if (path == null) {
+            return new String[0];
+        }
+
+        final String [] segments = StringUtils.split(path, '/');
+        for (int i = 0; i < segments.length; i++) {
+            final int semicolon = segments[i].indexOf(';');
+            if (semicolon >= 0) {
+                segments[i] = segments[i].substring(0, semicolon);
+            }
+        }
+        return segments;
+    }
+
+    private static String join(final String [] segments, final int count)
+    {
+        if (count == 0) {
+            return "/";
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append('/').append(segments[i]);
+        }
+        return sb.toString();
+    }
+
+    private static final class Node
+    {
+        private final Map<String, Node> literals = new HashMap<String, Node>();
+        private Node parameter = null;
+        private String template = null;
+        private String wildcardTemplate = null;
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.List;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.DefaultNull;
+
+public abstract class RouteNormalizerConfig
+{
+    /**
+     * Route templates such as <tt>/users/{id}/items</tt> or <tt>/static/*</tt>. A <tt>{name}</tt> segment matches any
+     * single path segment, a trailing <tt>*</tt> matches the rest of the path. Unset, routes are only derived by
+     * collapsing id-like segments.
+     */
+    @Config("ness.httpserver.routes.patterns")
+    @DefaultNull
+    public List<String> getPatterns()
+    {
+        return null;
+    }
+
+    /**
+     * Number of distinct routes derived from paths that match no pattern. Requests to any further route
+     * are reported as <tt>(other)</tt>.
+     */
+    @Config("ness.httpserver.routes.max-routes")
+    @Default("1000")
+    public int getMaxRoutes()
+    {
+        return 1000;
+    }
+
+    /**
+     * Number of leading path segments kept for routes derived from paths that match no pattern. 0 keeps all of them.
+     */
+    @Config("ness.httpserver.routes.max-depth")
+    @Default("0")
+    public int getMaxDepth()
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.Set;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Drives all {@link RecordingRequestLog}s from a single request log handler. Each distinct filter is evaluated once
+ * per request and the record is only evaluated if at least one log accepts the request.
+ */
+@Singleton
+public class SharedRequestLog extends AbstractLifeCycle implements RequestLog
+{
+    private static final Log LOG = Log.findLog();
+
+    private final RequestRecorder recorder;
+    private final RecordingRequestLog [] requestLogs;
+    private final int [] filterIndices;
+
+    @Inject
+    public SharedRequestLog(final RequestRecorder recorder, final Set<RecordingRequestLog> requestLogs)
+    {
+        this.recorder = recorder;
+        this.requestLogs = requestLogs.toArray(new RecordingRequestLog[requestLogs.size()]);
+        this.filterIndices = new int[this.requestLogs.length];
+        for (int i = 0; i < this.requestLogs.length; i++) {
+            filterIndices[i] = this.requestLogs[i].getFilterIndex();
+        }
+    }
+
+    @Override
+    public void doStart() throws Exception
+    {
+        for (RecordingRequestLog requestLog : requestLogs) {
+            requestLog.start();
+        }
+    }
+
+    @Override
+    public void doStop() throws Exception
+    {
+        for (int i = requestLogs.length - 1; i >= 0; i--) {
+            try {
+                requestLogs[i].stop();
+            }
+            catch (Exception e) {
+                LOG.warn(e, "Could not stop %s", requestLogs[i]);
+            }
+        }
+    }
+
+    @Override
+    public void log(final Request request, final Response response)
+    {
+        // Filter decisions for up to 64 distinct filters, more than that are simply not remembered.
+        long evaluated = 0L;
+        long accepted = 0L;
+        RequestRecord record = null;
+
+        for (int i = 0; i < requestLogs.length; i++) {
+            final int filterIndex = filterIndices[i];
+            final long bit = filterIndex < 64 ? 1L << filterIndex : 0L;
+
+            final boolean accept;
+            if ((evaluated & bit) != 0L) {
+                accept = (accepted & bit) != 0L;
+            }
+            else {
+                accept = recorder.accept(filterIndex, request, response);
+                evaluated |= bit;
+                if (accept) {
+                    accepted |= bit;
+                }
+            }
+
+            if (accept) {
+                if (record == null) {
+                    record = recorder.evaluate(request, response);
+                }
+                requestLogs[i].log(record, request, response);
+            }
+        }
+    }
+}
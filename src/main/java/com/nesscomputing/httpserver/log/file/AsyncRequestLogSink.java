@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.io.Closeables;
+import com.nesscomputing.httpserver.log.AsyncDrainer;
+import com.nesscomputing.httpserver.log.OverflowPolicy;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Decouples request threads from the log file. Request threads put finished records into a bounded
+ * lock-free ring and a dedicated writer thread drains the ring in batches, handing each batch to the
+ * underlying sink as a single write.
+ */
+class AsyncRequestLogSink implements RequestLogSink, AsyncRequestLogSinkMXBean
+{
+    private static final Log LOG = Log.findLog();
+
+    private final RequestLogSink delegate;
+    private final AsyncDrainer<String> drainer;
+
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    // Only used by the writer thread.
+    private char [] batchChars = new char[8192];
+
+    AsyncRequestLogSink(final RequestLogSink delegate,
+                        final int queueSize,
+                        final int batchSize,
+                        final OverflowPolicy overflowPolicy,
+                        final String threadName)
+    {
+        this.delegate = delegate;
+        this.drainer = new AsyncDrainer<String>(queueSize, batchSize, overflowPolicy, new AsyncDrainer.BatchHandler<String>() {
+            @Override
+            public void handle(final List<String> batch)
+            {
+                writeBatch(batch);
+            }
+        }, threadName);
+    }
+
+    void start()
+    {
+        drainer.start();
+    }
+
+    @Override
+    public void write(final char [] chars, final int offset, final int length)
+    {
+        if (!drainer.offer(new String(chars, offset, length))) {
+            droppedRecords.incrementAndGet();
+        }
+    }
+
+    /**
+     * Flushing is the writer thread's business, every batch is flushed once it has been written.
+     */
+    @Override
+    public void flush()
+    {
+        drainer.wake();
+    }
+
+    @Override
+    public void close()
+    {
+        drainer.close();
+        Closeables.closeQuietly(delegate);
+    }
+
+    private void writeBatch(final List<String> batch)
+    {
+        int length = 0;
+        for (String record : batch) {
+            final int recordLength = record.length();
+            if (length + recordLength > batchChars.length) {
+                final char [] newBatchChars = new char[Math.max(batchChars.length * 2, length + recordLength)];
+                System.arraycopy(batchChars, 0, newBatchChars, 0, length);
+                batchChars = newBatchChars;
+            }
+            record.getChars(0, recordLength, batchChars, length);
+            length += recordLength;
+        }
+
+        try {
+            delegate.write(batchChars, 0, length);
+            delegate.flush();
+        }
+        catch (RuntimeException e) {
+            LOG.warn(e, "Could not write %d request log records", batch.size());
+        }
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return drainer.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity()
+    {
+        return drainer.getQueueCapacity();
+    }
+
+    @Override
+    public long getDroppedRecords()
+    {
+        return droppedRecords.get();
+    }
+
+    @Override
+    public long getWrittenRecords()
+    {
+        return drainer.getDrainedElements();
+    }
+
+    @Override
+    public long getBatches()
+    {
+        return drainer.getBatches();
+    }
+
+    @Override
+    public long getMaxBatchSize()
+    {
+        return drainer.getMaxBatchSize();
+    }
+
+    @Override
+    public double getMeanBatchSize()
+    {
+        final long batches = drainer.getBatches();
+        return batches == 0 ? 0.0 : (double) drainer.getDrainedElements() / batches;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+/**
+ * JMX view of an asynchronous request log writer.
+ */
+public interface AsyncRequestLogSinkMXBean
+{
+    /** Records currently waiting for the writer thread. */
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    /** Records discarded because the queue was full or the log was shutting down. */
+    long getDroppedRecords();
+
+    long getWrittenRecords();
+
+    /** Number of batches handed to the underlying sink. */
+    long getBatches();
+
+    long getMaxBatchSize();
+
+    double getMeanBatchSize();
+}
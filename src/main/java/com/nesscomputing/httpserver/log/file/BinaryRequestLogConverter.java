@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+
+/**
+ * Converts a binary request log back into text, either the tab separated lines of the {@link RequestLogFormat#TSV}
+ * format or the JSON lines of the {@link RequestLogFormat#JSON} format. Rotated files compressed with gzip or lz4
+ * are decompressed on the fly.
+ *
+ * <pre>java com.nesscomputing.httpserver.log.file.BinaryRequestLogConverter [-json] &lt;binary log&gt; [&lt;output file&gt;]</pre>
+ *
+ * Without an output file, the log is written to stdout.
+ */
+public final class BinaryRequestLogConverter
+{
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private BinaryRequestLogConverter()
+    {
+    }
+
+    public static void main(final String... args) throws IOException
+    {
+        int argIndex = 0;
+        boolean json = false;
+        if (args.length > 0 && "-json".equals(args[0])) {
+            json = true;
+            argIndex++;
+        }
+
+        if (args.length - argIndex < 1 || args.length - argIndex > 2) {
+            System.err.println("Usage: BinaryRequestLogConverter [-json] <binary log> [<output file>]");
+            System.exit(1);
+        }
+
+        final String inputFile = args[argIndex++];
+        final InputStream in = RequestLogCompression.forFileName(inputFile).decompress(new FileInputStream(inputFile));
+        final OutputStream out = argIndex < args.length ? new FileOutputStream(args[argIndex]) : System.out;
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8), 65536);
+        try {
+            convert(new BinaryRequestLogReader(in), writer, json);
+        }
+        catch (EOFException e) {
+            writer.flush();
+            System.err.println("Log ends in a truncated record, which was skipped.");
+        }
+        finally {
+            Closeables.closeQuietly(in);
+            Closeables.close(writer, false);
+        }
+    }
+
+    /**
+     * Writes all remaining rows of the reader as text. Neither the reader nor the writer are closed.
+     */
+    public static void convert(final BinaryRequestLogReader reader, final Writer writer, final boolean json) throws IOException
+    {
+        final StringBuilder line = new StringBuilder(512);
+        while (reader.next()) {
+            line.setLength(0);
+            if (json) {
+                appendJson(reader, line);
+            }
+            else {
+                appendTsv(reader, line);
+            }
+            writer.append(line);
+        }
+        writer.flush();
+    }
+
+    private static void appendTsv(final BinaryRequestLogReader reader, final StringBuilder line)
+    {
+        for (int i = 0; i < reader.getFieldCount(); i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+            final String value = reader.getValue(i);
+            if (value != null) {
+                line.append(value);
+            }
+        }
+        line.append(LINE_SEPARATOR);
+    }
+
+    private static void appendJson(final BinaryRequestLogReader reader, final StringBuilder line)
+    {
+        line.append('{');
+        for (int i = 0; i < reader.getFieldCount(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            JsonRequestLogEncoder.appendQuoted(reader.getFieldName(i), line);
+            line.append(':');
+
+            final String value = reader.getValue(i);
+            if (value == null) {
+                line.append("null");
+            }
+            else if (reader.isNumeric(i)) {
+                line.append(value);
+            }
+            else {
+                JsonRequestLogEncoder.appendQuoted(value, line);
+            }
+        }
+        line.append("}\n");
+    }
+}
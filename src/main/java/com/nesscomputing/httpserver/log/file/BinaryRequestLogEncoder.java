@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import com.nesscomputing.httpserver.log.RequestRecord;
+
+/**
+ * First half of the binary format. Request threads only turn the record into an unambiguous, tab separated
+ * line (tabs, line breaks and backslashes escaped, <tt>\N</tt> for fields without a value). The
+ * {@link BinaryRequestLogSink} of the file turns that line into a binary record, so every log file gets a
+ * dictionary of its own, no matter how the log is rotated or written.
+ */
+class BinaryRequestLogEncoder implements RequestLogEncoder
+{
+    private final int [] columns;
+
+    BinaryRequestLogEncoder(final int [] columns)
+    {
+        this.columns = columns;
+    }
+
+    @Override
+    public void encode(final RequestRecord record, final StringBuilder line)
+    {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+
+            final int column = columns[i];
+            if (record.isNull(column)) {
+                line.append("\\N");
+                continue;
+            }
+
+            final int length = record.length(column);
+            for (int j = 0; j < length; j++) {
+                final char c = record.charAt(column, j);
+                switch (c) {
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    default:
+                        line.append(c);
+                }
+            }
+        }
+        line.append('\n');
+    }
+}
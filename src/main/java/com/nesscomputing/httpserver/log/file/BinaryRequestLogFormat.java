@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+/**
+ * Constants of the binary request log format, see {@link BinaryRequestLogReader} for the layout.
+ */
+final class BinaryRequestLogFormat
+{
+    static final int MAGIC = 0x4e524c42; // "NRLB"
+    static final int VERSION = 1;
+
+    static final int RECORD_HEADER = 'H';
+    static final int RECORD_ROW = 'R';
+
+    static final int FIELD_NUMERIC = 0x01;
+
+    static final int VALUE_NULL = 0;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_DEFINE = 2;
+    static final int VALUE_REFERENCE = 3;
+    static final int VALUE_LONG = 4;
+
+    /** Entries per field and file dictionary. Values beyond that are written as plain strings. */
+    static final int MAX_DICTIONARY_SIZE = 4096;
+
+    /** Longer values are never put into the dictionary. */
+    static final int MAX_DICTIONARY_VALUE_LENGTH = 512;
+
+    /** Upper bound for a single record, anything larger is treated as a corrupt file. */
+    static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    private BinaryRequestLogFormat()
+    {
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads request log files written in the {@link RequestLogFormat#BINARY} format.
+ *
+ * <p>A file is a sequence of records, each prefixed by its length as an unsigned LEB128 varint. The first
+ * byte of a record is its type:</p>
+ * <ul>
+ * <li><tt>H</tt> (header): magic (<tt>0x4e524c42</tt>), version, number of fields, and for every field its
+ * name and a flag byte (1 for numeric fields). A header resets all dictionaries, it starts every file and
+ * shows up again wherever a server appended to an existing file.</li>
+ * <li><tt>R</tt> (row): one value per field of the last header. Every value starts with a tag: 0 no value,
+ * 1 plain string, 2 string which is added to the dictionary of the field, 3 reference (varint) to a
+ * dictionary entry, 4 zigzag encoded number.</li>
+ * </ul>
+ * Varints are unsigned LEB128, strings are a varint byte count followed by UTF-8.
+ */
+public class BinaryRequestLogReader implements Closeable
+{
+    private final InputStream in;
+
+    private String [] fieldNames = null;
+    private boolean [] numeric = null;
+    private List<List<String>> dictionaries = null;
+
+    private String [] values = null;
+    private boolean [] numericValues = null;
+
+    private byte [] buffer = new byte[4096];
+    private int position = 0;
+    private int limit = 0;
+
+    public BinaryRequestLogReader(final InputStream in)
+    {
+        this.in = new BufferedInputStream(in, 65536);
+    }
+
+    /**
+     * Advances to the next row.
+     *
+     * @return false at the end of the file.
+     * @throws EOFException if the file ends in the middle of a record, e.g. because the server died while writing it.
+     * @throws IOException if the file is not a binary request log.
+     */
+    public boolean next() throws IOException
+    {
+        while (readRecord()) {
+            final int type = readByte();
+            if (type == BinaryRequestLogFormat.RECORD_HEADER) {
+                readHeader();
+            }
+            else if (type == BinaryRequestLogFormat.RECORD_ROW) {
+                if (fieldNames == null) {
+                    throw new IOException("Row before the first header, not a binary request log");
+                }
+                readRow();
+                return true;
+            }
+            else {
+                throw new IOException(String.format("Unknown record type %d", type));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The number of fields of the current row.
+     */
+    public int getFieldCount()
+    {
+        Preconditions.checkState(values != null, "no current row");
+        return values.length;
+    }
+
+    public String getFieldName(final int field)
+    {
+        Preconditions.checkState(values != null, "no current row");
+        return fieldNames[field];
+    }
+
+    /**
+     * The value of a field in the current row, null if the field had no value.
+     */
+    @CheckForNull
+    public String getValue(final int field)
+    {
+        Preconditions.checkState(values != null, "no current row");
+        return values[field];
+    }
+
+    /**
+     * True if the field is numeric and the current row has a number for it.
+     */
+    public boolean isNumeric(final int field)
+    {
+        Preconditions.checkState(values != null, "no current row");
+        return numericValues[field];
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    private void readHeader() throws IOException
+    {
+        final long magic = readVarLong();
+        if (magic != BinaryRequestLogFormat.MAGIC) {
+            throw new IOException("Bad magic, not a binary request log");
+        }
+        final long version = readVarLong();
+        if (version != BinaryRequestLogFormat.VERSION) {
+            throw new IOException(String.format("Unsupported binary request log version %d", version));
+        }
+
+        final int fieldCount = readLength();
+        fieldNames = new String[fieldCount];
+        numeric = new boolean[fieldCount];
+        dictionaries = new ArrayList<List<String>>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            fieldNames[i] = readString();
+            numeric[i] = (readByte() & BinaryRequestLogFormat.FIELD_NUMERIC) != 0;
+            dictionaries.add(new ArrayList<String>());
+        }
+        values = null;
+    }
+
+    private void readRow() throws IOException
+    {
+        values = new String[fieldNames.length];
+        numericValues = new boolean[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            final int tag = readByte();
+            switch (tag) {
+                case BinaryRequestLogFormat.VALUE_NULL:
+                    break;
+                case BinaryRequestLogFormat.VALUE_STRING:
+                    values[i] = readString();
+                    break;
+                case BinaryRequestLogFormat.VALUE_DEFINE:
+                    values[i] = readString();
+                    dictionaries.get(i).add(values[i]);
+                    break;
+                case BinaryRequestLogFormat.VALUE_REFERENCE:
+                    final List<String> dictionary = dictionaries.get(i);
+                    final long reference = readVarLong();
+                    if (reference >= dictionary.size()) {
+                        throw new IOException(String.format("Reference %d to undefined value of field %s", reference, fieldNames[i]));
+                    }
+                    values[i] = dictionary.get((int) reference);
+                    break;
+                case BinaryRequestLogFormat.VALUE_LONG:
+                    final long zigzag = readVarLong();
+                    values[i] = Long.toString((zigzag >>> 1) ^ -(zigzag & 1));
+                    numericValues[i] = numeric[i];
+                    break;
+                default:
+                    throw new IOException(String.format("Unknown value tag %d for field %s", tag, fieldNames[i]));
+            }
+        }
+    }
+
+    /**
+     * Loads the next record into the buffer, false at the end of the file.
+     */
+    private boolean readRecord() throws IOException
+    {
+        long length = 0;
+        for (int shift = 0; ; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated record length");
+            }
+            if (shift > 28) {
+                throw new IOException("Record length too long");
+            }
+            length |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+
+        if (length > BinaryRequestLogFormat.MAX_RECORD_LENGTH) {
+            throw new IOException(String.format("Record of %d bytes, not a binary request log", length));
+        }
+        if (buffer.length < length) {
+            buffer = new byte[(int) length];
+        }
+        ByteStreams.readFully(in, buffer, 0, (int) length);
+        position = 0;
+        limit = (int) length;
+        return true;
+    }
+
+    private int readByte() throws IOException
+    {
+        if (position >= limit) {
+            throw new IOException("Record ends early");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private long readVarLong() throws IOException
+    {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = readByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private int readLength() throws IOException
+    {
+        final long length = readVarLong();
+        if (length > limit - position) {
+            throw new IOException("Length beyond the end of the record");
+        }
+        return (int) length;
+    }
+
+    private String readString() throws IOException
+    {
+        final int length = readLength();
+        final String result = new String(buffer, position, length, Charsets.UTF_8);
+        position += length;
+        return result;
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Second half of the binary format. Takes the escaped lines of the {@link BinaryRequestLogEncoder} and writes
+ * them as binary records to a single file. A header record with the field names starts every file, the
+ * dictionaries start out empty with every sink. Callers are serialized on the sink.
+ */
+class BinaryRequestLogSink implements RequestLogSink
+{
+    private static final Log LOG = Log.findLog();
+
+    private final OutputStream out;
+    private final boolean flushEachWrite;
+    private final boolean [] numeric;
+    private final List<Map<String, Integer>> dictionaries;
+
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(512);
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(8);
+
+    /** Parser state, lines may in theory be split over multiple writes. */
+    private final StringBuilder value = new StringBuilder(128);
+    private int field = 0;
+    private boolean escaped = false;
+    private boolean nullValue = false;
+
+    private boolean failed = false;
+
+    BinaryRequestLogSink(final OutputStream out, final List<String> fieldNames, final boolean [] numeric, final boolean flushEachWrite)
+    {
+        Preconditions.checkArgument(fieldNames.size() == numeric.length, "need a type for every field");
+
+        this.out = out;
+        this.flushEachWrite = flushEachWrite;
+        this.numeric = numeric;
+        this.dictionaries = new ArrayList<Map<String, Integer>>(numeric.length);
+        for (int i = 0; i < numeric.length; i++) {
+            dictionaries.add(new HashMap<String, Integer>());
+        }
+
+        record.write(BinaryRequestLogFormat.RECORD_HEADER);
+        writeVarLong(record, BinaryRequestLogFormat.MAGIC);
+        writeVarLong(record, BinaryRequestLogFormat.VERSION);
+        writeVarLong(record, fieldNames.size());
+        for (int i = 0; i < numeric.length; i++) {
+            writeString(record, fieldNames.get(i));
+            record.write(numeric[i] ? BinaryRequestLogFormat.FIELD_NUMERIC : 0);
+        }
+        writeRecord();
+        startRow();
+    }
+
+    @Override
+    public synchronized void write(final char [] chars, final int offset, final int length)
+    {
+        for (int i = offset; i < offset + length; i++) {
+            final char c = chars[i];
+            if (escaped) {
+                escaped = false;
+                switch (c) {
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'N':
+                        nullValue = true;
+                        break;
+                    default:
+                        value.append(c);
+                }
+            }
+            else if (c == '\\') {
+                escaped = true;
+            }
+            else if (c == '\t') {
+                endValue();
+            }
+            else if (c == '\n') {
+                endValue();
+                endRow();
+            }
+            else {
+                value.append(c);
+            }
+        }
+
+        if (flushEachWrite) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush()
+    {
+        try {
+            out.flush();
+        }
+        catch (IOException e) {
+            reportFailure(e);
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            LOG.warn(e, "Could not close binary request log");
+        }
+    }
+
+    private void startRow()
+    {
+        record.reset();
+        record.write(BinaryRequestLogFormat.RECORD_ROW);
+        field = 0;
+    }
+
+    private void endValue()
+    {
+        // Extra values of a malformed line are dropped, the header defines the fields.
+        if (field < numeric.length) {
+            if (nullValue) {
+                record.write(BinaryRequestLogFormat.VALUE_NULL);
+            }
+            else {
+                writeValue();
+            }
+        }
+        field++;
+        value.setLength(0);
+        nullValue = false;
+    }
+
+    private void endRow()
+    {
+        for (; field < numeric.length; field++) {
+            record.write(BinaryRequestLogFormat.VALUE_NULL);
+        }
+        writeRecord();
+        startRow();
+    }
+
+    private void writeValue()
+    {
+        if (numeric[field]) {
+            final long number = parseCanonicalLong(value);
+            if (number != Long.MIN_VALUE) {
+                record.write(BinaryRequestLogFormat.VALUE_LONG);
+                writeVarLong(record, (number << 1) ^ (number >> 63));
+                return;
+            }
+        }
+
+        if (value.length() > BinaryRequestLogFormat.MAX_DICTIONARY_VALUE_LENGTH) {
+            record.write(BinaryRequestLogFormat.VALUE_STRING);
+            writeString(record, value);
+            return;
+        }
+
+        final Map<String, Integer> dictionary = dictionaries.get(field);
+        final String text = value.toString();
+        final Integer reference = dictionary.get(text);
+        if (reference != null) {
+            record.write(BinaryRequestLogFormat.VALUE_REFERENCE);
+            writeVarLong(record, reference);
+        }
+        else if (dictionary.size() < BinaryRequestLogFormat.MAX_DICTIONARY_SIZE) {
+            dictionary.put(text, dictionary.size());
+            record.write(BinaryRequestLogFormat.VALUE_DEFINE);
+            writeString(record, text);
+        }
+        else {
+            record.write(BinaryRequestLogFormat.VALUE_STRING);
+            writeString(record, text);
+        }
+    }
+
+    private void writeRecord()
+    {
+        frame.reset();
+        writeVarLong(frame, record.size());
+        try {
+            frame.writeTo(out);
+            record.writeTo(out);
+            failed = false;
+        }
+        catch (IOException e) {
+            reportFailure(e);
+        }
+    }
+
+    private void reportFailure(final IOException e)
+    {
+        // Report once per outage, not for every record.
+        if (!failed) {
+            failed = true;
+            LOG.warn(e, "Could not write binary request log");
+        }
+    }
+
+    /**
+     * Parses a number that prints back exactly as given, Long.MIN_VALUE for anything else.
+     */
+    static long parseCanonicalLong(final CharSequence text)
+    {
+        final int length = text.length();
+        final boolean negative = length > 0 && text.charAt(0) == '-';
+        final int start = negative ? 1 : 0;
+        final int digits = length - start;
+        if (digits == 0 || digits > 18 || (digits > 1 && text.charAt(start) == '0') || (negative && text.charAt(start) == '0')) {
+            return Long.MIN_VALUE;
+        }
+
+        long result = 0;
+        for (int i = start; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    static void writeVarLong(final ByteArrayOutputStream out, final long value)
+    {
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            out.write((int) ((remaining & 0x7f) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private static void writeString(final ByteArrayOutputStream out, final CharSequence text)
+    {
+        final byte [] bytes = text.toString().getBytes(Charsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Encodes request log text as UTF-8 straight into direct buffers and writes them to a file channel with
+ * a single gathering write. Records are group committed: they are written out once enough records are
+ * pending, when the commit interval passes or when the sink is flushed, optionally followed by an fsync.
+ */
+class ChannelRequestLogSink implements RequestLogSink
+{
+    private static final Log LOG = Log.findLog();
+
+    /** Buffers beyond this are left to the garbage collector after a commit instead of being reused. */
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final int bufferSize;
+    private final int commitRecords;
+    private final boolean forceOnCommit;
+
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<ByteBuffer>();
+    private final List<ByteBuffer> filledBuffers = new ArrayList<ByteBuffer>();
+    private ByteBuffer [] writeBuffers = new ByteBuffer[4];
+    private ByteBuffer currentBuffer;
+
+    private int pendingRecords = 0;
+    private boolean closed = false;
+    private ScheduledFuture<?> commitTask = null;
+
+    ChannelRequestLogSink(final FileChannel channel, final int bufferSize, final int commitRecords, final boolean forceOnCommit)
+    {
+        Preconditions.checkArgument(bufferSize >= 64, "buffer size must be at least 64 bytes, was %s", bufferSize);
+        Preconditions.checkArgument(commitRecords > 0, "commit records must be at least 1, was %s", commitRecords);
+
+        this.channel = channel;
+        this.bufferSize = bufferSize;
+        this.commitRecords = commitRecords;
+        this.forceOnCommit = forceOnCommit;
+        this.encoder = Charsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.currentBuffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Commits pending records at least every interval, no matter how few there are.
+     */
+    synchronized void scheduleCommits(final ScheduledExecutorService executor, final long intervalMillis)
+    {
+        Preconditions.checkArgument(intervalMillis > 0, "commit interval must be positive, was %s", intervalMillis);
+        Preconditions.checkState(commitTask == null, "commits are already scheduled");
+
+        commitTask = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run()
+            {
+                flush();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void write(final char [] chars, final int offset, final int length)
+    {
+        if (closed) {
+            return;
+        }
+
+        final CharBuffer in = CharBuffer.wrap(chars, offset, length);
+        while (encoder.encode(in, currentBuffer, true).isOverflow()) {
+            nextBuffer();
+        }
+        while (encoder.flush(currentBuffer) == CoderResult.OVERFLOW) {
+            nextBuffer();
+        }
+        encoder.reset();
+
+        if (++pendingRecords >= commitRecords) {
+            commit();
+        }
+    }
+
+    @Override
+    public synchronized void flush()
+    {
+        commit();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+
+        if (commitTask != null) {
+            commitTask.cancel(false);
+            commitTask = null;
+        }
+
+        commit();
+        closed = true;
+
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            LOG.warn(e, "Could not close request log channel");
+        }
+    }
+
+    private void nextBuffer()
+    {
+        filledBuffers.add(currentBuffer);
+        final ByteBuffer pooledBuffer = bufferPool.pollFirst();
+        currentBuffer = pooledBuffer != null ? pooledBuffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private void commit()
+    {
+        if (pendingRecords == 0 || closed) {
+            return;
+        }
+
+        final int bufferCount = filledBuffers.size() + 1;
+        if (writeBuffers.length < bufferCount) {
+            writeBuffers = new ByteBuffer[Math.max(bufferCount, writeBuffers.length * 2)];
+        }
+
+        long remaining = 0L;
+        for (int i = 0; i < bufferCount; i++) {
+            final ByteBuffer buffer = (i < bufferCount - 1) ? filledBuffers.get(i) : currentBuffer;
+            buffer.flip();
+            remaining += buffer.remaining();
+            writeBuffers[i] = buffer;
+        }
+
+        try {
+            while (remaining > 0) {
+                remaining -= channel.write(writeBuffers, 0, bufferCount);
+            }
+            if (forceOnCommit) {
+                channel.force(false);
+            }
+        }
+        catch (IOException e) {
+            LOG.warn(e, "Could not write %d request log records", pendingRecords);
+        }
+        finally {
+            for (int i = 0; i < bufferCount; i++) {
+                writeBuffers[i].clear();
+                writeBuffers[i] = null;
+            }
+            for (ByteBuffer buffer : filledBuffers) {
+                if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                    bufferPool.addLast(buffer);
+                }
+            }
+            filledBuffers.clear();
+            pendingRecords = 0;
+        }
+    }
+}
@@ -15,134 +15,390 @@
  */
 package com.nesscomputing.httpserver.log.file;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
-import org.apache.commons.lang3.ObjectUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.server.Request;
-import org.eclipse.jetty.server.RequestLog;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.skife.config.TimeSpan;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.nesscomputing.httpserver.HttpServerConfig;
-import com.nesscomputing.httpserver.log.LogFields;
-import com.nesscomputing.httpserver.log.LogFields.LogField;
+import com.nesscomputing.httpserver.jmx.MBeanExporter;
+import com.nesscomputing.httpserver.log.RecordingRequestLog;
+import com.nesscomputing.httpserver.log.RequestAggregate;
+import com.nesscomputing.httpserver.log.RequestAggregator;
+import com.nesscomputing.httpserver.log.RequestRecord;
+import com.nesscomputing.httpserver.log.RequestRecorder;
 import com.nesscomputing.logging.Log;
 
 /**
- * A simple non-rolling access log writer, which writes out to a tab separated file.
- * In general, this will be configured via a {@link HttpServerConfig}.
+ * An access log writer, which writes out to a file as tab separated lines, JSON lines or a compact binary
+ * format, see {@link RequestLogFormat}. In general, this will be configured via a {@link HttpServerConfig}.
+ *
+ * With an aggregation interval, the log gets one line per route, method, status and interval instead of one
+ * line per request.
+ *
+ * In async mode, lines are written by a dedicated writer thread and request threads never wait for the disk.
+ * In striped mode, the log is spread over a number of segment files (<tt>access.log.0</tt>, <tt>access.log.1</tt>, ...)
+ * so that request threads do not contend on a single writer. Use {@link RequestLogMerger} to combine them.
+ * With the {@link RequestLogOutput#CHANNEL} output, records are encoded into direct buffers and group committed
+ * to a file channel. The log files can be rotated by size and/or time, rotated files are compressed and
+ * expired in the background.
  */
 @Singleton
-public class FileRequestLog extends AbstractLifeCycle implements RequestLog
+public class FileRequestLog extends AbstractLifeCycle implements RecordingRequestLog
 {
     private static final Log LOG = Log.findLog();
 
-    private final List<String> logFields;
-    private final Set<String> blackList;
+    /** Lines longer than this are formatted fine, but the buffer is not kept around for the next request. */
+    private static final int MAX_RETAINED_LINE_LENGTH = 16384;
+
+    private static final ThreadLocal<LineBuffer> LINE_BUFFER = new ThreadLocal<LineBuffer>() {
+        @Override
+        protected LineBuffer initialValue()
+        {
+            return new LineBuffer();
+        }
+    };
+
+    private final FileRequestLogConfig requestLogConfig;
+    private final RequestRecorder recorder;
+    private final List<String> fieldNames;
+    private final boolean [] numeric;
+    private final RequestLogEncoder encoder;
+    private final int filterIndex;
+    private final RequestAggregator aggregator;
     private final File requestLogFile;
 
-    private final AtomicReference<PrintWriter> requestLogWriterHolder = new AtomicReference<PrintWriter>();
-    private final Map<String, LogField> knownFields;
+    private final AtomicReference<RequestLogSink> requestLogSinkHolder = new AtomicReference<RequestLogSink>();
+
+    private MBeanServer mbeanServer = null;
+    private ObjectName mbeanName = null;
+    private ScheduledExecutorService commitExecutor = null;
+    private ScheduledExecutorService rotationExecutor = null;
 
     @Inject
     public FileRequestLog(final FileRequestLogConfig requestLogConfig,
-                          final Map<String, LogField> knownFields)
+                          final RequestRecorder recorder)
     {
-        final List<String> logFields = requestLogConfig.getLogFields();
-        LogFields.validateLogFields(knownFields, logFields);
-        this.logFields = logFields;
-        this.blackList = requestLogConfig.getBlacklist();
+        this.requestLogConfig = requestLogConfig;
+        this.recorder = recorder;
+
+        final TimeSpan aggregateInterval = requestLogConfig.getAggregateInterval();
+        final int [] columns;
+        if (aggregateInterval != null) {
+            // Aggregates bring their own records, nothing needs to be added to the request record.
+            this.aggregator = new RequestAggregator(aggregateInterval.getMillis());
+            this.fieldNames = RequestAggregate.FIELD_NAMES;
+            columns = new int[fieldNames.size()];
+            this.numeric = new boolean[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = i;
+                numeric[i] = RequestAggregate.isNumeric(i);
+            }
+        }
+        else {
+            this.aggregator = null;
+            this.fieldNames = requestLogConfig.getLogFields();
+            columns = recorder.addFields(fieldNames);
+            this.numeric = new boolean[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                numeric[i] = recorder.isNumeric(columns[i]);
+            }
+        }
+        this.encoder = requestLogConfig.getFormat().newEncoder(fieldNames, columns, numeric);
+        this.filterIndex = recorder.addFilter(requestLogConfig.getBlacklist(), requestLogConfig.getFilter());
         this.requestLogFile = new File(requestLogConfig.getFileName());
-        this.knownFields = knownFields;
+    }
+
+    @Inject(optional=true)
+    void setMBeanServer(final MBeanServer mbeanServer)
+    {
+        this.mbeanServer = mbeanServer;
     }
 
     @Override
     public void doStart()
     {
-        if (requestLogFile.exists() && !requestLogFile.isFile()) {
-            LOG.warn("Log file \"%s\" exists, but is not a file!", requestLogFile.getAbsolutePath());
-            return;
-        }
-
         final File logPath = requestLogFile.getParentFile();
         if (!logPath.mkdirs() && !logPath.exists()) {
             LOG.warn("Cannot create \"%s\" and path does not already exist!", logPath.getAbsolutePath());
         }
 
-        LOG.info("Opening request log at \"%s\"", requestLogFile.getAbsolutePath());
+        if (aggregator != null) {
+            aggregator.start(new RequestAggregator.Listener() {
+                @Override
+                public void aggregated(final List<RequestAggregate> aggregates)
+                {
+                    for (RequestAggregate aggregate : aggregates) {
+                        write(aggregate.toRecord());
+                    }
+                }
+            }, "request-log-aggregator");
+        }
+
+        final boolean binary = requestLogConfig.getFormat() == RequestLogFormat.BINARY;
+        if (binary && requestLogConfig.getOutput() == RequestLogOutput.CHANNEL) {
+            LOG.warn("Binary request log is written by its own sink, ignoring channel output!");
+        }
+
+        final int stripes = requestLogConfig.getStripes();
+        if (stripes > 0 && binary) {
+            // The write time prefix of the stripes does not fit into binary records.
+            LOG.warn("Binary request log can not be striped, ignoring stripes!");
+        }
+        else if (stripes > 0) {
+            if (requestLogConfig.isAsync()) {
+                LOG.warn("Request log is striped, ignoring async mode!");
+            }
+            startStriped(stripes);
+            return;
+        }
+
+        final RequestLogSink fileSink = openFileSink(requestLogFile, !requestLogConfig.isAsync());
+        if (fileSink == null) {
+            return;
+        }
+
+        if (requestLogConfig.isAsync()) {
+            final AsyncRequestLogSink asyncSink = new AsyncRequestLogSink(fileSink,
+                                                                          requestLogConfig.getAsyncQueueSize(),
+                                                                          requestLogConfig.getAsyncBatchSize(),
+                                                                          requestLogConfig.getAsyncOverflowPolicy(),
+                                                                          "request-log-writer");
+            asyncSink.start();
+            mbeanName = MBeanExporter.export(mbeanServer, "FileRequestLog", "async", asyncSink);
+            setSink(asyncSink);
+        }
+        else {
+            setSink(fileSink);
+        }
+    }
+
+    private void startStriped(final int stripes)
+    {
+        final RequestLogSink [] stripeSinks = new RequestLogSink[stripes];
+        for (int i = 0; i < stripes; i++) {
+            stripeSinks[i] = openFileSink(new File(requestLogFile.getPath() + "." + i), true);
+            if (stripeSinks[i] == null) {
+                for (int j = 0; j < i; j++) {
+                    Closeables.closeQuietly(stripeSinks[j]);
+                }
+                return;
+            }
+        }
+        setSink(new StripedRequestLogSink(stripeSinks));
+    }
+
+    private RequestLogSink openFileSink(final File file, final boolean flushEachWrite)
+    {
+        final RequestLogSink fileSink = openSegmentSink(file, flushEachWrite);
+
+        final long rotateSize = requestLogConfig.getRotateSize();
+        final TimeSpan rotateInterval = requestLogConfig.getRotateInterval();
+        final long rotateIntervalMillis = rotateInterval == null ? 0L : rotateInterval.getMillis();
+        if (fileSink == null || (rotateSize <= 0 && rotateIntervalMillis <= 0)) {
+            return fileSink;
+        }
+
+        final RotatingRequestLogSink.SinkOpener sinkOpener = new RotatingRequestLogSink.SinkOpener() {
+            @Override
+            public RequestLogSink open(final File newFile)
+            {
+                return openSegmentSink(newFile, flushEachWrite);
+            }
+        };
+
+        synchronized (this) {
+            if (rotationExecutor == null) {
+                rotationExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("request-log-rotation").setDaemon(true).build());
+            }
+        }
+
+        return new RotatingRequestLogSink(file, fileSink, sinkOpener,
+                                          rotateSize, rotateIntervalMillis,
+                                          requestLogConfig.getCompression(),
+                                          requestLogConfig.getMaxHistory(),
+                                          rotationExecutor);
+    }
+
+    private RequestLogSink openSegmentSink(final File file, final boolean flushEachWrite)
+    {
+        if (file.exists() && !file.isFile()) {
+            LOG.warn("Log file \"%s\" exists, but is not a file!", file.getAbsolutePath());
+            return null;
+        }
+
+        LOG.info("Opening request log at \"%s\"", file.getAbsolutePath());
         try {
-            setWriter(new PrintWriter(new OutputStreamWriter(new FileOutputStream(requestLogFile, true), Charsets.UTF_8), true));
+            if (requestLogConfig.getFormat() == RequestLogFormat.BINARY) {
+                return new BinaryRequestLogSink(new BufferedOutputStream(new FileOutputStream(file, true), 65536), fieldNames, numeric, flushEachWrite);
+            }
+            if (requestLogConfig.getOutput() == RequestLogOutput.CHANNEL) {
+                return openChannelSink(file);
+            }
 
+            final PrintWriter printWriter = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8));
+            return new WriterRequestLogSink(printWriter, flushEachWrite);
         } catch (FileNotFoundException e) {
-            LOG.error(e, "Could not open request log \"%s\"", requestLogFile.getAbsolutePath());
+            LOG.error(e, "Could not open request log \"%s\"", file.getAbsolutePath());
+            return null;
+        }
+    }
+
+    private RequestLogSink openChannelSink(final File file) throws FileNotFoundException
+    {
+        final ChannelRequestLogSink channelSink = new ChannelRequestLogSink(new FileOutputStream(file, true).getChannel(),
+                                                                            requestLogConfig.getChannelBufferSize(),
+                                                                            requestLogConfig.getCommitRecords(),
+                                                                            requestLogConfig.isFsync());
+
+        final TimeSpan commitInterval = requestLogConfig.getCommitInterval();
+        if (commitInterval != null && commitInterval.getMillis() > 0) {
+            synchronized (this) {
+                if (commitExecutor == null) {
+                    commitExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("request-log-commit").setDaemon(true).build());
+                }
+            }
+            channelSink.scheduleCommits(commitExecutor, commitInterval.getMillis());
         }
+        return channelSink;
     }
 
     @VisibleForTesting
     void setWriter(final PrintWriter printWriter)
     {
-        if (!requestLogWriterHolder.compareAndSet(null, printWriter)) {
-            Closeables.closeQuietly(printWriter);
+        setSink(new WriterRequestLogSink(printWriter, true));
+    }
+
+    @VisibleForTesting
+    void setSink(final RequestLogSink requestLogSink)
+    {
+        if (!requestLogSinkHolder.compareAndSet(null, requestLogSink)) {
+            Closeables.closeQuietly(requestLogSink);
+            // The commits and rotations were scheduled for the discarded sink.
+            shutdownExecutors();
         }
     }
 
     @Override
     public void doStop()
     {
-        final PrintWriter requestLogWriter = requestLogWriterHolder.getAndSet(null);
-        if (requestLogWriter != null) {
+        if (aggregator != null) {
+            // Write out whatever was aggregated so far while the sink is still open.
+            aggregator.stop();
+        }
+
+        MBeanExporter.unexport(mbeanServer, mbeanName);
+        mbeanName = null;
+
+        final RequestLogSink requestLogSink = requestLogSinkHolder.getAndSet(null);
+        if (requestLogSink != null) {
             LOG.info("Closing request log \"%s\"", requestLogFile.getAbsolutePath());
-            Closeables.closeQuietly(requestLogWriter);
+            Closeables.closeQuietly(requestLogSink);
+        }
+
+        shutdownExecutors();
+    }
+
+    private synchronized void shutdownExecutors()
+    {
+        if (commitExecutor != null) {
+            commitExecutor.shutdownNow();
+            commitExecutor = null;
+        }
+        if (rotationExecutor != null) {
+            // Let pending compression finish, but do not wait for it.
+            rotationExecutor.shutdown();
+            rotationExecutor = null;
         }
     }
 
+    @Override
+    public int getFilterIndex()
+    {
+        return filterIndex;
+    }
+
     @Override
     public void log(final Request request, final Response response)
     {
-        final String requestUri = request.getRequestURI();
+        if (recorder.accept(filterIndex, request, response) && requestLogSinkHolder.get() != null) {
+            log(recorder.evaluate(request, response), request, response);
+        }
+    }
 
-        for (String blackListEntry : blackList) {
-            if (StringUtils.startsWith(requestUri, blackListEntry)) {
-                return;
-            }
+    @Override
+    public void log(final RequestRecord record, final Request request, final Response response)
+    {
+        if (aggregator != null) {
+            aggregator.record(request, response);
+        }
+        else {
+            write(record);
         }
+    }
 
-        final PrintWriter requestLogWriter = requestLogWriterHolder.get();
-        if (requestLogWriter != null) {
-            synchronized (this) {
-                for (Iterator<String> it = logFields.iterator(); it.hasNext(); ) {
-                    // Parse out fields that have parameters e.g. header:X-Trumpet-Track, and print
-                    String[] chunks = StringUtils.split(it.next(), ":");
-
-                    final LogField field = knownFields.get(chunks[0]);
-                    if (chunks.length == 1) {
-                        requestLogWriter.print(ObjectUtils.toString(field.log(request, response, null)));
-                    } else if (chunks.length == 2) {
-                        requestLogWriter.print(ObjectUtils.toString(field.log(request, response, chunks[1])));
-                    }
+    private void write(final RequestRecord record)
+    {
+        final RequestLogSink requestLogSink = requestLogSinkHolder.get();
+        if (requestLogSink != null) {
+            // Format outside of the sink, which only has to take the finished line.
+            final LineBuffer lineBuffer = LINE_BUFFER.get();
+            final StringBuilder line = lineBuffer.getLine();
+            encoder.encode(record, line);
 
-                    if (it.hasNext()) {
-                        requestLogWriter.print("\t");
-                    }
-                }
-                requestLogWriter.println();
+            final int length = line.length();
+            final char [] chars = lineBuffer.getChars(length);
+            line.getChars(0, length, chars, 0);
+
+            requestLogSink.write(chars, 0, length);
+        }
+    }
+
+    /**
+     * Per-thread formatting buffers, reused from request to request.
+     */
+    private static final class LineBuffer
+    {
+        private StringBuilder line = new StringBuilder(512);
+        private char [] chars = new char[512];
+
+        StringBuilder getLine()
+        {
+            if (line.capacity() > MAX_RETAINED_LINE_LENGTH) {
+                line = new StringBuilder(512);
+            }
+            else {
+                line.setLength(0);
+            }
+            return line;
+        }
+
+        char [] getChars(final int length)
+        {
+            if (chars.length < length || chars.length > MAX_RETAINED_LINE_LENGTH) {
+                chars = new char[Math.max(length, 512)];
             }
+            return chars;
         }
     }
 }
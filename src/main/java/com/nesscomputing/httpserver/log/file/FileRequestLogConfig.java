@@ -20,10 +20,13 @@ import java.util.Set;
 
 import org.skife.config.Config;
 import org.skife.config.Default;
+import org.skife.config.DefaultNull;
+import org.skife.config.TimeSpan;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.nesscomputing.httpserver.log.OverflowPolicy;
 
 public abstract class FileRequestLogConfig
 {
@@ -37,6 +40,14 @@ public abstract class FileRequestLogConfig
         return ImmutableSet.of("/selftest", "/application.wadl");
     }
 
+    /** Filter expression, see {@link com.nesscomputing.httpserver.log.RequestLogFilter} for the syntax. */
+    @Config("filter")
+    @DefaultNull
+    public String getFilter()
+    {
+        return null;
+    }
+
     @Config("enabled")
     @Default("false")
     public boolean isEnabled()
@@ -56,5 +67,170 @@ public abstract class FileRequestLogConfig
     public List<String> getLogFields() {
         return ImmutableList.copyOf(Splitter.on(",").split(REQUEST_LOG_FIELDS_DEFAULT));
     }
-}
 
+    /**
+     * Log one line per route, method, status and interval (e.g. 1m) with counts, bytes and latency percentiles
+     * instead of one line per request. Unset, every request is logged.
+     */
+    @Config("aggregate-interval")
+    @DefaultNull
+    public TimeSpan getAggregateInterval()
+    {
+        return null;
+    }
+
+
+    /**
+     * How records are laid out in the file.
+     */
+    @Config("format")
+    @Default("TSV")
+    public RequestLogFormat getFormat()
+    {
+        return RequestLogFormat.TSV;
+    }
+
+    /**
+     * Hand finished records to a dedicated writer thread instead of writing them on the request thread.
+     */
+    @Config("async")
+    @Default("false")
+    public boolean isAsync()
+    {
+        return false;
+    }
+
+    /**
+     * Number of records that can wait for the writer thread. Rounded up to the next power of two.
+     */
+    @Config("async-queue-size")
+    @Default("8192")
+    public int getAsyncQueueSize()
+    {
+        return 8192;
+    }
+
+    /**
+     * Maximum number of records the writer thread writes and flushes in one go.
+     */
+    @Config("async-batch-size")
+    @Default("512")
+    public int getAsyncBatchSize()
+    {
+        return 512;
+    }
+
+    /**
+     * Whether records are dropped or request threads wait when the queue is full.
+     */
+    @Config("async-overflow-policy")
+    @Default("DROP")
+    public OverflowPolicy getAsyncOverflowPolicy()
+    {
+        return OverflowPolicy.DROP;
+    }
+
+    /**
+     * Number of segment files the log is spread over, zero writes a single file. Each thread always writes
+     * to the same segment, the segments can be merged back into one log with {@link RequestLogMerger}.
+     */
+    @Config("stripes")
+    @Default("0")
+    public int getStripes()
+    {
+        return 0;
+    }
+
+    /**
+     * How records are written to the file.
+     */
+    @Config("output")
+    @Default("WRITER")
+    public RequestLogOutput getOutput()
+    {
+        return RequestLogOutput.WRITER;
+    }
+
+    /**
+     * Size of the direct buffers records are encoded into when writing through a file channel.
+     */
+    @Config("channel-buffer-size")
+    @Default("65536")
+    public int getChannelBufferSize()
+    {
+        return 65536;
+    }
+
+    /**
+     * Number of records collected before they are committed to a file channel. In async mode, every batch
+     * is committed as well.
+     */
+    @Config("commit-records")
+    @Default("1")
+    public int getCommitRecords()
+    {
+        return 1;
+    }
+
+    /**
+     * Longest time records wait to be committed to a file channel. Unset, records only wait for
+     * enough other records to arrive.
+     */
+    @Config("commit-interval")
+    @DefaultNull
+    public TimeSpan getCommitInterval()
+    {
+        return null;
+    }
+
+    /**
+     * Force every commit to a file channel to disk.
+     */
+    @Config("fsync")
+    @Default("false")
+    public boolean isFsync()
+    {
+        return false;
+    }
+
+    /**
+     * Rotate the log file once roughly this many bytes have been written to it. 0 disables size based rotation.
+     */
+    @Config("rotate-size")
+    @Default("0")
+    public long getRotateSize()
+    {
+        return 0L;
+    }
+
+    /**
+     * Rotate the log file on every multiple of this interval (in UTC, e.g. every full hour for 1h).
+     * Unset, the file is not rotated on time.
+     */
+    @Config("rotate-interval")
+    @DefaultNull
+    public TimeSpan getRotateInterval()
+    {
+        return null;
+    }
+
+    /**
+     * How rotated log files are compressed.
+     */
+    @Config("compression")
+    @Default("NONE")
+    public RequestLogCompression getCompression()
+    {
+        return RequestLogCompression.NONE;
+    }
+
+    /**
+     * Number of rotated log files to keep, older ones are removed. 0 keeps all of them.
+     */
+    @Config("max-history")
+    @Default("0")
+    public int getMaxHistory()
+    {
+        return 0;
+    }
+}
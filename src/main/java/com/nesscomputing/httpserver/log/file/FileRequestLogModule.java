@@ -16,14 +16,10 @@
 package com.nesscomputing.httpserver.log.file;
 
 
-import org.eclipse.jetty.server.handler.RequestLogHandler;
-
 import com.google.inject.AbstractModule;
-import com.google.inject.Inject;
-import com.google.inject.Provider;
 import com.google.inject.Scopes;
 import com.nesscomputing.config.Config;
-import com.nesscomputing.httpserver.HttpServerHandlerBinder;
+import com.nesscomputing.httpserver.log.RequestRecordModule;
 
 public class FileRequestLogModule extends AbstractModule
 {
@@ -42,26 +38,7 @@ public class FileRequestLogModule extends AbstractModule
         if (fileRequestLogConfig.isEnabled()) {
             bind (FileRequestLogConfig.class).toInstance(fileRequestLogConfig);
             bind(FileRequestLog.class).in(Scopes.SINGLETON);
-            HttpServerHandlerBinder.bindLoggingHandler(binder()).toProvider(HandlerProvider.class);
-        }
-    }
-
-    public static class HandlerProvider implements Provider<RequestLogHandler>
-    {
-        private final FileRequestLog fileRequestLog;
-
-        @Inject
-        public HandlerProvider(final FileRequestLog fileRequestLog)
-        {
-            this.fileRequestLog = fileRequestLog;
-        }
-
-        @Override
-        public RequestLogHandler get()
-        {
-            final RequestLogHandler handler = new RequestLogHandler();
-            handler.setRequestLog(fileRequestLog);
-            return handler;
+            RequestRecordModule.bindRequestLog(binder()).to(FileRequestLog.class);
         }
     }
 }
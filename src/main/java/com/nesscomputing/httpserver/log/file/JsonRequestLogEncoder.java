@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.nesscomputing.httpserver.log.RequestRecord;
+
+/**
+ * Writes every record as a JSON object on a line of its own. The keys are computed up front and the
+ * values are escaped straight from the record into the line, so encoding a record does not create
+ * any objects.
+ */
+class JsonRequestLogEncoder implements RequestLogEncoder
+{
+    private static final char [] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final int [] columns;
+    private final boolean [] numeric;
+
+    /** The opening brace or separating comma, followed by the quoted key and colon. */
+    private final String [] keyPrefixes;
+
+    JsonRequestLogEncoder(final List<String> fieldNames, final int [] columns, final boolean [] numeric)
+    {
+        Preconditions.checkArgument(fieldNames.size() == columns.length && numeric.length == columns.length, "need a name and type for every column");
+
+        this.columns = columns;
+        this.numeric = numeric;
+        this.keyPrefixes = new String[columns.length];
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            sb.setLength(0);
+            sb.append(i == 0 ? '{' : ',');
+            appendQuoted(fieldNames.get(i), sb);
+            sb.append(':');
+            keyPrefixes[i] = sb.toString();
+        }
+    }
+
+    @Override
+    public void encode(final RequestRecord record, final StringBuilder line)
+    {
+        if (columns.length == 0) {
+            line.append('{');
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            line.append(keyPrefixes[i]);
+
+            final int column = columns[i];
+            if (record.isNull(column)) {
+                line.append("null");
+            }
+            else if (numeric[i]) {
+                record.appendTo(column, line);
+            }
+            else {
+                line.append('"');
+                final int length = record.length(column);
+                for (int j = 0; j < length; j++) {
+                    appendEscaped(record.charAt(column, j), line);
+                }
+                line.append('"');
+            }
+        }
+        line.append("}\n");
+    }
+
+    static void appendQuoted(final CharSequence value, final StringBuilder sb)
+    {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            appendEscaped(value.charAt(i), sb);
+        }
+        sb.append('"');
+    }
+
+    private static void appendEscaped(final char c, final StringBuilder sb)
+    {
+        switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                // Line and paragraph separators are valid JSON, but break line oriented tools written in JavaScript.
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    sb.append("\\u")
+                        .append(HEX_DIGITS[(c >> 12) & 0xf])
+                        .append(HEX_DIGITS[(c >> 8) & 0xf])
+                        .append(HEX_DIGITS[(c >> 4) & 0xf])
+                        .append(HEX_DIGITS[c & 0xf]);
+                }
+                else {
+                    sb.append(c);
+                }
+        }
+    }
+}
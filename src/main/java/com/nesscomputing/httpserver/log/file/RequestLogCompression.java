@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+
+/**
+ * How rotated request log files are compressed.
+ */
+public enum RequestLogCompression
+{
+    NONE(""),
+    GZIP(".gz"),
+    LZ4(".lz4");
+
+    private final String extension;
+
+    private RequestLogCompression(final String extension)
+    {
+        this.extension = extension;
+    }
+
+    public String getExtension()
+    {
+        return extension;
+    }
+
+    OutputStream compress(final OutputStream out) throws IOException
+    {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, 65536);
+            case LZ4:
+                return new LZ4BlockOutputStream(out);
+            default:
+                return out;
+        }
+    }
+
+    InputStream decompress(final InputStream in) throws IOException
+    {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, 65536);
+            case LZ4:
+                return new LZ4BlockInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Returns the compression of a file, judging by its name.
+     */
+    static RequestLogCompression forFileName(final String fileName)
+    {
+        for (RequestLogCompression compression : values()) {
+            if (compression != NONE && fileName.endsWith(compression.extension)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+}
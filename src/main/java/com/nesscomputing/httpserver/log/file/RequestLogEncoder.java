@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import com.nesscomputing.httpserver.log.RequestRecord;
+
+/**
+ * Turns request records into lines of a request log file.
+ */
+interface RequestLogEncoder
+{
+    /**
+     * Appends the record, including the line terminator, to the line.
+     */
+    void encode(RequestRecord record, StringBuilder line);
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.util.List;
+
+/**
+ * How request records are laid out in the log file.
+ */
+public enum RequestLogFormat
+{
+    /** One tab separated line per request. Values are not escaped, fields without a value are empty. */
+    TSV,
+
+    /** One JSON object per line, keyed by field name. Numeric fields are written as numbers, fields without a value as null. */
+    JSON,
+
+    /**
+     * Length prefixed binary records, with repeated values of a field replaced by references into a per-file dictionary.
+     * Use {@link BinaryRequestLogReader} or {@link BinaryRequestLogConverter} to read the files.
+     */
+    BINARY;
+
+    RequestLogEncoder newEncoder(final List<String> fieldNames, final int [] columns, final boolean [] numeric)
+    {
+        switch (this) {
+            case JSON:
+                return new JsonRequestLogEncoder(fieldNames, columns, numeric);
+            case BINARY:
+                return new BinaryRequestLogEncoder(columns);
+            default:
+                return new TsvRequestLogEncoder(columns);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+
+/**
+ * Merges the segments written by a striped {@link FileRequestLog} back into a single log, ordered by the
+ * time each line was written. Every segment is already in order, so this is a plain k-way merge which only
+ * keeps one line per segment in memory.
+ *
+ * <pre>java com.nesscomputing.httpserver.log.file.RequestLogMerger [-t] &lt;output file&gt; &lt;segment&gt;...</pre>
+ *
+ * The write time prefix is removed from the merged lines unless <tt>-t</tt> is given.
+ */
+public final class RequestLogMerger
+{
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private RequestLogMerger()
+    {
+    }
+
+    public static void main(final String... args) throws IOException
+    {
+        int argIndex = 0;
+        boolean keepTimestamps = false;
+        if (args.length > 0 && "-t".equals(args[0])) {
+            keepTimestamps = true;
+            argIndex++;
+        }
+
+        if (args.length - argIndex < 2) {
+            System.err.println("Usage: RequestLogMerger [-t] <output file> <segment>...");
+            System.exit(1);
+        }
+
+        final File outputFile = new File(args[argIndex++]);
+        final List<Reader> segments = new ArrayList<Reader>();
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), Charsets.UTF_8));
+        try {
+            for (int i = argIndex; i < args.length; i++) {
+                segments.add(new InputStreamReader(new FileInputStream(args[i]), Charsets.UTF_8));
+            }
+            merge(segments, writer, keepTimestamps);
+        }
+        finally {
+            for (Reader segment : segments) {
+                Closeables.closeQuietly(segment);
+            }
+            Closeables.close(writer, false);
+        }
+    }
+
+    /**
+     * Merges the segments into the writer. Lines carrying the same write time keep the order of the
+     * segments they came from. A line without a write time prefix sorts as if it was written at the same
+     * time as the line before it in its segment. The readers are not closed.
+     */
+    public static void merge(final List<? extends Reader> segments, final Writer writer, final boolean keepTimestamps) throws IOException
+    {
+        final PriorityQueue<Segment> queue = new PriorityQueue<Segment>(Math.max(1, segments.size()));
+        for (int i = 0; i < segments.size(); i++) {
+            final Segment segment = new Segment(i, new BufferedReader(segments.get(i)));
+            if (segment.advance()) {
+                queue.add(segment);
+            }
+        }
+
+        for (Segment segment = queue.poll(); segment != null; segment = queue.poll()) {
+            final String line = segment.line;
+            if (keepTimestamps) {
+                writer.write(line);
+            }
+            else {
+                writer.write(line, segment.bodyOffset, line.length() - segment.bodyOffset);
+            }
+            writer.write(LINE_SEPARATOR);
+
+            if (segment.advance()) {
+                queue.add(segment);
+            }
+        }
+        writer.flush();
+    }
+
+    private static final class Segment implements Comparable<Segment>
+    {
+        private final int index;
+        private final BufferedReader reader;
+
+        private String line = null;
+        private long timestamp = 0L;
+        private int bodyOffset = 0;
+
+        Segment(final int index, final BufferedReader reader)
+        {
+            this.index = index;
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException
+        {
+            line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+
+            final int tab = line.indexOf('\t');
+            long value = 0L;
+            boolean valid = tab > 0 && tab < 20;
+            for (int i = 0; valid && i < tab; i++) {
+                final char c = line.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                }
+                else {
+                    valid = false;
+                }
+            }
+
+            if (valid) {
+                timestamp = value;
+                bodyOffset = tab + 1;
+            }
+            else {
+                bodyOffset = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo(final Segment other)
+        {
+            if (timestamp != other.timestamp) {
+                return timestamp < other.timestamp ? -1 : 1;
+            }
+            return index < other.index ? -1 : (index == other.index ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.Closeable;
+
+/**
+ * Destination for formatted request log text. Sinks deal with their own I/O errors, a failing
+ * sink must never fail the request that is being logged.
+ */
+public interface RequestLogSink extends Closeable
+{
+    /**
+     * Writes a chunk of log text, which consists of one or more complete, terminated lines. The
+     * sink does not hold on to the array after the call returns.
+     */
+    void write(char [] chars, int offset, int length);
+
+    /**
+     * Pushes any buffered text towards the underlying storage.
+     */
+    void flush();
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+
+import org.joda.time.DateTimeUtils;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.nesscomputing.logging.Log;
+
+/**
+ * Rotates a request log file by size and/or time. The file is renamed to <tt>&lt;name&gt;.yyyyMMdd-HHmmss</tt>
+ * (UTC) and a new file is opened in its place. All of that, as well as closing, compressing and expiring the
+ * rotated files, happens on a background thread. Request threads only ever switch to the new file, records
+ * that are still being written to the old file end up in the rotated file.
+ */
+class RotatingRequestLogSink implements RequestLogSink
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final DateTimeFormatter ROTATED_SUFFIX_FORMAT = DateTimeFormat.forPattern("yyyyMMdd-HHmmss").withZoneUTC();
+
+    private static final long RETIRE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RETIRE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Opens the sink for a new log file, returns null if the file could not be opened.
+     */
+    interface SinkOpener
+    {
+        @CheckForNull
+        RequestLogSink open(File file);
+    }
+
+    private final File file;
+    private final SinkOpener sinkOpener;
+    private final long maxSize;
+    private final RequestLogCompression compression;
+    private final int maxHistory;
+    private final ScheduledExecutorService executor;
+    private final Pattern rotatedFilePattern;
+
+    private final AtomicReference<Segment> currentSegment;
+    private final AtomicBoolean rotationPending = new AtomicBoolean(false);
+
+    private final Runnable rotateTask = new Runnable() {
+        @Override
+        public void run()
+        {
+            try {
+                // The file may have been rotated on time since this was requested.
+                if (currentSegment.get().size.get() >= maxSize) {
+                    rotate();
+                }
+            }
+            finally {
+                rotationPending.set(false);
+            }
+        }
+    };
+
+    private ScheduledFuture<?> intervalTask = null;
+    private boolean closed = false;
+
+    /**
+     * @param file The active log file.
+     * @param sink The sink already open for the active log file.
+     * @param maxSize Rotate once roughly this many bytes have been written to the file, 0 disables size based rotation.
+     * @param intervalMillis Rotate on every multiple of this interval (since the epoch, in UTC), 0 disables time based rotation.
+     * @param compression How rotated files are compressed.
+     * @param maxHistory Number of rotated files kept around, 0 keeps all of them.
+     * @param executor Runs rotation, compression and expiry.
+     */
+    RotatingRequestLogSink(final File file,
+                           final RequestLogSink sink,
+                           final SinkOpener sinkOpener,
+                           final long maxSize,
+                           final long intervalMillis,
+                           final RequestLogCompression compression,
+                           final int maxHistory,
+                           final ScheduledExecutorService executor)
+    {
+        this.file = file;
+        this.sinkOpener = sinkOpener;
+        this.maxSize = maxSize;
+        this.compression = compression;
+        this.maxHistory = maxHistory;
+        this.executor = executor;
+        this.rotatedFilePattern = Pattern.compile(Pattern.quote(file.getName()) + "\\.\\d{8}-\\d{6}(\\.\\d+)?(\\.gz|\\.lz4)?");
+        this.currentSegment = new AtomicReference<Segment>(new Segment(sink, file.length()));
+
+        if (intervalMillis > 0) {
+            final long now = DateTimeUtils.currentTimeMillis();
+            final long firstRotation = (now / intervalMillis + 1) * intervalMillis;
+            this.intervalTask = executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run()
+                {
+                    // An empty file is not worth rotating.
+                    if (currentSegment.get().size.get() > 0) {
+                        rotate();
+                    }
+                }
+            }, firstRotation - now, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void write(final char [] chars, final int offset, final int length)
+    {
+        for (;;) {
+            final Segment segment = currentSegment.get();
+            segment.writers.incrementAndGet();
+            try {
+                // Once a writer is registered with the current segment, it will not be closed underneath it.
+                if (segment == currentSegment.get()) {
+                    segment.sink.write(chars, offset, length);
+                    if (segment.size.addAndGet(length) >= maxSize && maxSize > 0) {
+                        requestRotation();
+                    }
+                    return;
+                }
+            }
+            finally {
+                segment.writers.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        currentSegment.get().sink.flush();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (intervalTask != null) {
+            intervalTask.cancel(false);
+            intervalTask = null;
+        }
+        Closeables.closeQuietly(currentSegment.get().sink);
+    }
+
+    private void requestRotation()
+    {
+        if (rotationPending.compareAndSet(false, true)) {
+            try {
+                executor.execute(rotateTask);
+            }
+            catch (RejectedExecutionException e) {
+                rotationPending.set(false);
+            }
+        }
+    }
+
+    private void rotate()
+    {
+        final Segment oldSegment;
+        final File rotatedFile;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            oldSegment = currentSegment.get();
+            rotatedFile = findRotatedFile();
+            if (!file.renameTo(rotatedFile)) {
+                LOG.warn("Could not rename request log \"%s\" to \"%s\"", file.getAbsolutePath(), rotatedFile.getName());
+                oldSegment.size.set(0L);
+                return;
+            }
+
+            final RequestLogSink newSink = sinkOpener.open(file);
+            if (newSink == null) {
+                // Keep writing into the rotated file and try again later.
+                oldSegment.size.set(0L);
+                return;
+            }
+
+            currentSegment.set(new Segment(newSink, 0L));
+        }
+
+        retire(oldSegment, rotatedFile);
+    }
+
+    private void retire(final Segment segment, final File rotatedFile)
+    {
+        final long deadline = System.nanoTime() + RETIRE_WAIT_NANOS;
+        while (segment.writers.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(this, RETIRE_PARK_NANOS);
+        }
+        Closeables.closeQuietly(segment.sink);
+
+        if (compression != RequestLogCompression.NONE) {
+            compress(rotatedFile);
+        }
+
+        if (maxHistory > 0) {
+            expire();
+        }
+    }
+
+    private File findRotatedFile()
+    {
+        final String rotatedName = file.getName() + "." + ROTATED_SUFFIX_FORMAT.print(DateTimeUtils.currentTimeMillis());
+
+        File rotatedFile = new File(file.getParentFile(), rotatedName);
+        for (int i = 1; rotatedFile.exists() || new File(rotatedFile.getPath() + compression.getExtension()).exists(); i++) {
+            rotatedFile = new File(file.getParentFile(), rotatedName + "." + i);
+        }
+        return rotatedFile;
+    }
+
+    private void compress(final File rotatedFile)
+    {
+        final File compressedFile = new File(rotatedFile.getPath() + compression.getExtension());
+
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(rotatedFile);
+            out = compression.compress(new FileOutputStream(compressedFile));
+            ByteStreams.copy(in, out);
+            out.close();
+            out = null;
+
+            if (!rotatedFile.delete()) {
+                LOG.warn("Could not remove \"%s\" after compressing it", rotatedFile.getAbsolutePath());
+            }
+        }
+        catch (IOException e) {
+            LOG.warn(e, "Could not compress \"%s\"", rotatedFile.getAbsolutePath());
+            Closeables.closeQuietly(out);
+            out = null;
+            compressedFile.delete();
+        }
+        finally {
+            Closeables.closeQuietly(in);
+            Closeables.closeQuietly(out);
+        }
+    }
+
+    private void expire()
+    {
+        final File [] files = file.getAbsoluteFile().getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final List<File> rotatedFiles = new ArrayList<File>();
+        for (File candidate : files) {
+            if (rotatedFilePattern.matcher(candidate.getName()).matches()) {
+                rotatedFiles.add(candidate);
+            }
+        }
+
+        if (rotatedFiles.size() <= maxHistory) {
+            return;
+        }
+
+        Collections.sort(rotatedFiles, new Comparator<File>() {
+            @Override
+            public int compare(final File a, final File b)
+            {
+                final long aModified = a.lastModified();
+                final long bModified = b.lastModified();
+                if (aModified != bModified) {
+                    return aModified < bModified ? -1 : 1;
+                }
+                return a.getName().compareTo(b.getName());
+            }
+        });
+
+        for (File expiredFile : rotatedFiles.subList(0, rotatedFiles.size() - maxHistory)) {
+            LOG.info("Removing expired request log \"%s\"", expiredFile.getAbsolutePath());
+            if (!expiredFile.delete()) {
+                LOG.warn("Could not remove expired request log \"%s\"", expiredFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private static final class Segment
+    {
+        private final RequestLogSink sink;
+        private final AtomicLong size;
+        private final AtomicInteger writers = new AtomicInteger();
+
+        Segment(final RequestLogSink sink, final long size)
+        {
+            this.sink = sink;
+            this.size = new AtomicLong(size);
+        }
+    }
+}
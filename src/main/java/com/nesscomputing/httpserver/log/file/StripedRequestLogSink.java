@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+
+/**
+ * Spreads request log lines over a number of independent segments. Every thread always writes to the same
+ * segment, so threads only contend when they share a stripe. Each line is prefixed with the time it was
+ * written (epoch millis and a tab), which lets {@link RequestLogMerger} put the segments back into order.
+ */
+class StripedRequestLogSink implements RequestLogSink
+{
+    /** Lines longer than this are written fine, but the buffer is not kept around for the next line. */
+    private static final int MAX_RETAINED_LINE_LENGTH = 16384;
+
+    private final Stripe [] stripes;
+
+    StripedRequestLogSink(final RequestLogSink [] sinks)
+    {
+        Preconditions.checkArgument(sinks.length > 0, "at least one stripe is required");
+
+        this.stripes = new Stripe[sinks.length];
+        for (int i = 0; i < sinks.length; i++) {
+            stripes[i] = new Stripe(sinks[i]);
+        }
+    }
+
+    @Override
+    public void write(final char [] chars, final int offset, final int length)
+    {
+        final Stripe stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+        stripe.write(chars, offset, length);
+    }
+
+    @Override
+    public void flush()
+    {
+        for (Stripe stripe : stripes) {
+            stripe.sink.flush();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (Stripe stripe : stripes) {
+            Closeables.closeQuietly(stripe.sink);
+        }
+    }
+
+    private static final class Stripe
+    {
+        private final RequestLogSink sink;
+
+        /** Big enough for any positive long plus the separator. */
+        private final char [] prefix = new char[20];
+
+        private char [] line = new char[256];
+
+        Stripe(final RequestLogSink sink)
+        {
+            this.sink = sink;
+        }
+
+        synchronized void write(final char [] chars, final int offset, final int length)
+        {
+            // Read under the lock, so the timestamps within a stripe file never go backwards.
+            int position = prefix.length;
+            prefix[--position] = '\t';
+            long value = Math.max(0L, System.currentTimeMillis());
+            do {
+                prefix[--position] = (char) ('0' + (value % 10));
+                value /= 10;
+            } while (value > 0);
+
+            // Prefix and line go out in a single write, the sink may rotate or commit between two writes.
+            final int prefixLength = prefix.length - position;
+            final int lineLength = prefixLength + length;
+            char [] buffer = line;
+            if (lineLength > buffer.length) {
+                buffer = new char[Math.max(lineLength, buffer.length * 2)];
+                if (buffer.length <= MAX_RETAINED_LINE_LENGTH) {
+                    line = buffer;
+                }
+            }
+            System.arraycopy(prefix, position, buffer, 0, prefixLength);
+            System.arraycopy(chars, offset, buffer, prefixLength, length);
+            sink.write(buffer, 0, lineLength);
+        }
+    }
+}
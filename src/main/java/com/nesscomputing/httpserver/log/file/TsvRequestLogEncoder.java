@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import com.nesscomputing.httpserver.log.RequestRecord;
+
+/**
+ * The classic request log line: the values as they are, separated by tabs.
+ */
+class TsvRequestLogEncoder implements RequestLogEncoder
+{
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final int [] columns;
+
+    TsvRequestLogEncoder(final int [] columns)
+    {
+        this.columns = columns;
+    }
+
+    @Override
+    public void encode(final RequestRecord record, final StringBuilder line)
+    {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+            record.appendTo(columns[i], line);
+        }
+        line.append(LINE_SEPARATOR);
+    }
+}
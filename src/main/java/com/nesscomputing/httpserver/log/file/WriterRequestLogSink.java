@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.PrintWriter;
+
+/**
+ * Writes request log text to a {@link PrintWriter}. Callers are serialized on the sink.
+ */
+class WriterRequestLogSink implements RequestLogSink
+{
+    private final PrintWriter writer;
+    private final boolean flushEachWrite;
+
+    WriterRequestLogSink(final PrintWriter writer, final boolean flushEachWrite)
+    {
+        this.writer = writer;
+        this.flushEachWrite = flushEachWrite;
+    }
+
+    @Override
+    public synchronized void write(final char [] chars, final int offset, final int length)
+    {
+        writer.write(chars, offset, length);
+        if (flushEachWrite) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush()
+    {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        writer.close();
+    }
+}
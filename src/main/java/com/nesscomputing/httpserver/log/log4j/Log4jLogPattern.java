@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.log4j;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.antlr.stringtemplate.StringTemplate;
+import org.apache.commons.lang3.ObjectUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.nesscomputing.httpserver.log.RequestRecord;
+import com.nesscomputing.httpserver.log.RequestRecorder;
+import com.nesscomputing.logging.Log;
+
+/**
+ * A log4j request log pattern, parsed once. A pattern that only consists of text and plain
+ * <tt>$field$</tt> references is rendered directly. Anything else goes through a StringTemplate
+ * which is parsed once and copied for every request. Either way, only the fields that the pattern
+ * references are added to the request record.
+ */
+final class Log4jLogPattern
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Pattern EXPRESSION = Pattern.compile("\\$([^$]*)\\$");
+
+    /** Text chunks and record columns of a simple pattern, null if the pattern needs a StringTemplate. */
+    private final List<Object> chunks;
+
+    private final StringTemplate prototype;
+    private final Map<String, Integer> referencedColumns;
+
+    private Log4jLogPattern(final List<Object> chunks, final StringTemplate prototype, final Map<String, Integer> referencedColumns)
+    {
+        this.chunks = chunks;
+        this.prototype = prototype;
+        this.referencedColumns = referencedColumns;
+    }
+
+    /**
+     * Compiles a pattern and adds the fields it references to the request record.
+     */
+    static Log4jLogPattern compile(final String pattern, final RequestRecorder recorder)
+    {
+        final List<Object> chunks = compileSimple(pattern, recorder);
+        if (chunks != null) {
+            return new Log4jLogPattern(chunks, null, null);
+        }
+
+        // Every identifier inside of an expression may name an attribute, everything else is unused.
+        final Set<String> referencedFields = new LinkedHashSet<String>();
+        final Matcher expressions = EXPRESSION.matcher(pattern);
+        while (expressions.find()) {
+            final Matcher identifiers = IDENTIFIER.matcher(expressions.group(1));
+            while (identifiers.find()) {
+                if (recorder.hasField(identifiers.group())) {
+                    referencedFields.add(identifiers.group());
+                }
+            }
+        }
+
+        final List<String> fieldNames = ImmutableList.copyOf(referencedFields);
+        final int [] columns = recorder.addFields(fieldNames);
+        final ImmutableMap.Builder<String, Integer> referencedColumns = ImmutableMap.builder();
+        for (int i = 0; i < columns.length; i++) {
+            referencedColumns.put(fieldNames.get(i), columns[i]);
+        }
+        return new Log4jLogPattern(null, new StringTemplate(pattern), referencedColumns.build());
+    }
+
+    /**
+     * Returns the chunks of a pattern that is only made of text and <tt>$field$</tt> references, or null.
+     */
+    private static List<Object> compileSimple(final String pattern, final RequestRecorder recorder)
+    {
+        if (pattern.indexOf('\\') >= 0) {
+            return null;
+        }
+
+        final String [] pieces = pattern.split("\\$", -1);
+        if (pieces.length % 2 == 0) {
+            return null;
+        }
+
+        final List<Object> chunks = Lists.newArrayList();
+        final List<Integer> fieldChunks = Lists.newArrayList();
+        final List<String> fieldNames = Lists.newArrayList();
+        for (int i = 0; i < pieces.length; i++) {
+            if (i % 2 == 0) {
+                if (pieces[i].length() > 0) {
+                    chunks.add(pieces[i]);
+                }
+            }
+            else if (!IDENTIFIER.matcher(pieces[i]).matches()) {
+                return null;
+            }
+            else if (recorder.hasField(pieces[i])) {
+                fieldChunks.add(chunks.size());
+                fieldNames.add(pieces[i]);
+                chunks.add(null);
+            }
+            else {
+                // StringTemplate renders unknown attributes as nothing, so does this.
+                LOG.warn("Request log pattern references unknown field \"%s\"", pieces[i]);
+            }
+        }
+
+        // Field chunks are the record columns of their fields.
+        final int [] columns = recorder.addFields(fieldNames);
+        for (int i = 0; i < columns.length; i++) {
+            chunks.set(fieldChunks.get(i), columns[i]);
+        }
+        return ImmutableList.copyOf(chunks);
+    }
+
+    String render(final RequestRecord record)
+    {
+        if (chunks != null) {
+            final StringBuilder sb = new StringBuilder(128);
+            for (int i = 0; i < chunks.size(); i++) {
+                final Object chunk = chunks.get(i);
+                if (chunk instanceof Integer) {
+                    record.appendTo((Integer) chunk, sb);
+                }
+                else {
+                    sb.append((String) chunk);
+                }
+            }
+            return sb.toString();
+        }
+
+        final StringTemplate template = prototype.getInstanceOf();
+        for (Map.Entry<String, Integer> column : referencedColumns.entrySet()) {
+            template.setAttribute(column.getKey(), ObjectUtils.toString(record.get(column.getValue())));
+        }
+        return template.toString();
+    }
+}
@@ -15,66 +15,98 @@
  */
 package com.nesscomputing.httpserver.log.log4j;
 
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.List;
 
-
-import org.antlr.stringtemplate.StringTemplate;
 import org.apache.commons.lang3.ObjectUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.MDC;
 import org.eclipse.jetty.server.Request;
-import org.eclipse.jetty.server.RequestLog;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.skife.config.TimeSpan;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import com.nesscomputing.httpserver.log.LogFields.LogField;
+import com.nesscomputing.httpserver.log.RecordingRequestLog;
+import com.nesscomputing.httpserver.log.RequestAggregate;
+import com.nesscomputing.httpserver.log.RequestAggregator;
+import com.nesscomputing.httpserver.log.RequestRecord;
+import com.nesscomputing.httpserver.log.RequestRecorder;
 import com.nesscomputing.logging.Log;
 
 /**
  * Log any request straight into log4j, which then can be used to redirect it e.g.
- * to graylog.
+ * to graylog. With an aggregation interval, one line per route, method, status and interval
+ * is logged instead of one line per request.
  */
 @Singleton
-public class Log4jRequestLog extends AbstractLifeCycle implements RequestLog
+public class Log4jRequestLog extends AbstractLifeCycle implements RecordingRequestLog
 {
     private final Log log;
-    private final String pattern;
-    private final Set<String> blackList;
-    private final Map<String, LogField> knownFields;
-
+    private final RequestRecorder recorder;
+    private final Log4jLogPattern pattern;
+    private final int filterIndex;
+    private final RequestAggregator aggregator;
 
     @Inject
     public Log4jRequestLog(final Log4jRequestLogConfig config,
-                           final Map<String, LogField> knownFields)
+                           final RequestRecorder recorder)
     {
-        this.pattern = config.getLogFields();
+        this.recorder = recorder;
+        this.pattern = Log4jLogPattern.compile(config.getLogFields(), recorder);
         this.log = Log.forName(config.getLoggerName());
-        this.blackList = config.getBlacklist();
-        this.knownFields = knownFields;
+        this.filterIndex = recorder.addFilter(config.getBlacklist(), config.getFilter());
+
+        final TimeSpan aggregateInterval = config.getAggregateInterval();
+        this.aggregator = aggregateInterval == null ? null : new RequestAggregator(aggregateInterval.getMillis());
     }
 
     @Override
-    public void log(Request request, Response response) {
-        final String requestUri = request.getRequestURI();
+    public void doStart()
+    {
+        if (aggregator != null) {
+            aggregator.start(new RequestAggregator.Listener() {
+                @Override
+                public void aggregated(final List<RequestAggregate> aggregates)
+                {
+                    for (RequestAggregate aggregate : aggregates) {
+                        log.info("Aggregated %s", aggregate);
+                    }
+                }
+            }, "log4j-request-log-aggregator");
+        }
+    }
 
-        for (String blackListEntry : blackList) {
-            if (StringUtils.startsWith(requestUri, blackListEntry)) {
-                return;
-            }
+    @Override
+    public void doStop()
+    {
+        if (aggregator != null) {
+            aggregator.stop();
         }
+    }
 
-        final StringTemplate template = new StringTemplate(pattern);
+    @Override
+    public int getFilterIndex()
+    {
+        return filterIndex;
+    }
+
+    @Override
+    public void log(Request request, Response response) {
+        if (recorder.accept(filterIndex, request, response)) {
+            log(recorder.evaluate(request, response), request, response);
+        }
+    }
 
-        for (Entry<String, LogField> field : knownFields.entrySet()) {
-            template.setAttribute(field.getKey(), ObjectUtils.toString(field.getValue().log(request, response, null)));
+    @Override
+    public void log(RequestRecord record, Request request, Response response) {
+        if (aggregator != null) {
+            aggregator.record(request, response);
+            return;
         }
+
         try {
             MDC.put("track", ObjectUtils.toString(response.getHeader("X-Trumpet-Track")));
-            log.info(template.toString());
+            log.info(pattern.render(record));
         } finally {
             MDC.remove("track");
         }
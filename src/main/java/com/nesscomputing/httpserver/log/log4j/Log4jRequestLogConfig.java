@@ -19,6 +19,8 @@ import java.util.Set;
 
 import org.skife.config.Config;
 import org.skife.config.Default;
+import org.skife.config.DefaultNull;
+import org.skife.config.TimeSpan;
 
 import com.google.common.collect.ImmutableSet;
 
@@ -41,6 +43,26 @@ public abstract class Log4jRequestLogConfig
         return ImmutableSet.of("/selftest", "/application.wadl");
     }
 
+    /** Filter expression, see {@link com.nesscomputing.httpserver.log.RequestLogFilter} for the syntax. */
+    @Config("filter")
+    @DefaultNull
+    public String getFilter()
+    {
+        return null;
+    }
+
+    /**
+     * Log one line per route, method, status and interval (e.g. 1m) with counts, bytes and latency percentiles
+     * instead of one line per request. Unset, every request is logged.
+     */
+    @Config("aggregate-interval")
+    @DefaultNull
+    public TimeSpan getAggregateInterval()
+    {
+        return null;
+    }
+
+
     /** Note that this does NOT support the : selector syntax as the main request log does, at least for now */
     @Config("format")
     @Default(LOG4J_REQUEST_LOG_PATTERN_DEFAULT)
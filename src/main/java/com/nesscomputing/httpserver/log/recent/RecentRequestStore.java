@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.recent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.joda.time.DateTimeUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Keeps the most recent requests in a fixed size ring of primitive columns (timestamp, route, status, latency,
+ * bytes written and a hash of the client address). Recording a request claims a slot and overwrites the oldest
+ * one, it never takes a lock or allocates. Queries copy the rows of a time window into a {@link Snapshot}, rows
+ * that are overwritten while being copied are skipped.
+ */
+@Singleton
+public class RecentRequestStore implements RecentRequestStoreMXBean
+{
+    public static final String OTHER_ROUTE = "(other)";
+
+    private final int capacity;
+    private final int mask;
+    private final int maxRoutes;
+
+    // Atomic arrays, so that no column access is reordered across the stamps.
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray routes;
+    private final AtomicIntegerArray statuses;
+    private final AtomicLongArray latencies;
+    private final AtomicLongArray byteCounts;
+    private final AtomicIntegerArray clients;
+
+    /** The sequence number plus one of the row in every slot, 0 while the slot is written. */
+    private final AtomicLongArray stamps;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentMap<String, Integer> routeIds = new ConcurrentHashMap<String, Integer>();
+    private final AtomicReferenceArray<String> routeNames;
+    private int routeCount = 0;
+
+    @Inject
+    public RecentRequestStore(final RecentRequestsConfig config)
+    {
+        this(config.getCapacity(), config.getMaxRoutes());
+    }
+
+    RecentRequestStore(final int capacity, final int maxRoutes)
+    {
+        Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30), "capacity must be between 1 and 2^30, was %s", capacity);
+        Preconditions.checkArgument(maxRoutes >= 0, "max routes must not be negative, was %s", maxRoutes);
+
+        this.capacity = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.capacity - 1;
+        this.maxRoutes = maxRoutes;
+
+        this.timestamps = new AtomicLongArray(this.capacity);
+        this.routes = new AtomicIntegerArray(this.capacity);
+        this.statuses = new AtomicIntegerArray(this.capacity);
+        this.latencies = new AtomicLongArray(this.capacity);
+        this.byteCounts = new AtomicLongArray(this.capacity);
+        this.clients = new AtomicIntegerArray(this.capacity);
+        this.stamps = new AtomicLongArray(this.capacity);
+
+        this.routeNames = new AtomicReferenceArray<String>(maxRoutes + 1);
+        routeNames.set(0, OTHER_ROUTE);
+    }
+
+    /**
+     * Records a request.
+     *
+     * @param timestamp Completion time in millis.
+     * @param route The route of the request, see {@link com.nesscomputing.httpserver.log.RouteNormalizer}.
+     * @param latencyMicros Time the request took.
+     * @param byteCount Bytes written to the client.
+     * @param clientHash Hash of the client address, the address itself is not kept.
+     */
+    public void record(final long timestamp, final String route, final int status, final long latencyMicros, final long byteCount, final int clientHash)
+    {
+        final int routeId = getRouteId(route);
+        final long position = sequence.getAndIncrement();
+        final int slot = (int) position & mask;
+
+        stamps.set(slot, 0L);
+        timestamps.set(slot, timestamp);
+        routes.set(slot, routeId);
+        statuses.set(slot, status);
+        latencies.set(slot, latencyMicros);
+        byteCounts.set(slot, byteCount);
+        clients.set(slot, clientHash);
+        stamps.set(slot, position + 1);
+    }
+
+    private int getRouteId(final String route)
+    {
+        final Integer routeId = routeIds.get(route);
+        if (routeId != null) {
+            return routeId;
+        }
+
+        synchronized (routeIds) {
+            final Integer existingId = routeIds.get(route);
+            if (existingId != null) {
+                return existingId;
+            }
+            if (routeCount >= maxRoutes) {
+                return 0;
+            }
+            final int newId = ++routeCount;
+            routeNames.set(newId, route);
+            routeIds.put(route, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Copies all requests that completed within the given number of millis before now.
+     */
+    public Snapshot snapshot(final long windowMillis)
+    {
+        final long cutoff = DateTimeUtils.currentTimeMillis() - windowMillis;
+        final long end = sequence.get();
+        final long start = Math.max(0L, end - capacity);
+
+        final Snapshot snapshot = new Snapshot((int) (end - start));
+        for (long position = start; position < end; position++) {
+            final int slot = (int) position & mask;
+            if (stamps.get(slot) != position + 1) {
+                continue;
+            }
+
+            final int row = snapshot.size;
+            snapshot.timestamps[row] = timestamps.get(slot);
+            snapshot.routes[row] = routeNames.get(routes.get(slot));
+            snapshot.statuses[row] = statuses.get(slot);
+            snapshot.latencies[row] = latencies.get(slot);
+            snapshot.byteCounts[row] = byteCounts.get(slot);
+            snapshot.clients[row] = clients.get(slot);
+
+            // Only keep the row if no writer got to the slot while it was copied.
+            if (stamps.get(slot) == position + 1 && snapshot.timestamps[row] >= cutoff) {
+                snapshot.size++;
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public long getRecordedRequests()
+    {
+        return sequence.get();
+    }
+
+    @Override
+    public int getRouteCount()
+    {
+        synchronized (routeIds) {
+            return routeCount;
+        }
+    }
+
+    @Override
+    public Map<String, Long> latencyPercentileByRoute(final long windowSeconds, final double percentile)
+    {
+        return snapshot(TimeUnit.SECONDS.toMillis(windowSeconds)).latencyPercentileByRoute(percentile);
+    }
+
+    @Override
+    public Map<String, Long> countByRoute(final long windowSeconds)
+    {
+        return snapshot(TimeUnit.SECONDS.toMillis(windowSeconds)).countByRoute();
+    }
+
+    @Override
+    public Map<Integer, Long> countByStatus(final long windowSeconds)
+    {
+        return snapshot(TimeUnit.SECONDS.toMillis(windowSeconds)).countByStatus();
+    }
+
+    /**
+     * A consistent copy of the rows of a time window, in the order they were recorded.
+     */
+    public static final class Snapshot
+    {
+        private final long [] timestamps;
+        private final String [] routes;
+        private final int [] statuses;
+        private final long [] latencies;
+        private final long [] byteCounts;
+        private final int [] clients;
+        private int size = 0;
+
+        Snapshot(final int capacity)
+        {
+            this.timestamps = new long[capacity];
+            this.routes = new String[capacity];
+            this.statuses = new int[capacity];
+            this.latencies = new long[capacity];
+            this.byteCounts = new long[capacity];
+            this.clients = new int[capacity];
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public long getTimestamp(final int row)
+        {
+            return timestamps[checkRow(row)];
+        }
+
+        public String getRoute(final int row)
+        {
+            return routes[checkRow(row)];
+        }
+
+        public int getStatus(final int row)
+        {
+            return statuses[checkRow(row)];
+        }
+
+        public long getLatencyMicros(final int row)
+        {
+            return latencies[checkRow(row)];
+        }
+
+        public long getByteCount(final int row)
+        {
+            return byteCounts[checkRow(row)];
+        }
+
+        public int getClientHash(final int row)
+        {
+            return clients[checkRow(row)];
+        }
+
+        /**
+         * Latency (nearest rank, in micros) of every route, slowest route first.
+         *
+         * @param percentile between 0 (exclusive) and 100 (inclusive).
+         */
+        public Map<String, Long> latencyPercentileByRoute(final double percentile)
+        {
+            Preconditions.checkArgument(percentile > 0.0 && percentile <= 100.0, "percentile must be in (0, 100], was %s", percentile);
+
+            final Map<String, long []> routeLatencies = new HashMap<String, long []>();
+            final Map<String, Long> counts = countByRoute();
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                routeLatencies.put(entry.getKey(), new long[entry.getValue().intValue()]);
+            }
+
+            final Map<String, Integer> filled = new HashMap<String, Integer>();
+            for (int row = 0; row < size; row++) {
+                final Integer count = filled.get(routes[row]);
+                final int index = count == null ? 0 : count;
+                routeLatencies.get(routes[row])[index] = latencies[row];
+                filled.put(routes[row], index + 1);
+            }
+
+            final Map<String, Long> result = new HashMap<String, Long>();
+            for (Map.Entry<String, long []> entry : routeLatencies.entrySet()) {
+                final long [] values = entry.getValue();
+                Arrays.sort(values);
+                final int rank = (int) Math.ceil(percentile / 100.0 * values.length);
+                result.put(entry.getKey(), values[Math.max(0, rank - 1)]);
+            }
+            return sortByValue(result);
+        }
+
+        /**
+         * Number of requests per route, busiest route first.
+         */
+        public Map<String, Long> countByRoute()
+        {
+            final Map<String, Long> result = new HashMap<String, Long>();
+            for (int row = 0; row < size; row++) {
+                final Long count = result.get(routes[row]);
+                result.put(routes[row], count == null ? 1L : count + 1L);
+            }
+            return sortByValue(result);
+        }
+
+        /**
+         * Number of requests per status code, most frequent status first.
+         */
+        public Map<Integer, Long> countByStatus()
+        {
+            final Map<Integer, Long> result = new HashMap<Integer, Long>();
+            for (int row = 0; row < size; row++) {
+                final Long count = result.get(statuses[row]);
+                result.put(statuses[row], count == null ? 1L : count + 1L);
+            }
+            return sortByValue(result);
+        }
+
+        private int checkRow(final int row)
+        {
+            Preconditions.checkElementIndex(row, size);
+            return row;
+        }
+
+        private static <K> Map<K, Long> sortByValue(final Map<K, Long> map)
+        {
+            final List<Map.Entry<K, Long>> entries = new ArrayList<Map.Entry<K, Long>>(map.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<K, Long>>() {
+                @Override
+                public int compare(final Map.Entry<K, Long> a, final Map.Entry<K, Long> b)
+                {
+                    return b.getValue().compareTo(a.getValue());
+                }
+            });
+
+            final Map<K, Long> result = new LinkedHashMap<K, Long>();
+            for (Map.Entry<K, Long> entry : entries) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+    }
+}
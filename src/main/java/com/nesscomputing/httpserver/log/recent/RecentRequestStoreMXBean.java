@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.recent;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link RecentRequestStore}. All windows are in seconds, latencies in microseconds.
+ */
+public interface RecentRequestStoreMXBean
+{
+    int getCapacity();
+
+    long getRecordedRequests();
+
+    int getRouteCount();
+
+    Map<String, Long> latencyPercentileByRoute(long windowSeconds, double percentile);
+
+    Map<String, Long> countByRoute(long windowSeconds);
+
+    Map<Integer, Long> countByStatus(long windowSeconds);
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.recent;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class RecentRequestsConfig
+{
+    @Config("enabled")
+    @Default("false")
+    public boolean isEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Number of requests kept, rounded up to the next power of two. Every request takes 44 bytes.
+     */
+    @Config("capacity")
+    @Default("65536")
+    public int getCapacity()
+    {
+        return 65536;
+    }
+
+    /**
+     * Number of distinct routes tracked. Requests to any further route are counted as <tt>(other)</tt>.
+     */
+    @Config("max-routes")
+    @Default("1024")
+    public int getMaxRoutes()
+    {
+        return 1024;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.recent;
+
+import java.io.IOException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.joda.time.DateTimeUtils;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.nesscomputing.httpserver.HttpServerHandlerBinder;
+import com.nesscomputing.httpserver.jmx.MBeanExporter;
+import com.nesscomputing.httpserver.log.RequestTiming;
+import com.nesscomputing.httpserver.log.RouteNormalizer;
+
+/**
+ * Logging handler (see {@link HttpServerHandlerBinder#bindLoggingHandler(com.google.inject.Binder)}) which records
+ * every finished request in the {@link RecentRequestStore}.
+ */
+@Singleton
+public class RecentRequestsHandler extends AbstractHandler
+{
+    private final RecentRequestStore store;
+
+    /** Client addresses are only kept as a hash, seeded per process so the hashes can not be looked up. */
+    private final int clientSeed = (int) System.nanoTime();
+
+    private MBeanServer mbeanServer = null;
+    private ObjectName mbeanName = null;
+
+    @Inject
+    public RecentRequestsHandler(final RecentRequestStore store)
+    {
+        this.store = store;
+    }
+
+    @Inject(optional=true)
+    void setMBeanServer(final MBeanServer mbeanServer)
+    {
+        this.mbeanServer = mbeanServer;
+    }
+
+    @Override
+    public void doStart() throws Exception
+    {
+        mbeanName = MBeanExporter.export(mbeanServer, "RecentRequests", null, store);
+        super.doStart();
+    }
+
+    @Override
+    public void doStop() throws Exception
+    {
+        MBeanExporter.unexport(mbeanServer, mbeanName);
+        mbeanName = null;
+        super.doStop();
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        final long now = DateTimeUtils.currentTimeMillis();
+        final Response baseResponse = baseRequest.getResponse();
+
+        store.record(now,
+                     RouteNormalizer.getRoute(baseRequest),
+                     baseResponse.getStatus(),
+                     RequestTiming.getElapsedMicros(baseRequest, now),
+                     baseResponse.getContentCount(),
+                     hashClient(baseRequest.getRemoteAddr()));
+    }
+
+    private int hashClient(final String remoteAddr)
+    {
+        if (remoteAddr == null) {
+            return 0;
+        }
+
+        // murmur3 finalizer, spreads the bits of the string hash.
+        int h = remoteAddr.hashCode() ^ clientSeed;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.recent;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Scopes;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.httpserver.HttpServerHandlerBinder;
+
+/**
+ * Keeps the most recent requests in memory, see {@link RecentRequestStore}. Configured
+ * from <tt>ness.httpserver.recent-requests</tt>, disabled by default.
+ */
+public class RecentRequestsModule extends AbstractModule
+{
+    private final Config config;
+
+    public RecentRequestsModule(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public void configure()
+    {
+        final RecentRequestsConfig recentRequestsConfig = config.getBean("ness.httpserver.recent-requests", RecentRequestsConfig.class);
+
+        if (recentRequestsConfig.isEnabled()) {
+            bind(RecentRequestsConfig.class).toInstance(recentRequestsConfig);
+            bind(RecentRequestStore.class).in(Scopes.SINGLETON);
+            bind(RecentRequestsHandler.class).in(Scopes.SINGLETON);
+            bind(RecentRequestsResource.class);
+            HttpServerHandlerBinder.bindLoggingHandler(binder()).to(RecentRequestsHandler.class);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.recent;
+
+import java.util.Map;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.skife.config.TimeSpan;
+
+import com.google.inject.Inject;
+
+/**
+ * Answers questions about the recent requests from the box itself, as tab separated text:
+ *
+ * <ul>
+ * <li><tt>/recent-requests/latency?window=5m&amp;percentile=99</tt> - latency percentile (micros) by route</li>
+ * <li><tt>/recent-requests/routes?window=5m</tt> - requests by route</li>
+ * <li><tt>/recent-requests/status?window=5m</tt> - requests by status code</li>
+ * </ul>
+ */
+@Path("/recent-requests")
+@Produces(MediaType.TEXT_PLAIN)
+public class RecentRequestsResource
+{
+    private final RecentRequestStore store;
+
+    @Inject
+    RecentRequestsResource(final RecentRequestStore store)
+    {
+        this.store = store;
+    }
+
+    @GET
+    @Path("/latency")
+    public String getLatency(@QueryParam("window") @DefaultValue("5m") final String window,
+                             @QueryParam("percentile") @DefaultValue("99") final double percentile)
+    {
+        if (percentile <= 0.0 || percentile > 100.0) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        return format(store.snapshot(parseWindow(window)).latencyPercentileByRoute(percentile));
+    }
+
+    @GET
+    @Path("/routes")
+    public String getRoutes(@QueryParam("window") @DefaultValue("5m") final String window)
+    {
+        return format(store.snapshot(parseWindow(window)).countByRoute());
+    }
+
+    @GET
+    @Path("/status")
+    public String getStatus(@QueryParam("window") @DefaultValue("5m") final String window)
+    {
+        return format(store.snapshot(parseWindow(window)).countByStatus());
+    }
+
+    private static long parseWindow(final String window)
+    {
+        try {
+            return new TimeSpan(window).getMillis();
+        }
+        catch (IllegalArgumentException e) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+    }
+
+    private static String format(final Map<?, Long> values)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<?, Long> entry : values.entrySet()) {
+            sb.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.nesscomputing.httpserver.log.AsyncDrainer;
+import com.nesscomputing.httpserver.log.OverflowPolicy;
+import com.nesscomputing.logging.Log;
+import com.nesscomputing.syslog4j.SyslogIF;
+import com.nesscomputing.syslog4j.impl.message.structured.StructuredSyslogMessage;
+
+/**
+ * Takes syslog messages off the request threads. Messages go into a bounded lock-free ring and a
+ * sender thread hands them to syslog in bursts, so a slow or unreachable syslog host never holds up
+ * a response. When the ring is full, messages are dropped (or spooled, if there is a spool) or request
+ * threads wait, depending on the overflow policy.
+ */
+class AsyncSyslogSender implements AsyncSyslogSenderMXBean
+{
+    private static final Log LOG = Log.findLog();
+
+    private final SyslogIF syslog;
+    private final SyslogSpool spool;
+    private final AsyncDrainer<StructuredSyslogMessage> drainer;
+
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    // Only updated by the sender thread.
+    private volatile long sentMessages = 0L;
+    private volatile long failedMessages = 0L;
+    private volatile long sendNanos = 0L;
+    private volatile long maxSendNanos = 0L;
+
+    AsyncSyslogSender(final SyslogIF syslog,
+                      @Nullable final SyslogSpool spool,
+                      final int queueSize,
+                      final int batchSize,
+                      final OverflowPolicy overflowPolicy,
+                      final String threadName)
+    {
+        this.syslog = syslog;
+        this.spool = spool;
+        this.drainer = new AsyncDrainer<StructuredSyslogMessage>(queueSize, batchSize, overflowPolicy, new AsyncDrainer.BatchHandler<StructuredSyslogMessage>() {
+            @Override
+            public void handle(final List<StructuredSyslogMessage> batch)
+            {
+                for (StructuredSyslogMessage message : batch) {
+                    sendMessage(message);
+                }
+            }
+        }, threadName);
+    }
+
+    void start()
+    {
+        drainer.start();
+    }
+
+    void send(final StructuredSyslogMessage message)
+    {
+        if (!drainer.offer(message)) {
+            // Syslog can not keep up, keep the message in the spool if there is one.
+            if (spool == null || !spool.append(message)) {
+                droppedMessages.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting messages and waits for the queued ones to be sent.
+     */
+    void close()
+    {
+        drainer.close();
+    }
+
+    private void sendMessage(final StructuredSyslogMessage message)
+    {
+        final long startTime = System.nanoTime();
+        try {
+            if (spool == null) {
+                syslog.info(message);
+                sentMessages++;
+            }
+            else if (spool.deliver(message)) {
+                sentMessages++;
+            }
+            else {
+                droppedMessages.incrementAndGet();
+            }
+        }
+        catch (RuntimeException e) {
+            failedMessages++;
+            LOG.warn(e, "Could not send request log message to syslog");
+        }
+        final long elapsedTime = System.nanoTime() - startTime;
+        sendNanos += elapsedTime;
+        if (elapsedTime > maxSendNanos) {
+            maxSendNanos = elapsedTime;
+        }
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return drainer.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity()
+    {
+        return drainer.getQueueCapacity();
+    }
+    @Override
+    public long getDroppedMessages()
+    {
+        return droppedMessages.get();
+    }
+
+    @Override
+    public long getSentMessages()
+    {
+        return sentMessages;
+    }
+
+    @Override
+    public long getFailedMessages()
+    {
+        return failedMessages;
+    }
+
+    @Override
+    public long getBatches()
+    {
+        return drainer.getBatches();
+    }
+
+    @Override
+    public long getMaxBatchSize()
+    {
+        return drainer.getMaxBatchSize();
+    }
+
+    @Override
+    public double getMeanSendMicros()
+    {
+        final long messages = sentMessages + failedMessages;
+        return messages == 0 ? 0.0 : sendNanos / 1000.0 / messages;
+    }
+
+    @Override
+    public long getMaxSendMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(maxSendNanos);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+/**
+ * JMX view of the asynchronous syslog request log sender.
+ */
+public interface AsyncSyslogSenderMXBean
+{
+    /** Messages currently waiting for the sender thread. */
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    /** Messages discarded because the queue was full or the log was shutting down. */
+    long getDroppedMessages();
+
+    long getSentMessages();
+
+    /** Messages that syslog refused to take. */
+    long getFailedMessages();
+
+    /** Number of bursts the sender thread took off the queue. */
+    long getBatches();
+
+    long getMaxBatchSize();
+
+    /** Mean time it took syslog to take a message, in microseconds. */
+    double getMeanSendMicros();
+
+    /** Longest time it took syslog to take a message, in microseconds. */
+    long getMaxSendMicros();
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The layout of the structured data of a syslog request log message: the SD-IDs of its elements and
+ * the names of their parameters. The layout is computed once; a message only brings an array of values,
+ * one per parameter, and is shown to syslog4j as a map of maps over that array. Parameters without a value
+ * are left out, elements without any parameter are kept.
+ */
+final class StructuredDataTemplate
+{
+    private final String [] elementIds;
+    private final int [] firstParameters;
+    private final String [] parameterNames;
+
+    private StructuredDataTemplate(final String [] elementIds, final int [] firstParameters, final String [] parameterNames)
+    {
+        this.elementIds = elementIds;
+        this.firstParameters = firstParameters;
+        this.parameterNames = parameterNames;
+    }
+
+    /**
+     * Number of parameters over all elements, which is the size of the value array.
+     */
+    int getParameterCount()
+    {
+        return parameterNames.length;
+    }
+
+    /**
+     * Returns the structured data for an array of parameter values. The array is used as is, not copied.
+     */
+    Map<String, Map<String, String>> fill(final String [] values)
+    {
+        return new StructuredData(values);
+    }
+
+    static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Returns the index of a parameter in the value array, or -1 if the template has no such parameter.
+     */
+    int getParameterIndex(final String elementId, final String parameterName)
+    {
+        for (int i = 0; i < elementIds.length; i++) {
+            if (elementIds[i].equals(elementId)) {
+                for (int j = firstParameters[i]; j < firstParameters[i + 1]; j++) {
+                    if (parameterNames[j].equals(parameterName)) {
+                        return j;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    static final class Builder
+    {
+        private final Map<String, Set<String>> elements = new LinkedHashMap<String, Set<String>>();
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Adds a parameter to an element, the element is added as well if needed. Adding a parameter twice has no effect.
+         */
+        Builder addParameter(final String elementId, final String parameterName)
+        {
+            Set<String> parameters = elements.get(elementId);
+            if (parameters == null) {
+                parameters = new LinkedHashSet<String>();
+                elements.put(elementId, parameters);
+            }
+            parameters.add(parameterName);
+            return this;
+        }
+
+        StructuredDataTemplate build()
+        {
+            final List<String> parameterNames = new ArrayList<String>();
+            final String [] elementIds = new String[elements.size()];
+            final int [] firstParameters = new int[elements.size() + 1];
+
+            int element = 0;
+            for (Map.Entry<String, Set<String>> entry : elements.entrySet()) {
+                elementIds[element] = entry.getKey();
+                firstParameters[element++] = parameterNames.size();
+                parameterNames.addAll(entry.getValue());
+            }
+            firstParameters[element] = parameterNames.size();
+
+            return new StructuredDataTemplate(elementIds, firstParameters, parameterNames.toArray(new String[parameterNames.size()]));
+        }
+    }
+
+    private final class StructuredData extends AbstractMap<String, Map<String, String>>
+    {
+        private final String [] values;
+
+        StructuredData(final String [] values)
+        {
+            this.values = values;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Map<String, String>>> entrySet()
+        {
+            final List<Map.Entry<String, Map<String, String>>> entries = new ArrayList<Map.Entry<String, Map<String, String>>>(elementIds.length);
+            for (int i = 0; i < elementIds.length; i++) {
+                entries.add(new SimpleImmutableEntry<String, Map<String, String>>(elementIds[i], new Parameters(values, firstParameters[i], firstParameters[i + 1])));
+            }
+
+            return new AbstractSet<Map.Entry<String, Map<String, String>>>() {
+                @Override
+                public Iterator<Map.Entry<String, Map<String, String>>> iterator()
+                {
+                    return entries.iterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return entries.size();
+                }
+            };
+        }
+    }
+
+    private final class Parameters extends AbstractMap<String, String>
+    {
+        private final String [] values;
+        private final int from;
+        private final int to;
+
+        Parameters(final String [] values, final int from, final int to)
+        {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator()
+                {
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private int next = skipMissing(from);
+
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return next < to;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next()
+                        {
+                            if (next >= to) {
+                                throw new NoSuchElementException();
+                            }
+                            final Map.Entry<String, String> entry = new SimpleImmutableEntry<String, String>(parameterNames[next], values[next]);
+                            next = skipMissing(next + 1);
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove()
+                        {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    int size = 0;
+                    for (int i = from; i < to; i++) {
+                        if (values[i] != null) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }
+            };
+        }
+
+        private int skipMissing(final int index)
+        {
+            int i = index;
+            while (i < to && values[i] == null) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
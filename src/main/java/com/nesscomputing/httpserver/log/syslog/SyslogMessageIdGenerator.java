@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates unique syslog message ids without touching a random number generator per message. An id is a
+ * random process prefix followed by a counter, 32 hex characters in total, which is exactly as long as
+ * the undashed UUIDs that were used before (and the longest MSGID allowed by RFC 5424).
+ */
+final class SyslogMessageIdGenerator
+{
+    private static final char [] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int PREFIX_LENGTH = 16;
+    private static final int ID_LENGTH = 32;
+
+    private final char [] prefix = new char[PREFIX_LENGTH];
+    private final AtomicLong counter = new AtomicLong();
+
+    SyslogMessageIdGenerator()
+    {
+        this(UUID.randomUUID().getLeastSignificantBits());
+    }
+
+    SyslogMessageIdGenerator(final long processId)
+    {
+        long value = processId;
+        for (int i = PREFIX_LENGTH - 1; i >= 0; i--) {
+            prefix[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    String nextId()
+    {
+        final char [] id = new char[ID_LENGTH];
+        System.arraycopy(prefix, 0, id, 0, PREFIX_LENGTH);
+
+        long value = counter.getAndIncrement();
+        for (int i = ID_LENGTH - 1; i >= PREFIX_LENGTH; i--) {
+            id[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        return new String(id);
+    }
+}
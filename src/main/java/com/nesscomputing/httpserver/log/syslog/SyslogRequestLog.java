@@ -15,63 +15,149 @@
  */
 package com.nesscomputing.httpserver.log.syslog;
 
+import java.io.File;
 import java.nio.charset.Charset;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.server.Request;
-import org.eclipse.jetty.server.RequestLog;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.skife.config.TimeSpan;
 
-import com.google.common.base.Function;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMap.Builder;
-import com.google.common.collect.Maps;
+import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.nesscomputing.galaxy.GalaxyConfig;
-import com.nesscomputing.httpserver.log.LogFields;
+import com.nesscomputing.httpserver.jmx.MBeanExporter;
 import com.nesscomputing.httpserver.log.LogFields.LogField;
+import com.nesscomputing.httpserver.log.RecordingRequestLog;
+import com.nesscomputing.httpserver.log.RequestAggregate;
+import com.nesscomputing.httpserver.log.RequestAggregator;
+import com.nesscomputing.httpserver.log.RequestRecord;
+import com.nesscomputing.httpserver.log.RequestRecorder;
 import com.nesscomputing.logging.Log;
 import com.nesscomputing.syslog4j.Syslog;
 import com.nesscomputing.syslog4j.SyslogConfigIF;
 import com.nesscomputing.syslog4j.SyslogIF;
+import com.nesscomputing.syslog4j.impl.AbstractSyslogConfigIF;
 import com.nesscomputing.syslog4j.impl.message.processor.structured.StructuredSyslogMessageProcessor;
 import com.nesscomputing.syslog4j.impl.message.structured.StructuredSyslogMessage;
 
 /**
  * Send jetty request log straight into syslog to allow aggregation with logstash.
+ *
+ * In async mode, messages are sent by a dedicated sender thread and request threads never wait for the syslog host.
+ * With a spool directory, messages that syslog refuses are kept on local disk and replayed once syslog takes them again.
+ * The spool needs async mode.
+ * With an aggregation interval, one message per route, method, status and interval is sent instead of one per request.
  */
 @Singleton
-public class SyslogRequestLog extends AbstractLifeCycle implements RequestLog
+public class SyslogRequestLog extends AbstractLifeCycle implements RecordingRequestLog
 {
     private static final Log LOG = Log.findLog();
 
-    private final Set<String> blackList;
+    private final RequestRecorder recorder;
+    private final int filterIndex;
     private final SyslogIF syslog;
 
-    private final List<String> logFields;
-    private final Map<String, LogField> knownFields;
-    private final int ianaIdentifier;
+    private final int [] columns;
+    private final StructuredDataTemplate structuredDataTemplate;
+    private final int [] fieldParameters;
+    private final int agentIdParameter;
+    private final int deployConfigParameter;
+    private final RequestAggregator aggregator;
+    private final StructuredDataTemplate aggregateTemplate;
+    private final int aggregateAgentIdParameter;
+    private final int aggregateDeployConfigParameter;
+    private final int [] aggregateParameters;
+    private final SyslogMessageIdGenerator messageIds = new SyslogMessageIdGenerator();
+
+    private final ThreadLocal<String []> threadNames = new ThreadLocal<String []>();
 
-    private GalaxyConfig galaxyConfig = null;
+    private final SyslogSpool spool;
+    private final AsyncSyslogSender asyncSender;
+
+    private volatile String agentId = null;
+    private volatile String deployConfig = null;
+
+    private MBeanServer mbeanServer = null;
+    private ObjectName mbeanName = null;
+    private ObjectName spoolMBeanName = null;
 
     @Inject
     public SyslogRequestLog(final SyslogRequestLogConfig requestLogConfig,
-                            final Map<String, LogField> knownFields)
+                            final Map<String, LogField> knownFields,
+                            final RequestRecorder recorder)
     {
-        this.blackList = requestLogConfig.getBlacklist();
+        this.recorder = recorder;
+        this.filterIndex = recorder.addFilter(requestLogConfig.getBlacklist(), requestLogConfig.getFilter());
         final List<String> logFields = requestLogConfig.getLogFields();
-        LogFields.validateLogFields(knownFields, logFields);
-        this.logFields = logFields;
-        this.knownFields = knownFields;
-        this.ianaIdentifier = requestLogConfig.getIanaIdentifier();
+        this.columns = recorder.addFields(logFields);
+
+        // Lay out the structured data once: the galaxy parameters and all plain fields go into the
+        // "l" element, fields with an argument into an element named after the field.
+        final int ianaIdentifier = requestLogConfig.getIanaIdentifier();
+        final String logElementId = "l@" + ianaIdentifier;
+        final StructuredDataTemplate.Builder builder = StructuredDataTemplate.builder()
+            .addParameter(logElementId, "si")
+            .addParameter(logElementId, "sc");
+
+        final String [] elementIds = new String[logFields.size()];
+        final String [] parameterNames = new String[logFields.size()];
+        for (int i = 0; i < logFields.size(); i++) {
+            final String [] chunks = StringUtils.split(logFields.get(i), ":");
+            final LogField field = knownFields.get(chunks[0]);
+            if (chunks.length == 1) {
+                elementIds[i] = logElementId;
+                parameterNames[i] = field.getShortName();
+            }
+            else {
+                elementIds[i] = field.getShortName() + "@" + ianaIdentifier;
+                parameterNames[i] = chunks[1].toLowerCase(Locale.ENGLISH).replace("=", "_");
+            }
+            builder.addParameter(elementIds[i], parameterNames[i]);
+        }
+
+        this.structuredDataTemplate = builder.build();
+        this.agentIdParameter = structuredDataTemplate.getParameterIndex(logElementId, "si");
+        this.deployConfigParameter = structuredDataTemplate.getParameterIndex(logElementId, "sc");
+        this.fieldParameters = new int[logFields.size()];
+        for (int i = 0; i < logFields.size(); i++) {
+            fieldParameters[i] = structuredDataTemplate.getParameterIndex(elementIds[i], parameterNames[i]);
+        }
+
+        // Aggregates go into an "a" element, after the galaxy parameters which are laid out the same way.
+        final TimeSpan aggregateInterval = requestLogConfig.getAggregateInterval();
+        if (aggregateInterval != null) {
+            this.aggregator = new RequestAggregator(aggregateInterval.getMillis());
+            final String aggregateElementId = "a@" + ianaIdentifier;
+            final StructuredDataTemplate.Builder aggregateBuilder = StructuredDataTemplate.builder()
+                .addParameter(logElementId, "si")
+                .addParameter(logElementId, "sc");
+            for (String fieldName : RequestAggregate.FIELD_NAMES) {
+                aggregateBuilder.addParameter(aggregateElementId, fieldName.toLowerCase(Locale.ENGLISH));
+            }
+            this.aggregateTemplate = aggregateBuilder.build();
+            this.aggregateAgentIdParameter = aggregateTemplate.getParameterIndex(logElementId, "si");
+            this.aggregateDeployConfigParameter = aggregateTemplate.getParameterIndex(logElementId, "sc");
+            this.aggregateParameters = new int[RequestAggregate.FIELD_NAMES.size()];
+            for (int i = 0; i < aggregateParameters.length; i++) {
+                aggregateParameters[i] = aggregateTemplate.getParameterIndex(aggregateElementId, RequestAggregate.FIELD_NAMES.get(i).toLowerCase(Locale.ENGLISH));
+            }
+        }
+        else {
+            this.aggregator = null;
+            this.aggregateTemplate = null;
+            this.aggregateAgentIdParameter = -1;
+            this.aggregateDeployConfigParameter = -1;
+            this.aggregateParameters = null;
+        }
 
         final SyslogIF syslog = Syslog.getInstance(requestLogConfig.getProtocol());
         if (syslog == null) {
@@ -94,90 +180,191 @@ public class SyslogRequestLog extends AbstractLifeCycle implements RequestLog
             syslog.setStructuredMessageProcessor(messageProcessor);
         }
         this.syslog = syslog;
+
+        final String spoolDirectory = requestLogConfig.getSpoolDirectory();
+        if (syslog != null && spoolDirectory != null) {
+            // Spooling and the retries of a refused message happen on the sender thread, never on a request thread.
+            Preconditions.checkArgument(requestLogConfig.isAsync(), "The syslog spool needs an async request log");
+
+            // Only a syslog that reports failed writes can tell us when to spool. A threaded syslog only queues the
+            // message for its own writer thread, so it never sees the failure in time.
+            final SyslogConfigIF syslogConfig = syslog.getConfig();
+            syslogConfig.setThrowExceptionOnWrite(true);
+            if (syslogConfig instanceof AbstractSyslogConfigIF) {
+                ((AbstractSyslogConfigIF) syslogConfig).setThreaded(false);
+            }
+            this.spool = new SyslogSpool(new File(spoolDirectory),
+                                         requestLogConfig.getSpoolSegmentSize(),
+                                         requestLogConfig.getSpoolMaxSize(),
+                                         requestLogConfig.getSpoolReplayRate(),
+                                         requestLogConfig.getSpoolRetryInterval().getMillis(),
+                                         new SyslogSpool.Forwarder() {
+                                             @Override
+                                             public void forward(final StructuredSyslogMessage message)
+                                             {
+                                                 syslog.info(message);
+                                             }
+                                         });
+        }
+        else {
+            this.spool = null;
+        }
+
+        if (syslog != null && requestLogConfig.isAsync()) {
+            this.asyncSender = new AsyncSyslogSender(syslog,
+                                                     spool,
+                                                     requestLogConfig.getAsyncQueueSize(),
+                                                     requestLogConfig.getAsyncBatchSize(),
+                                                     requestLogConfig.getAsyncOverflowPolicy(),
+                                                     "syslog-request-log-sender");
+        }
+        else {
+            this.asyncSender = null;
+        }
     }
 
     @Inject(optional=true)
     void setGalaxyConfig(final GalaxyConfig galaxyConfig)
     {
-        this.galaxyConfig = galaxyConfig;
+        this.agentId = galaxyConfig.getEnv().getAgentId();
+        this.deployConfig = galaxyConfig.getDeploy().getConfig();
+    }
+
+    @Inject(optional=true)
+    void setMBeanServer(final MBeanServer mbeanServer)
+    {
+        this.mbeanServer = mbeanServer;
+    }
+
+    @Override
+    public void doStart()
+    {
+        if (aggregator != null && syslog != null) {
+            aggregator.start(new RequestAggregator.Listener() {
+                @Override
+                public void aggregated(final List<RequestAggregate> aggregates)
+                {
+                    for (RequestAggregate aggregate : aggregates) {
+                        send(aggregate);
+                    }
+                }
+            }, "syslog-request-log-aggregator");
+        }
+
+        if (spool != null) {
+            spool.start();
+            spoolMBeanName = MBeanExporter.export(mbeanServer, "SyslogRequestLog", "spool", spool);
+        }
+
+        if (asyncSender != null) {
+            asyncSender.start();
+            mbeanName = MBeanExporter.export(mbeanServer, "SyslogRequestLog", "async", asyncSender);
+        }
     }
 
     @Override
     public void doStop()
     {
+        if (aggregator != null) {
+            // Send whatever was aggregated so far while the sender is still running.
+            aggregator.stop();
+        }
+
+        if (asyncSender != null) {
+            MBeanExporter.unexport(mbeanServer, mbeanName);
+            mbeanName = null;
+            asyncSender.close();
+        }
+
+        if (spool != null) {
+            MBeanExporter.unexport(mbeanServer, spoolMBeanName);
+            spoolMBeanName = null;
+            spool.close();
+        }
+
         if (syslog != null) {
             syslog.flush();
         }
     }
 
+    @Override
+    public int getFilterIndex()
+    {
+        return filterIndex;
+    }
+
     @Override
     public void log(final Request request, final Response response)
+    {
+        if (syslog != null && recorder.accept(filterIndex, request, response)) {
+            log(recorder.evaluate(request, response), request, response);
+        }
+    }
+
+    @Override
+    public void log(final RequestRecord record, final Request request, final Response response)
     {
         if (syslog == null) {
             return;
         }
 
-        final String requestUri = request.getRequestURI();
+        if (aggregator != null) {
+            aggregator.record(request, response);
+            return;
+        }
 
-        for (String blackListEntry : blackList) {
-            if (StringUtils.startsWith(requestUri, blackListEntry)) {
-                return;
+        final String [] parameterValues = new String[structuredDataTemplate.getParameterCount()];
+        parameterValues[agentIdParameter] = agentId;
+        parameterValues[deployConfigParameter] = deployConfig;
+        for (int i = 0; i < columns.length; i++) {
+            if (!record.isNull(columns[i])) {
+                parameterValues[fieldParameters[i]] = record.get(columns[i]);
             }
         }
 
-        final String messageId = UUID.randomUUID().toString().replace("-", "");
-
-        final Map<String, Builder<String, String>> builderMap = Maps.newHashMap();
-
-        final Builder<String, String> logBuilder = ImmutableMap.builder();
-        builderMap.put("l@" + ianaIdentifier, logBuilder);
+        send(new StructuredSyslogMessage(messageIds.nextId(),
+                                         getThreadName(),
+                                         structuredDataTemplate.fill(parameterValues),
+                                         null));
+    }
 
-        if (galaxyConfig != null) {
-            if (galaxyConfig.getEnv().getAgentId() != null) {
-                logBuilder.put("si", galaxyConfig.getEnv().getAgentId());
-            }
-            if (galaxyConfig.getDeploy().getConfig() != null) {
-                logBuilder.put("sc", galaxyConfig.getDeploy().getConfig());
-            }
+    private void send(final RequestAggregate aggregate)
+    {
+        final RequestRecord record = aggregate.toRecord();
+        final String [] parameterValues = new String[aggregateTemplate.getParameterCount()];
+        parameterValues[aggregateAgentIdParameter] = agentId;
+        parameterValues[aggregateDeployConfigParameter] = deployConfig;
+        for (int i = 0; i < aggregateParameters.length; i++) {
+            parameterValues[aggregateParameters[i]] = record.get(i);
         }
 
-        for (Iterator<String> it = logFields.iterator(); it.hasNext(); ) {
-            // Parse out fields that have parameters e.g. header:X-Trumpet-Track, and print
-            final String[] chunks = StringUtils.split(it.next(), ":");
+        send(new StructuredSyslogMessage(messageIds.nextId(),
+                                         getThreadName(),
+                                         aggregateTemplate.fill(parameterValues),
+                                         null));
+    }
 
-            final LogField field = knownFields.get(chunks[0]);
-            if (chunks.length == 1) {
-                final Object result = field.log(request, response, null);
-                if (result != null) {
-                    logBuilder.put(field.getShortName(), result.toString());
-                }
-            }
-            else if (chunks.length == 2) {
-                final String fieldName = field.getShortName() + "@" + ianaIdentifier;
-                Builder<String, String> subBuilder = builderMap.get(fieldName);
-                if (subBuilder == null) {
-                    subBuilder = new Builder<String, String>();
-                    builderMap.put(fieldName, subBuilder);
-                }
-                final String fieldKey = chunks[1].toLowerCase(Locale.ENGLISH).replace("=", "_");
-                final Object result = field.log(request, response, chunks[1]);
-                if (result != null) {
-                    subBuilder.put(fieldKey, result.toString());
-                }
-            }
+    private void send(final StructuredSyslogMessage structuredMessage)
+    {
+        if (asyncSender != null) {
+            asyncSender.send(structuredMessage);
         }
+        else {
+            syslog.info(structuredMessage);
+        }
+    }
 
-        final String threadName = StringUtils.replaceChars(Thread.currentThread().getName()," \t", "");
-
-        final StructuredSyslogMessage structuredMessage = new StructuredSyslogMessage(messageId,
-                                                                                      threadName,
-                                                                                      Maps.transformValues(builderMap, new Function<Builder<String, String>, Map<String, String>>() {
-                                                                                          @Override
-                                                                                          public Map<String, String> apply(final Builder<String, String> builder) {
-                                                                                              return builder.build();
-                                                                                          }
-                                                                                      }),
-                                                                                      null);
-        syslog.info(structuredMessage);
+    /**
+     * The name of the current thread without blanks. Thread names rarely change, so the cleaned up name is kept around.
+     */
+    private String getThreadName()
+    {
+        final String name = Thread.currentThread().getName();
+        String [] cached = threadNames.get();
+        if (cached == null || cached[0] != name) {
+            cached = new String [] { name, StringUtils.replaceChars(name, " \t", "") };
+            threadNames.set(cached);
+        }
+        return cached[1];
     }
 }
@@ -17,14 +17,17 @@ package com.nesscomputing.httpserver.log.syslog;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.DefaultNull;
+import org.skife.config.TimeSpan;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.nesscomputing.httpserver.log.OverflowPolicy;
 import com.nesscomputing.syslog4j.SyslogFacility;
 
 public abstract class SyslogRequestLogConfig
@@ -41,6 +44,14 @@ public abstract class SyslogRequestLogConfig
         return ImmutableSet.of("/selftest", "/application.wadl");
     }
 
+    /** Filter expression, see {@link com.nesscomputing.httpserver.log.RequestLogFilter} for the syntax. */
+    @Config("filter")
+    @DefaultNull
+    public String getFilter()
+    {
+        return null;
+    }
+
     @Config("enabled")
     @Default("false")
     public boolean isEnabled()
@@ -55,6 +66,18 @@ public abstract class SyslogRequestLogConfig
         return ImmutableList.copyOf(Splitter.on(",").split(REQUEST_LOG_FIELDS_DEFAULT));
     }
 
+    /**
+     * Log one line per route, method, status and interval (e.g. 1m) with counts, bytes and latency percentiles
+     * instead of one line per request. Unset, every request is logged.
+     */
+    @Config("aggregate-interval")
+    @DefaultNull
+    public TimeSpan getAggregateInterval()
+    {
+        return null;
+    }
+
+
     @Config("facility")
     @Default("local0")
     public SyslogFacility getFacility()
@@ -119,6 +142,94 @@ public abstract class SyslogRequestLogConfig
         return 1023;
     }
 
-}
+    /**
+     * Hand messages to a dedicated sender thread instead of sending them on the request thread.
+     */
+    @Config("async")
+    @Default("false")
+    public boolean isAsync()
+    {
+        return false;
+    }
 
+    /**
+     * Number of messages that can wait for the sender thread. Rounded up to the next power of two.
+     */
+    @Config("async-queue-size")
+    @Default("8192")
+    public int getAsyncQueueSize()
+    {
+        return 8192;
+    }
+
+    /**
+     * Maximum number of messages the sender thread sends in one burst.
+     */
+    @Config("async-batch-size")
+    @Default("256")
+    public int getAsyncBatchSize()
+    {
+        return 256;
+    }
 
+    /**
+     * Whether messages are dropped or request threads wait when the queue is full.
+     */
+    @Config("async-overflow-policy")
+    @Default("DROP")
+    public OverflowPolicy getAsyncOverflowPolicy()
+    {
+        return OverflowPolicy.DROP;
+    }
+
+    /**
+     * Directory for the local spool. Messages that can not be sent to syslog are kept there and
+     * replayed later. Unset, there is no spool. The spool only works with {@link #isAsync()}.
+     */
+    @Config("spool-directory")
+    @DefaultNull
+    public String getSpoolDirectory()
+    {
+        return null;
+    }
+
+    /**
+     * Size at which the spool starts a new segment file.
+     */
+    @Config("spool-segment-size")
+    @Default("16777216")
+    public long getSpoolSegmentSize()
+    {
+        return 16777216L;
+    }
+
+    /**
+     * Disk space the spool may use. Messages beyond that are dropped.
+     */
+    @Config("spool-max-size")
+    @Default("1073741824")
+    public long getSpoolMaxSize()
+    {
+        return 1073741824L;
+    }
+
+    /**
+     * Number of spooled messages replayed per second.
+     */
+    @Config("spool-replay-rate")
+    @Default("1000")
+    public int getSpoolReplayRate()
+    {
+        return 1000;
+    }
+
+    /**
+     * Time to wait before trying again when syslog refuses a replayed message.
+     */
+    @Config("spool-retry-interval")
+    @Default("5s")
+    public TimeSpan getSpoolRetryInterval()
+    {
+        return new TimeSpan(5, TimeUnit.SECONDS);
+    }
+}
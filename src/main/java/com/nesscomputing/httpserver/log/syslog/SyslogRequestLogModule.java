@@ -16,14 +16,10 @@
 package com.nesscomputing.httpserver.log.syslog;
 
 
-import org.eclipse.jetty.server.handler.RequestLogHandler;
-
 import com.google.inject.AbstractModule;
-import com.google.inject.Inject;
-import com.google.inject.Provider;
 import com.google.inject.Scopes;
 import com.nesscomputing.config.Config;
-import com.nesscomputing.httpserver.HttpServerHandlerBinder;
+import com.nesscomputing.httpserver.log.RequestRecordModule;
 
 public class SyslogRequestLogModule extends AbstractModule
 {
@@ -42,26 +38,7 @@ public class SyslogRequestLogModule extends AbstractModule
         if (syslogRequestLogConfig.isEnabled()) {
             bind (SyslogRequestLogConfig.class).toInstance(syslogRequestLogConfig);
             bind(SyslogRequestLog.class).in(Scopes.SINGLETON);
-            HttpServerHandlerBinder.bindLoggingHandler(binder()).toProvider(HandlerProvider.class);
-        }
-    }
-
-    public static class HandlerProvider implements Provider<RequestLogHandler>
-    {
-        private final SyslogRequestLog syslogRequestLog;
-
-        @Inject
-        public HandlerProvider(final SyslogRequestLog syslogRequestLog)
-        {
-            this.syslogRequestLog = syslogRequestLog;
-        }
-
-        @Override
-        public RequestLogHandler get()
-        {
-            final RequestLogHandler handler = new RequestLogHandler();
-            handler.setRequestLog(syslogRequestLog);
-            return handler;
+            RequestRecordModule.bindRequestLog(binder()).to(SyslogRequestLog.class);
         }
     }
 }
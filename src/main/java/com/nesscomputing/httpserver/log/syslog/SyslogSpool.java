@@ -0,0 +1,414 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import com.nesscomputing.logging.Log;
+import com.nesscomputing.syslog4j.impl.message.structured.StructuredSyslogMessage;
+
+/**
+ * Store and forward for syslog request log messages. A message that syslog refuses goes into an
+ * append-only spool of segment files on local disk. From then on, all messages go into the spool
+ * until a forwarder thread has replayed it, rate limited, in order. Once the spool is empty, messages
+ * are sent directly again. The spool survives restarts; messages are delivered at least once.
+ */
+class SyslogSpool implements SyslogSpoolMXBean
+{
+    private static final Log LOG = Log.findLog();
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("spool-(\\d{16})\\.seg");
+    private static final long SHUTDOWN_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Sends a message to syslog, throws a runtime exception if the message could not be sent.
+     */
+    interface Forwarder
+    {
+        void forward(StructuredSyslogMessage message);
+    }
+
+    private final File directory;
+    private final long segmentSize;
+    private final long maxSpoolBytes;
+    private final long replayIntervalNanos;
+    private final long retryNanos;
+    private final Forwarder forwarder;
+    private final Thread forwarderThread;
+
+    // Guarded by this.
+    private final ArrayDeque<File> segments = new ArrayDeque<File>();
+    private File activeSegment = null;
+    private DataOutputStream activeOut = null;
+    private long activeRecords = 0L;
+    private long nextSequence = 0L;
+    private long spoolBytes = 0L;
+    private boolean closed = false;
+
+    private volatile boolean pending = false;
+    private volatile boolean running = true;
+
+    private final AtomicLong spooledMessages = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private volatile long replayedMessages = 0L;
+    private volatile long replayFailures = 0L;
+
+    SyslogSpool(final File directory,
+                final long segmentSize,
+                final long maxSpoolBytes,
+                final int replayRate,
+                final long retryMillis,
+                final Forwarder forwarder)
+    {
+        Preconditions.checkArgument(segmentSize > 0, "segment size must be positive, was %s", segmentSize);
+        Preconditions.checkArgument(replayRate > 0, "replay rate must be positive, was %s", replayRate);
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSpoolBytes = maxSpoolBytes;
+        this.replayIntervalNanos = TimeUnit.SECONDS.toNanos(1) / replayRate;
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        this.forwarder = forwarder;
+
+        this.forwarderThread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                forwardLoop();
+            }
+        }, "syslog-spool-forwarder");
+        this.forwarderThread.setDaemon(true);
+    }
+
+    /**
+     * Picks up the segments left over by an earlier run and starts replaying.
+     */
+    void start()
+    {
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            LOG.warn("Cannot create spool directory \"%s\"!", directory.getAbsolutePath());
+        }
+
+        synchronized (this) {
+            final File [] files = directory.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    final Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                    if (matcher.matches()) {
+                        segments.addLast(file);
+                        spoolBytes += file.length();
+                        nextSequence = Math.max(nextSequence, Long.parseLong(matcher.group(1)) + 1);
+                    }
+                }
+            }
+            if (!segments.isEmpty()) {
+                LOG.info("Found %d spooled syslog segments (%d bytes) in \"%s\"", segments.size(), spoolBytes, directory.getAbsolutePath());
+            }
+            updatePending();
+        }
+
+        forwarderThread.start();
+    }
+
+    /**
+     * Sends a message directly or, if syslog refuses it or the spool has not been replayed yet, spools it.
+     *
+     * @return False if the message had to be dropped because the spool is full.
+     */
+    boolean deliver(final StructuredSyslogMessage message)
+    {
+        if (!pending) {
+            try {
+                forwarder.forward(message);
+                return true;
+            }
+            catch (RuntimeException e) {
+                LOG.debug(e, "Could not send to syslog, spooling");
+            }
+        }
+        return append(message);
+    }
+
+    /**
+     * Adds a message to the end of the spool.
+     *
+     * @return False if the message had to be dropped because the spool is full.
+     */
+    synchronized boolean append(final StructuredSyslogMessage message)
+    {
+        if (closed || spoolBytes >= maxSpoolBytes) {
+            droppedMessages.incrementAndGet();
+            return false;
+        }
+
+        try {
+            if (activeOut == null) {
+                activeSegment = new File(directory, String.format("spool-%016d.seg", nextSequence++));
+                activeOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(activeSegment, true)));
+                segments.addLast(activeSegment);
+            }
+
+            final int sizeBefore = activeOut.size();
+            writeMessage(activeOut, message);
+            activeOut.flush();
+            spoolBytes += activeOut.size() - sizeBefore;
+            activeRecords++;
+
+            if (activeOut.size() >= segmentSize) {
+                closeActiveSegment();
+            }
+        }
+        catch (IOException e) {
+            LOG.warn(e, "Could not write to syslog spool \"%s\"", activeSegment);
+            closeActiveSegment();
+            droppedMessages.incrementAndGet();
+            return false;
+        }
+
+        spooledMessages.incrementAndGet();
+        updatePending();
+        LockSupport.unpark(forwarderThread);
+        return true;
+    }
+
+    void close()
+    {
+        running = false;
+        LockSupport.unpark(forwarderThread);
+        try {
+            forwarderThread.join(SHUTDOWN_WAIT_MILLIS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            closed = true;
+            closeActiveSegment();
+        }
+    }
+
+    private void closeActiveSegment()
+    {
+        if (activeOut != null) {
+            Closeables.closeQuietly(activeOut);
+            activeOut = null;
+            activeSegment = null;
+            activeRecords = 0L;
+        }
+    }
+
+    private void updatePending()
+    {
+        pending = !segments.isEmpty();
+    }
+
+    /**
+     * Returns the oldest segment that can be replayed, closing the active segment if it is the only one left.
+     */
+    private synchronized File nextSegment()
+    {
+        final File segment = segments.peekFirst();
+        if (segment != null && segment.equals(activeSegment)) {
+            closeActiveSegment();
+        }
+        return segment;
+    }
+
+    private synchronized void removeSegment(final File segment)
+    {
+        segments.remove(segment);
+        spoolBytes = Math.max(0L, spoolBytes - segment.length());
+        if (!segment.delete()) {
+            LOG.warn("Could not remove replayed syslog spool segment \"%s\"", segment.getAbsolutePath());
+        }
+        updatePending();
+    }
+
+    private void forwardLoop()
+    {
+        long nextSendTime = System.nanoTime();
+
+        while (running) {
+            final File segment = nextSegment();
+            if (segment == null) {
+                LockSupport.parkNanos(this, retryNanos);
+                continue;
+            }
+
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)));
+                for (;;) {
+                    final StructuredSyslogMessage message;
+                    try {
+                        message = readMessage(in);
+                    }
+                    catch (EOFException e) {
+                        // Either the end of the segment or a message cut short by a crash.
+                        break;
+                    }
+
+                    while (running) {
+                        final long waitTime = nextSendTime - System.nanoTime();
+                        if (waitTime > 0) {
+                            LockSupport.parkNanos(this, waitTime);
+                            continue;
+                        }
+
+                        try {
+                            forwarder.forward(message);
+                            replayedMessages++;
+                            nextSendTime = Math.max(nextSendTime, System.nanoTime() - replayIntervalNanos) + replayIntervalNanos;
+                            break;
+                        }
+                        catch (RuntimeException e) {
+                            replayFailures++;
+                            nextSendTime = System.nanoTime() + retryNanos;
+                        }
+                    }
+
+                    if (!running) {
+                        // The segment is replayed again from the start after a restart.
+                        return;
+                    }
+                }
+            }
+            catch (IOException e) {
+                LOG.warn(e, "Could not read syslog spool segment \"%s\", skipping it", segment.getAbsolutePath());
+            }
+            finally {
+                Closeables.closeQuietly(in);
+            }
+
+            removeSegment(segment);
+        }
+    }
+
+    private static void writeMessage(final DataOutputStream out, final StructuredSyslogMessage message) throws IOException
+    {
+        out.writeUTF(message.getMessageId());
+        out.writeUTF(message.getProcId());
+
+        @SuppressWarnings("unchecked")
+        final Map<String, Map<String, String>> structuredData = (Map<String, Map<String, String>>) message.getStructuredData();
+        out.writeInt(structuredData.size());
+        for (Map.Entry<String, Map<String, String>> element : structuredData.entrySet()) {
+            out.writeUTF(element.getKey());
+            out.writeInt(element.getValue().size());
+            for (Map.Entry<String, String> parameter : element.getValue().entrySet()) {
+                out.writeUTF(parameter.getKey());
+                out.writeUTF(parameter.getValue());
+            }
+        }
+
+        final String text = message.getMessage();
+        out.writeBoolean(text != null);
+        if (text != null) {
+            out.writeUTF(text);
+        }
+    }
+
+    private static StructuredSyslogMessage readMessage(final DataInputStream in) throws IOException
+    {
+        final String messageId = in.readUTF();
+        final String procId = in.readUTF();
+
+        final int elementCount = in.readInt();
+        final Map<String, Map<String, String>> structuredData = new LinkedHashMap<String, Map<String, String>>(elementCount);
+        for (int i = 0; i < elementCount; i++) {
+            final String elementId = in.readUTF();
+            final int parameterCount = in.readInt();
+            final Map<String, String> parameters = new LinkedHashMap<String, String>(parameterCount);
+            for (int j = 0; j < parameterCount; j++) {
+                final String name = in.readUTF();
+                parameters.put(name, in.readUTF());
+            }
+            structuredData.put(elementId, parameters);
+        }
+
+        final String text = in.readBoolean() ? in.readUTF() : null;
+        return new StructuredSyslogMessage(messageId, procId, structuredData, text);
+    }
+
+    @Override
+    public boolean isPending()
+    {
+        return pending;
+    }
+
+    @Override
+    public synchronized int getSegments()
+    {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized long getSpoolBytes()
+    {
+        return spoolBytes;
+    }
+
+    @Override
+    public long getMaxSpoolBytes()
+    {
+        return maxSpoolBytes;
+    }
+
+    @Override
+    public long getSpooledMessages()
+    {
+        return spooledMessages.get();
+    }
+
+    @Override
+    public long getReplayedMessages()
+    {
+        return replayedMessages;
+    }
+
+    @Override
+    public long getDroppedMessages()
+    {
+        return droppedMessages.get();
+    }
+
+    @Override
+    public long getReplayFailures()
+    {
+        return replayFailures;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+/**
+ * JMX view of the syslog request log spool.
+ */
+public interface SyslogSpoolMXBean
+{
+    /** Whether messages are currently waiting in the spool. */
+    boolean isPending();
+
+    /** Number of segment files on disk, including the one being written. */
+    int getSegments();
+
+    /** Bytes currently used by the spool on disk. */
+    long getSpoolBytes();
+
+    long getMaxSpoolBytes();
+
+    /** Messages written to the spool. */
+    long getSpooledMessages();
+
+    /** Messages sent to syslog from the spool. */
+    long getReplayedMessages();
+
+    /** Messages discarded because the spool was full. */
+    long getDroppedMessages();
+
+    /** Attempts to replay a message that syslog refused. */
+    long getReplayFailures();
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed size, log-linear histogram of non-negative values (usually latencies in microseconds). Every power
+ * of two is split into 16 buckets, so percentiles are accurate to within about 6%. Values from 0 to 15 are
+ * counted exactly, values above 2^40 land in the last bucket.
+ *
+ * Recording is thread safe and lock free. Histograms with the same layout can be merged, which makes them
+ * suitable for aggregating over threads, intervals or servers.
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 39;
+
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(final long value)
+    {
+        final long clamped = Math.max(0L, value);
+        counts.incrementAndGet(bucketIndex(clamped));
+        count.incrementAndGet();
+        sum.addAndGet(clamped);
+
+        for (long currentMax = max.get(); clamped > currentMax; currentMax = max.get()) {
+            if (max.compareAndSet(currentMax, clamped)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds all values of another histogram to this one. Values recorded into the other histogram while it
+     * is merged may or may not be included.
+     */
+    public void merge(final LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long bucketCount = other.counts.get(i);
+            if (bucketCount != 0L) {
+                counts.addAndGet(i, bucketCount);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+
+        final long otherMax = other.max.get();
+        for (long currentMax = max.get(); otherMax > currentMax; currentMax = max.get()) {
+            if (max.compareAndSet(currentMax, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        final long currentCount = count.get();
+        return currentCount == 0L ? 0.0 : (double) sum.get() / currentCount;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of all values fall, 0 for an empty histogram.
+     * The result is the upper bound of the bucket the percentile falls into, but never more than the largest
+     * value recorded.
+     *
+     * @param percentile between 0 (exclusive) and 100 (inclusive).
+     */
+    public long getPercentile(final double percentile)
+    {
+        Preconditions.checkArgument(percentile > 0.0 && percentile <= 100.0, "percentile must be in (0, 100], was %s", percentile);
+
+        long total = 0L;
+        final long [] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucketIndex(final long value)
+    {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(final int index)
+    {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        if (index == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        final long lowerBound = (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1L;
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.nesscomputing.httpserver.jmx.MBeanExporter;
+
+/**
+ * Per method, route and status class latency and response size histograms. Recording a request into existing
+ * histograms takes no locks; the set of routes is bounded, requests for routes beyond the limit are counted
+ * under {@link RequestMetrics#OTHER_ROUTE}. Every combination can be exported to JMX as
+ * <tt>com.nesscomputing.httpserver:type=RouteMetrics,name="&lt;method&gt; &lt;route&gt; &lt;status class&gt;"</tt>.
+ */
+@Singleton
+public class RequestMetrics
+{
+    public static final String OTHER_ROUTE = "(other)";
+
+    /** Anything else a client sends as a method is counted as OTHER, so clients can not grow the key space. */
+    private static final ImmutableSet<String> KNOWN_METHODS = ImmutableSet.of("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE");
+
+    private static final String [] STATUS_CLASSES = { "xxx", "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+    private static final Comparator<RouteMetrics> ROUTE_ORDER = new Comparator<RouteMetrics>() {
+        @Override
+        public int compare(final RouteMetrics a, final RouteMetrics b)
+        {
+            int result = a.getRoute().compareTo(b.getRoute());
+            if (result == 0) {
+                result = a.getMethod().compareTo(b.getMethod());
+            }
+            if (result == 0) {
+                result = a.getStatusClass().compareTo(b.getStatusClass());
+            }
+            return result;
+        }
+    };
+
+    private final int maxRoutes;
+    private final ConcurrentMap<Key, RouteMetrics> metrics = new ConcurrentHashMap<Key, RouteMetrics>();
+
+    private final Map<RouteMetrics, ObjectName> mbeanNames = new IdentityHashMap<RouteMetrics, ObjectName>();
+    private MBeanServer mbeanServer = null;
+
+    @Inject
+    public RequestMetrics(final RequestMetricsConfig config)
+    {
+        this(config.getMaxRoutes());
+    }
+
+    RequestMetrics(final int maxRoutes)
+    {
+        Preconditions.checkArgument(maxRoutes >= 0, "max routes must not be negative, was %s", maxRoutes);
+        this.maxRoutes = maxRoutes;
+    }
+
+    public void record(@CheckForNull final String method, final String route, final int status, final long latencyMicros, final long size)
+    {
+        final Key key = new Key(normalizeMethod(method), route, statusClass(status));
+        RouteMetrics routeMetrics = metrics.get(key);
+        if (routeMetrics == null) {
+            routeMetrics = create(key);
+        }
+        routeMetrics.record(latencyMicros, size);
+    }
+
+    /**
+     * Returns all metrics, ordered by route, method and status class.
+     */
+    public List<RouteMetrics> getRouteMetrics()
+    {
+        final List<RouteMetrics> result = new ArrayList<RouteMetrics>(metrics.values());
+        Collections.sort(result, ROUTE_ORDER);
+        return result;
+    }
+
+    @CheckForNull
+    public RouteMetrics getRouteMetrics(final String method, final String route, final int status)
+    {
+        return metrics.get(new Key(normalizeMethod(method), route, statusClass(status)));
+    }
+
+    /**
+     * Exports all current and future metrics to the MBean server.
+     */
+    public synchronized void export(final MBeanServer mbeanServer)
+    {
+        this.mbeanServer = mbeanServer;
+        for (RouteMetrics routeMetrics : metrics.values()) {
+            exportMetrics(routeMetrics);
+        }
+    }
+
+    /**
+     * Removes all metrics from the MBean server again.
+     */
+    public synchronized void unexport()
+    {
+        for (ObjectName mbeanName : mbeanNames.values()) {
+            MBeanExporter.unexport(mbeanServer, mbeanName);
+        }
+        mbeanNames.clear();
+        mbeanServer = null;
+    }
+
+    private synchronized RouteMetrics create(final Key key)
+    {
+        Key actualKey = key;
+        RouteMetrics routeMetrics = metrics.get(actualKey);
+        if (routeMetrics == null && metrics.size() >= maxRoutes) {
+            actualKey = new Key(key.method, OTHER_ROUTE, key.statusClass);
+            routeMetrics = metrics.get(actualKey);
+        }
+
+        if (routeMetrics == null) {
+            routeMetrics = new RouteMetrics(actualKey.method, actualKey.route, actualKey.statusClass);
+            metrics.put(actualKey, routeMetrics);
+            exportMetrics(routeMetrics);
+        }
+        return routeMetrics;
+    }
+
+    private void exportMetrics(final RouteMetrics routeMetrics)
+    {
+        if (mbeanServer != null && !mbeanNames.containsKey(routeMetrics)) {
+            final ObjectName mbeanName = MBeanExporter.export(mbeanServer, "RouteMetrics", ObjectName.quote(routeMetrics.toString()), routeMetrics);
+            if (mbeanName != null) {
+                mbeanNames.put(routeMetrics, mbeanName);
+            }
+        }
+    }
+
+    /**
+     * Returns the method if it is a well known one, otherwise "OTHER". Clients choose the method, so anything
+     * keyed by it must not take it as is.
+     */
+    public static String normalizeMethod(@CheckForNull final String method)
+    {
+        return method != null && KNOWN_METHODS.contains(method) ? method : "OTHER";
+    }
+
+    static String statusClass(final int status)
+    {
+        final int statusClass = status / 100;
+        return statusClass >= 1 && statusClass < STATUS_CLASSES.length ? STATUS_CLASSES[statusClass] : STATUS_CLASSES[0];
+    }
+
+    private static final class Key
+    {
+        private final String method;
+        private final String route;
+        private final String statusClass;
+
+        Key(final String method, final String route, final String statusClass)
+        {
+            this.method = method;
+            this.route = route;
+            this.statusClass = statusClass;
+        }
+
+        @Override
+        public boolean equals(final Object other)
+        {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) other;
+            return method.equals(that.method) && statusClass.equals(that.statusClass) && route.equals(that.route);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(method, route, statusClass);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+public abstract class RequestMetricsConfig
+{
+    @Config("enabled")
+    @Default("false")
+    public boolean isEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Number of method, route and status class combinations tracked. Each takes about 10k of memory, requests
+     * beyond the limit are counted under the <tt>(other)</tt> route.
+     */
+    @Config("max-routes")
+    @Default("256")
+    public int getMaxRoutes()
+    {
+        return 256;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import java.io.IOException;
+
+import javax.management.MBeanServer;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.joda.time.DateTimeUtils;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.nesscomputing.httpserver.HttpServerConfig;
+import com.nesscomputing.httpserver.log.RequestTiming;
+import com.nesscomputing.httpserver.log.RouteNormalizer;
+
+/**
+ * Logging handler which records every finished request into the {@link RequestMetrics}. The metrics are
+ * exported to JMX if the http server has JMX enabled.
+ */
+@Singleton
+public class RequestMetricsHandler extends AbstractHandler
+{
+    private final RequestMetrics metrics;
+
+    private MBeanServer mbeanServer = null;
+    private boolean jmxEnabled = false;
+
+    @Inject
+    public RequestMetricsHandler(final RequestMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Inject(optional=true)
+    void setMBeanServer(final MBeanServer mbeanServer)
+    {
+        this.mbeanServer = mbeanServer;
+    }
+
+    @Inject(optional=true)
+    void setHttpServerConfig(final HttpServerConfig httpServerConfig)
+    {
+        this.jmxEnabled = httpServerConfig.isJmxEnabled();
+    }
+
+    @Override
+    public void doStart() throws Exception
+    {
+        if (mbeanServer != null && jmxEnabled) {
+            metrics.export(mbeanServer);
+        }
+        super.doStart();
+    }
+
+    @Override
+    public void doStop() throws Exception
+    {
+        metrics.unexport();
+        super.doStop();
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        final Response baseResponse = baseRequest.getResponse();
+        metrics.record(baseRequest.getMethod(),
+                       RouteNormalizer.getRoute(baseRequest),
+                       baseResponse.getStatus(),
+                       RequestTiming.getElapsedMicros(baseRequest, DateTimeUtils.currentTimeMillis()),
+                       baseResponse.getContentCount());
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Scopes;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.httpserver.HttpServerHandlerBinder;
+
+/**
+ * Per route latency and response size histograms, see {@link RequestMetrics}. Configured
+ * from <tt>ness.httpserver.request-metrics</tt>, disabled by default.
+ */
+public class RequestMetricsModule extends AbstractModule
+{
+    private final Config config;
+
+    public RequestMetricsModule(final Config config)
+    {
+        this.config = config;
+    }
+
+    @Override
+    public void configure()
+    {
+        final RequestMetricsConfig requestMetricsConfig = config.getBean("ness.httpserver.request-metrics", RequestMetricsConfig.class);
+
+        if (requestMetricsConfig.isEnabled()) {
+            bind(RequestMetricsConfig.class).toInstance(requestMetricsConfig);
+            bind(RequestMetrics.class).in(Scopes.SINGLETON);
+            bind(RequestMetricsHandler.class).in(Scopes.SINGLETON);
+            HttpServerHandlerBinder.bindLoggingHandler(binder()).to(RequestMetricsHandler.class);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+/**
+ * Latency and response size histograms of all requests with the same method, route and status class
+ * (<tt>2xx</tt>, <tt>4xx</tt>, ...).
+ */
+public class RouteMetrics implements RouteMetricsMXBean
+{
+    private final String method;
+    private final String route;
+    private final String statusClass;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LatencyHistogram sizes = new LatencyHistogram();
+
+    RouteMetrics(final String method, final String route, final String statusClass)
+    {
+        this.method = method;
+        this.route = route;
+        this.statusClass = statusClass;
+    }
+
+    void record(final long latencyMicros, final long size)
+    {
+        latencies.record(latencyMicros);
+        sizes.record(size);
+    }
+
+    @Override
+    public String getMethod()
+    {
+        return method;
+    }
+
+    @Override
+    public String getRoute()
+    {
+        return route;
+    }
+
+    @Override
+    public String getStatusClass()
+    {
+        return statusClass;
+    }
+
+    /**
+     * Latency histogram in microseconds. Live, it keeps changing while requests are recorded.
+     */
+    public LatencyHistogram getLatencies()
+    {
+        return latencies;
+    }
+
+    /**
+     * Response size histogram in bytes. Live, it keeps changing while requests are recorded.
+     */
+    public LatencyHistogram getSizes()
+    {
+        return sizes;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return latencies.getCount();
+    }
+
+    @Override
+    public double getLatencyMean()
+    {
+        return latencies.getMean();
+    }
+
+    @Override
+    public long getLatencyP50()
+    {
+        return latencies.getPercentile(50.0);
+    }
+
+    @Override
+    public long getLatencyP99()
+    {
+        return latencies.getPercentile(99.0);
+    }
+
+    @Override
+    public long getLatencyP999()
+    {
+        return latencies.getPercentile(99.9);
+    }
+
+    @Override
+    public long getLatencyMax()
+    {
+        return latencies.getMax();
+    }
+
+    @Override
+    public long getSizeP50()
+    {
+        return sizes.getPercentile(50.0);
+    }
+
+    @Override
+    public long getSizeP99()
+    {
+        return sizes.getPercentile(99.0);
+    }
+
+    @Override
+    public long getSizeMax()
+    {
+        return sizes.getMax();
+    }
+
+    @Override
+    public String toString()
+    {
+        return method + " " + route + " " + statusClass;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+/**
+ * JMX view of the {@link RouteMetrics} of a method, route and status class. Latencies are in microseconds,
+ * sizes in bytes; all values are since the server started.
+ */
+public interface RouteMetricsMXBean
+{
+    String getMethod();
+
+    String getRoute();
+
+    String getStatusClass();
+
+    long getCount();
+
+    double getLatencyMean();
+
+    long getLatencyP50();
+
+    long getLatencyP99();
+
+    long getLatencyP999();
+
+    long getLatencyMax();
+
+    long getSizeP50();
+
+    long getSizeP99();
+
+    long getSizeMax();
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over a number of cells, each on its own cache line. Threads add to the cell picked by their
+ * thread id, so concurrent updates from different threads rarely touch the same cache line. Reading the counter
+ * sums up all cells, which makes reads more expensive than updates.
+ */
+public final class StripedCounter
+{
+    /** Cells are 8 longs (64 bytes) apart. */
+    private static final int CELL_SHIFT = 3;
+
+    private static final int MAX_STRIPES = 64;
+
+    static final int DEFAULT_STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter()
+    {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes Number of cells, must be a power of two.
+     */
+    StripedCounter(final int stripes)
+    {
+        this.cells = new AtomicLongArray(stripes << CELL_SHIFT);
+        this.mask = stripes - 1;
+    }
+
+    public void increment()
+    {
+        add(1L);
+    }
+
+    public void decrement()
+    {
+        add(-1L);
+    }
+
+    public void add(final long value)
+    {
+        cells.addAndGet(stripe(mask) << CELL_SHIFT, value);
+    }
+
+    public long get()
+    {
+        long sum = 0L;
+        for (int i = 0; i < cells.length(); i += 1 << CELL_SHIFT) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the counter to 0. Updates that race with the reset may or may not be included afterwards.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < cells.length(); i += 1 << CELL_SHIFT) {
+            cells.set(i, 0L);
+        }
+    }
+
+    /**
+     * Returns the stripe of the current thread. Pool threads are created in sequence and have consecutive ids,
+     * so the low bits of the id spread them evenly.
+     */
+    static int stripe(final int mask)
+    {
+        return (int) Thread.currentThread().getId() & mask;
+    }
+
+    /**
+     * Returns the power of two at or above twice the number of processors, but no more than {@link #MAX_STRIPES}.
+     */
+    static int stripesFor(final int processors)
+    {
+        final int stripes = Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1;
+        return Math.min(stripes, MAX_STRIPES);
+    }
+}
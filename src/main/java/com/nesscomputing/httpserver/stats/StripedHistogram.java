@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+/**
+ * A {@link LatencyHistogram} for heavily concurrent recording. Every thread records into the histogram of its
+ * stripe (see {@link StripedCounter}), the stripes are only merged when the histogram is read.
+ */
+public final class StripedHistogram
+{
+    private final int stripes;
+    private final int mask;
+
+    private volatile LatencyHistogram [] histograms;
+
+    public StripedHistogram()
+    {
+        this(StripedCounter.DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes Number of histograms, must be a power of two.
+     */
+    StripedHistogram(final int stripes)
+    {
+        this.stripes = stripes;
+        this.mask = stripes - 1;
+        this.histograms = newHistograms(stripes);
+    }
+
+    public void record(final long value)
+    {
+        histograms[StripedCounter.stripe(mask)].record(value);
+    }
+
+    /**
+     * Returns a histogram of all values recorded so far.
+     */
+    public LatencyHistogram snapshot()
+    {
+        final LatencyHistogram snapshot = new LatencyHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            snapshot.merge(histogram);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops all values. Values recorded while the histogram is reset may be lost.
+     */
+    public void reset()
+    {
+        histograms = newHistograms(stripes);
+    }
+
+    private static LatencyHistogram [] newHistograms(final int stripes)
+    {
+        final LatencyHistogram [] histograms = new LatencyHistogram[stripes];
+        for (int i = 0; i < stripes; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+}
@@ -0,0 +1,514 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.server.AsyncContinuation;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+
+/**
+ * Drop-in replacement for the Jetty {@link StatisticsHandler} that does not funnel every request through the
+ * same few atomic counters. Counts are kept in {@link StripedCounter}s and times in {@link StripedHistogram}s,
+ * which are only summed up when the statistics are read. It reports the same statistics (and JMX attributes)
+ * as the Jetty handler, plus percentiles of the request and dispatch times.
+ *
+ * The active maximums (e.g. {@link #getRequestsActiveMax()}) are sampled and may miss short peaks.
+ */
+public class StripedStatisticsHandler extends StatisticsHandler
+{
+    /** Roughly one in this many updates checks the active maximum. */
+    private static final int MAX_SAMPLE_RATE = 32;
+
+    private final AtomicLong statsStartedAt = new AtomicLong(System.currentTimeMillis());
+
+    private final ActiveStatistic requestStats = new ActiveStatistic();
+    private final TimeStatistic requestTimeStats = new TimeStatistic();
+    private final ActiveStatistic dispatchedStats = new ActiveStatistic();
+    private final TimeStatistic dispatchedTimeStats = new TimeStatistic();
+    private final ActiveStatistic suspendStats = new ActiveStatistic();
+
+    private final StripedCounter resumes = new StripedCounter();
+    private final StripedCounter expires = new StripedCounter();
+
+    private final StripedCounter [] responses = new StripedCounter[] {
+        new StripedCounter(), new StripedCounter(), new StripedCounter(), new StripedCounter(), new StripedCounter()
+    };
+    private final StripedCounter responsesTotalBytes = new StripedCounter();
+
+    private final ContinuationListener onCompletion = new ContinuationListener() {
+        @Override
+        public void onComplete(final Continuation continuation)
+        {
+            final Request request = ((AsyncContinuation) continuation).getBaseRequest();
+            requestStats.decrement();
+            requestTimeStats.record(System.currentTimeMillis() - request.getTimeStamp());
+            updateResponse(request);
+
+            if (!continuation.isResumed()) {
+                suspendStats.decrement();
+            }
+        }
+
+        @Override
+        public void onTimeout(final Continuation continuation)
+        {
+            expires.increment();
+        }
+    };
+
+    @Override
+    public void handle(final String path, final Request request, final HttpServletRequest httpRequest, final HttpServletResponse httpResponse)
+        throws IOException, ServletException
+    {
+        dispatchedStats.increment();
+
+        final long start;
+        final AsyncContinuation continuation = request.getAsyncContinuation();
+        if (continuation.isInitial()) {
+            requestStats.increment();
+            start = request.getTimeStamp();
+        }
+        else {
+            // Resumed or expired request.
+            start = System.currentTimeMillis();
+            suspendStats.decrement();
+            if (continuation.isResumed()) {
+                resumes.increment();
+            }
+        }
+
+        try {
+            // Not super.handle(), which would count the request in the Jetty statistics as well.
+            final Handler handler = getHandler();
+            if (handler != null && isStarted()) {
+                handler.handle(path, request, httpRequest, httpResponse);
+            }
+        }
+        finally {
+            final long dispatched = System.currentTimeMillis() - start;
+            dispatchedStats.decrement();
+            dispatchedTimeStats.record(dispatched);
+
+            if (continuation.isSuspended()) {
+                if (continuation.isInitial()) {
+                    continuation.addContinuationListener(onCompletion);
+                }
+                suspendStats.increment();
+            }
+            else if (continuation.isInitial()) {
+                requestStats.decrement();
+                requestTimeStats.record(dispatched);
+                updateResponse(request);
+            }
+            // Otherwise the completion listener takes care of it.
+        }
+    }
+
+    private void updateResponse(final Request request)
+    {
+        final Response response = request.getResponse();
+        final int statusClass = response.getStatus() / 100;
+        if (statusClass >= 1 && statusClass <= 5) {
+            responses[statusClass - 1].increment();
+        }
+        responsesTotalBytes.add(response.getContentCount());
+    }
+
+    @Override
+    public void statsReset()
+    {
+        statsStartedAt.set(System.currentTimeMillis());
+
+        requestStats.reset();
+        requestTimeStats.reset();
+        dispatchedStats.reset();
+        dispatchedTimeStats.reset();
+        suspendStats.reset();
+
+        resumes.reset();
+        expires.reset();
+        for (StripedCounter counter : responses) {
+            counter.reset();
+        }
+        responsesTotalBytes.reset();
+    }
+
+    @Override
+    public int getRequests()
+    {
+        return (int) requestStats.getTotal();
+    }
+
+    @Override
+    public int getRequestsActive()
+    {
+        return (int) requestStats.getActive();
+    }
+
+    @Override
+    public int getRequestsActiveMax()
+    {
+        return (int) requestStats.getMax();
+    }
+
+    @Override
+    public long getRequestTimeMax()
+    {
+        return requestTimeStats.getMax();
+    }
+
+    @Override
+    public long getRequestTimeTotal()
+    {
+        return requestTimeStats.getTotal();
+    }
+
+    @Override
+    public double getRequestTimeMean()
+    {
+        return requestTimeStats.getMean();
+    }
+
+    @Override
+    public double getRequestTimeStdDev()
+    {
+        return requestTimeStats.getStdDev();
+    }
+
+    public long getRequestTimePercentile50()
+    {
+        return requestTimeStats.getPercentile(50.0);
+    }
+
+    public long getRequestTimePercentile90()
+    {
+        return requestTimeStats.getPercentile(90.0);
+    }
+
+    public long getRequestTimePercentile99()
+    {
+        return requestTimeStats.getPercentile(99.0);
+    }
+
+    @Override
+    public int getDispatched()
+    {
+        return (int) dispatchedStats.getTotal();
+    }
+
+    @Override
+    public int getDispatchedActive()
+    {
+        return (int) dispatchedStats.getActive();
+    }
+
+    @Override
+    public int getDispatchedActiveMax()
+    {
+        return (int) dispatchedStats.getMax();
+    }
+
+    @Override
+    public long getDispatchedTimeMax()
+    {
+        return dispatchedTimeStats.getMax();
+    }
+
+    @Override
+    public long getDispatchedTimeTotal()
+    {
+        return dispatchedTimeStats.getTotal();
+    }
+
+    @Override
+    public double getDispatchedTimeMean()
+    {
+        return dispatchedTimeStats.getMean();
+    }
+
+    @Override
+    public double getDispatchedTimeStdDev()
+    {
+        return dispatchedTimeStats.getStdDev();
+    }
+
+    public long getDispatchedTimePercentile50()
+    {
+        return dispatchedTimeStats.getPercentile(50.0);
+    }
+
+    public long getDispatchedTimePercentile90()
+    {
+        return dispatchedTimeStats.getPercentile(90.0);
+    }
+
+    public long getDispatchedTimePercentile99()
+    {
+        return dispatchedTimeStats.getPercentile(99.0);
+    }
+
+    @Override
+    public int getSuspends()
+    {
+        return (int) suspendStats.getTotal();
+    }
+
+    @Override
+    public int getSuspendsActive()
+    {
+        return (int) suspendStats.getActive();
+    }
+
+    @Override
+    public int getSuspendsActiveMax()
+    {
+        return (int) suspendStats.getMax();
+    }
+
+    @Override
+    public int getResumes()
+    {
+        return (int) resumes.get();
+    }
+
+    @Override
+    public int getExpires()
+    {
+        return (int) expires.get();
+    }
+
+    @Override
+    public int getResponses1xx()
+    {
+        return (int) responses[0].get();
+    }
+
+    @Override
+    public int getResponses2xx()
+    {
+        return (int) responses[1].get();
+    }
+
+    @Override
+    public int getResponses3xx()
+    {
+        return (int) responses[2].get();
+    }
+
+    @Override
+    public int getResponses4xx()
+    {
+        return (int) responses[3].get();
+    }
+
+    @Override
+    public int getResponses5xx()
+    {
+        return (int) responses[4].get();
+    }
+
+    @Override
+    public long getStatsOnMs()
+    {
+        return System.currentTimeMillis() - statsStartedAt.get();
+    }
+
+    @Override
+    public long getResponsesBytesTotal()
+    {
+        return responsesTotalBytes.get();
+    }
+
+    @Override
+    public String toStatsHTML()
+    {
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append("<h1>Statistics:</h1>\n");
+        sb.append("Statistics gathering started ").append(getStatsOnMs()).append("ms ago").append("<br />\n");
+
+        sb.append("<h2>Requests:</h2>\n");
+        sb.append("Total requests: ").append(getRequests()).append("<br />\n");
+        sb.append("Active requests: ").append(getRequestsActive()).append("<br />\n");
+        sb.append("Max active requests: ").append(getRequestsActiveMax()).append("<br />\n");
+        sb.append("Total requests time: ").append(getRequestTimeTotal()).append("<br />\n");
+        sb.append("Mean request time: ").append(getRequestTimeMean()).append("<br />\n");
+        sb.append("Max request time: ").append(getRequestTimeMax()).append("<br />\n");
+        sb.append("Request time standard deviation: ").append(getRequestTimeStdDev()).append("<br />\n");
+        sb.append("Request time 50th / 90th / 99th percentile: ")
+            .append(getRequestTimePercentile50()).append(" / ")
+            .append(getRequestTimePercentile90()).append(" / ")
+            .append(getRequestTimePercentile99()).append("<br />\n");
+
+        sb.append("<h2>Dispatches:</h2>\n");
+        sb.append("Total dispatched: ").append(getDispatched()).append("<br />\n");
+        sb.append("Active dispatched: ").append(getDispatchedActive()).append("<br />\n");
+        sb.append("Max active dispatched: ").append(getDispatchedActiveMax()).append("<br />\n");
+        sb.append("Total dispatched time: ").append(getDispatchedTimeTotal()).append("<br />\n");
+        sb.append("Mean dispatched time: ").append(getDispatchedTimeMean()).append("<br />\n");
+        sb.append("Max dispatched time: ").append(getDispatchedTimeMax()).append("<br />\n");
+        sb.append("Dispatched time standard deviation: ").append(getDispatchedTimeStdDev()).append("<br />\n");
+        sb.append("Dispatched time 50th / 90th / 99th percentile: ")
+            .append(getDispatchedTimePercentile50()).append(" / ")
+            .append(getDispatchedTimePercentile90()).append(" / ")
+            .append(getDispatchedTimePercentile99()).append("<br />\n");
+
+        sb.append("Total requests suspended: ").append(getSuspends()).append("<br />\n");
+        sb.append("Total requests expired: ").append(getExpires()).append("<br />\n");
+        sb.append("Total requests resumed: ").append(getResumes()).append("<br />\n");
+
+        sb.append("<h2>Responses:</h2>\n");
+        sb.append("1xx responses: ").append(getResponses1xx()).append("<br />\n");
+        sb.append("2xx responses: ").append(getResponses2xx()).append("<br />\n");
+        sb.append("3xx responses: ").append(getResponses3xx()).append("<br />\n");
+        sb.append("4xx responses: ").append(getResponses4xx()).append("<br />\n");
+        sb.append("5xx responses: ").append(getResponses5xx()).append("<br />\n");
+        sb.append("Bytes sent total: ").append(getResponsesBytesTotal()).append("<br />\n");
+
+        return sb.toString();
+    }
+
+    /**
+     * Total and currently active count of something, e.g. requests.
+     */
+    private static final class ActiveStatistic
+    {
+        private final StripedCounter total = new StripedCounter();
+        private final StripedCounter active = new StripedCounter();
+        private final AtomicLong max = new AtomicLong();
+
+        void increment()
+        {
+            total.increment();
+            active.increment();
+
+            // Summing up the active count on every update would bring back the contention.
+            if (ThreadLocalRandom.current().nextInt(MAX_SAMPLE_RATE) == 0) {
+                updateMax(active.get());
+            }
+        }
+
+        void decrement()
+        {
+            active.decrement();
+        }
+
+        long getTotal()
+        {
+            return total.get();
+        }
+
+        long getActive()
+        {
+            return Math.max(0L, active.get());
+        }
+
+        long getMax()
+        {
+            updateMax(getActive());
+            return max.get();
+        }
+
+        /**
+         * Like the Jetty statistics, keeps the active count and starts the maximum over from there.
+         */
+        void reset()
+        {
+            total.reset();
+            max.set(getActive());
+        }
+
+        private void updateMax(final long value)
+        {
+            for (long currentMax = max.get(); value > currentMax; currentMax = max.get()) {
+                if (max.compareAndSet(currentMax, value)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Times in milliseconds.
+     */
+    private static final class TimeStatistic
+    {
+        private final StripedHistogram histogram = new StripedHistogram();
+        private final StripedCounter count = new StripedCounter();
+        private final StripedCounter total = new StripedCounter();
+        private final StripedCounter squares = new StripedCounter();
+
+        void record(final long millis)
+        {
+            histogram.record(millis);
+            count.increment();
+            total.add(millis);
+            squares.add(millis * millis);
+        }
+
+        long getMax()
+        {
+            return histogram.snapshot().getMax();
+        }
+
+        long getTotal()
+        {
+            return total.get();
+        }
+
+        double getMean()
+        {
+            final long n = count.get();
+            return n == 0L ? 0.0 : (double) total.get() / n;
+        }
+
+        double getStdDev()
+        {
+            final long n = count.get();
+            if (n <= 1L) {
+                return 0.0;
+            }
+            final double sum = total.get();
+            final double variance = (squares.get() - sum * sum / n) / (n - 1);
+            return Math.sqrt(Math.max(0.0, variance));
+        }
+
+        long getPercentile(final double percentile)
+        {
+            return histogram.snapshot().getPercentile(percentile);
+        }
+
+        void reset()
+        {
+            histogram.reset();
+            count.reset();
+            total.reset();
+            squares.reset();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Stage;
+import com.google.inject.name.Named;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.config.ConfigModule;
+import com.nesscomputing.httpclient.HttpClient;
+import com.nesscomputing.httpclient.guice.HttpClientModule;
+import com.nesscomputing.httpclient.response.StringContentConverter;
+import com.nesscomputing.lifecycle.Lifecycle;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.LifecycleModule;
+import com.nesscomputing.testing.lessio.AllowNetworkAccess;
+import com.nesscomputing.testing.lessio.AllowNetworkListen;
+
+/**
+ * A connector with its own thread pool next to one that shares the server pool.
+ */
+@AllowNetworkListen(ports= {0})
+@AllowNetworkAccess(endpoints= {"127.0.0.1:0"})
+public class TestConnectorThreadPool
+{
+    private static final String DEDICATED_CONNECTOR = "service-1";
+
+    @Inject
+    @Named("test")
+    private final HttpClient httpClient = null;
+
+    @Inject
+    private final Lifecycle lifecycle = null;
+
+    private String sharedUri = null;
+    private String dedicatedUri = null;
+    private boolean stopped = false;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        sharedUri = format("http://localhost:%d/thread", findUnusedPort());
+        dedicatedUri = format("http://localhost:%d/thread", findUnusedPort());
+
+        final Config config = Config.getFixedConfig("ness.httpserver.service-uri", StringUtils.join(new String [] { sharedUri, dedicatedUri }, ","),
+                                                    "ness.httpserver.class", "com.nesscomputing.httpserver.SoloJetty8HttpServer",
+                                                    "ness.httpserver.connector." + DEDICATED_CONNECTOR + ".max-threads", "32",
+                                                    "ness.httpserver.connector." + DEDICATED_CONNECTOR + ".min-threads", "1");
+
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+                                                       new ConfigModule(config),
+                                                       new HttpServerModule(config),
+                                                       new HttpClientModule("test"),
+                                                       new LifecycleModule(),
+                                                       new Module() {
+                                                            @Override
+                                                            public void configure(Binder binder) {
+                                                                binder.requireExplicitBindings();
+                                                                binder.disableCircularProxies();
+
+                                                                HttpServerHandlerBinder.bindHandler(binder).toInstance(new ThreadNameHandler());
+                                                            }
+
+                                                       });
+
+        injector.injectMembers(this);
+        lifecycle.executeTo(LifecycleStage.START_STAGE);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (!stopped) {
+            lifecycle.executeTo(LifecycleStage.STOP_STAGE);
+        }
+    }
+
+    @Test
+    public void testRequestsRunOnTheirConnectorPool() throws Exception
+    {
+        for (int i = 0; i < 5; i++) {
+            final String dedicatedThread = httpClient.get(dedicatedUri, StringContentConverter.DEFAULT_RESPONSE_HANDLER).perform();
+            Assert.assertTrue(dedicatedThread, isDedicatedThread(dedicatedThread));
+
+            final String sharedThread = httpClient.get(sharedUri, StringContentConverter.DEFAULT_RESPONSE_HANDLER).perform();
+            Assert.assertFalse(sharedThread, isDedicatedThread(sharedThread));
+        }
+    }
+
+    @Test
+    public void testConnectorPoolStopsWithTheServer() throws Exception
+    {
+        httpClient.get(dedicatedUri, StringContentConverter.DEFAULT_RESPONSE_HANDLER).perform();
+        Assert.assertTrue(countDedicatedThreads() > 0);
+
+        lifecycle.executeTo(LifecycleStage.STOP_STAGE);
+        stopped = true;
+
+        for (int i = 0; i < 100 && countDedicatedThreads() > 0; i++) {
+            Thread.sleep(50L);
+        }
+        Assert.assertEquals(0, countDedicatedThreads());
+    }
+
+    private static boolean isDedicatedThread(final String threadName)
+    {
+        return threadName.startsWith(DEDICATED_CONNECTOR + "-");
+    }
+
+    private static int countDedicatedThreads()
+    {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && isDedicatedThread(thread.getName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int findUnusedPort()
+        throws IOException
+    {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(0));
+            port = socket.getLocalPort();
+        }
+
+        return port;
+    }
+
+    private static class ThreadNameHandler extends AbstractHandler
+    {
+        @Override
+        public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException
+        {
+            response.setContentType("text/plain");
+            response.getWriter().write(Thread.currentThread().getName());
+            baseRequest.setHandled(true);
+        }
+    }
+}
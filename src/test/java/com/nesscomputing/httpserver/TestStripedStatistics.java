@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.Stage;
+import com.google.inject.servlet.ServletModule;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.config.ConfigModule;
+import com.nesscomputing.httpserver.stats.StripedStatisticsHandler;
+import com.nesscomputing.lifecycle.Lifecycle;
+import com.nesscomputing.lifecycle.LifecycleStage;
+import com.nesscomputing.lifecycle.guice.LifecycleModule;
+import com.nesscomputing.testing.lessio.AllowNetworkAccess;
+import com.nesscomputing.testing.lessio.AllowNetworkListen;
+
+/**
+ * Runs the same requests through a server with the striped statistics and one with the Jetty statistics.
+ */
+@AllowNetworkListen(ports= {0})
+@AllowNetworkAccess(endpoints= {"127.0.0.1:0"})
+public class TestStripedStatistics
+{
+    @Test
+    public void testSameStatisticsAsJetty() throws Exception
+    {
+        final StatisticsHandler jettyStats = runRequests(false);
+        final StatisticsHandler stripedStats = runRequests(true);
+
+        Assert.assertFalse(jettyStats instanceof StripedStatisticsHandler);
+        Assert.assertTrue(stripedStats instanceof StripedStatisticsHandler);
+
+        for (StatisticsHandler stats : new StatisticsHandler [] { jettyStats, stripedStats }) {
+            Assert.assertEquals(6, stats.getRequests());
+            Assert.assertEquals(0, stats.getRequestsActive());
+            Assert.assertEquals(4, stats.getResponses2xx());
+            Assert.assertEquals(2, stats.getResponses4xx());
+            // The suspended request is dispatched twice.
+            Assert.assertEquals(7, stats.getDispatched());
+            Assert.assertEquals(0, stats.getDispatchedActive());
+            Assert.assertEquals(1, stats.getSuspends());
+            Assert.assertEquals(0, stats.getSuspendsActive());
+            Assert.assertEquals(1, stats.getResumes());
+            Assert.assertEquals(0, stats.getExpires());
+        }
+    }
+
+    private StatisticsHandler runRequests(final boolean striped) throws Exception
+    {
+        final String baseUri = format("http://127.0.0.1:%d", findUnusedPort());
+        final Config config = Config.getFixedConfig("ness.httpserver.service-uri", baseUri,
+                                                    "ness.httpserver.class", "com.nesscomputing.httpserver.SoloJetty8HttpServer",
+                                                    "ness.httpserver.striped-statistics", Boolean.toString(striped));
+
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+                                                       new ConfigModule(config),
+                                                       new HttpServerModule(config),
+                                                       new LifecycleModule(),
+                                                       new ServletModule() {
+                                                            @Override
+                                                            public void configureServlets() {
+                                                                binder().requireExplicitBindings();
+                                                                binder().disableCircularProxies();
+
+                                                                bind (StatusServlet.class);
+                                                                serve("/ok", "/missing", "/suspend").with(StatusServlet.class);
+                                                            }
+
+                                                       });
+
+        final Lifecycle lifecycle = injector.getInstance(Lifecycle.class);
+        lifecycle.executeTo(LifecycleStage.START_STAGE);
+        try {
+            final StatisticsHandler stats = ((AbstractJetty8HttpServer) injector.getInstance(HttpServer.class)).getStatisticsHandler();
+
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(200, get(baseUri + "/ok"));
+            }
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(404, get(baseUri + "/missing"));
+            }
+            Assert.assertEquals(200, get(baseUri + "/suspend"));
+
+            // The statistics of a request may be updated just after the client got the response.
+            for (int i = 0; i < 100 && (stats.getRequests() < 6 || stats.getRequestsActive() > 0); i++) {
+                Thread.sleep(50L);
+            }
+            return stats;
+        }
+        finally {
+            lifecycle.executeTo(LifecycleStage.STOP_STAGE);
+        }
+    }
+
+    private static int get(final String uri) throws IOException
+    {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+        try {
+            return connection.getResponseCode();
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private static int findUnusedPort()
+        throws IOException
+    {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(0));
+            port = socket.getLocalPort();
+        }
+
+        return port;
+    }
+
+    /**
+     * Answers /missing with a 404 and everything else with a 200. /suspend is suspended first and resumed by
+     * another thread.
+     */
+    @Singleton
+    static class StatusServlet extends HttpServlet
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void doGet(final HttpServletRequest req, final HttpServletResponse res) throws ServletException, IOException
+        {
+            final Continuation continuation = ContinuationSupport.getContinuation(req);
+            if ("/suspend".equals(req.getRequestURI()) && continuation.isInitial()) {
+                continuation.suspend();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            Thread.sleep(50L);
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        continuation.resume();
+                    }
+                }).start();
+                return;
+            }
+
+            res.setStatus("/missing".equals(req.getRequestURI()) ? HttpServletResponse.SC_NOT_FOUND : HttpServletResponse.SC_OK);
+            res.setContentLength(0);
+        }
+    }
+}
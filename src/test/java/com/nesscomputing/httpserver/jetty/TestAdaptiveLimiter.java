@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestAdaptiveLimiter
+{
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private static AdaptiveLimiter newLimiter()
+    {
+        return new AdaptiveLimiter(20, 4, 100, 1.5, 1.0, TimeUnit.SECONDS.toNanos(1L));
+    }
+
+    @Test
+    public void testAdmission()
+    {
+        final AdaptiveLimiter limiter = newLimiter();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(1L, limiter.getRejectedCount());
+
+        limiter.release(MILLIS);
+        Assert.assertEquals(19, limiter.getInFlight());
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testGrowsAtBaseline()
+    {
+        final AdaptiveLimiter limiter = newLimiter();
+        limiter.update(10 * MILLIS, 20);
+        Assert.assertEquals(24, limiter.getLimit());
+        limiter.update(10 * MILLIS, 24);
+        Assert.assertTrue(limiter.getLimit() > 24);
+        Assert.assertEquals(10000L, limiter.getNoLoadLatency());
+    }
+
+    @Test
+    public void testShrinksWhenLatencyGrows()
+    {
+        final AdaptiveLimiter limiter = newLimiter();
+        limiter.update(10 * MILLIS, 20);
+        final int limit = limiter.getLimit();
+
+        limiter.update(100 * MILLIS, limit);
+        Assert.assertTrue(limiter.getLimit() < limit);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.update(100 * MILLIS, limiter.getLimit());
+        }
+        Assert.assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testIgnoresIdleWindows()
+    {
+        final AdaptiveLimiter limiter = newLimiter();
+        limiter.update(100 * MILLIS, 2);
+        Assert.assertEquals(20, limiter.getLimit());
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.continuation.Continuation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class TestFairScheduler
+{
+    private final List<String> resumed = Lists.newArrayList();
+
+    private FairScheduler.Ticket newTicket(final String clientName)
+    {
+        final Continuation continuation = (Continuation) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?> [] { Continuation.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object [] args)
+            {
+                if ("resume".equals(method.getName())) {
+                    resumed.add(clientName);
+                }
+                return null;
+            }
+        });
+        return new FairScheduler.Ticket(clientName, continuation, 1000L);
+    }
+
+    @Test
+    public void testRejectsWhenClientQueueIsFull()
+    {
+        final FairScheduler scheduler = new FairScheduler(1, 2, 10, TimeUnit.MILLISECONDS.toNanos(10L));
+        Assert.assertEquals(FairScheduler.Admission.ADMITTED, scheduler.offer(newTicket("a")));
+        Assert.assertEquals(FairScheduler.Admission.QUEUED, scheduler.offer(newTicket("a")));
+        Assert.assertEquals(FairScheduler.Admission.QUEUED, scheduler.offer(newTicket("a")));
+        Assert.assertEquals(FairScheduler.Admission.REJECTED, scheduler.offer(newTicket("a")));
+        Assert.assertEquals(FairScheduler.Admission.QUEUED, scheduler.offer(newTicket("b")));
+
+        Assert.assertEquals(1L, scheduler.getRejectedCount());
+        Assert.assertEquals(3, scheduler.getQueued());
+        Assert.assertEquals(2, scheduler.getBackloggedClientCount());
+    }
+
+    @Test
+    public void testClientsTakeTurns() throws Exception
+    {
+        final FairScheduler scheduler = new FairScheduler(1, 10, 10, 1L);
+        FairScheduler.Ticket running = newTicket("x");
+        Assert.assertEquals(FairScheduler.Admission.ADMITTED, scheduler.offer(running));
+
+        final List<FairScheduler.Ticket> tickets = ImmutableList.of(newTicket("a"), newTicket("a"), newTicket("a"), newTicket("b"));
+        for (FairScheduler.Ticket ticket : tickets) {
+            Assert.assertEquals(FairScheduler.Admission.QUEUED, scheduler.offer(ticket));
+        }
+
+        // The busy client does not get all of the turns just because it asked first.
+        final List<FairScheduler.Ticket> order = Lists.newArrayList(tickets.get(0), tickets.get(3), tickets.get(1), tickets.get(2));
+        for (FairScheduler.Ticket next : order) {
+            Thread.sleep(1L);
+            scheduler.release(running);
+            running = next;
+        }
+        Assert.assertEquals(ImmutableList.of("a", "b", "a", "a"), resumed);
+        Assert.assertEquals(0, scheduler.getQueued());
+
+        scheduler.release(running);
+        Assert.assertEquals(0, scheduler.getActive());
+    }
+
+    @Test
+    public void testClientsInterleaveOnSeveralPlaces()
+    {
+        final FairScheduler scheduler = new FairScheduler(4, 10, 10, TimeUnit.MILLISECONDS.toNanos(10L));
+        final List<FairScheduler.Ticket> running = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            final FairScheduler.Ticket ticket = newTicket("x");
+            Assert.assertEquals(FairScheduler.Admission.ADMITTED, scheduler.offer(ticket));
+            running.add(ticket);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(FairScheduler.Admission.QUEUED, scheduler.offer(newTicket("a")));
+        }
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(FairScheduler.Admission.QUEUED, scheduler.offer(newTicket("b")));
+        }
+
+        // Every place that opens up goes to the next client in turn, not to whoever is at the head of the line.
+        for (FairScheduler.Ticket ticket : running) {
+            scheduler.release(ticket);
+        }
+        Assert.assertEquals(ImmutableList.of("a", "b", "a", "b"), resumed);
+        Assert.assertEquals(4, scheduler.getActive());
+        Assert.assertEquals(4, scheduler.getQueued());
+    }
+
+    @Test
+    public void testEvictsIdleClients()
+    {
+        final FairScheduler scheduler = new FairScheduler(10, 10, 1, TimeUnit.MILLISECONDS.toNanos(10L));
+        final FairScheduler.Ticket a = newTicket("a");
+        Assert.assertEquals(FairScheduler.Admission.ADMITTED, scheduler.offer(a));
+        scheduler.release(a);
+
+        Assert.assertEquals(FairScheduler.Admission.ADMITTED, scheduler.offer(newTicket("b")));
+        Assert.assertEquals(1L, scheduler.getEvictedCount());
+        Assert.assertEquals(1, scheduler.getClientCount());
+
+        // b is busy, c has to share the queue of the untracked clients.
+        Assert.assertEquals(FairScheduler.Admission.ADMITTED, scheduler.offer(newTicket("c")));
+        Assert.assertEquals(1L, scheduler.getEvictedCount());
+        Assert.assertEquals(1, scheduler.getClientCount());
+        Assert.assertEquals(2, scheduler.getActive());
+    }
+
+    @Test
+    public void testCancel()
+    {
+        final FairScheduler scheduler = new FairScheduler(1, 10, 10, TimeUnit.MILLISECONDS.toNanos(10L));
+        final FairScheduler.Ticket running = newTicket("x");
+        Assert.assertEquals(FairScheduler.Admission.ADMITTED, scheduler.offer(running));
+
+        final FairScheduler.Ticket expired = newTicket("a");
+        final FairScheduler.Ticket admitted = newTicket("b");
+        scheduler.offer(expired);
+        scheduler.offer(admitted);
+
+        Assert.assertTrue(scheduler.cancel(expired));
+        Assert.assertEquals(1L, scheduler.getExpiredCount());
+        Assert.assertEquals(1, scheduler.getBackloggedClientCount());
+
+        scheduler.release(running);
+        Assert.assertEquals(ImmutableList.of("b"), resumed);
+        Assert.assertFalse(scheduler.cancel(admitted));
+        Assert.assertEquals(1, scheduler.getActive());
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class TestPriorityClassifier
+{
+    private final PriorityClassifier classifier = new PriorityClassifier(ImmutableSet.of("/api/feed"),
+                                                                         ImmutableSet.of("/api/backfill", ""),
+                                                                         ImmutableSet.of("internal-http"),
+                                                                         ImmutableSet.<String>of(),
+                                                                         ImmutableSet.of("internal-http"));
+
+    @Test
+    public void testRoutes()
+    {
+        Assert.assertEquals(RequestPriority.HIGH, classifier.classify("external-http", "/api/feed/123", null));
+        Assert.assertEquals(RequestPriority.LOW, classifier.classify("external-http", "/api/backfill", null));
+        Assert.assertEquals(RequestPriority.NORMAL, classifier.classify("external-http", "/api/other", null));
+        Assert.assertEquals(RequestPriority.NORMAL, classifier.classify(null, null, null));
+    }
+
+    @Test
+    public void testConnectors()
+    {
+        Assert.assertEquals(RequestPriority.HIGH, classifier.classify("internal-http", "/api/other", null));
+        Assert.assertEquals(RequestPriority.LOW, classifier.classify("internal-http", "/api/backfill", null));
+    }
+
+    @Test
+    public void testHeaderIsOnlyTrustedOnSomeConnectors()
+    {
+        Assert.assertEquals(RequestPriority.LOW, classifier.classify("internal-http", "/api/feed", "low"));
+        Assert.assertEquals(RequestPriority.HIGH, classifier.classify("external-http", "/api/feed", "low"));
+        Assert.assertEquals(RequestPriority.NORMAL, classifier.classify("external-http", "/api/other", "HIGH"));
+        Assert.assertEquals(RequestPriority.HIGH, classifier.classify("internal-http", "/api/other", "bogus"));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.continuation.Continuation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestPriorityScheduler
+{
+    private final List<RequestPriority> resumed = Lists.newArrayList();
+
+    private PriorityScheduler.Waiter newWaiter(final RequestPriority priority)
+    {
+        final Continuation continuation = (Continuation) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?> [] { Continuation.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object [] args)
+            {
+                if ("resume".equals(method.getName())) {
+                    resumed.add(priority);
+                }
+                return null;
+            }
+        });
+        return new PriorityScheduler.Waiter(priority, continuation);
+    }
+
+    @Test
+    public void testAdmitsUpToMaxActive()
+    {
+        final PriorityScheduler scheduler = new PriorityScheduler(2, TimeUnit.SECONDS.toNanos(1L));
+        Assert.assertTrue(scheduler.tryAcquire());
+        Assert.assertTrue(scheduler.tryAcquire());
+        Assert.assertFalse(scheduler.tryAcquire());
+        Assert.assertEquals(2, scheduler.getActive());
+
+        scheduler.release();
+        Assert.assertEquals(1, scheduler.getActive());
+        Assert.assertTrue(scheduler.tryAcquire());
+    }
+
+    @Test
+    public void testHighPriorityGoesFirst()
+    {
+        final PriorityScheduler scheduler = new PriorityScheduler(1, TimeUnit.SECONDS.toNanos(1L));
+        Assert.assertTrue(scheduler.tryAcquire());
+
+        scheduler.enqueue(newWaiter(RequestPriority.LOW));
+        scheduler.enqueue(newWaiter(RequestPriority.NORMAL));
+        scheduler.enqueue(newWaiter(RequestPriority.HIGH));
+        Assert.assertEquals(3, scheduler.getQueued());
+        Assert.assertFalse(scheduler.tryAcquire());
+
+        scheduler.release();
+        scheduler.release();
+        scheduler.release();
+        Assert.assertEquals(Lists.newArrayList(RequestPriority.HIGH, RequestPriority.NORMAL, RequestPriority.LOW), resumed);
+        Assert.assertEquals(1, scheduler.getActive());
+        Assert.assertEquals(0, scheduler.getQueued());
+        Assert.assertEquals(0L, scheduler.getPromotedCount());
+
+        scheduler.release();
+        Assert.assertEquals(0, scheduler.getActive());
+    }
+
+    @Test
+    public void testStarvedRequestGoesAhead() throws Exception
+    {
+        final PriorityScheduler scheduler = new PriorityScheduler(1, 0L);
+        Assert.assertTrue(scheduler.tryAcquire());
+
+        scheduler.enqueue(newWaiter(RequestPriority.LOW));
+        Thread.sleep(2L);
+        scheduler.enqueue(newWaiter(RequestPriority.HIGH));
+
+        scheduler.release();
+        Assert.assertEquals(Lists.newArrayList(RequestPriority.LOW), resumed);
+        Assert.assertEquals(1L, scheduler.getPromotedCount());
+    }
+
+    @Test
+    public void testCancel()
+    {
+        final PriorityScheduler scheduler = new PriorityScheduler(1, TimeUnit.SECONDS.toNanos(1L));
+        Assert.assertTrue(scheduler.tryAcquire());
+
+        final PriorityScheduler.Waiter expired = newWaiter(RequestPriority.HIGH);
+        final PriorityScheduler.Waiter admitted = newWaiter(RequestPriority.LOW);
+        scheduler.enqueue(expired);
+        scheduler.enqueue(admitted);
+
+        Assert.assertTrue(scheduler.cancel(expired));
+        Assert.assertEquals(1L, scheduler.getExpiredCount());
+
+        scheduler.release();
+        Assert.assertEquals(Lists.newArrayList(RequestPriority.LOW), resumed);
+        Assert.assertFalse(scheduler.cancel(admitted));
+        Assert.assertEquals(1, scheduler.getActive());
+    }
+
+    @Test
+    public void testEnqueueWhenRoomOpenedUp()
+    {
+        final PriorityScheduler scheduler = new PriorityScheduler(1, TimeUnit.SECONDS.toNanos(1L));
+        final PriorityScheduler.Waiter waiter = newWaiter(RequestPriority.NORMAL);
+        scheduler.enqueue(waiter);
+
+        Assert.assertEquals(Lists.newArrayList(RequestPriority.NORMAL), resumed);
+        Assert.assertEquals(0, scheduler.getQueued());
+        Assert.assertFalse(scheduler.cancel(waiter));
+    }
+}
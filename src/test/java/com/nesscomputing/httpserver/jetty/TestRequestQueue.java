@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nesscomputing.httpserver.jetty.TimedQueuedThreadPool.TimedJob;
+
+public class TestRequestQueue
+{
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run()
+        {
+        }
+    };
+
+    @Test
+    public void testMaxQueued()
+    {
+        final RequestQueue queue = new RequestQueue(2, 0L, TimeUnit.MILLISECONDS.toNanos(100L));
+        final TimedJob first = new TimedJob(NOOP, System.nanoTime());
+        final TimedJob second = new TimedJob(NOOP, System.nanoTime());
+        final TimedJob third = new TimedJob(NOOP, System.nanoTime());
+
+        Assert.assertTrue(queue.offer(first));
+        Assert.assertTrue(queue.offer(second));
+        Assert.assertTrue(queue.offer(third));
+
+        // The shed job comes first, so it is answered right away.
+        Assert.assertSame(third, queue.poll());
+        Assert.assertTrue(third.isShed());
+        Assert.assertSame(first, queue.poll());
+        Assert.assertFalse(first.isShed());
+        Assert.assertEquals(1L, queue.getShedCount());
+        Assert.assertEquals(2L, queue.getQueueWaitCount());
+    }
+
+    @Test
+    public void testShedOnWait()
+    {
+        final RequestQueue queue = new RequestQueue(0, TimeUnit.MILLISECONDS.toNanos(5L), TimeUnit.MILLISECONDS.toNanos(100L));
+        final TimedJob stale = new TimedJob(NOOP, System.nanoTime() - TimeUnit.SECONDS.toNanos(1L));
+        final TimedJob fresh = new TimedJob(NOOP, System.nanoTime());
+
+        queue.offer(stale);
+        queue.offer(fresh);
+
+        Assert.assertTrue(((TimedJob) queue.poll()).isShed());
+        Assert.assertFalse(((TimedJob) queue.poll()).isShed());
+        Assert.assertEquals(1L, queue.getShedCount());
+        Assert.assertTrue(queue.getQueueWaitMax() >= TimeUnit.SECONDS.toMicros(1L));
+    }
+
+    @Test
+    public void testLifoWhenOverloaded() throws Exception
+    {
+        final RequestQueue queue = new RequestQueue(0, TimeUnit.MINUTES.toNanos(1L), TimeUnit.MILLISECONDS.toNanos(1L));
+        final TimedJob older = new TimedJob(NOOP, System.nanoTime());
+        final TimedJob newer = new TimedJob(NOOP, System.nanoTime());
+
+        queue.offer(older);
+        queue.offer(newer);
+        Thread.sleep(10L);
+
+        Assert.assertTrue(queue.isOverloaded());
+        Assert.assertSame(newer, queue.poll());
+        Assert.assertFalse(newer.isShed());
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.server.AsyncContinuation;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * The fair queue, priority and limit handlers, stacked the way the server stacks them.
+ */
+public class TestSchedulingHandlers
+{
+    private final FairScheduler fairScheduler = new FairScheduler(10, 10, 10, TimeUnit.MILLISECONDS.toNanos(10L));
+    private final PriorityScheduler priorityScheduler = new PriorityScheduler(1, TimeUnit.SECONDS.toNanos(1L));
+    private final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 1.5, 0.2, TimeUnit.SECONDS.toNanos(1L));
+
+    private Handler handler;
+    private int handled = 0;
+    private int status = 0;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        final AbstractHandler application = new AbstractHandler() {
+            @Override
+            public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException, ServletException
+            {
+                handled++;
+                baseRequest.setHandled(true);
+            }
+        };
+
+        final AdaptiveLimitHandler limitHandler = new AdaptiveLimitHandler(limiter, ImmutableSet.<String>of(), 1L);
+        limitHandler.setHandler(application);
+
+        final PriorityClassifier classifier = new PriorityClassifier(ImmutableSet.<String>of(), ImmutableSet.<String>of(), ImmutableSet.<String>of(), ImmutableSet.<String>of(), ImmutableSet.<String>of());
+        final PriorityHandler priorityHandler = new PriorityHandler(priorityScheduler, classifier, ImmutableSet.<String>of(), 1000L, 1L);
+        priorityHandler.setHandler(limitHandler);
+
+        final FairQueueHandler fairQueueHandler = new FairQueueHandler(fairScheduler, ClientIdentity.REMOTE_ADDRESS, "X-Ness-Server-Type", ImmutableSet.<String>of(), 1000L, 1L);
+        fairQueueHandler.setHandler(priorityHandler);
+
+        handler = fairQueueHandler;
+        handler.start();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        handler.stop();
+    }
+
+    @Test
+    public void testResumedRequestIsScheduledAndLimited() throws Exception
+    {
+        // Other requests hold the only place of the priority scheduler and of the limit.
+        Assert.assertTrue(priorityScheduler.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+
+        // Not on its initial dispatch, as if a handler further out had suspended and resumed it.
+        final TestRequest request = new TestRequest();
+        dispatch(request);
+        Assert.assertEquals(0, handled);
+        Assert.assertTrue(request.continuation.suspended);
+        Assert.assertEquals(1, priorityScheduler.getQueued());
+
+        priorityScheduler.release();
+        Assert.assertTrue(request.continuation.resumed);
+
+        dispatch(request);
+        Assert.assertEquals(0, handled);
+        Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, status);
+        Assert.assertEquals(0, priorityScheduler.getActive());
+
+        limiter.release(0L);
+        dispatch(new TestRequest());
+        Assert.assertEquals(1, handled);
+        Assert.assertEquals(0, priorityScheduler.getActive());
+        Assert.assertEquals(0, limiter.getInFlight());
+        Assert.assertEquals(0, fairScheduler.getActive());
+    }
+
+    private void dispatch(final TestRequest request) throws Exception
+    {
+        request.continuation.suspended = false;
+        final HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?> [] { HttpServletResponse.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object [] args)
+            {
+                if ("setStatus".equals(method.getName())) {
+                    status = (Integer) args[0];
+                }
+                return null;
+            }
+        });
+        handler.handle("/", request, request, response);
+        if (!request.continuation.suspended) {
+            request.continuation.complete();
+        }
+    }
+
+    private static class TestRequest extends Request
+    {
+        private final TestContinuation continuation = new TestContinuation(this);
+
+        @Override
+        public AsyncContinuation getAsyncContinuation()
+        {
+            return continuation;
+        }
+
+        @Override
+        public String getHeader(final String name)
+        {
+            return null;
+        }
+
+        @Override
+        public String getRemoteAddr()
+        {
+            return "127.0.0.1";
+        }
+    }
+
+    private static class TestContinuation extends AsyncContinuation
+    {
+        private final Request baseRequest;
+        private final List<ContinuationListener> listeners = Lists.newArrayList();
+        private boolean suspended = false;
+        private boolean resumed = false;
+
+        TestContinuation(final Request baseRequest)
+        {
+            this.baseRequest = baseRequest;
+        }
+
+        @Override
+        public Request getBaseRequest()
+        {
+            return baseRequest;
+        }
+
+        @Override
+        public boolean isInitial()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isSuspended()
+        {
+            return suspended;
+        }
+
+        @Override
+        public void setTimeout(final long timeoutMs)
+        {
+        }
+
+        @Override
+        public void suspend()
+        {
+            suspended = true;
+        }
+
+        @Override
+        public void resume()
+        {
+            resumed = true;
+        }
+
+        @Override
+        public void addContinuationListener(final ContinuationListener listener)
+        {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void complete()
+        {
+            for (final ContinuationListener listener : listeners) {
+                listener.onComplete(this);
+            }
+            listeners.clear();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nesscomputing.httpserver.log.RequestTiming;
+
+public class TestServletContextTimingHandler
+{
+    private static final String TEXT = "Gr\u00fc\u00dfe \u2713";
+
+    @Test
+    public void testPrintReachesTheContainerStream() throws Exception
+    {
+        final RequestTiming timing = new RequestTiming(0L, System.nanoTime());
+        final long [] firstByteNanos = new long [] { -1L };
+
+        final ServletContextTimingHandler handler = new ServletContextTimingHandler();
+        handler.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response)
+                throws IOException, ServletException
+            {
+                response.getOutputStream().print(TEXT);
+                firstByteNanos[0] = timing.getTimeToFirstByteNanos();
+                baseRequest.setHandled(true);
+            }
+        });
+        handler.start();
+
+        final Request request = new Request();
+        request.setAttribute(RequestTiming.ATTRIBUTE, timing);
+
+        final ContainerOutputStream outputStream = new ContainerOutputStream();
+        final HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?> [] { HttpServletResponse.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object [] args)
+            {
+                return "getOutputStream".equals(method.getName()) ? outputStream : null;
+            }
+        });
+
+        handler.handle("/", request, request, response);
+        handler.stop();
+
+        // The text was not taken apart into single ISO-8859-1 characters on the way.
+        Assert.assertEquals(TEXT, outputStream.printed.toString());
+        Assert.assertTrue(firstByteNanos[0] >= 0L);
+    }
+
+    /**
+     * Encodes print like the Jetty output stream does, instead of writing the characters one by one.
+     */
+    private static class ContainerOutputStream extends ServletOutputStream
+    {
+        private final StringBuilder printed = new StringBuilder();
+
+        @Override
+        public void print(final String s) throws IOException
+        {
+            printed.append(s);
+        }
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            throw new AssertionError("character was written on its own");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.jetty;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestVirtualThreadPool
+{
+    @Test
+    public void testConcurrencyLimit() throws Exception
+    {
+        Assume.assumeTrue(VirtualThreadPool.isSupported());
+
+        final VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(2), 2, 1) {
+            @Override
+            protected boolean isRequestJob(final Runnable job)
+            {
+                return true;
+            }
+        };
+        pool.start();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        final Runnable job = new Runnable() {
+            @Override
+            public void run()
+            {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+
+        try {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(pool.dispatch(job));
+            }
+
+            // Two jobs run, one waits and one is shed (and runs right away).
+            Assert.assertEquals(1, pool.getPending());
+            Assert.assertEquals(1L, pool.getShedCount());
+            Assert.assertTrue(pool.isLowOnThreads());
+
+            release.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(0, pool.getPending());
+        }
+        finally {
+            release.countDown();
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testStopWaitsForRunningRequests() throws Exception
+    {
+        Assume.assumeTrue(VirtualThreadPool.isSupported());
+
+        final VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(2), 2, 0) {
+            @Override
+            protected boolean isRequestJob(final Runnable job)
+            {
+                return true;
+            }
+        };
+        pool.setMaxStopTimeMs(10000);
+        pool.start();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        Assert.assertTrue(pool.dispatch(new Runnable() {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                try {
+                    Thread.sleep(200L);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.set(true);
+            }
+        }));
+
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        pool.stop();
+        Assert.assertTrue(finished.get());
+        Assert.assertEquals(0, pool.getActive());
+    }
+
+    @Test
+    public void testOtherJobsAreNotRequests() throws Exception
+    {
+        Assume.assumeTrue(VirtualThreadPool.isSupported());
+
+        final VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(2), 2, 0);
+        Assert.assertFalse(pool.isRequestJob(new Runnable() {
+            @Override
+            public void run()
+            {
+            }
+        }));
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestAsyncDrainer
+{
+    @Test
+    public void testElementsArriveInOrderAndInBatches()
+    {
+        final List<Integer> drained = Lists.newArrayList();
+        final List<Integer> batchSizes = Lists.newArrayList();
+        final AsyncDrainer<Integer> drainer = new AsyncDrainer<Integer>(16, 4, OverflowPolicy.BLOCK, new AsyncDrainer.BatchHandler<Integer>() {
+            @Override
+            public void handle(final List<Integer> batch)
+            {
+                drained.addAll(batch);
+                batchSizes.add(batch.size());
+            }
+        }, "test-drainer");
+        drainer.start();
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(drainer.offer(i));
+        }
+        Assert.assertTrue(drainer.close());
+
+        Assert.assertEquals(100, drained.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+        for (Integer batchSize : batchSizes) {
+            Assert.assertTrue(batchSize > 0 && batchSize <= 4);
+        }
+        Assert.assertEquals(100L, drainer.getDrainedElements());
+        Assert.assertEquals(batchSizes.size(), drainer.getBatches());
+        Assert.assertFalse(drainer.offer(100));
+    }
+
+    @Test
+    public void testFailingBatchDoesNotStopTheConsumer()
+    {
+        final List<Integer> drained = Lists.newArrayList();
+        final AsyncDrainer<Integer> drainer = new AsyncDrainer<Integer>(16, 1, OverflowPolicy.BLOCK, new AsyncDrainer.BatchHandler<Integer>() {
+            @Override
+            public void handle(final List<Integer> batch)
+            {
+                if (batch.contains(0)) {
+                    throw new IllegalStateException("first batch fails");
+                }
+                drained.addAll(batch);
+            }
+        }, "test-drainer");
+        drainer.start();
+
+        drainer.offer(0);
+        drainer.offer(1);
+        Assert.assertTrue(drainer.close());
+
+        Assert.assertEquals(Lists.newArrayList(1), drained);
+        Assert.assertEquals(2L, drainer.getDrainedElements());
+    }
+}
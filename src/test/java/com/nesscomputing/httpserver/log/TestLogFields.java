@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import static org.easymock.EasyMock.expect;
+
+import java.util.Map;
+
+import org.easymock.EasyMockSupport;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.nesscomputing.httpserver.log.LogFields.AppendingLogField;
+import com.nesscomputing.httpserver.log.LogFields.LogField;
+
+public class TestLogFields extends EasyMockSupport
+{
+    @Test
+    public void testTimestampMatchesJoda()
+    {
+        final LogFields.TimestampField field = new LogFields.TimestampField();
+        final long [] timestamps = { 0L, 7L, 1349123456789L, 1349123456009L, 1349123456090L, 1349123456999L, 1349123457000L, 1349123457001L, 1349123456500L };
+
+        final Request [] requests = new Request[timestamps.length];
+        for (int i = 0; i < timestamps.length; i++) {
+            requests[i] = createNiceMock(Request.class);
+            expect(requests[i].getTimeStamp()).andReturn(timestamps[i]).anyTimes();
+        }
+        replayAll();
+
+        for (int i = 0; i < timestamps.length; i++) {
+            final StringBuilder sb = new StringBuilder();
+            Assert.assertTrue(field.append(requests[i], null, null, sb));
+            Assert.assertEquals(new DateTime(timestamps[i], DateTimeZone.UTC).toString(), sb.toString());
+        }
+    }
+
+    @Test
+    public void testPrimitiveFields()
+    {
+        final Request request = createNiceMock(Request.class);
+        final Response response = createNiceMock(Response.class);
+        expect(request.getContentLength()).andReturn(-1).anyTimes();
+        expect(response.getStatus()).andReturn(404).anyTimes();
+        expect(response.getContentCount()).andReturn(12345678901L).anyTimes();
+        replayAll();
+
+        final StringBuilder sb = new StringBuilder();
+        Assert.assertTrue(LogFields.append(new LogFields.ResponseCodeField(), request, response, null, sb));
+        sb.append(' ');
+        Assert.assertTrue(LogFields.append(new LogFields.RequestContentLengthField(), request, response, null, sb));
+        sb.append(' ');
+        Assert.assertTrue(LogFields.append(new LogFields.ResponseContentLengthField(), request, response, null, sb));
+        Assert.assertEquals("404 -1 12345678901", sb.toString());
+
+        Assert.assertEquals(404, new LogFields.ResponseCodeField().log(request, response, null));
+    }
+
+    @Test
+    public void testCustomFields()
+    {
+        final LogField plainField = new LogField() {
+            @Override
+            public Object log(final Request request, final Response response, final String argument)
+            {
+                return "plain-" + argument;
+            }
+
+            @Override
+            public String getShortName()
+            {
+                return "pf";
+            }
+        };
+
+        final LogField appendingField = new AppendingLogField() {
+            @Override
+            public Object log(final Request request, final Response response, final String argument)
+            {
+                throw new AssertionError("log() should not be called");
+            }
+
+            @Override
+            public boolean append(final Request request, final Response response, final String argument, final StringBuilder sb)
+            {
+                if (argument == null) {
+                    return false;
+                }
+                sb.append("appended-").append(argument);
+                return true;
+            }
+
+            @Override
+            public String getShortName()
+            {
+                return "af";
+            }
+        };
+
+        final Map<String, LogField> knownFields = ImmutableMap.of("plain", plainField, "appending", appendingField);
+        final RequestRecorder recorder = new RequestRecorder(knownFields);
+        final int [] columns = recorder.addFields(ImmutableList.of("plain:x", "appending:y", "appending"));
+
+        final Request request = createNiceMock(Request.class);
+        final Response response = createNiceMock(Response.class);
+        replayAll();
+
+        final RequestRecord record = recorder.evaluate(request, response);
+        Assert.assertEquals("plain-x", record.get(columns[0]));
+        Assert.assertEquals("appended-y", record.get(columns[1]));
+        Assert.assertNull(record.get(columns[2]));
+        Assert.assertTrue(record.isNull(columns[2]));
+
+        final StringBuilder sb = new StringBuilder();
+        record.appendTo(columns[1], sb);
+        record.appendTo(columns[2], sb);
+        Assert.assertEquals("appended-y", sb.toString());
+    }
+}
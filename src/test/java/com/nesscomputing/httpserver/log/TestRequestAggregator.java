@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRequestAggregator
+{
+    @Test
+    public void testAggregates()
+    {
+        final RequestAggregator aggregator = new RequestAggregator(60000L);
+        aggregator.record(120000L, "/users", "GET", 200, 0L, 100L, 1000L);
+        aggregator.record(130000L, "/users", "GET", 200, 0L, 300L, 3000L);
+        aggregator.record(130000L, "/users", "POST", 201, 50L, 0L, 2000L);
+        aggregator.record(170000L, "/search", "GET", 200, 0L, 10L, 500L);
+        aggregator.record(190000L, "/users", "GET", 200, 0L, 100L, 1000L);
+
+        Assert.assertTrue(aggregator.drain(179999L).isEmpty());
+
+        final List<RequestAggregate> aggregates = aggregator.drain(180000L);
+        Assert.assertEquals(3, aggregates.size());
+
+        final RequestAggregate search = aggregates.get(0);
+        Assert.assertEquals("/search", search.getRoute());
+        Assert.assertEquals(120000L, search.getIntervalStart());
+
+        final RequestAggregate get = aggregates.get(1);
+        Assert.assertEquals("GET", get.getMethod());
+        Assert.assertEquals(2L, get.getCount());
+        Assert.assertEquals(400L, get.getBytesOut());
+        Assert.assertEquals(3000L, get.getMax());
+        Assert.assertEquals(3000L, get.getP99());
+
+        final RequestAggregate post = aggregates.get(2);
+        Assert.assertEquals(201, post.getStatus());
+        Assert.assertEquals(50L, post.getBytesIn());
+
+        // The next interval stays until it is over.
+        final List<RequestAggregate> rest = aggregator.drain(Long.MAX_VALUE);
+        Assert.assertEquals(1, rest.size());
+        Assert.assertEquals(180000L, rest.get(0).getIntervalStart());
+    }
+
+    @Test
+    public void testRecord()
+    {
+        final RequestAggregator aggregator = new RequestAggregator(60000L);
+        aggregator.record(0L, "/users", null, 404, 0L, 0L, 5L);
+
+        final RequestRecord record = aggregator.drain(Long.MAX_VALUE).get(0).toRecord();
+        Assert.assertEquals(RequestAggregate.FIELD_NAMES.size(), record.size());
+        Assert.assertEquals("/users", record.get(1));
+        Assert.assertTrue(record.isNull(2));
+        Assert.assertEquals("404", record.get(3));
+        Assert.assertEquals("1", record.get(4));
+        Assert.assertEquals("5", record.get(10));
+        Assert.assertTrue(RequestAggregate.isNumeric(3));
+        Assert.assertFalse(RequestAggregate.isNumeric(2));
+    }
+
+    @Test
+    public void testUnknownMethodsShareOneBucket()
+    {
+        final RequestAggregator aggregator = new RequestAggregator(60000L);
+        for (int i = 0; i < 1000; i++) {
+            aggregator.record(0L, "/users", "BOGUS" + i, 405, 0L, 0L, 5L);
+        }
+        aggregator.record(0L, "/users", "GET", 405, 0L, 0L, 5L);
+
+        final List<RequestAggregate> aggregates = aggregator.drain(Long.MAX_VALUE);
+        Assert.assertEquals(2, aggregates.size());
+        Assert.assertEquals("GET", aggregates.get(0).getMethod());
+        Assert.assertEquals("OTHER", aggregates.get(1).getMethod());
+        Assert.assertEquals(1000L, aggregates.get(1).getCount());
+    }
+}
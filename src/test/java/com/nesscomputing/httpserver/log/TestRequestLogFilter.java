@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import static org.easymock.EasyMock.expect;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.easymock.EasyMockSupport;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestRequestLogFilter extends EasyMockSupport
+{
+    private static final List<String> BLACKLIST = ImmutableList.of("/selftest");
+
+    @Before
+    public void setUp()
+    {
+        DateTimeUtils.setCurrentMillisFixed(10000L);
+    }
+
+    @After
+    public void tearDown()
+    {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    private Request request(final String method, final String requestUri, final long timestamp)
+    {
+        final Request request = createNiceMock(Request.class);
+        expect(request.getMethod()).andReturn(method).anyTimes();
+        expect(request.getRequestURI()).andReturn(requestUri).anyTimes();
+        expect(request.getTimeStamp()).andReturn(timestamp).anyTimes();
+        return request;
+    }
+
+    private Response response(final int status, final String requestId)
+    {
+        final Response response = createNiceMock(Response.class);
+        expect(response.getStatus()).andReturn(status).anyTimes();
+        expect(response.getHeader(RequestLogFilter.REQUEST_ID_HEADER)).andReturn(requestId).anyTimes();
+        return response;
+    }
+
+    @Test
+    public void testNoExpression()
+    {
+        final RequestLogFilter filter = RequestLogFilter.compile(BLACKLIST, null);
+        final Request logged = request("GET", "/foo", 9000L);
+        final Request blacklisted = request("GET", "/selftest", 9000L);
+        final Response response = response(200, null);
+        replayAll();
+
+        Assert.assertTrue(filter.accept(logged, response));
+        Assert.assertFalse(filter.accept(blacklisted, response));
+    }
+
+    @Test
+    public void testStatusAndElapsed()
+    {
+        final RequestLogFilter filter = RequestLogFilter.compile(BLACKLIST, "status >= 500 || elapsed > 250ms");
+        final Request fast = request("GET", "/foo", 9900L);
+        final Request slow = request("GET", "/foo", 9000L);
+        final Request blacklisted = request("GET", "/selftest", 9000L);
+        final Response ok = response(200, null);
+        final Response error = response(503, null);
+        replayAll();
+
+        Assert.assertFalse(filter.accept(fast, ok));
+        Assert.assertTrue(filter.accept(slow, ok));
+        Assert.assertTrue(filter.accept(fast, error));
+        Assert.assertFalse(filter.accept(blacklisted, error));
+    }
+
+    @Test
+    public void testMethodAndPath()
+    {
+        final RequestLogFilter filter = RequestLogFilter.compile(Collections.<String>emptyList(), "!(method == \"get\") && path(\"/api\")");
+        final Request post = request("POST", "/api/foo", 9900L);
+        final Request get = request("GET", "/api/foo", 9900L);
+        final Request other = request("POST", "/static/foo", 9900L);
+        final Response response = response(200, null);
+        replayAll();
+
+        Assert.assertTrue(filter.accept(post, response));
+        Assert.assertFalse(filter.accept(get, response));
+        Assert.assertFalse(filter.accept(other, response));
+    }
+
+    @Test
+    public void testSamplingIsDeterministic()
+    {
+        final RequestLogFilter first = RequestLogFilter.compile(BLACKLIST, "sample(10%)");
+        final RequestLogFilter second = RequestLogFilter.compile(BLACKLIST, "sample(10%)");
+        final Request request = request("GET", "/foo", 9900L);
+
+        final Response [] responses = new Response[10000];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = response(200, UUID.randomUUID().toString());
+        }
+        replayAll();
+
+        int sampled = 0;
+        for (final Response response : responses) {
+            final boolean accepted = first.accept(request, response);
+            Assert.assertEquals(accepted, second.accept(request, response));
+            if (accepted) {
+                sampled++;
+            }
+        }
+        Assert.assertTrue("sampled " + sampled, sampled > 800 && sampled < 1200);
+    }
+
+    @Test
+    public void testBadExpressions()
+    {
+        for (final String expression : new String [] { "status >", "foo", "sample(200%)", "method > \"GET\"", "(true", "true false" }) {
+            try {
+                RequestLogFilter.compile(BLACKLIST, expression);
+                Assert.fail("expression " + expression + " was accepted");
+            }
+            catch (IllegalArgumentException expected) {
+                // ok
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import static org.easymock.EasyMock.expect;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.EasyMockSupport;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.nesscomputing.httpserver.log.LogFields.LogField;
+
+public class TestRequestRecorder extends EasyMockSupport
+{
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    private final RequestRecorder recorder = new RequestRecorder(ImmutableMap.<String, LogField>of(
+        "method", new CountingField("GET"),
+        "uri", new CountingField("/foo"),
+        "empty", new CountingField(null)));
+
+    @Test
+    public void testSharedColumns()
+    {
+        final int [] first = recorder.addFields(ImmutableList.of("method", "uri"));
+        final int [] second = recorder.addFields(ImmutableList.of("uri", "empty", "method"));
+
+        Assert.assertEquals(first[1], second[0]);
+        Assert.assertEquals(first[0], second[2]);
+
+        final RequestRecord record = recorder.evaluate(null, null);
+        Assert.assertEquals(3, record.size());
+        Assert.assertEquals(3, evaluations.get());
+        Assert.assertEquals("GET", record.get(second[2]));
+        Assert.assertEquals("/foo", record.get(second[0]));
+        Assert.assertNull(record.get(second[1]));
+    }
+
+    @Test
+    public void testSharedFilters()
+    {
+        final int first = recorder.addFilter(ImmutableList.of("/selftest", "/application.wadl"), null);
+        final int second = recorder.addFilter(ImmutableSet.of("/application.wadl", "/selftest"), " ");
+        final int third = recorder.addFilter(ImmutableList.of("/selftest"), "status >= 500");
+
+        Assert.assertEquals(first, second);
+        Assert.assertFalse(first == third);
+        Assert.assertEquals(2, recorder.getFilterCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownField()
+    {
+        recorder.addFields(ImmutableList.of("unknown"));
+    }
+
+    @Test
+    public void testSharedRequestLog() throws Exception
+    {
+        final RecordingLog fooLog = new RecordingLog(ImmutableList.of("method", "uri"), ImmutableList.<String>of(), null);
+        final RecordingLog barLog = new RecordingLog(ImmutableList.of("uri"), ImmutableList.<String>of(), null);
+        final RecordingLog blacklistLog = new RecordingLog(ImmutableList.of("method"), ImmutableList.of("/foo"), null);
+
+        final SharedRequestLog sharedRequestLog = new SharedRequestLog(recorder, ImmutableSet.<RecordingRequestLog>of(fooLog, barLog, blacklistLog));
+        sharedRequestLog.start();
+        Assert.assertTrue(fooLog.isStarted());
+
+        final Request request = createNiceMock(Request.class);
+        expect(request.getRequestURI()).andReturn("/foo").anyTimes();
+        final Response response = createNiceMock(Response.class);
+        replayAll();
+
+        sharedRequestLog.log(request, response);
+
+        // Two fields, evaluated once for both logs that accepted the request.
+        Assert.assertEquals(2, evaluations.get());
+        Assert.assertEquals(ImmutableList.of("GET /foo"), fooLog.lines);
+        Assert.assertEquals(ImmutableList.of("/foo"), barLog.lines);
+        Assert.assertTrue(blacklistLog.lines.isEmpty());
+
+        sharedRequestLog.stop();
+        Assert.assertTrue(fooLog.isStopped());
+    }
+
+    private class CountingField implements LogField
+    {
+        private final String value;
+
+        CountingField(final String value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public Object log(final Request request, final Response response, final String argument)
+        {
+            evaluations.incrementAndGet();
+            return value;
+        }
+
+        @Override
+        public String getShortName()
+        {
+            return "c";
+        }
+    }
+
+    private class RecordingLog extends AbstractLifeCycle implements RecordingRequestLog
+    {
+        private final int [] columns;
+        private final int filterIndex;
+        private final List<String> lines = Lists.newArrayList();
+
+        RecordingLog(final List<String> fields, final List<String> blackList, final String filter)
+        {
+            this.columns = recorder.addFields(fields);
+            this.filterIndex = recorder.addFilter(blackList, filter);
+        }
+
+        @Override
+        public int getFilterIndex()
+        {
+            return filterIndex;
+        }
+
+        @Override
+        public void log(final Request request, final Response response)
+        {
+            throw new AssertionError("the shared log should call the record method");
+        }
+
+        @Override
+        public void log(final RequestRecord record, final Request request, final Response response)
+        {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                record.appendTo(columns[i], sb);
+            }
+            lines.add(sb.toString());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRequestTiming
+{
+    @Test
+    public void testUnknownDispatch()
+    {
+        final long start = System.nanoTime();
+        final RequestTiming timing = new RequestTiming(0L, start);
+
+        Assert.assertEquals(-1L, timing.getQueueNanos());
+        Assert.assertEquals(-1L, timing.getHandleNanos());
+        Assert.assertEquals(-1L, timing.getTimeToFirstByteNanos());
+        Assert.assertTrue(timing.getTotalNanos() >= 0L);
+    }
+
+    @Test
+    public void testPhases() throws Exception
+    {
+        final long start = System.nanoTime();
+        final long dispatch = start - TimeUnit.MILLISECONDS.toNanos(5);
+        final RequestTiming timing = new RequestTiming(dispatch, start);
+
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(5), timing.getQueueNanos());
+
+        timing.markContextEnter();
+        Thread.sleep(2L);
+        timing.markFirstByte();
+        final long firstByte = timing.getTimeToFirstByteNanos();
+        Assert.assertTrue(firstByte >= TimeUnit.MILLISECONDS.toNanos(7));
+
+        Thread.sleep(2L);
+        timing.markFirstByte();
+        Assert.assertEquals("only the first write counts", firstByte, timing.getTimeToFirstByteNanos());
+
+        timing.markContextExit();
+        final long handle = timing.getHandleNanos();
+        Assert.assertTrue(handle >= TimeUnit.MILLISECONDS.toNanos(4));
+        Assert.assertTrue(handle < firstByte + TimeUnit.MILLISECONDS.toNanos(100));
+
+        timing.markComplete();
+        final long total = timing.getTotalNanos();
+        Assert.assertTrue(total >= handle + TimeUnit.MILLISECONDS.toNanos(5));
+        Thread.sleep(2L);
+        Assert.assertEquals("total is fixed once complete", total, timing.getTotalNanos());
+    }
+
+    @Test
+    public void testNoWrites() throws Exception
+    {
+        final RequestTiming timing = new RequestTiming(0L, System.nanoTime());
+        timing.markContextEnter();
+        Thread.sleep(1L);
+        timing.markContextExit();
+
+        // A response that was never written to goes out when the context is done.
+        Assert.assertTrue(timing.getTimeToFirstByteNanos() >= timing.getHandleNanos());
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRouteNormalizer
+{
+    @Test
+    public void testPatterns()
+    {
+        final RouteNormalizer normalizer = new RouteNormalizer(Arrays.asList("/users/{id}/items", "/users/me/items", "/static/*", "/"), 10, 0);
+
+        Assert.assertEquals("/users/{id}/items", normalizer.normalize("/users/alice/items"));
+        Assert.assertEquals("/users/me/items", normalizer.normalize("/users/me/items/"));
+        Assert.assertEquals("/static/*", normalizer.normalize("/static/css/site.css"));
+        Assert.assertEquals("/", normalizer.normalize("/"));
+        Assert.assertEquals("/users/{id}/items", normalizer.normalize("//users/bob;jsessionid=abc/items"));
+
+        // No pattern, so collapsed.
+        Assert.assertEquals("/users/{id}", normalizer.normalize("/users/17"));
+        Assert.assertEquals("/static", normalizer.normalize("/static"));
+        Assert.assertEquals(2, normalizer.getRouteCount());
+    }
+
+    @Test
+    public void testCollapse()
+    {
+        final RouteNormalizer normalizer = new RouteNormalizer(Collections.<String>emptyList(), 10, 0);
+
+        Assert.assertEquals("/users/{id}/items/{id}", normalizer.normalize("/users/123/items/4"));
+        Assert.assertEquals("/orders/{uuid}", normalizer.normalize("/orders/3F2504E0-4F89-11D3-9A0C-0305E82C3301"));
+        Assert.assertEquals("/blobs/{hash}", normalizer.normalize("/blobs/d41d8cd98f00b204e9800998ecf8427e"));
+        Assert.assertEquals("/s/{hash}", normalizer.normalize("/s/aZ3k_9x-Qp2LmN7vBt4Yw"));
+        Assert.assertEquals("/api/v1/search-results", normalizer.normalize("/api/v1/search-results"));
+        Assert.assertEquals("/", normalizer.normalize(null));
+    }
+
+    @Test
+    public void testLimits()
+    {
+        final RouteNormalizer normalizer = new RouteNormalizer(Collections.singletonList("/fixed/{name}"), 2, 1);
+
+        Assert.assertEquals("/a", normalizer.normalize("/a/b/c"));
+        Assert.assertEquals("/b", normalizer.normalize("/b"));
+        Assert.assertEquals(RouteNormalizer.OTHER_ROUTE, normalizer.normalize("/c"));
+        Assert.assertEquals("/a", normalizer.normalize("/a/d"));
+
+        // Patterns are neither truncated nor limited.
+        Assert.assertEquals("/fixed/{name}", normalizer.normalize("/fixed/x"));
+        Assert.assertEquals(2, normalizer.getRouteCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadWildcard()
+    {
+        new RouteNormalizer(Collections.singletonList("/static/*/x"), 10, 0);
+    }
+}
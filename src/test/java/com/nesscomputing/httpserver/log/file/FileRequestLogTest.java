@@ -19,6 +19,8 @@ import static org.easymock.EasyMock.expect;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
@@ -33,6 +35,9 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ObjectArrays;
+import com.google.common.io.Files;
 import com.google.inject.Binder;
 import com.google.inject.CreationException;
 import com.google.inject.Guice;
@@ -123,6 +128,34 @@ public class FileRequestLogTest extends EasyMockSupport
         verifyAll();
     }
 
+    @Test
+    public void testCookiesParsedOncePerRequest()
+    {
+        final Config config = Config.getFixedConfig("ness.httpserver.request-log.file.enabled", "true",
+                                                    "ness.httpserver.request-log.file.fields", "cookie:first,cookie:second,cookie:third,responseCode");
+        final Injector inj = Guice.createInjector(Stage.PRODUCTION, disableStuff(), new LogFieldsModule(),  new FileRequestLogModule(config));
+        inj.injectMembers(this);
+        Assert.assertNotNull(fileRequestLog);
+
+        StringWriter buffer = new StringWriter();
+        fileRequestLog.setWriter(new PrintWriter(buffer));
+
+        Request req = createMock(Request.class);
+        Response resp = createMock(Response.class);
+
+        Cookie[] cookies = {new Cookie("first", "1"), new Cookie("third", "3")};
+        expect(req.getCookies()).andReturn(cookies).times(2);
+        expect(req.getRequestURI()).andReturn("foo").anyTimes();
+        expect(resp.getStatus()).andReturn(404).anyTimes();
+
+        replayAll();
+        fileRequestLog.log(req, resp);
+        fileRequestLog.log(req, resp);
+
+        assertEquals("1\t\t3\t404\n1\t\t3\t404\n", buffer.getBuffer().toString());
+        verifyAll();
+    }
+
     @Test
     public void testInvalidLogPatternBadSpecifier() {
         final Config config = Config.getFixedConfig("ness.httpserver.request-log.file.enabled", "true",
@@ -173,6 +206,91 @@ public class FileRequestLogTest extends EasyMockSupport
     }
 
 
+    @Test
+    public void testCommitIntervalAfterStart() throws Exception
+    {
+        final File logDir = Files.createTempDir();
+        final File logFile = new File(logDir, "access.log");
+        try {
+            startLog("ness.httpserver.request-log.file.file", logFile.getPath(),
+                     "ness.httpserver.request-log.file.output", "CHANNEL",
+                     "ness.httpserver.request-log.file.commit-records", "1000",
+                     "ness.httpserver.request-log.file.commit-interval", "50ms");
+            logRequests(1);
+
+            // Nothing else is logged, only the commit interval can get the record to the file.
+            for (int i = 0; i < 100 && logFile.length() == 0; i++) {
+                Thread.sleep(20L);
+            }
+            assertEquals("GET\tfoo\n", Files.toString(logFile, Charsets.UTF_8));
+        }
+        finally {
+            stopLog(logDir);
+        }
+    }
+
+    @Test
+    public void testSizeRotationAfterStart() throws Exception
+    {
+        final File logDir = Files.createTempDir();
+        final File logFile = new File(logDir, "access.log");
+        try {
+            startLog("ness.httpserver.request-log.file.file", logFile.getPath(),
+                     "ness.httpserver.request-log.file.rotate-size", "100");
+            logRequests(50);
+
+            File [] rotatedFiles = new File [0];
+            for (int i = 0; i < 100 && rotatedFiles.length == 0; i++) {
+                Thread.sleep(20L);
+                rotatedFiles = logDir.listFiles(new FilenameFilter() {
+                    @Override
+                    public boolean accept(final File dir, final String name)
+                    {
+                        return name.startsWith("access.log.");
+                    }
+                });
+            }
+            Assert.assertTrue("no rotated log file", rotatedFiles.length > 0);
+        }
+        finally {
+            stopLog(logDir);
+        }
+    }
+
+    private void startLog(final String ... settings) throws Exception
+    {
+        final Config config = Config.getFixedConfig(ObjectArrays.concat(new String [] { "ness.httpserver.request-log.file.enabled", "true",
+                                                                                        "ness.httpserver.request-log.file.fields", "method,requestUri" },
+                                                                         settings, String.class));
+        final Injector inj = Guice.createInjector(Stage.PRODUCTION, disableStuff(), new LogFieldsModule(), new FileRequestLogModule(config));
+        inj.injectMembers(this);
+        fileRequestLog.start();
+    }
+
+    private void stopLog(final File logDir) throws Exception
+    {
+        if (fileRequestLog != null) {
+            fileRequestLog.stop();
+        }
+        for (File file : logDir.listFiles()) {
+            file.delete();
+        }
+        logDir.delete();
+    }
+
+    private void logRequests(final int count)
+    {
+        final Request req = createMock(Request.class);
+        final Response resp = createMock(Response.class);
+        expect(req.getMethod()).andReturn("GET").anyTimes();
+        expect(req.getRequestURI()).andReturn("foo").anyTimes();
+        replayAll();
+
+        for (int i = 0; i < count; i++) {
+            fileRequestLog.log(req, resp);
+        }
+    }
+
     private Module disableStuff()
     {
         return new Module() {
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nesscomputing.httpserver.log.OverflowPolicy;
+
+public class TestAsyncRequestLogSink
+{
+    @Test
+    public void testRecordsAreWrittenInOrder()
+    {
+        final StringWriter buffer = new StringWriter();
+        final AsyncRequestLogSink sink = new AsyncRequestLogSink(new WriterRequestLogSink(new PrintWriter(buffer), false), 16, 4, OverflowPolicy.BLOCK, "test-writer");
+        sink.start();
+
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            final char [] line = ("line " + i + "\n").toCharArray();
+            sink.write(line, 0, line.length);
+            expected.append(line);
+        }
+        sink.close();
+
+        Assert.assertEquals(expected.toString(), buffer.toString());
+        Assert.assertEquals(100L, sink.getWrittenRecords());
+        Assert.assertEquals(0L, sink.getDroppedRecords());
+        Assert.assertTrue(sink.getMaxBatchSize() <= 4);
+        Assert.assertTrue(sink.getBatches() >= 25);
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringWriter buffer = new StringWriter();
+
+        // The delegate blocks the writer thread until released, so the ring fills up.
+        final RequestLogSink blockingSink = new WriterRequestLogSink(new PrintWriter(buffer), false) {
+            @Override
+            public void write(final char [] chars, final int offset, final int length)
+            {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(chars, offset, length);
+            }
+        };
+
+        final AsyncRequestLogSink sink = new AsyncRequestLogSink(blockingSink, 4, 1, OverflowPolicy.DROP, "test-writer");
+        sink.start();
+
+        final char [] line = "x\n".toCharArray();
+        for (int i = 0; i < 100; i++) {
+            sink.write(line, 0, line.length);
+        }
+
+        release.countDown();
+        sink.close();
+
+        Assert.assertTrue(sink.getDroppedRecords() > 0);
+        Assert.assertEquals(100L, sink.getDroppedRecords() + sink.getWrittenRecords());
+        Assert.assertEquals(sink.getWrittenRecords() * 2, buffer.toString().length());
+    }
+
+    @Test
+    public void testWriteAfterCloseIsDropped()
+    {
+        final StringWriter buffer = new StringWriter();
+        final AsyncRequestLogSink sink = new AsyncRequestLogSink(new WriterRequestLogSink(new PrintWriter(buffer), false), 16, 4, OverflowPolicy.BLOCK, "test-writer");
+        sink.start();
+        sink.close();
+
+        final char [] line = "late\n".toCharArray();
+        sink.write(line, 0, line.length);
+
+        Assert.assertEquals(1L, sink.getDroppedRecords());
+        Assert.assertEquals("", buffer.toString());
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class TestChannelRequestLogSink
+{
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logFile = File.createTempFile("request-log", ".log");
+    }
+
+    @After
+    public void tearDown()
+    {
+        logFile.delete();
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception
+    {
+        final ChannelRequestLogSink sink = new ChannelRequestLogSink(new FileOutputStream(logFile, true).getChannel(), 64, 3, false);
+
+        write(sink, "one\n");
+        write(sink, "two\n");
+        Assert.assertEquals(0L, logFile.length());
+
+        write(sink, "three\n");
+        Assert.assertEquals("one\ntwo\nthree\n", read());
+
+        write(sink, "four\n");
+        sink.flush();
+        Assert.assertEquals("one\ntwo\nthree\nfour\n", read());
+
+        write(sink, "five\n");
+        sink.close();
+        Assert.assertEquals("one\ntwo\nthree\nfour\nfive\n", read());
+    }
+
+    @Test
+    public void testRecordsSpanningBuffers() throws Exception
+    {
+        final ChannelRequestLogSink sink = new ChannelRequestLogSink(new FileOutputStream(logFile, true).getChannel(), 64, 100, true);
+
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            final String line = "r\u00e9cord \u20ac " + i + " \ud83d\ude00 " + (i % 7 == 0 ? new String(new char[150]).replace('\0', 'x') : "") + "\n";
+            write(sink, line);
+            expected.append(line);
+        }
+        sink.close();
+
+        Assert.assertEquals(expected.toString(), read());
+    }
+
+    @Test
+    public void testTimedCommit() throws Exception
+    {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final ChannelRequestLogSink sink = new ChannelRequestLogSink(new FileOutputStream(logFile, true).getChannel(), 1024, 1000, false);
+            sink.scheduleCommits(executor, 10L);
+
+            write(sink, "late\n");
+            for (int i = 0; i < 500 && logFile.length() == 0; i++) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals("late\n", read());
+            sink.close();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void write(final RequestLogSink sink, final String line)
+    {
+        final char [] chars = line.toCharArray();
+        sink.write(chars, 0, chars.length);
+    }
+
+    private String read() throws Exception
+    {
+        return Files.toString(logFile, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.nesscomputing.httpserver.log.LogFields.IntLogField;
+import com.nesscomputing.httpserver.log.LogFields.LogField;
+import com.nesscomputing.httpserver.log.LogFields.TimingField;
+import com.nesscomputing.httpserver.log.RequestRecord;
+import com.nesscomputing.httpserver.log.RequestRecorder;
+import com.nesscomputing.httpserver.log.RequestTiming;
+
+public class TestRequestLogFormat
+{
+    private static final List<String> FIELDS = ImmutableList.of("path", "responseCode", "agent");
+
+    private final MutableField path = new MutableField();
+    private final MutableIntField responseCode = new MutableIntField();
+    private final MutableField agent = new MutableField();
+
+    private final Map<String, LogField> knownFields = ImmutableMap.<String, LogField>of(
+        "path", path,
+        "responseCode", responseCode,
+        "agent", agent);
+
+    private final RequestRecorder recorder = new RequestRecorder(knownFields);
+    private final int [] columns = recorder.addFields(FIELDS);
+    private final boolean [] numeric = { false, true, false };
+
+    @Test
+    public void testJsonLines()
+    {
+        Assert.assertTrue(recorder.isNumeric(columns[1]));
+        Assert.assertFalse(recorder.isNumeric(columns[2]));
+
+        final RequestLogEncoder encoder = RequestLogFormat.JSON.newEncoder(FIELDS, columns, numeric);
+
+        final StringBuilder line = new StringBuilder();
+        encoder.encode(record("/a\"b\\c", 200, null), line);
+        encoder.encode(record("tab\there", 404, "line\nbreak\u0001"), line);
+
+        Assert.assertEquals("{\"path\":\"/a\\\"b\\\\c\",\"responseCode\":200,\"agent\":null}\n"
+                          + "{\"path\":\"tab\\there\",\"responseCode\":404,\"agent\":\"line\\nbreak\\u0001\"}\n",
+                            line.toString());
+    }
+
+    @Test
+    public void testJsonTimingFieldsAreNumeric()
+    {
+        final Map<String, LogField> timingFields = ImmutableMap.<String, LogField>of(
+            "path", path,
+            "totalNanos", new TimingField(TimingField.Phase.TOTAL));
+        final List<String> fieldNames = ImmutableList.of("path", "totalNanos");
+        final RequestRecorder timingRecorder = new RequestRecorder(timingFields);
+        final int [] timingColumns = timingRecorder.addFields(fieldNames);
+        Assert.assertTrue(timingRecorder.isNumeric(timingColumns[1]));
+
+        final RequestLogEncoder encoder = RequestLogFormat.JSON.newEncoder(fieldNames, timingColumns, new boolean [] { false, timingRecorder.isNumeric(timingColumns[1]) });
+        path.value = "/foo";
+
+        final StringBuilder line = new StringBuilder();
+        final Request timedRequest = new Request();
+        timedRequest.setAttribute(RequestTiming.ATTRIBUTE, new RequestTiming(0L, System.nanoTime()));
+        encoder.encode(timingRecorder.evaluate(timedRequest, null), line);
+        Assert.assertTrue(line.toString(), line.toString().matches("\\{\"path\":\"/foo\",\"totalNanos\":\\d+\\}\n"));
+
+        // Without request timing, the field is empty rather than -1.
+        line.setLength(0);
+        encoder.encode(timingRecorder.evaluate(new Request(), null), line);
+        Assert.assertEquals("{\"path\":\"/foo\",\"totalNanos\":null}\n", line.toString());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final RequestLogSink sink = new BinaryRequestLogSink(out, FIELDS, numeric, false);
+        write(sink, record("/foo", 200, "curl/7.24"));
+        write(sink, record("/foo", -1, null));
+        write(sink, record("with\ttab\\and\nbreak", 500, "curl/7.24"));
+        sink.close();
+
+        final BinaryRequestLogReader reader = new BinaryRequestLogReader(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(3, reader.getFieldCount());
+        Assert.assertEquals("responseCode", reader.getFieldName(1));
+        assertRow(reader, "/foo", "200", "curl/7.24");
+        Assert.assertTrue(reader.isNumeric(1));
+        Assert.assertFalse(reader.isNumeric(0));
+
+        Assert.assertTrue(reader.next());
+        assertRow(reader, "/foo", "-1", null);
+
+        Assert.assertTrue(reader.next());
+        assertRow(reader, "with\ttab\\and\nbreak", "500", "curl/7.24");
+
+        Assert.assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testRepeatedValuesAreReferenced() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final RequestLogSink sink = new BinaryRequestLogSink(out, FIELDS, numeric, false);
+        final String userAgent = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/24.0 Safari/537.36";
+        write(sink, record("/foo", 200, userAgent));
+        final int firstSize = out.size();
+        write(sink, record("/foo", 200, userAgent));
+        sink.close();
+
+        // Second time around, both strings are a tag and a one byte reference.
+        Assert.assertTrue(out.size() - firstSize < 10);
+    }
+
+    @Test
+    public void testAppendedFileStartsOver() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RequestLogSink sink = new BinaryRequestLogSink(out, FIELDS, numeric, false);
+        write(sink, record("/foo", 200, "a"));
+        sink.close();
+
+        // A restarted server appends with a fresh header and dictionaries.
+        sink = new BinaryRequestLogSink(out, ImmutableList.of("path", "agent"), new boolean [] { false, false }, false);
+        final char [] line = "/foo\tb\n".toCharArray();
+        sink.write(line, 0, line.length);
+        sink.close();
+
+        final StringWriter converted = new StringWriter();
+        BinaryRequestLogConverter.convert(new BinaryRequestLogReader(new ByteArrayInputStream(out.toByteArray())), converted, true);
+        Assert.assertEquals("{\"path\":\"/foo\",\"responseCode\":200,\"agent\":\"a\"}\n"
+                          + "{\"path\":\"/foo\",\"agent\":\"b\"}\n",
+                            converted.toString());
+    }
+
+    @Test
+    public void testTruncatedRecord() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final RequestLogSink sink = new BinaryRequestLogSink(out, FIELDS, numeric, false);
+        write(sink, record("/foo", 200, "a"));
+        write(sink, record("/bar", 200, "b"));
+        sink.close();
+
+        final byte [] data = out.toByteArray();
+        final BinaryRequestLogReader reader = new BinaryRequestLogReader(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 2)));
+        Assert.assertTrue(reader.next());
+        assertRow(reader, "/foo", "200", "a");
+        try {
+            reader.next();
+            Assert.fail();
+        }
+        catch (EOFException expected) {
+            // the server died in the middle of the last record
+        }
+    }
+
+    @Test
+    public void testCanonicalNumbers()
+    {
+        Assert.assertEquals(0L, BinaryRequestLogSink.parseCanonicalLong("0"));
+        Assert.assertEquals(-42L, BinaryRequestLogSink.parseCanonicalLong("-42"));
+        Assert.assertEquals(Long.MIN_VALUE, BinaryRequestLogSink.parseCanonicalLong("007"));
+        Assert.assertEquals(Long.MIN_VALUE, BinaryRequestLogSink.parseCanonicalLong("-0"));
+        Assert.assertEquals(Long.MIN_VALUE, BinaryRequestLogSink.parseCanonicalLong(""));
+        Assert.assertEquals(Long.MIN_VALUE, BinaryRequestLogSink.parseCanonicalLong("12a"));
+    }
+
+    private RequestRecord record(final String pathValue, final int responseCodeValue, final String agentValue)
+    {
+        path.value = pathValue;
+        responseCode.value = responseCodeValue;
+        agent.value = agentValue;
+        return recorder.evaluate(null, null);
+    }
+
+    private void write(final RequestLogSink sink, final RequestRecord record)
+    {
+        final StringBuilder line = new StringBuilder();
+        RequestLogFormat.BINARY.newEncoder(FIELDS, columns, numeric).encode(record, line);
+        final char [] chars = line.toString().toCharArray();
+        sink.write(chars, 0, chars.length);
+    }
+
+    private static void assertRow(final BinaryRequestLogReader reader, final String... values)
+    {
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(values[i], reader.getValue(i));
+        }
+    }
+
+    private static class MutableField implements LogField
+    {
+        private String value;
+
+        @Override
+        public Object log(final Request request, final Response response, final String dummy)
+        {
+            return value;
+        }
+
+        @Override
+        public String getShortName()
+        {
+            return "m";
+        }
+    }
+
+    private static class MutableIntField implements IntLogField
+    {
+        private int value;
+
+        @Override
+        public int logInt(final Request request, final Response response, final String argument)
+        {
+            return value;
+        }
+
+        @Override
+        public Object log(final Request request, final Response response, final String dummy)
+        {
+            return value;
+        }
+
+        @Override
+        public String getShortName()
+        {
+            return "i";
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+public class TestRotatingRequestLogSink
+{
+    private File logDir;
+    private File logFile;
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        logDir = Files.createTempDir();
+        logFile = new File(logDir, "access.log");
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        for (File file : logDir.listFiles()) {
+            file.delete();
+        }
+        logDir.delete();
+    }
+
+    @Test
+    public void testSizeRotationKeepsAllRecords() throws Exception
+    {
+        final RotatingRequestLogSink sink = new RotatingRequestLogSink(logFile, OPENER.open(logFile), OPENER, 100L, 0L, RequestLogCompression.GZIP, 0, executor);
+
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            final String line = String.format("record %05d", i);
+            final char [] chars = (line + "\n").toCharArray();
+            sink.write(chars, 0, chars.length);
+            expected.add(line);
+        }
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        sink.close();
+
+        final List<String> found = new ArrayList<String>();
+        int rotatedFiles = 0;
+        for (File file : logDir.listFiles()) {
+            if (file.equals(logFile)) {
+                found.addAll(readLines(new FileInputStream(file)));
+            }
+            else {
+                Assert.assertTrue(file.getName(), file.getName().matches("access\\.log\\.\\d{8}-\\d{6}(\\.\\d+)?\\.gz"));
+                found.addAll(readLines(new GZIPInputStream(new FileInputStream(file))));
+                rotatedFiles++;
+            }
+        }
+
+        Assert.assertTrue(rotatedFiles > 0);
+        Collections.sort(found);
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void testMaxHistory() throws Exception
+    {
+        final RotatingRequestLogSink sink = new RotatingRequestLogSink(logFile, OPENER.open(logFile), OPENER, 10L, 0L, RequestLogCompression.NONE, 2, executor);
+
+        final char [] chars = "0123456789\n".toCharArray();
+        for (int i = 0; i < 20; i++) {
+            sink.write(chars, 0, chars.length);
+            // Give the rotation a chance to happen between the writes.
+            Thread.sleep(5L);
+        }
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        sink.close();
+
+        Assert.assertTrue(logFile.exists());
+        Assert.assertEquals(3, logDir.listFiles().length);
+    }
+
+    private static List<String> readLines(final InputStream in) throws Exception
+    {
+        try {
+            final List<String> lines = new ArrayList<String>();
+            for (String line : Splitter.on('\n').omitEmptyStrings().split(CharStreams.toString(new InputStreamReader(in, Charsets.UTF_8)))) {
+                lines.add(line);
+            }
+            return lines;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static final RotatingRequestLogSink.SinkOpener OPENER = new RotatingRequestLogSink.SinkOpener() {
+        @Override
+        public RequestLogSink open(final File file)
+        {
+            try {
+                return new WriterRequestLogSink(new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8)), true);
+            }
+            catch (FileNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.file;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+public class TestStripedRequestLog
+{
+    private static final String NL = System.getProperty("line.separator");
+
+    @Test
+    public void testMergeOrdersByTimestamp() throws Exception
+    {
+        final List<Reader> segments = ImmutableList.<Reader>of(new StringReader("2\tb\n5\te\n"),
+                                                               new StringReader("1\ta\n3\tc\n4\td\n"),
+                                                               new StringReader(""));
+        final StringWriter merged = new StringWriter();
+        RequestLogMerger.merge(segments, merged, false);
+
+        Assert.assertEquals(Joiner.on(NL).join("a", "b", "c", "d", "e") + NL, merged.toString());
+    }
+
+    @Test
+    public void testMergeKeepsSegmentOrderForEqualTimestamps() throws Exception
+    {
+        final List<Reader> segments = ImmutableList.<Reader>of(new StringReader("7\tx1\n7\tx2\n"),
+                                                               new StringReader("7\ty1\nno prefix\n"));
+        final StringWriter merged = new StringWriter();
+        RequestLogMerger.merge(segments, merged, true);
+
+        Assert.assertEquals(Joiner.on(NL).join("7\tx1", "7\tx2", "7\ty1", "no prefix") + NL, merged.toString());
+    }
+
+    @Test
+    public void testStripedWritesMergeWithoutLoss() throws Exception
+    {
+        final int threadCount = 4;
+        final int linesPerThread = 1000;
+
+        final StringWriter [] buffers = new StringWriter[3];
+        final RequestLogSink [] stripeSinks = new RequestLogSink[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new StringWriter();
+            stripeSinks[i] = new WriterRequestLogSink(new PrintWriter(buffers[i]), false);
+        }
+        final StripedRequestLogSink sink = new StripedRequestLogSink(stripeSinks);
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final String name = "t" + t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < linesPerThread; i++) {
+                        final char [] line = (name + "-" + i + "\n").toCharArray();
+                        sink.write(line, 0, line.length);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sink.close();
+
+        final List<Reader> segments = new ArrayList<Reader>();
+        for (StringWriter buffer : buffers) {
+            segments.add(new StringReader(buffer.toString()));
+        }
+        final StringWriter merged = new StringWriter();
+        RequestLogMerger.merge(segments, merged, false);
+
+        final int [] next = new int[threadCount];
+        int count = 0;
+        for (String line : Splitter.on(NL).omitEmptyStrings().split(merged.toString())) {
+            final int dash = line.indexOf('-');
+            final int thread = Integer.parseInt(line.substring(1, dash));
+            Assert.assertEquals("out of order: " + line, next[thread]++, Integer.parseInt(line.substring(dash + 1)));
+            count++;
+        }
+        Assert.assertEquals(threadCount * linesPerThread, count);
+    }
+
+    @Test
+    public void testPrefixAndLineAreWrittenTogether()
+    {
+        final List<String> writes = new ArrayList<String>();
+        final StripedRequestLogSink sink = new StripedRequestLogSink(new RequestLogSink [] { new RequestLogSink() {
+            @Override
+            public void write(final char [] chars, final int offset, final int length)
+            {
+                writes.add(new String(chars, offset, length));
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        } });
+
+        final char [] line = new char[1000];
+        Arrays.fill(line, 'x');
+        line[line.length - 1] = '\n';
+        sink.write(line, 0, line.length);
+        sink.write(line, 990, 10);
+
+        Assert.assertEquals(2, writes.size());
+        for (String write : writes) {
+            Assert.assertTrue(write, write.matches("\\d+\tx+\n"));
+        }
+        Assert.assertEquals(1000, writes.get(0).length() - writes.get(0).indexOf('\t') - 1);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.log4j;
+
+import java.util.Map;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.nesscomputing.httpserver.log.LogFields.LogField;
+import com.nesscomputing.httpserver.log.RequestRecorder;
+
+public class TestLog4jLogPattern
+{
+    private final Map<String, LogField> knownFields = ImmutableMap.<String, LogField>of(
+        "method", new FixedField("GET"),
+        "requestUri", new FixedField("/foo"),
+        "query", new FixedField(null),
+        "remoteAddr", new FailingField());
+
+    @Test
+    public void testSimplePattern()
+    {
+        final RequestRecorder recorder = new RequestRecorder(knownFields);
+        final Log4jLogPattern pattern = Log4jLogPattern.compile("Completed $method$ $requestUri$?$query$ from $unknown$.", recorder);
+        Assert.assertEquals("Completed GET /foo? from .", pattern.render(recorder.evaluate(null, null)));
+    }
+
+    @Test
+    public void testTemplatePattern()
+    {
+        final RequestRecorder recorder = new RequestRecorder(knownFields);
+        final Log4jLogPattern pattern = Log4jLogPattern.compile("$if(method)$M=$method$$endif$ $requestUri$", recorder);
+        Assert.assertEquals("M=GET /foo", pattern.render(recorder.evaluate(null, null)));
+        Assert.assertEquals("M=GET /foo", pattern.render(recorder.evaluate(null, null)));
+    }
+
+    private static class FixedField implements LogField
+    {
+        private final Object value;
+
+        FixedField(final Object value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public Object log(final Request request, final Response response, final String dummy)
+        {
+            return value;
+        }
+
+        @Override
+        public String getShortName()
+        {
+            return "fixed";
+        }
+    }
+
+    /**
+     * Fails the test if a field that the pattern does not reference is evaluated.
+     */
+    private static class FailingField implements LogField
+    {
+        @Override
+        public Object log(final Request request, final Response response, final String dummy)
+        {
+            throw new AssertionError("unreferenced field evaluated");
+        }
+
+        @Override
+        public String getShortName()
+        {
+            return "fail";
+        }
+    }
+}
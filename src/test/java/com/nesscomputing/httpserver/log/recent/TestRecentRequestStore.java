@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.recent;
+
+import java.util.Map;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestRecentRequestStore
+{
+    private static final long NOW = 1350000000000L;
+
+    @Before
+    public void setUp()
+    {
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+    }
+
+    @After
+    public void tearDown()
+    {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void testQueries()
+    {
+        final RecentRequestStore store = new RecentRequestStore(1024, 16);
+        for (int i = 1; i <= 100; i++) {
+            store.record(NOW - 1000L, "/users", 200, i, 100L, 1);
+        }
+        store.record(NOW - 1000L, "/search", 500, 7L, 0L, 2);
+        store.record(NOW - 1000L, "/search", 200, 3L, 0L, 2);
+
+        final RecentRequestStore.Snapshot snapshot = store.snapshot(60000L);
+        Assert.assertEquals(102, snapshot.size());
+
+        final Map<String, Long> p99 = snapshot.latencyPercentileByRoute(99.0);
+        Assert.assertEquals(ImmutableList.of("/users", "/search"), ImmutableList.copyOf(p99.keySet()));
+        Assert.assertEquals(Long.valueOf(99L), p99.get("/users"));
+        Assert.assertEquals(Long.valueOf(7L), p99.get("/search"));
+        Assert.assertEquals(Long.valueOf(50L), snapshot.latencyPercentileByRoute(50.0).get("/users"));
+
+        final Map<Integer, Long> statuses = snapshot.countByStatus();
+        Assert.assertEquals(Long.valueOf(101L), statuses.get(200));
+        Assert.assertEquals(Long.valueOf(1L), statuses.get(500));
+        Assert.assertEquals(Integer.valueOf(200), statuses.keySet().iterator().next());
+    }
+
+    @Test
+    public void testWindow()
+    {
+        final RecentRequestStore store = new RecentRequestStore(16, 16);
+        store.record(NOW - 600000L, "/old", 200, 1L, 0L, 0);
+        store.record(NOW - 1000L, "/new", 200, 1L, 0L, 0);
+
+        final RecentRequestStore.Snapshot snapshot = store.snapshot(300000L);
+        Assert.assertEquals(1, snapshot.size());
+        Assert.assertEquals("/new", snapshot.getRoute(0));
+        Assert.assertEquals(2, store.snapshot(3600000L).size());
+    }
+
+    @Test
+    public void testRingOverwritesOldest()
+    {
+        final RecentRequestStore store = new RecentRequestStore(4, 16);
+        for (int i = 0; i < 10; i++) {
+            store.record(NOW, "/r", 200 + i, i, 0L, 0);
+        }
+
+        final RecentRequestStore.Snapshot snapshot = store.snapshot(1000L);
+        Assert.assertEquals(4, snapshot.size());
+        for (int row = 0; row < 4; row++) {
+            Assert.assertEquals(206 + row, snapshot.getStatus(row));
+        }
+        Assert.assertEquals(10L, store.getRecordedRequests());
+    }
+
+    @Test
+    public void testRouteLimit()
+    {
+        final RecentRequestStore store = new RecentRequestStore(16, 2);
+        store.record(NOW, "/a", 200, 1L, 0L, 0);
+        store.record(NOW, "/b", 200, 1L, 0L, 0);
+        store.record(NOW, "/c", 200, 1L, 0L, 0);
+        store.record(NOW, "/a", 200, 1L, 0L, 0);
+
+        final Map<String, Long> routes = store.snapshot(1000L).countByRoute();
+        Assert.assertEquals(Long.valueOf(2L), routes.get("/a"));
+        Assert.assertEquals(Long.valueOf(1L), routes.get(RecentRequestStore.OTHER_ROUTE));
+        Assert.assertNull(routes.get("/c"));
+    }
+}
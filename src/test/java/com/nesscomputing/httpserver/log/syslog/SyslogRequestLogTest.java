@@ -18,6 +18,10 @@ package com.nesscomputing.httpserver.log.syslog;
 import static org.easymock.EasyMock.expect;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.util.List;
 import java.util.UUID;
 
@@ -30,6 +34,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
 import com.google.inject.CreationException;
@@ -49,12 +54,16 @@ import com.nesscomputing.syslog4j.Syslog;
 import com.nesscomputing.syslog4j.SyslogIF;
 import com.nesscomputing.syslog4j.SyslogLevel;
 import com.nesscomputing.syslog4j.SyslogRuntimeException;
+import com.nesscomputing.syslog4j.impl.AbstractSyslogConfigIF;
 import com.nesscomputing.syslog4j.impl.AbstractSyslogWriter;
 import com.nesscomputing.syslog4j.impl.net.AbstractNetSyslog;
 import com.nesscomputing.syslog4j.impl.net.AbstractNetSyslogConfig;
+import com.nesscomputing.syslog4j.impl.net.tcp.TCPNetSyslogConfig;
+import com.nesscomputing.testing.lessio.AllowNetworkAccess;
 import com.nesscomputing.testing.lessio.AllowNetworkListen;
 
 @AllowNetworkListen(ports={0})
+@AllowNetworkAccess(endpoints={"127.0.0.1:0"})
 public class SyslogRequestLogTest extends EasyMockSupport
 {
 
@@ -196,6 +205,94 @@ public class SyslogRequestLogTest extends EasyMockSupport
         Syslog.destroyInstance(logName);
     }
 
+    @Test
+    public void testSpoolNeedsAsync()
+    {
+        final File spoolDir = Files.createTempDir();
+        final Config config = Config.getFixedConfig("ness.httpserver.request-log.syslog.enabled", "true",
+                                                    "ness.httpserver.request-log.syslog.spool-directory", spoolDir.getPath());
+        try {
+            final Injector inj = Guice.createInjector(Stage.PRODUCTION, disableStuff(), new LogFieldsModule(), new SyslogRequestLogModule(config));
+            inj.injectMembers(this);
+            fail();
+        }
+        catch (CreationException ce) {
+            Assert.assertEquals(IllegalArgumentException.class, ce.getCause().getClass());
+        }
+        finally {
+            spoolDir.delete();
+        }
+    }
+
+    @Test
+    public void testSpoolCatchesRefusedTcpConnection() throws Exception
+    {
+        final String logName = "tcp-" + UUID.randomUUID().toString();
+        Syslog.createInstance(logName, new TCPNetSyslogConfig());
+
+        // Nothing listens on the port, so every connection attempt is refused.
+        final int port = findUnusedPort();
+        final File spoolDir = Files.createTempDir();
+        final Config config = Config.getFixedConfig("ness.httpserver.request-log.syslog.enabled", "true",
+                                                    "ness.httpserver.request-log.syslog.protocol", logName,
+                                                    "ness.httpserver.request-log.syslog.syslog-host", "127.0.0.1",
+                                                    "ness.httpserver.request-log.syslog.syslog-port", Integer.toString(port),
+                                                    "ness.httpserver.request-log.syslog.fields", "method",
+                                                    "ness.httpserver.request-log.syslog.async", "true",
+                                                    "ness.httpserver.request-log.syslog.spool-directory", spoolDir.getPath());
+
+        final Injector inj = Guice.createInjector(Stage.PRODUCTION, disableStuff(), new LogFieldsModule(), new SyslogRequestLogModule(config), new ConfigModule(config));
+        inj.injectMembers(this);
+
+        // A threaded syslog would only queue the message and never report the refused connection.
+        Assert.assertFalse(((AbstractSyslogConfigIF) Syslog.getInstance(logName).getConfig()).isThreaded());
+
+        final Request req = createNiceMock(Request.class);
+        final Response resp = createNiceMock(Response.class);
+        expect(req.getMethod()).andReturn("GET").anyTimes();
+        replayAll();
+
+        syslogRequestLog.start();
+        try {
+            syslogRequestLog.log(req, resp);
+
+            for (int i = 0; i < 100 && getSpooledBytes(spoolDir) == 0L; i++) {
+                Thread.sleep(50L);
+            }
+            Assert.assertTrue(getSpooledBytes(spoolDir) > 0L);
+        }
+        finally {
+            syslogRequestLog.stop();
+            Syslog.destroyInstance(logName);
+            for (File file : spoolDir.listFiles()) {
+                file.delete();
+            }
+            spoolDir.delete();
+        }
+    }
+
+    private static long getSpooledBytes(final File spoolDir)
+    {
+        long bytes = 0L;
+        for (File file : spoolDir.listFiles()) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    private static int findUnusedPort()
+        throws IOException
+    {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(0));
+            port = socket.getLocalPort();
+        }
+
+        return port;
+    }
+
     private Module disableStuff()
     {
         return new Module() {
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Stage;
+import com.nesscomputing.config.Config;
+import com.nesscomputing.config.ConfigModule;
+import com.nesscomputing.httpserver.log.LogFieldsModule;
+import com.nesscomputing.httpserver.log.OverflowPolicy;
+import com.nesscomputing.httpserver.log.syslog.SyslogRequestLogTest.FakeSyslog;
+import com.nesscomputing.syslog4j.Syslog;
+import com.nesscomputing.syslog4j.SyslogIF;
+import com.nesscomputing.syslog4j.SyslogLevel;
+import com.nesscomputing.syslog4j.SyslogRuntimeException;
+import com.nesscomputing.syslog4j.impl.message.structured.StructuredSyslogMessage;
+import com.nesscomputing.syslog4j.impl.net.AbstractNetSyslogConfig;
+import com.nesscomputing.syslog4j.impl.net.tcp.TCPNetSyslogConfig;
+import com.nesscomputing.syslog4j.impl.net.udp.UDPNetSyslogConfig;
+import com.nesscomputing.testing.lessio.AllowNetworkAccess;
+import com.nesscomputing.testing.lessio.AllowNetworkListen;
+
+@AllowNetworkListen(ports= {0})
+@AllowNetworkAccess(endpoints= {"127.0.0.1:0"})
+public class TestAsyncSyslogSender
+{
+    /** Holds up {@link SlowSyslog}, which syslog4j creates by itself. Replaced for every test. */
+    private static volatile CountDownLatch release = null;
+
+    private String logName = null;
+
+    @Before
+    public void setUp()
+    {
+        logName = "fake-" + UUID.randomUUID().toString();
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown()
+    {
+        Syslog.destroyInstance(logName);
+    }
+
+    @Test
+    public void testMessagesAreSent()
+    {
+        final FakeSyslog fakeSyslog = createSyslog(FakeSyslog.class);
+        final AsyncSyslogSender sender = new AsyncSyslogSender(fakeSyslog, null, 16, 4, OverflowPolicy.BLOCK, "test-sender");
+        sender.start();
+
+        for (int i = 0; i < 100; i++) {
+            sender.send(message(i));
+        }
+        sender.close();
+
+        Assert.assertEquals(100, fakeSyslog.getMessages().size());
+        Assert.assertEquals(100L, sender.getSentMessages());
+        Assert.assertEquals(0L, sender.getDroppedMessages());
+        Assert.assertTrue(sender.getMaxBatchSize() <= 4);
+        Assert.assertEquals(SyslogLevel.INFO, fakeSyslog.getLevels().get(0));
+    }
+
+    @Test
+    public void testSlowSyslogDropsInsteadOfBlocking()
+    {
+        final SlowSyslog slowSyslog = createSyslog(SlowSyslog.class);
+        final AsyncSyslogSender sender = new AsyncSyslogSender(slowSyslog, null, 4, 1, OverflowPolicy.DROP, "test-sender");
+        sender.start();
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            sender.send(message(i));
+        }
+        // The syslog host is stuck, the request threads must not be.
+        Assert.assertTrue(System.nanoTime() - startTime < 1000000000L);
+
+        release.countDown();
+        sender.close();
+
+        Assert.assertTrue(sender.getDroppedMessages() > 0);
+        Assert.assertEquals(100L, sender.getDroppedMessages() + sender.getSentMessages());
+        Assert.assertEquals(sender.getSentMessages(), slowSyslog.getMessages().size());
+    }
+
+    @Test
+    public void testMessagesArriveAtUdpListener() throws Exception
+    {
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"))) {
+            socket.setSoTimeout(10000);
+            Syslog.createInstance(logName, new UDPNetSyslogConfig());
+            final SyslogRequestLog requestLog = createRequestLog(socket.getLocalPort());
+
+            requestLog.start();
+            try {
+                for (int i = 0; i < 10; i++) {
+                    requestLog.log(request("GET"), response());
+                }
+
+                final DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+                for (int i = 0; i < 10; i++) {
+                    socket.receive(packet);
+                    final String message = new String(packet.getData(), packet.getOffset(), packet.getLength(), Charsets.UTF_8);
+                    Assert.assertTrue(message, message.contains("GET"));
+                }
+            }
+            finally {
+                requestLog.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testStalledTcpListenerDoesNotDelayRequests() throws Exception
+    {
+        // Accepts connections but never reads, so the sender runs into a full TCP window.
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            Syslog.createInstance(logName, new TCPNetSyslogConfig());
+            final SyslogRequestLog requestLog = createRequestLog(serverSocket.getLocalPort());
+
+            final Request request = request("GET");
+            final Response response = response();
+
+            requestLog.start();
+            try {
+                final long startTime = System.nanoTime();
+                for (int i = 0; i < 20000; i++) {
+                    requestLog.log(request, response);
+                }
+                Assert.assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(2));
+            }
+            finally {
+                requestLog.stop();
+            }
+        }
+    }
+
+    private SyslogRequestLog createRequestLog(final int port)
+    {
+        final Config config = Config.getFixedConfig("ness.httpserver.request-log.syslog.enabled", "true",
+                                                    "ness.httpserver.request-log.syslog.protocol", logName,
+                                                    "ness.httpserver.request-log.syslog.syslog-host", "127.0.0.1",
+                                                    "ness.httpserver.request-log.syslog.syslog-port", Integer.toString(port),
+                                                    "ness.httpserver.request-log.syslog.fields", "method",
+                                                    "ness.httpserver.request-log.syslog.async", "true",
+                                                    "ness.httpserver.request-log.syslog.async-queue-size", "64");
+
+        final Injector injector = Guice.createInjector(Stage.PRODUCTION,
+                                                       new ConfigModule(config),
+                                                       new LogFieldsModule(),
+                                                       new SyslogRequestLogModule(config),
+                                                       new Module() {
+                                                           @Override
+                                                           public void configure(final Binder binder) {
+                                                               binder.disableCircularProxies();
+                                                               binder.requireExplicitBindings();
+                                                           }
+                                                       });
+        return injector.getInstance(SyslogRequestLog.class);
+    }
+
+    private static Request request(final String method)
+    {
+        final Request request = EasyMock.createNiceMock(Request.class);
+        EasyMock.expect(request.getMethod()).andReturn(method).anyTimes();
+        EasyMock.replay(request);
+        return request;
+    }
+
+    private static Response response()
+    {
+        final Response response = EasyMock.createNiceMock(Response.class);
+        EasyMock.replay(response);
+        return response;
+    }
+
+    private <T extends SyslogIF> T createSyslog(final Class<T> syslogClass)
+    {
+        Syslog.createInstance(logName, new AbstractNetSyslogConfig() {
+            @Override
+            public Class<? extends SyslogIF> getSyslogClass() {
+                return syslogClass;
+            }
+        });
+        return syslogClass.cast(Syslog.getInstance(logName));
+    }
+
+    private static StructuredSyslogMessage message(final int index)
+    {
+        final Map<String, Map<String, String>> structuredData = Collections.singletonMap("l@12345", Collections.singletonMap("i", Integer.toString(index)));
+        return new StructuredSyslogMessage("id" + index, "test", structuredData, null);
+    }
+
+    public static class SlowSyslog extends FakeSyslog
+    {
+        @Override
+        protected synchronized void write(final SyslogLevel level, final byte[] message) throws SyslogRuntimeException
+        {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.write(level, message);
+        }
+    }
+}
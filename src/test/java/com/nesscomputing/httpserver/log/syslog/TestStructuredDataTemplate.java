@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestStructuredDataTemplate
+{
+    @Test
+    public void testFill()
+    {
+        final StructuredDataTemplate template = StructuredDataTemplate.builder()
+            .addParameter("l@1", "si")
+            .addParameter("rh@1", "authorization")
+            .addParameter("l@1", "m")
+            .addParameter("rh@1", "x-ness-server-type")
+            .addParameter("l@1", "m")
+            .addParameter("c@1", "session")
+            .build();
+
+        Assert.assertEquals(5, template.getParameterCount());
+        Assert.assertEquals(-1, template.getParameterIndex("l@1", "nope"));
+
+        final String [] values = new String[template.getParameterCount()];
+        values[template.getParameterIndex("l@1", "m")] = "GET";
+        values[template.getParameterIndex("rh@1", "authorization")] = "secret";
+
+        final Map<String, Map<String, String>> structuredData = template.fill(values);
+        Assert.assertEquals(ImmutableMap.of("l@1", ImmutableMap.of("m", "GET"),
+                                            "rh@1", ImmutableMap.of("authorization", "secret"),
+                                            "c@1", ImmutableMap.<String, String>of()),
+                            structuredData);
+    }
+}
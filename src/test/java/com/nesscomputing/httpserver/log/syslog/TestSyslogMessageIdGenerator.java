@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class TestSyslogMessageIdGenerator
+{
+    @Test
+    public void testMessageIdsAreUnique()
+    {
+        final SyslogMessageIdGenerator generator = new SyslogMessageIdGenerator(0xfedcba9876543210L);
+        Assert.assertEquals("fedcba98765432100000000000000000", generator.nextId());
+        Assert.assertEquals("fedcba98765432100000000000000001", generator.nextId());
+
+        final SyslogMessageIdGenerator randomGenerator = new SyslogMessageIdGenerator();
+        final Set<String> ids = Sets.newHashSet();
+        for (int i = 0; i < 10000; i++) {
+            final String id = randomGenerator.nextId();
+            Assert.assertEquals(32, id.length());
+            Assert.assertTrue(ids.add(id));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.log.syslog;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.nesscomputing.syslog4j.SyslogRuntimeException;
+import com.nesscomputing.syslog4j.impl.message.structured.StructuredSyslogMessage;
+
+public class TestSyslogSpool
+{
+    private File spoolDir;
+    private RecordingForwarder forwarder;
+
+    @Before
+    public void setUp()
+    {
+        spoolDir = Files.createTempDir();
+        forwarder = new RecordingForwarder();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : spoolDir.listFiles()) {
+            file.delete();
+        }
+        spoolDir.delete();
+    }
+
+    @Test
+    public void testSpoolAndReplayInOrder() throws Exception
+    {
+        final SyslogSpool spool = new SyslogSpool(spoolDir, 256, 1024 * 1024, 10000, 10, forwarder);
+        spool.start();
+
+        forwarder.down = true;
+        for (int i = 0; i < 50; i++) {
+            Assert.assertTrue(spool.deliver(message(i)));
+        }
+        Assert.assertTrue(spool.isPending());
+        Assert.assertTrue(spool.getSegments() > 1);
+        Assert.assertTrue(forwarder.ids.isEmpty());
+
+        forwarder.down = false;
+        waitForReplay(spool);
+
+        Assert.assertEquals(50L, spool.getReplayedMessages());
+        Assert.assertEquals(0L, spool.getSpoolBytes());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals("id" + i, forwarder.ids.get(i));
+        }
+
+        // Back to sending directly.
+        spool.deliver(message(50));
+        Assert.assertEquals("id50", forwarder.ids.get(50));
+        Assert.assertEquals(50L, spool.getSpooledMessages());
+        spool.close();
+    }
+
+    @Test
+    public void testSpoolSurvivesRestart() throws Exception
+    {
+        forwarder.down = true;
+        final SyslogSpool spool = new SyslogSpool(spoolDir, 1024 * 1024, 1024 * 1024, 10000, 10, forwarder);
+        spool.start();
+        for (int i = 0; i < 10; i++) {
+            spool.deliver(message(i));
+        }
+        spool.close();
+
+        final RecordingForwarder newForwarder = new RecordingForwarder();
+        final SyslogSpool newSpool = new SyslogSpool(spoolDir, 1024 * 1024, 1024 * 1024, 10000, 10, newForwarder);
+        newSpool.start();
+        waitForReplay(newSpool);
+        newSpool.close();
+
+        Assert.assertEquals(10, newForwarder.ids.size());
+        Assert.assertEquals("id0", newForwarder.ids.get(0));
+        Assert.assertEquals("id9", newForwarder.ids.get(9));
+        Assert.assertEquals(0, spoolDir.listFiles().length);
+    }
+
+    @Test
+    public void testSpoolIsCapped()
+    {
+        forwarder.down = true;
+        final SyslogSpool spool = new SyslogSpool(spoolDir, 1024, 1024, 10000, 10000, forwarder);
+        spool.start();
+
+        int delivered = 0;
+        for (int i = 0; i < 100; i++) {
+            if (spool.deliver(message(i))) {
+                delivered++;
+            }
+        }
+        spool.close();
+
+        Assert.assertTrue(delivered < 100);
+        Assert.assertEquals(100L - delivered, spool.getDroppedMessages());
+        Assert.assertTrue(spool.getSpoolBytes() < 1024 + 100);
+    }
+
+    private static void waitForReplay(final SyslogSpool spool) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && spool.isPending(); i++) {
+            Thread.sleep(10L);
+        }
+        Assert.assertFalse(spool.isPending());
+    }
+
+    private static StructuredSyslogMessage message(final int index)
+    {
+        final Map<String, Map<String, String>> structuredData = ImmutableMap.<String, Map<String, String>>of(
+            "l@12345", ImmutableMap.of("i", Integer.toString(index), "m", "GET"),
+            "rh@12345", Collections.<String, String>emptyMap());
+        return new StructuredSyslogMessage("id" + index, "test", structuredData, null);
+    }
+
+    private static class RecordingForwarder implements SyslogSpool.Forwarder
+    {
+        private final List<String> ids = new CopyOnWriteArrayList<String>();
+        private volatile boolean down = false;
+
+        @Override
+        public void forward(final StructuredSyslogMessage message)
+        {
+            if (down) {
+                throw new SyslogRuntimeException("syslog is down");
+            }
+            ids.add(message.getMessageId());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLatencyHistogram
+{
+    @Test
+    public void testEmpty()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getPercentile(99.0));
+        Assert.assertEquals(0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(10000L, histogram.getCount());
+        Assert.assertEquals(10000L, histogram.getMax());
+        Assert.assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertWithin(5000L, histogram.getPercentile(50.0));
+        assertWithin(9900L, histogram.getPercentile(99.0));
+        Assert.assertEquals(10000L, histogram.getPercentile(100.0));
+    }
+
+    @Test
+    public void testSmallValuesAreExact()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3L);
+        histogram.record(7L);
+        histogram.record(-5L);
+
+        Assert.assertEquals(0L, histogram.getPercentile(33.0));
+        Assert.assertEquals(3L, histogram.getPercentile(66.0));
+        Assert.assertEquals(7L, histogram.getPercentile(100.0));
+    }
+
+    @Test
+    public void testMerge()
+    {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            a.record(100L);
+        }
+        b.record(1000000L);
+
+        a.merge(b);
+        Assert.assertEquals(100L, a.getCount());
+        Assert.assertEquals(1000000L, a.getMax());
+        assertWithin(100L, a.getPercentile(99.0));
+        Assert.assertEquals(1000000L, a.getPercentile(100.0));
+    }
+
+    @Test
+    public void testBuckets()
+    {
+        long previousUpperBound = -1L;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            final long upperBound = LatencyHistogram.bucketUpperBound(i);
+            Assert.assertTrue(upperBound > previousUpperBound);
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(upperBound == Long.MAX_VALUE ? previousUpperBound + 1 : upperBound));
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(previousUpperBound + 1));
+            previousUpperBound = upperBound;
+        }
+        Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    private static void assertWithin(final long expected, final long actual)
+    {
+        Assert.assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 16 + 1);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRequestMetrics
+{
+    @Test
+    public void testRecord()
+    {
+        final RequestMetrics metrics = new RequestMetrics(16);
+        for (int i = 1; i <= 1000; i++) {
+            metrics.record("GET", "/users", 200, i, 100L);
+        }
+        metrics.record("GET", "/users", 204, 5000L, 0L);
+        metrics.record("GET", "/users", 503, 10L, 0L);
+
+        final RouteMetrics ok = metrics.getRouteMetrics("GET", "/users", 200);
+        Assert.assertEquals("2xx", ok.getStatusClass());
+        Assert.assertEquals(1001L, ok.getCount());
+        Assert.assertEquals(5000L, ok.getLatencyMax());
+        Assert.assertTrue(ok.getLatencyP50() >= 470L && ok.getLatencyP50() <= 530L);
+        Assert.assertTrue(ok.getLatencyP999() >= 990L);
+        Assert.assertEquals(100L, ok.getSizeP50());
+
+        Assert.assertEquals(1L, metrics.getRouteMetrics("GET", "/users", 500).getCount());
+        Assert.assertEquals(2, metrics.getRouteMetrics().size());
+    }
+
+    @Test
+    public void testBoundedKeys()
+    {
+        final RequestMetrics metrics = new RequestMetrics(2);
+        metrics.record("GET", "/a", 200, 1L, 0L);
+        metrics.record("GET", "/b", 200, 1L, 0L);
+        metrics.record("GET", "/c", 200, 1L, 0L);
+        metrics.record("GET", "/d", 200, 1L, 0L);
+        metrics.record("BREW", "/a", 200, 1L, 0L);
+
+        Assert.assertNull(metrics.getRouteMetrics("GET", "/c", 200));
+        Assert.assertEquals(2L, metrics.getRouteMetrics("GET", RequestMetrics.OTHER_ROUTE, 200).getCount());
+        Assert.assertEquals(1L, metrics.getRouteMetrics("OTHER", RequestMetrics.OTHER_ROUTE, 200).getCount());
+
+        final List<RouteMetrics> all = metrics.getRouteMetrics();
+        Assert.assertEquals(4, all.size());
+        Assert.assertEquals(RequestMetrics.OTHER_ROUTE, all.get(0).getRoute());
+    }
+
+    @Test
+    public void testStatusClass()
+    {
+        Assert.assertEquals("1xx", RequestMetrics.statusClass(101));
+        Assert.assertEquals("4xx", RequestMetrics.statusClass(404));
+        Assert.assertEquals("xxx", RequestMetrics.statusClass(0));
+        Assert.assertEquals("xxx", RequestMetrics.statusClass(999));
+    }
+
+    @Test
+    public void testExport() throws Exception
+    {
+        final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        final RequestMetrics metrics = new RequestMetrics(16);
+        metrics.record("GET", "/a", 200, 10L, 0L);
+        metrics.export(mbeanServer);
+        metrics.record("POST", "/a", 201, 20L, 0L);
+
+        final ObjectName name = new ObjectName("com.nesscomputing.httpserver:type=RouteMetrics,name=" + ObjectName.quote("POST /a 2xx"));
+        Assert.assertEquals(20L, mbeanServer.getAttribute(name, "LatencyMax"));
+        Assert.assertEquals(2, mbeanServer.queryNames(new ObjectName("com.nesscomputing.httpserver:type=RouteMetrics,*"), null).size());
+
+        metrics.unexport();
+        Assert.assertTrue(mbeanServer.queryNames(new ObjectName("com.nesscomputing.httpserver:type=RouteMetrics,*"), null).isEmpty());
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2012 Ness Computing, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nesscomputing.httpserver.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStripedCounter
+{
+    @Test
+    public void testStripes()
+    {
+        Assert.assertEquals(2, StripedCounter.stripesFor(1));
+        Assert.assertEquals(8, StripedCounter.stripesFor(4));
+        Assert.assertEquals(16, StripedCounter.stripesFor(6));
+        Assert.assertEquals(64, StripedCounter.stripesFor(256));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception
+    {
+        final StripedCounter counter = new StripedCounter(4);
+        final StripedHistogram histogram = new StripedHistogram(4);
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run()
+                {
+                    for (int j = 1; j <= 1000; j++) {
+                        counter.increment();
+                        histogram.record(j);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(8000L, counter.get());
+
+        final LatencyHistogram snapshot = histogram.snapshot();
+        Assert.assertEquals(8000L, snapshot.getCount());
+        Assert.assertEquals(1000L, snapshot.getMax());
+        Assert.assertEquals(8L * 500500L, snapshot.getSum());
+    }
+
+    @Test
+    public void testReset()
+    {
+        final StripedCounter counter = new StripedCounter();
+        counter.add(5L);
+        counter.decrement();
+        Assert.assertEquals(4L, counter.get());
+        counter.reset();
+        Assert.assertEquals(0L, counter.get());
+
+        final StripedHistogram histogram = new StripedHistogram();
+        histogram.record(10L);
+        histogram.reset();
+        Assert.assertEquals(0L, histogram.snapshot().getCount());
+    }
+}